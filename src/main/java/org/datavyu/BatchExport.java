@@ -0,0 +1,369 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.datavyu.controllers.ExportDatabaseFileController;
+import org.datavyu.controllers.OpenController;
+import org.datavyu.controllers.SaveDataStoreFileController;
+import org.datavyu.models.db.DataStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Exports every project in a directory without starting the user interface, for example
+ *
+ * <pre>
+ * java -cp datavyu.jar org.datavyu.BatchExport [options] directory cells|csv|frames|frames-rle|json|columnar
+ *
+ * --output dir           write the exported files to dir instead of next to the projects
+ * --recursive            also export the projects in sub directories
+ * --threads n            the number of projects to export at the same time, the number of cores by default
+ * --frame-rate r         the number of frames per second when exporting by frame, 30 by default
+ * --memory mb            the memory the projects being exported may use together, 3/4 of the heap by default
+ * --max-file-memory mb   skip projects that would use more memory than this, the same as --memory by default
+ * </pre>
+ *
+ * Projects are opened with {@link OpenController} and exported with {@link ExportDatabaseFileController}, the same as
+ * from the user interface. The memory a project uses is estimated from the size of its data store, and a project is
+ * only started once the projects already being exported leave room for it, so a few large projects do not run out of
+ * heap while many small ones keep all the threads busy.
+ */
+public final class BatchExport {
+
+    /** The logger instance for this class */
+    private static Logger logger = LogManager.getLogger(BatchExport.class);
+
+    /** The estimated bytes of heap used per byte of a data store saved as CSV */
+    private static final int MEMORY_PER_BYTE = 12;
+
+    private static final long MB = 1024 * 1024;
+
+    /** The ways to export a project */
+    public enum Mode {
+        CELLS("_cells.csv"),
+        CSV(".csv"),
+        FRAMES("_frames.csv"),
+        FRAMES_RLE("_frames_rle.csv"),
+        JSON(".json"),
+        COLUMNAR(".dvc");
+
+        /** Appended to the name of the project to name the exported file */
+        private final String suffix;
+
+        Mode(final String suffix) {
+            this.suffix = suffix;
+        }
+
+        static Mode parse(final String name) {
+            return valueOf(name.toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final Mode mode;
+
+    /** The directory to write to, null to write next to each project */
+    private File outputDirectory = null;
+
+    private boolean recursive = false;
+
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    private double frameRate = 30.0;
+
+    /** The memory the projects being exported may use together, in MB */
+    private int memory = (int) (Runtime.getRuntime().maxMemory() / MB * 3 / 4);
+
+    /** The memory a project may use, in MB, 0 for the same as the memory of all the projects */
+    private int maxFileMemory = 0;
+
+    /**
+     * @param mode The way to export the projects.
+     */
+    public BatchExport(final Mode mode) {
+        this.mode = mode;
+    }
+
+    public void setOutputDirectory(final File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    public void setRecursive(final boolean recursive) {
+        this.recursive = recursive;
+    }
+
+    public void setNumThreads(final int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    public void setFrameRate(final double frameRate) {
+        this.frameRate = frameRate;
+    }
+
+    public void setMemory(final int memory) {
+        this.memory = Math.max(1, memory);
+    }
+
+    public void setMaxFileMemory(final int maxFileMemory) {
+        this.maxFileMemory = maxFileMemory;
+    }
+
+    /**
+     * Exports the projects in a directory.
+     *
+     * @param directory The directory of the projects.
+     * @return The number of projects that could not be exported.
+     * @throws InterruptedException If interrupted while waiting for the projects to be exported.
+     */
+    public int export(final File directory) throws InterruptedException {
+        List<File> projects = new ArrayList<>();
+        findProjects(directory, projects);
+        if (outputDirectory != null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            logger.error("Unable to create " + outputDirectory);
+            return projects.size();
+        }
+
+        final int budget = memory;
+        final int fileLimit = maxFileMemory > 0 ? Math.min(maxFileMemory, budget) : budget;
+        final Semaphore available = new Semaphore(budget);
+        final AtomicInteger numFailed = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        logger.info("Exporting " + projects.size() + " projects as " + mode + " on " + numThreads + " threads");
+        long start = System.currentTimeMillis();
+
+        try {
+            for (final File project : projects) {
+                final int estimate = (int) Math.max(1, estimateMemory(project) / MB);
+                if (estimate > fileLimit) {
+                    logger.error("Skipping " + project + ", it would use about " + estimate + " MB");
+                    numFailed.incrementAndGet();
+                    continue;
+                }
+
+                // Wait here rather than in the workers, so the queue only holds projects that fit in memory.
+                available.acquire(estimate);
+                try {
+                    pool.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                exportProject(project);
+                            } catch (Exception e) {
+                                logger.error("Unable to export " + project, e);
+                                numFailed.incrementAndGet();
+                            } finally {
+                                available.release(estimate);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    available.release(estimate);
+                    throw e;
+                }
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+
+        logger.info("Exported " + (projects.size() - numFailed.get()) + " of " + projects.size() + " projects in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return numFailed.get();
+    }
+
+    /**
+     * Opens and exports a project.
+     *
+     * @param project The project file.
+     * @throws Exception If unable to open or export the project.
+     */
+    void exportProject(final File project) throws Exception {
+        OpenController openController = new OpenController();
+        openController.openProject(project);
+        DataStore dataStore = openController.getDataStore();
+        if (dataStore == null) {
+            throw new IOException("Unable to open " + project);
+        }
+
+        String outFile = getOutputFile(project).getPath();
+        ExportDatabaseFileController exportController = new ExportDatabaseFileController();
+        switch (mode) {
+            case CELLS:
+                exportController.exportAsCells(outFile, dataStore);
+                break;
+            case CSV:
+                new SaveDataStoreFileController().saveAsCsv(outFile, dataStore);
+                break;
+            case FRAMES:
+                exportController.exportByFrame(outFile, dataStore, false, frameRate);
+                break;
+            case FRAMES_RLE:
+                exportController.exportByFrame(outFile, dataStore, true, frameRate);
+                break;
+            case JSON:
+                exportController.setPrettyJSON(false);
+                exportController.exportAsJSON(outFile, dataStore);
+                break;
+            case COLUMNAR:
+                exportController.exportAsColumnar(outFile, dataStore, 0);
+                break;
+        }
+        logger.info("Exported " + project + " to " + outFile);
+    }
+
+    /**
+     * The exported file is named after the whole name of the project, with the dot of its extension replaced, so
+     * that projects with the same name and different extensions, such as a.opf and a.opfb, are exported to different
+     * files.
+     *
+     * @param project The project file.
+     * @return The file to export the project to.
+     */
+    File getOutputFile(final File project) {
+        String name = project.getName();
+        int dot = name.lastIndexOf('.');
+        String base = name.substring(0, dot) + '_' + name.substring(dot + 1);
+        return new File(outputDirectory != null ? outputDirectory : project.getParentFile(), base + mode.suffix);
+    }
+
+    private void findProjects(final File directory, final List<File> projects) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            logger.error("Unable to list " + directory);
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                if (recursive) {
+                    findProjects(file, projects);
+                }
+            } else if (file.getName().endsWith(".opf") || file.getName().endsWith(".opfb")) {
+                projects.add(file);
+            }
+        }
+    }
+
+    /**
+     * @param project The project file.
+     * @return The estimated bytes of heap used to open and export the project.
+     */
+    static long estimateMemory(final File project) {
+        long size = project.length();
+
+        // A project archive is compressed, use the size of its data store instead.
+        if (project.getName().endsWith(".opf")) {
+            try (ZipFile zipFile = new ZipFile(project)) {
+                long uncompressed = 0;
+                for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                    uncompressed += Math.max(0, entry.getSize());
+                }
+                size = Math.max(size, uncompressed);
+            } catch (IOException e) {
+                logger.warn("Unable to read the size of " + project, e);
+            }
+        }
+        return size * MEMORY_PER_BYTE;
+    }
+
+    private static void usage() {
+        System.err.println("usage: BatchExport [--output dir] [--recursive] [--threads n] [--frame-rate r] "
+                + "[--memory mb] [--max-file-memory mb] directory cells|csv|frames|frames-rle|json|columnar");
+        System.exit(2);
+    }
+
+    /**
+     * Exports the projects in a directory, without loading {@link Datavyu} and the user interface.
+     *
+     * @param args The options, directory and mode.
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+
+        List<String> positional = new ArrayList<>();
+        File outputDirectory = null;
+        boolean recursive = false;
+        Integer numThreads = null, memory = null, maxFileMemory = null;
+        Double frameRate = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--output":
+                        outputDirectory = new File(args[++i]);
+                        break;
+                    case "--recursive":
+                        recursive = true;
+                        break;
+                    case "--threads":
+                        numThreads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--frame-rate":
+                        frameRate = Double.parseDouble(args[++i]);
+                        break;
+                    case "--memory":
+                        memory = Integer.parseInt(args[++i]);
+                        break;
+                    case "--max-file-memory":
+                        maxFileMemory = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        positional.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            usage();
+        }
+
+        Mode mode = null;
+        try {
+            mode = positional.size() == 2 ? Mode.parse(positional.get(1)) : null;
+        } catch (IllegalArgumentException e) {
+            // Reported by the usage below.
+        }
+        File directory = positional.isEmpty() ? null : new File(positional.get(0));
+        if (mode == null || !directory.isDirectory() || (frameRate != null && frameRate <= 0)) {
+            usage();
+        }
+
+        BatchExport batchExport = new BatchExport(mode);
+        batchExport.setOutputDirectory(outputDirectory);
+        batchExport.setRecursive(recursive);
+        if (numThreads != null) {
+            batchExport.setNumThreads(numThreads);
+        }
+        if (frameRate != null) {
+            batchExport.setFrameRate(frameRate);
+        }
+        if (memory != null) {
+            batchExport.setMemory(memory);
+        }
+        if (maxFileMemory != null) {
+            batchExport.setMaxFileMemory(maxFileMemory);
+        }
+        System.exit(batchExport.export(directory) > 0 ? 1 : 0);
+    }
+}
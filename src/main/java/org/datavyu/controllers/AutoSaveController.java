@@ -19,7 +19,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.datavyu.Datavyu;
 import org.datavyu.controllers.project.ProjectController;
-import org.datavyu.models.db.UserWarningException;
+import org.datavyu.models.db.DataStore;
+import org.datavyu.models.project.Project;
 import org.datavyu.util.FileFilters.OpfFilter;
 import org.datavyu.util.FileFilters.ShapaFilter;
 
@@ -28,17 +29,51 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class AutoSaveController implements ActionListener {
 
     /** Logger for this class */
-    private static Logger logger = LogManager.getLogger(DeleteColumnController.class);
+    private static Logger logger = LogManager.getLogger(AutoSaveController.class);
 
     /** Timer for this class */
     private static Timer timer;
 
-    /** File to auto save */
-    private static File file;
+    /** File to auto save, written by the autosave thread */
+    private static volatile File file;
+
+    /** Writes the autosaves in the background, also used by the tests to hold up an autosave */
+    static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(r, "Autosave");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** The autosave being written, null if there has been none */
+    private static Future<?> pending;
+
+    /** How long edits are collected before they are appended to the journal, in milliseconds */
+    private static final int JOURNAL_DELAY = 500;
+
+    /** Journal of the edits made since the last autosave, null until the first autosave */
+    private static EditJournalController journal;
+
+    /** Timer for appending to the journal */
+    private static Timer journalTimer;
+
+    /** How long the last autosave took in milliseconds */
+    private static volatile long lastSaveDuration = -1L;
+
+    /** The size of the last autosave in bytes */
+    private static volatile long lastSaveSize = -1L;
 
     private AutoSaveController() {}
 
@@ -65,46 +100,188 @@ public class AutoSaveController implements ActionListener {
         }
     }
 
+    /**
+     * @return How long the last autosave took to write in milliseconds, -1 if nothing has been autosaved yet.
+     */
+    public static long getLastSaveDuration() {
+        return lastSaveDuration;
+    }
+
+    /**
+     * @return The size of the last autosave in bytes, -1 if nothing has been autosaved yet.
+     */
+    public static long getLastSaveSize() {
+        return lastSaveSize;
+    }
+
+    /**
+     * @return The autosave being written or last written, null if there has been none.
+     */
+    static Future<?> getPending() {
+        return pending;
+    }
+
+    /**
+     * Records that the project was edited, the edits are appended to the journal shortly after. Called for every
+     * edit that can be undone, as well as for undo and redo.
+     */
+    public static void editMade() {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    editMade();
+                }
+            });
+            return;
+        }
+
+        // Edits are journaled whether or not autosaving on a timer is turned on, the first one takes the checkpoint.
+        if (journalTimer == null) {
+            journalTimer = new Timer(JOURNAL_DELAY, new ActionListener() {
+                @Override
+                public void actionPerformed(final ActionEvent e) {
+                    appendToJournal();
+                }
+            });
+            journalTimer.setRepeats(false);
+        }
+        // Edits made before the timer fires go into the same record.
+        if (!journalTimer.isRunning()) {
+            journalTimer.start();
+        }
+    }
+
+    /**
+     * Captures the edits made since the last record on the event dispatch thread and appends them to the journal in
+     * the background. A project without a journal is autosaved instead, which starts its journal.
+     */
+    private static void appendToJournal() {
+        DataStore dataStore = Datavyu.getProjectController().getDataStore();
+        if (journal == null || journal.isFailed() || journal.getDataStore() != dataStore) {
+            if (!autosave()) {
+                journalTimer.restart();
+            }
+            return;
+        }
+
+        final EditJournalController current = journal;
+        final EditJournalController.Record record = current.capture();
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                current.append(record);
+            }
+        });
+    }
+
     @Override
     public void actionPerformed(ActionEvent evt) {
-        String baseName;
-        String ext;
+        autosave();
+    }
+
+    /**
+     * Takes a snapshot of the project on the event dispatch thread and writes it in the background. The snapshot
+     * replaces the previous autosave only once it has been written completely, and then becomes the checkpoint the
+     * journal is replayed over.
+     *
+     * @return False if the last autosave is still being written.
+     */
+    private static boolean autosave() {
+        ProjectController projController = Datavyu.getProjectController();
+        return autosave(projController.getDataStore(), projController.getProject(),
+                getAutoSaveFile(projController));
+    }
+
+    /**
+     * Autosaves a project, see {@link #autosave()}.
+     *
+     * @param dataStore The data store of the project.
+     * @param project The project.
+     * @param destination The file to autosave to.
+     * @return False if the last autosave is still being written.
+     */
+    static boolean autosave(final DataStore dataStore, final Project project, final File destination) {
+        // Skip this tick if the last autosave is still being written.
+        if (pending != null && !pending.isDone()) {
+            return false;
+        }
+
+        final File journalFile = EditJournalController.getJournalFile(destination);
+        final long generation = System.nanoTime();
+        final SaveBinaryDataStoreFileController.Snapshot snapshot;
+        final Map<String, byte[]> entries;
         try {
-            if (file != null) {
-                file.delete();
-            }
-            ProjectController projController = Datavyu.getProjectController();
-            SaveController saveController = new SaveController();
-            if (projController.isNewProject() || (projController.getProjectName() == null)) {
-                baseName = "~noname_";
-                ext = ".opf";
-                file = File.createTempFile(baseName, ext);
-                saveController.saveProject(file, projController.getProject(),
-                        projController.getDataStore(), false);
-            } else {
-                if ((projController.getLastSaveOption() instanceof ShapaFilter)
-                        || (projController.getLastSaveOption()
-                        instanceof OpfFilter)) {
-                    baseName = "~" + projController.getProjectName() + "_";
-                    ext = ".opf";
-                    file = File.createTempFile(baseName, ext);
-                    saveController.saveProject(file, projController.getProject(),
-                            projController.getDataStore(), false);
-                    // Save content just as a database.
-                } else {
-                    String filename = "~" + projController.getDatabaseFileName();
-                    baseName = FilenameUtils.getBaseName(filename) + "_";
-                    ext = "." + FilenameUtils.getExtension(filename);
-                    file = File.createTempFile(baseName, ext);
-                    saveController.saveDataStore(file, projController.getDataStore(), false);
-                }
-            }
-        } catch (UserWarningException lee) {
-            logger.error("UserWarningException: Unable to autosave.", lee);
+            snapshot = new SaveBinaryDataStoreFileController().snapshot(dataStore);
+            entries = new SaveController().getProjectEntries(project);
+            entries.put(EditJournalController.GENERATION_ENTRY, ByteBuffer.allocate(8).putLong(generation).array());
         } catch (IOException ioe) {
             logger.error("IOException: Unable to autosave.", ioe);
-        } finally {
-            file.deleteOnExit();
+            return true;
+        }
+
+        // Edits from now on go to the journal of this autosave.
+        final EditJournalController previous = journal;
+        final EditJournalController next = new EditJournalController(journalFile, generation, dataStore);
+        journal = next;
+
+        pending = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long start = System.currentTimeMillis();
+                    long size = new SaveBinaryDataStoreFileController().save(destination, snapshot, entries);
+                    lastSaveDuration = System.currentTimeMillis() - start;
+                    lastSaveSize = size;
+                    logger.info("Autosaved " + size + " bytes in " + lastSaveDuration + " ms.");
+
+                    if (previous != null) {
+                        previous.close();
+                        if (!previous.getFile().equals(journalFile)) {
+                            previous.getFile().delete();
+                        }
+                    }
+                    next.open();
+
+                    if (file != null && !file.equals(destination)) {
+                        file.delete();
+                    }
+                    file = destination;
+                } catch (IOException ioe) {
+                    logger.error("IOException: Unable to autosave.", ioe);
+                    // The previous autosave and its journal are left as they are.
+                    if (previous != null) {
+                        previous.close();
+                    }
+                    next.fail();
+                } finally {
+                    destination.deleteOnExit();
+                    journalFile.deleteOnExit();
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @param projController The project to autosave.
+     * @return The file to autosave the project to, the current autosave file as long as the project name is the same.
+     */
+    private static File getAutoSaveFile(final ProjectController projController) {
+        String baseName;
+        if (projController.isNewProject() || (projController.getProjectName() == null)) {
+            baseName = "~noname_";
+        } else if ((projController.getLastSaveOption() instanceof ShapaFilter)
+                || (projController.getLastSaveOption() instanceof OpfFilter)) {
+            baseName = "~" + projController.getProjectName() + "_";
+        } else {
+            baseName = "~" + FilenameUtils.getBaseName(projController.getDatabaseFileName()) + "_";
+        }
+
+        File current = file;
+        if (current != null && current.getName().startsWith(baseName)) {
+            return current;
         }
+        return new File(System.getProperty("java.io.tmpdir"), baseName + System.nanoTime() + ".opfb");
     }
 }
@@ -0,0 +1,469 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.datavyu.models.db.ColumnarVariable;
+import org.datavyu.models.db.Variable;
+import org.datavyu.util.FileSystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Layout of the binary project format (.opfb).
+ *
+ * <pre>
+ * header     int magic "OPFB", int version, long offset of the directory
+ * blocks     one block per variable that has cells, followed by the opaque entries of the project
+ * directory  varint number of variables, then for each variable:
+ *                string name, string type, byte hidden, varint number of cells, long block offset, long block length,
+ *                varint number of codes, then for each code: string name, string type
+ *            varint number of entries, then for each entry: string name, long offset, long length
+ * </pre>
+ *
+ * A variable block holds the onsets as zigzag varint deltas from the previous onset, then the offsets as zigzag varint
+ * deltas from their onset, then one dictionary encoded column per code: a varint number of distinct values, the values
+ * and then a varint per cell, 0 for an empty value and i for the i-th distinct value.
+ *
+ * Strings are a varint number of bytes followed by the UTF-8 bytes; fixed width numbers are big endian.
+ *
+ * The blocks of the variables that were last read or written are remembered by their position in the file, so a
+ * variable that has not changed since can be saved again by copying its block as is. Blocks are only read from the
+ * file when they are needed. A save that replaces a file moves the blocks it copied to their position in the new
+ * file. The other blocks of the old file are read into memory first if their cells have not been decoded yet, and
+ * are dropped otherwise, so the cells of a variable are never held twice; see {@link #replaceFile(File, File, Map)}.
+ */
+final class BinaryDataStoreFormat {
+
+    /** "OPFB" */
+    static final int MAGIC = 0x4F504642;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+
+    /** The position of the directory offset within the header. */
+    static final int DIRECTORY_OFFSET_POSITION = 8;
+
+    /** The block each variable was last read from or written to, by variable */
+    private static final Map<Variable, SavedBlock> savedBlocks =
+            Collections.synchronizedMap(new WeakHashMap<Variable, SavedBlock>());
+
+    /** Guards the location of every block and the files they are read from */
+    private static final Object locations = new Object();
+
+    /** The blocks that are read from a file rather than held in memory */
+    private static final Set<SavedBlock> fileBlocks = Collections.newSetFromMap(new WeakHashMap<SavedBlock, Boolean>());
+
+    /** The files that are open for reading blocks */
+    private static final Set<BlockFile> openFiles = Collections.newSetFromMap(new WeakHashMap<BlockFile, Boolean>());
+
+    private BinaryDataStoreFormat() {
+    }
+
+    /**
+     * Remembers the block that holds the cells of a variable.
+     *
+     * @param variable The variable.
+     * @param block The block, as read from or written to a file.
+     */
+    static void rememberBlock(final Variable variable, final SavedBlock block) {
+        savedBlocks.put(variable, block);
+    }
+
+    /**
+     * @param variable The variable.
+     * @param numColumns The number of code columns the variable has now.
+     * @return The block that was last read or written for the variable, null if there is none or the variable has
+     * changed since.
+     */
+    static SavedBlock getSavedBlock(final Variable variable, final int numColumns) {
+        SavedBlock block = savedBlocks.get(variable);
+        if (block == null || block.isDropped() || block.changeCount != variable.getChangeCount()
+                || block.numColumns != numColumns) {
+            return null;
+        }
+        return block;
+    }
+
+    /**
+     * Moves a file written next to the destination in its place. The blocks that were copied to the written file are
+     * read from it from now on. The other blocks of the destination are read into memory, or dropped if they are only
+     * kept to be copied, and the destination is closed, before it is replaced.
+     *
+     * @param tempFile The file that was written.
+     * @param destinationFile The file to replace.
+     * @param copied The position in the written file of each block that was copied to it.
+     * @return The written file, to read the blocks that were encoded for it from.
+     * @throws IOException If unable to read the blocks of the destination or to move the file.
+     */
+    static BlockFile replaceFile(final File tempFile, final File destinationFile, final Map<SavedBlock, Long> copied)
+            throws IOException {
+        BlockFile written = new BlockFile(destinationFile);
+        synchronized (locations) {
+            for (SavedBlock block : new ArrayList<>(fileBlocks)) {
+                if (block.file.file.equals(written.file) && !copied.containsKey(block)) {
+                    if (!block.copyOnly) {
+                        block.bytes = block.file.read(block.offset, block.length);
+                    }
+                    block.file = null;
+                    fileBlocks.remove(block);
+                }
+            }
+            for (BlockFile file : new ArrayList<>(openFiles)) {
+                if (file.file.equals(written.file)) {
+                    file.release();
+                }
+            }
+
+            FileSystemUtils.replaceFile(tempFile, destinationFile);
+
+            for (Map.Entry<SavedBlock, Long> entry : copied.entrySet()) {
+                SavedBlock block = entry.getKey();
+                block.file = written;
+                block.offset = entry.getValue();
+                block.bytes = null;
+                fileBlocks.add(block);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * A binary project file that blocks are read from. The file is opened on the first read and stays open until it
+     * is replaced by a save.
+     */
+    static final class BlockFile {
+
+        private final File file;
+
+        private FileChannel channel = null;
+
+        /**
+         * @param file The file.
+         */
+        BlockFile(final File file) {
+            this.file = file.getAbsoluteFile();
+        }
+
+        /**
+         * @return The size of the file in bytes.
+         * @throws IOException If unable to open the file.
+         */
+        long size() throws IOException {
+            synchronized (locations) {
+                return open().size();
+            }
+        }
+
+        /**
+         * Reads a range of the file. Positions are longs, so a file may be larger than 2 GB as long as each block,
+         * entry and the directory are smaller.
+         *
+         * @param start The position of the first byte.
+         * @param length The number of bytes.
+         * @return The bytes.
+         * @throws IOException If unable to read the file or the range is too large.
+         */
+        ByteBuffer read(final long start, final long length) throws IOException {
+            synchronized (locations) {
+                FileChannel in = open();
+                if (start < 0 || length < 0 || start + length > in.size()
+                        || (start > 0 && start < HEADER_SIZE)) {
+                    throw new IllegalArgumentException("Range out of bounds: " + start + " to " + (start + length));
+                }
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Block too large: " + length + " bytes");
+                }
+                ByteBuffer result = ByteBuffer.allocate((int) length);
+                while (result.hasRemaining()) {
+                    if (in.read(result, start + result.position()) < 0) {
+                        throw new IOException("Unexpected end of file");
+                    }
+                }
+                result.flip();
+                return result;
+            }
+        }
+
+        private FileChannel open() throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                openFiles.add(this);
+            }
+            return channel;
+        }
+
+        /**
+         * Closes the file, it is opened again by the next read.
+         */
+        void release() throws IOException {
+            synchronized (locations) {
+                if (channel != null) {
+                    openFiles.remove(this);
+                    channel.close();
+                    channel = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * The encoded cells of a variable, or an entry of a project: a range of a file, or bytes held in memory once the
+     * file has been replaced. A block that is only kept to be copied by a later save is dropped instead.
+     */
+    static final class SavedBlock {
+
+        /** The change count of the variable when the block was read or written. */
+        final long changeCount;
+
+        final int numCells;
+
+        final int numColumns;
+
+        final long length;
+
+        /** The file that holds the block, null if the block is held in memory */
+        private BlockFile file;
+
+        private long offset;
+
+        private ByteBuffer bytes;
+
+        /** True if the cells of the block are in memory as well, and the block is only kept to be copied */
+        private boolean copyOnly = false;
+
+        /**
+         * A block within a file.
+         */
+        SavedBlock(final long changeCount, final BlockFile file, final long offset, final long length,
+                   final int numCells, final int numColumns) {
+            this.changeCount = changeCount;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.numCells = numCells;
+            this.numColumns = numColumns;
+            synchronized (locations) {
+                fileBlocks.add(this);
+            }
+        }
+
+        /**
+         * A block held in memory.
+         */
+        SavedBlock(final long changeCount, final ByteBuffer bytes, final int numCells, final int numColumns) {
+            this.changeCount = changeCount;
+            this.bytes = bytes;
+            this.length = bytes.remaining();
+            this.numCells = numCells;
+            this.numColumns = numColumns;
+        }
+
+        /**
+         * @return The bytes of the block, read from the file if it is in one.
+         * @throws IOException If unable to read the file.
+         */
+        ByteBuffer read() throws IOException {
+            synchronized (locations) {
+                if (isDropped()) {
+                    throw new IOException("The block is no longer available");
+                }
+                return bytes != null ? bytes.duplicate() : file.read(offset, length);
+            }
+        }
+
+        /**
+         * Marks the block as only kept to be copied by a later save, once its cells have been decoded into their
+         * variable or were encoded from it. A block held in memory is dropped right away.
+         */
+        void setCopyOnly() {
+            synchronized (locations) {
+                copyOnly = true;
+                bytes = null;
+            }
+        }
+
+        /**
+         * @return True if the block can no longer be read: it was only kept to be copied, and was dropped.
+         */
+        boolean isDropped() {
+            synchronized (locations) {
+                return file == null && bytes == null;
+            }
+        }
+    }
+
+    static long readVarLong(final ByteBuffer buffer) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+
+    static int readVarInt(final ByteBuffer buffer) throws IOException {
+        long value = readVarLong(buffer);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Number out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    static long readZigZag(final ByteBuffer buffer) throws IOException {
+        long value = readVarLong(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static String readString(final ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[readVarInt(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Growable buffer that encodes values in the layout of the format.
+     */
+    static final class Encoder {
+
+        private byte[] bytes = new byte[1 << 16];
+
+        private int size = 0;
+
+        private void ensureCapacity(final int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length * 2));
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeZigZag(final long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeByte(final int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeInt(final int value) {
+            ensureCapacity(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(final long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeString(final String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            writeBytes(utf8);
+        }
+
+        void writeBytes(final byte[] value) {
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+
+        void writeBytes(final ByteBuffer value) {
+            ByteBuffer source = value.duplicate();
+            ensureCapacity(source.remaining());
+            int length = source.remaining();
+            source.get(bytes, size, length);
+            size += length;
+        }
+
+        /**
+         * @return The number of bytes in the buffer.
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return A copy of the encoded bytes, the buffer is emptied.
+         */
+        byte[] takeBytes() {
+            byte[] result = Arrays.copyOf(bytes, size);
+            size = 0;
+            return result;
+        }
+
+        /**
+         * Encodes the cells of a variable as a block.
+         *
+         * @param rows The cells of the variable.
+         */
+        void writeBlock(final ColumnarVariable.Rows rows) {
+            long previousOnset = 0L;
+            for (long onset : rows.onsets) {
+                writeZigZag(onset - previousOnset);
+                previousOnset = onset;
+            }
+            for (int i = 0; i < rows.onsets.length; i++) {
+                writeZigZag(rows.offsets[i] - rows.onsets[i]);
+            }
+
+            for (int column = 0; column < rows.codes.length; column++) {
+                String[] dictionary = rows.dictionaries[column];
+                writeVarLong(dictionary.length - 1);
+                for (int i = 1; i < dictionary.length; i++) {
+                    writeString(dictionary[i]);
+                }
+                for (int code : rows.codes[column]) {
+                    writeVarLong(code);
+                }
+            }
+        }
+
+        /**
+         * Writes the encoded bytes to the current position of the channel and empties the buffer.
+         *
+         * @param channel The channel to write to.
+         * @return The number of bytes written.
+         */
+        int flushTo(final FileChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            int written = size;
+            size = 0;
+            return written;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.datavyu.models.db.*;
+import org.datavyu.util.StringUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Exports a data store with one row per frame, each row holding the cell of every variable at the time of the frame.
+ *
+ * The cells are copied when the exporter is created, so the file can be written on any thread. Each variable has a
+ * cursor that only moves forward as the frames are swept, and frames are encoded in chunks that can be encoded
+ * concurrently, starting from the cursors recorded for each chunk.
+ *
+ * Run-length files have a row for each run of frames that have the same cells, starting with the first and last
+ * frame of the run and their times. The times of the frames in between are evenly spaced.
+ */
+public final class ByFrameExporter {
+
+    /** The number of frames encoded together */
+    private static final int FRAMES_PER_CHUNK = 4096;
+
+    /** The number of characters of runs collected before they are written */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The line separator used by the rows, the same as PrintStream.println */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** The names of the values of the variables, in the header row */
+    private final String columnHeader;
+
+    /** The variables that have cells, variables without cells are left out of the rows */
+    private final Column[] columns;
+
+    /** The time of the first frame */
+    private final long firstTime;
+
+    /** The time of the last onset or offset */
+    private final long lastTime;
+
+    /** The duration of a frame in milliseconds */
+    private final double frameDuration;
+
+    /** Encode frames concurrently, on by default unless the datavyu.parallelExport property is false */
+    private boolean parallel = Runtime.getRuntime().availableProcessors() > 1
+            && Boolean.parseBoolean(System.getProperty("datavyu.parallelExport", "true"));
+
+    /** Write a row for each run of frames with the same cells instead of a row for each frame */
+    private boolean runLength = false;
+
+    /**
+     * Copies the cells of a data store, call on the thread that edits the data store.
+     *
+     * @param dataStore The data store to export.
+     * @param frameRate The number of frames per second.
+     */
+    public ByFrameExporter(final DataStore dataStore, final double frameRate) {
+        List<Variable> variables = dataStore.getAllVariables();
+        StringBuilder headerBuilder = new StringBuilder();
+        List<Column> nonEmpty = new ArrayList<>(variables.size());
+        long first = Long.MAX_VALUE;
+        long last = 0;
+        for (Variable v : variables) {
+            headerBuilder.append(v.getName()).append(".ordinal");
+            headerBuilder.append(',').append(v.getName()).append(".onset");
+            headerBuilder.append(',').append(v.getName()).append(".offset");
+
+            // Test if the variable is a matrix. If it is, then we have to print out all of its arguments.
+            if (v.getRootNode().type == Argument.Type.MATRIX) {
+                for (Argument a : v.getRootNode().childArguments) {
+                    headerBuilder.append(',').append(v.getName()).append('.').append(a.name);
+                }
+            } else {
+                headerBuilder.append(',').append(v.getName()).append(".value");
+            }
+            headerBuilder.append(',');
+
+            List<Cell> cells = v.getCellsTemporally();
+            if (cells.isEmpty()) {
+                continue;
+            }
+            Column column = new Column(v, cells);
+            nonEmpty.add(column);
+
+            // Get first and last time point from the first and last cells
+            int end = cells.size() - 1;
+            first = Math.min(first, Math.min(column.onsets[0], column.offsets[0]));
+            last = Math.max(last, Math.max(column.onsets[end], column.offsets[end]));
+        }
+
+        columnHeader = headerBuilder.toString().trim();
+        columns = nonEmpty.toArray(new Column[nonEmpty.size()]);
+        firstTime = first;
+        lastTime = last;
+        frameDuration = 1000.0 / frameRate;
+    }
+
+    /**
+     * Sets whether frames are encoded concurrently, the file is the same either way.
+     *
+     * @param parallel True to encode frames concurrently.
+     */
+    public void setParallel(final boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Sets whether a row is written for each run of frames with the same cells instead of for each frame. Runs are
+     * always written from a single thread, as there are far fewer of them than frames.
+     *
+     * @param runLength True to write a row for each run of frames.
+     */
+    public void setRunLength(final boolean runLength) {
+        this.runLength = runLength;
+    }
+
+    /**
+     * Writes the header and a row for every frame from the earliest onset or offset to a frame past the latest.
+     *
+     * @param file The file to write.
+     * @throws IOException If unable to write the file.
+     */
+    public void write(final File file) throws IOException {
+        final Charset charset = Charset.defaultCharset();
+        try (FileOutputStream out = new FileOutputStream(file); FileChannel channel = out.getChannel()) {
+            if (runLength) {
+                writeFully(channel, ("startFrame,endFrame,startTime,endTime," + columnHeader + LINE_SEPARATOR)
+                        .getBytes(charset));
+                writeRuns(channel, charset);
+                return;
+            }
+
+            final List<Chunk> chunks = getChunks();
+            writeFully(channel, ("nFrame,time," + columnHeader + LINE_SEPARATOR).getBytes(charset));
+
+            if (!parallel || chunks.size() < 2) {
+                StringBuilder rows = new StringBuilder();
+                for (Chunk chunk : chunks) {
+                    rows.setLength(0);
+                    encode(chunk, rows);
+                    writeFully(channel, rows.toString().getBytes(charset));
+                }
+                return;
+            }
+
+            // Encode a few chunks per thread at a time, so that only those are held in memory.
+            int batchSize = 2 * ForkJoinPool.commonPool().getParallelism();
+            for (int start = 0; start < chunks.size(); start += batchSize) {
+                List<Callable<byte[]>> tasks = new ArrayList<>(batchSize);
+                for (final Chunk chunk : chunks.subList(start, Math.min(start + batchSize, chunks.size()))) {
+                    tasks.add(new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() {
+                            StringBuilder rows = new StringBuilder();
+                            encode(chunk, rows);
+                            return rows.toString().getBytes(charset);
+                        }
+                    });
+                }
+
+                try {
+                    for (Future<byte[]> rows : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                        writeFully(channel, rows.get());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while exporting frames");
+                } catch (ExecutionException e) {
+                    throw new IOException("Unable to encode frames for export", e.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * Sweeps the frames, writing a row whenever the cells at a frame differ from the cells at the frame before.
+     */
+    private void writeRuns(final FileChannel channel, final Charset charset) throws IOException {
+        StringBuilder rows = new StringBuilder();
+        int[] cursors = new int[columns.length];
+        // The cursor of each variable if its cell is at the frame, -1 otherwise.
+        int[] cells = new int[columns.length];
+        int[] runCells = null;
+        int runStart = 0;
+        long runStartTime = 0;
+        long previousTime = 0;
+        long time = firstTime;
+        int nFrame = 1;
+        while (time <= lastTime + frameDuration) {
+            advance(cursors, time);
+            for (int i = 0; i < columns.length; i++) {
+                cells[i] = columns[i].isAt(cursors[i], time, frameDuration) ? cursors[i] : -1;
+            }
+
+            if (runCells == null || !Arrays.equals(cells, runCells)) {
+                if (runCells != null) {
+                    appendRun(rows, runStart, nFrame - 1, runStartTime, previousTime, runCells);
+                    if (rows.length() >= BUFFER_SIZE) {
+                        writeFully(channel, rows.toString().getBytes(charset));
+                        rows.setLength(0);
+                    }
+                }
+                runCells = cells.clone();
+                runStart = nFrame;
+                runStartTime = time;
+            }
+            previousTime = time;
+            time += frameDuration;
+            ++nFrame;
+        }
+
+        if (runCells != null) {
+            appendRun(rows, runStart, nFrame - 1, runStartTime, previousTime, runCells);
+        }
+        writeFully(channel, rows.toString().getBytes(charset));
+    }
+
+    private void appendRun(final StringBuilder rows, final int startFrame, final int endFrame, final long startTime,
+                           final long endTime, final int[] cells) {
+        rows.append(startFrame).append(',').append(endFrame).append(',')
+                .append(startTime).append(',').append(endTime).append(',');
+        for (int i = 0; i < columns.length; i++) {
+            rows.append(cells[i] < 0 ? columns[i].empty : columns[i].values[cells[i]]);
+        }
+        rows.append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Sweeps the frames, recording the cell of each variable at each frame.
+     *
+     * @return The frames.
+     */
+    Frames getFrames() {
+        int numFrames = 0;
+        for (long time = firstTime; time <= lastTime + frameDuration; time += frameDuration) {
+            numFrames++;
+        }
+
+        Frames frames = new Frames(numFrames);
+        int[][] ordinals = new int[columns.length][numFrames];
+        for (int i = 0; i < columns.length; i++) {
+            frames.ordinals.put(columns[i].name, ordinals[i]);
+        }
+        int[] cursors = new int[columns.length];
+        long time = firstTime;
+        for (int frame = 0; frame < numFrames; frame++) {
+            advance(cursors, time);
+            frames.times[frame] = time;
+            for (int i = 0; i < columns.length; i++) {
+                ordinals[i][frame] = columns[i].isAt(cursors[i], time, frameDuration) ? cursors[i] + 1 : 0;
+            }
+            time += frameDuration;
+        }
+        return frames;
+    }
+
+    /**
+     * Sweeps the frames, recording the time and the cursors at the start of each chunk.
+     *
+     * @return The chunks of frames in order.
+     */
+    private List<Chunk> getChunks() {
+        List<Chunk> chunks = new ArrayList<>();
+        int[] cursors = new int[columns.length];
+        long time = firstTime;
+        int nFrame = 1;
+        while (time <= lastTime + frameDuration) {
+            if ((nFrame - 1) % FRAMES_PER_CHUNK == 0) {
+                chunks.add(new Chunk(nFrame, time, cursors.clone()));
+            }
+            advance(cursors, time);
+            time += frameDuration;
+            ++nFrame;
+        }
+
+        for (int i = 0; i < chunks.size(); i++) {
+            chunks.get(i).numFrames = i + 1 < chunks.size()
+                    ? FRAMES_PER_CHUNK : nFrame - chunks.get(i).firstFrame;
+        }
+        return chunks;
+    }
+
+    /**
+     * Moves the cursor of each variable to its latest cell starting at or before a time, once the cell at the cursor
+     * has ended.
+     */
+    private void advance(final int[] cursors, final long time) {
+        for (int i = 0; i < columns.length; i++) {
+            Column column = columns[i];
+            int cursor = cursors[i];
+            if (time > column.offsets[cursor]) {
+                while (cursor + 1 < column.onsets.length && column.onsets[cursor + 1] <= time) {
+                    cursor++;
+                }
+                cursors[i] = cursor;
+            }
+        }
+    }
+
+    /**
+     * Appends the rows of a chunk of frames.
+     */
+    private void encode(final Chunk chunk, final StringBuilder rows) {
+        int[] cursors = chunk.cursors.clone();
+        long time = chunk.time;
+        for (int nFrame = chunk.firstFrame; nFrame < chunk.firstFrame + chunk.numFrames; nFrame++) {
+            advance(cursors, time);
+            rows.append(nFrame).append(',').append(time).append(',');
+            for (int i = 0; i < columns.length; i++) {
+                rows.append(columns[i].getValues(cursors[i], time, frameDuration));
+            }
+            rows.append(LINE_SEPARATOR);
+            time += frameDuration;
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * The cells of a variable, in temporal order.
+     */
+    private static final class Column {
+
+        final String name;
+
+        final long[] onsets;
+
+        final long[] offsets;
+
+        /** The ordinal, onset, offset and values of each cell, as they are written to a row */
+        final String[] values;
+
+        /** What is written to a row when there is no cell at the time of the frame */
+        final String empty;
+
+        Column(final Variable variable, final List<Cell> cells) {
+            name = variable.getName();
+            onsets = new long[cells.size()];
+            offsets = new long[cells.size()];
+            values = new String[cells.size()];
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < cells.size(); i++) {
+                Cell cell = cells.get(i);
+                onsets[i] = cell.getOnset();
+                offsets[i] = cell.getOffset();
+
+                builder.setLength(0);
+                builder.append(i + 1).append(',').append(onsets[i]).append(',').append(offsets[i]);
+                CellValue cellValue = cell.getCellValue();
+                if (cellValue instanceof MatrixCellValue) {
+                    // Then this is a matrix cellValue, get the sub arguments
+                    for (CellValue v : ((MatrixCellValue) cellValue).getArguments()) {
+                        builder.append(',').append(StringUtils.escapeCSVQuotes(v.toString()));
+                    }
+                } else {
+                    // Otherwise just print the single argument
+                    builder.append(',').append(StringUtils.escapeCSVQuotes(cellValue.toString()));
+                }
+                values[i] = builder.append(',').toString();
+            }
+
+            builder.setLength(0);
+            builder.append(",,");
+            int numArguments = variable.getRootNode().type == Argument.Type.MATRIX
+                    ? variable.getRootNode().childArguments.size() : 1;
+            for (int i = 0; i < numArguments; i++) {
+                builder.append(',');
+            }
+            empty = builder.append(',').toString();
+        }
+
+        /**
+         * @return The values of the cell at a cursor if the cell is at the time of a frame, or the values written
+         * when there is no cell otherwise.
+         */
+        String getValues(final int cursor, final long time, final double frameDuration) {
+            return isAt(cursor, time, frameDuration) ? values[cursor] : empty;
+        }
+
+        /**
+         * @return True if the cell at a cursor is at the time of a frame. Cells shorter than a frame are at the frame
+         * they start in.
+         */
+        boolean isAt(final int cursor, final long time, final double frameDuration) {
+            long onset = onsets[cursor];
+            long offset = offsets[cursor];
+            return (onset <= time && offset >= time) ||
+                    (Math.abs(offset - onset) < frameDuration &&
+                            onset > time - frameDuration + 1 &&
+                            time >= onset &&
+                            onset < time + frameDuration - 1);
+        }
+    }
+
+    /**
+     * The time of each frame and the cell of each variable at each frame.
+     */
+    static final class Frames {
+
+        final long[] times;
+
+        /** The ordinal of the cell at each frame in temporal order, 0 for none, by variable name */
+        final Map<String, int[]> ordinals = new HashMap<>();
+
+        Frames(final int numFrames) {
+            times = new long[numFrames];
+        }
+    }
+
+    /**
+     * A range of frames and where the sweep is at its first frame.
+     */
+    private static final class Chunk {
+
+        final int firstFrame;
+
+        final long time;
+
+        final int[] cursors;
+
+        int numFrames;
+
+        Chunk(final int firstFrame, final long time, final int[] cursors) {
+            this.firstFrame = firstFrame;
+            this.time = time;
+            this.cursors = cursors;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.datavyu.models.db.Argument;
+import org.datavyu.models.db.ColumnarVariable;
+import org.datavyu.models.db.DataStore;
+import org.datavyu.models.db.Variable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exports a data store as a columnar binary file (.dvc), for analysis pipelines that would otherwise parse CSV.
+ *
+ * <pre>
+ * header   "DVCF", int version
+ * buffers  the values of each column, each starting at a multiple of 8 bytes
+ * footer   UTF-8 JSON describing the tables, then long length of the footer, "DVCF"
+ * </pre>
+ *
+ * Every variable has a table with a row per cell in temporal order, with an int32 ordinal, int64 onset and int64
+ * offset column followed by one dictionary encoded column per code (a single "value" column for text and nominal
+ * variables). A dictionary encoded column has int32 indices into its dictionary, -1 for an empty value, and the
+ * dictionary is a buffer of int32 offsets, one more than there are values, into a buffer of UTF-8 bytes.
+ *
+ * The optional "frames" table has a row per frame, as exported by frame, with an int32 frame number and int64 time
+ * column, followed by an int32 column per variable holding the ordinal of the variable's cell at the frame, 0 for none.
+ *
+ * In the footer each table has a name, type, number of rows and columns; each column has a name, type ("int32",
+ * "int64" or "dictionary") and the offset and length in bytes of its buffer. A dictionary column has an "indices"
+ * buffer and a "dictionary" with "offsets" and "data" buffers instead. Numbers are little endian, so buffers can be
+ * mapped directly as arrays, for example with numpy.frombuffer or readBin in R.
+ */
+public final class ColumnarExporter {
+
+    /** "DVCF" */
+    static final int MAGIC = 0x44564346;
+
+    static final int VERSION = 1;
+
+    /** The size of the buffer the columns are written through */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The name of the table of frames */
+    public static final String FRAMES_TABLE = "frames";
+
+    /** The variables */
+    private final List<SaveBinaryDataStoreFileController.VariableSnapshot> variables = new ArrayList<>();
+
+    /** The frames, null for no table of frames */
+    private final ByFrameExporter.Frames frames;
+
+    /** Writes little endian numbers and pads buffers */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /** The position in the file the buffer is written at */
+    private long position;
+
+    /**
+     * Copies the cells of a data store, call on the thread that edits the data store.
+     *
+     * @param dataStore The data store to export.
+     */
+    public ColumnarExporter(final DataStore dataStore) {
+        this(dataStore, 0);
+    }
+
+    /**
+     * Copies the cells of a data store, call on the thread that edits the data store.
+     *
+     * @param dataStore The data store to export.
+     * @param frameRate The number of frames per second of the table of frames, 0 for no table of frames.
+     */
+    public ColumnarExporter(final DataStore dataStore, final double frameRate) {
+        for (Variable variable : dataStore.getAllVariables()) {
+            SaveBinaryDataStoreFileController.VariableSnapshot snapshot =
+                    SaveBinaryDataStoreFileController.snapshot(variable, false);
+            snapshot.rows = SaveBinaryDataStoreFileController.getRows(variable.getCellsTemporally(),
+                    variable.getRootNode(), snapshot.numColumns);
+            variables.add(snapshot);
+        }
+        frames = frameRate > 0 ? new ByFrameExporter(dataStore, frameRate).getFrames() : null;
+    }
+
+    /**
+     * Writes the tables.
+     *
+     * @param file The file to write.
+     * @throws IOException If unable to write the file.
+     */
+    public void write(final File file) throws IOException {
+        ByteArrayOutputStream footer = new ByteArrayOutputStream();
+        try (FileOutputStream out = new FileOutputStream(file); FileChannel channel = out.getChannel();
+             JsonGenerator g = new JsonFactory().createGenerator(footer, JsonEncoding.UTF8)) {
+            buffer.clear();
+            position = 0;
+            buffer.putInt(Integer.reverseBytes(MAGIC)).putInt(VERSION);
+
+            g.writeStartObject();
+            g.writeNumberField("version", VERSION);
+            g.writeArrayFieldStart("tables");
+            for (SaveBinaryDataStoreFileController.VariableSnapshot variable : variables) {
+                writeVariable(channel, g, variable);
+            }
+            if (frames != null) {
+                writeFrames(channel, g);
+            }
+            g.writeEndArray();
+            g.writeEndObject();
+            g.flush();
+
+            byte[] json = footer.toByteArray();
+            for (byte b : json) {
+                put(channel, 1).put(b);
+            }
+            put(channel, 12).putLong(json.length).putInt(Integer.reverseBytes(MAGIC));
+            flush(channel);
+        }
+    }
+
+    private void writeVariable(final FileChannel channel, final JsonGenerator g,
+                               final SaveBinaryDataStoreFileController.VariableSnapshot variable) throws IOException {
+        ColumnarVariable.Rows rows = variable.rows;
+        int numRows = rows.onsets.length;
+        g.writeStartObject();
+        g.writeStringField("name", variable.name);
+        g.writeStringField("type", variable.type);
+        g.writeNumberField("rows", numRows);
+        g.writeArrayFieldStart("columns");
+
+        int[] ordinals = new int[numRows];
+        for (int i = 0; i < numRows; i++) {
+            ordinals[i] = i + 1;
+        }
+        writeColumn(channel, g, "ordinal", ordinals);
+        writeColumn(channel, g, "onset", rows.onsets);
+        writeColumn(channel, g, "offset", rows.offsets);
+
+        for (int column = 0; column < variable.numColumns; column++) {
+            g.writeStartObject();
+            if (variable.codes.length > 0) {
+                g.writeStringField("name", variable.codes[column][0]);
+                g.writeStringField("codeType", variable.codes[column][1]);
+            } else {
+                g.writeStringField("name", "value");
+                g.writeStringField("codeType", variable.type);
+            }
+            g.writeStringField("type", "dictionary");
+
+            // Code 0 is the empty value, which has no entry in the dictionary.
+            int[] indices = rows.codes[column].clone();
+            for (int i = 0; i < numRows; i++) {
+                indices[i]--;
+            }
+            g.writeFieldName("indices");
+            writeBuffer(channel, g, "int32", indices);
+
+            String[] dictionary = rows.dictionaries[column];
+            int[] offsets = new int[dictionary.length];
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            for (int i = 1; i < dictionary.length; i++) {
+                byte[] bytes = dictionary[i].getBytes(StandardCharsets.UTF_8);
+                data.write(bytes, 0, bytes.length);
+                offsets[i] = data.size();
+            }
+            g.writeObjectFieldStart("dictionary");
+            g.writeFieldName("offsets");
+            writeBuffer(channel, g, "int32", offsets);
+            g.writeFieldName("data");
+            writeBuffer(channel, g, "utf8", data.toByteArray());
+            g.writeEndObject();
+
+            g.writeEndObject();
+        }
+
+        g.writeEndArray();
+        g.writeEndObject();
+    }
+
+    private void writeFrames(final FileChannel channel, final JsonGenerator g) throws IOException {
+        int numFrames = frames.times.length;
+        g.writeStartObject();
+        g.writeStringField("name", FRAMES_TABLE);
+        g.writeStringField("type", FRAMES_TABLE);
+        g.writeNumberField("rows", numFrames);
+        g.writeArrayFieldStart("columns");
+
+        int[] numbers = new int[numFrames];
+        for (int i = 0; i < numFrames; i++) {
+            numbers[i] = i + 1;
+        }
+        writeColumn(channel, g, "frame", numbers);
+        writeColumn(channel, g, "time", frames.times);
+        for (SaveBinaryDataStoreFileController.VariableSnapshot variable : variables) {
+            int[] ordinals = frames.ordinals.get(variable.name);
+            writeColumn(channel, g, variable.name, ordinals != null ? ordinals : new int[numFrames]);
+        }
+
+        g.writeEndArray();
+        g.writeEndObject();
+    }
+
+    private void writeColumn(final FileChannel channel, final JsonGenerator g, final String name, final Object values)
+            throws IOException {
+        g.writeStartObject();
+        g.writeStringField("name", name);
+        String type = values instanceof long[] ? "int64" : "int32";
+        g.writeStringField("type", type);
+        writeBufferFields(channel, g, values);
+        g.writeEndObject();
+    }
+
+    private void writeBuffer(final FileChannel channel, final JsonGenerator g, final String type, final Object values)
+            throws IOException {
+        g.writeStartObject();
+        g.writeStringField("type", type);
+        writeBufferFields(channel, g, values);
+        g.writeEndObject();
+    }
+
+    /**
+     * Writes an array of ints, longs or bytes at the next multiple of 8 bytes, with its offset and length.
+     */
+    private void writeBufferFields(final FileChannel channel, final JsonGenerator g, final Object values)
+            throws IOException {
+        while ((position + buffer.position()) % 8 != 0) {
+            put(channel, 1).put((byte) 0);
+        }
+        long start = position + buffer.position();
+
+        if (values instanceof int[]) {
+            for (int value : (int[]) values) {
+                put(channel, 4).putInt(value);
+            }
+        } else if (values instanceof long[]) {
+            for (long value : (long[]) values) {
+                put(channel, 8).putLong(value);
+            }
+        } else {
+            for (byte value : (byte[]) values) {
+                put(channel, 1).put(value);
+            }
+        }
+
+        g.writeNumberField("offset", start);
+        g.writeNumberField("length", position + buffer.position() - start);
+    }
+
+    /**
+     * @return The buffer, with room for a number of bytes.
+     */
+    private ByteBuffer put(final FileChannel channel, final int size) throws IOException {
+        if (buffer.remaining() < size) {
+            flush(channel);
+        }
+        return buffer;
+    }
+
+    private void flush(final FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
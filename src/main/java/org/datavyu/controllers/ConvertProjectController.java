@@ -0,0 +1,50 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.datavyu.models.db.UserWarningException;
+
+import java.io.File;
+
+/**
+ * Controller for converting projects between the archive (.opf) and the binary (.opfb) project formats.
+ */
+public final class ConvertProjectController {
+
+    /** The logger instance for this class */
+    private static Logger logger = LogManager.getLogger(ConvertProjectController.class);
+
+    /**
+     * Converts a project, the formats are chosen by the extensions of the files.
+     *
+     * @param sourceFile The project to convert.
+     * @param destinationFile The file to write the converted project to.
+     * @throws UserWarningException If unable to open or save the project.
+     */
+    public void convert(final File sourceFile, final File destinationFile) throws UserWarningException {
+        logger.info("Convert project " + sourceFile + " to " + destinationFile);
+
+        OpenController openController = new OpenController();
+        openController.openProject(sourceFile);
+        if (openController.getProject() == null || openController.getDataStore() == null) {
+            throw new UserWarningException("Unable to open project: " + sourceFile);
+        }
+
+        new SaveController().saveProject(destinationFile, openController.getProject(),
+                openController.getDataStore(), false);
+    }
+}
@@ -0,0 +1,447 @@
+/**
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Single pass, character level tokenizer for the CSV data store format.
+ *
+ * Fields are unescaped into a reusable buffer and timestamps are decoded straight to milliseconds. Values of nominal
+ * codes repeat a lot, so they are interned through a small cache; reading a cell allocates little more than the
+ * strings that end up in the data store.
+ *
+ * A backslash escapes the character that follows it, including line breaks, so escaped line breaks never end a line.
+ */
+final class CsvTokenizer {
+
+    /** Returned by {@link #readTimestamp()} when a field is not a valid timestamp. */
+    static final long MALFORMED = Long.MIN_VALUE;
+
+    private static final int EOF = -1;
+
+    /** The number of characters read from the input at a time. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The number of entries of the intern cache, a power of two. */
+    private static final int INTERN_CACHE_SIZE = 1 << 12;
+
+    /** Values longer than this are not interned. */
+    private static final int MAX_INTERNED_LENGTH = 64;
+
+    private final CountingInputStream counter;
+
+    private final Reader reader;
+
+    private final long totalBytes;
+
+    private final OpenDataStoreFileController.ProgressListener progressListener;
+
+    private char[] buffer = new char[BUFFER_SIZE];
+
+    private int position = 0;
+
+    private int limit = 0;
+
+    private boolean endOfInput = false;
+
+    /** The unescaped characters of the current field, from fieldStart up to fieldEnd. */
+    private char[] field = new char[256];
+
+    private int fieldStart = 0;
+
+    private int fieldEnd = 0;
+
+    /** True if the last character of the current field was escaped. */
+    private boolean lastEscaped = false;
+
+    /** Direct mapped cache of interned values. */
+    private final String[] internCache = new String[INTERN_CACHE_SIZE];
+
+    /**
+     * @param inputStream The stream to read from, the caller is responsible for closing it.
+     * @param totalBytes The size of the stream in bytes, -1 if unknown.
+     * @param progressListener The listener to notify of the number of bytes read, null for none.
+     */
+    CsvTokenizer(final InputStream inputStream, final long totalBytes,
+                 final OpenDataStoreFileController.ProgressListener progressListener) {
+        this.counter = new CountingInputStream(inputStream);
+        this.reader = new InputStreamReader(counter);
+        this.totalBytes = totalBytes;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Buffers at least the supplied number of characters unless the input ends first.
+     *
+     * @param count The number of characters needed.
+     * @return True if the characters are available, false otherwise.
+     */
+    private boolean fill(final int count) throws IOException {
+        while (limit - position < count && !endOfInput) {
+            if (position > 0) {
+                System.arraycopy(buffer, position, buffer, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+
+            if (progressListener != null) {
+                progressListener.progressChanged(counter.count, totalBytes);
+            }
+        }
+        return limit - position >= count;
+    }
+
+    private int peek(final int offset) throws IOException {
+        return position + offset < limit || fill(offset + 1) ? buffer[position + offset] : EOF;
+    }
+
+    private int read() throws IOException {
+        return position < limit || fill(1) ? buffer[position++] : EOF;
+    }
+
+    /**
+     * Consumes a line break if there is one at the current position.
+     */
+    private void skipLineBreak(final int c) throws IOException {
+        if (c == '\r' && peek(0) == '\n') {
+            position++;
+        }
+    }
+
+    /**
+     * @return True if the next line holds a cell, i.e. starts with digits followed by ':' or ','.
+     */
+    boolean atCell() throws IOException {
+        int i = 0;
+        int c;
+        while ((c = peek(i)) >= '0' && c <= '9') {
+            i++;
+        }
+        return i > 0 && (c == ':' || c == ',');
+    }
+
+    /**
+     * Reads the rest of the current line as is; escapes are kept.
+     *
+     * @return The line without its line break, null if the input has ended.
+     */
+    String readRawLine() throws IOException {
+        int c = read();
+        if (c == EOF) {
+            return null;
+        }
+
+        StringBuilder line = new StringBuilder();
+        while (c != EOF && c != '\n' && c != '\r') {
+            line.append((char) c);
+            if (c == '\\' && (c = read()) != EOF) {
+                line.append((char) c);
+            }
+            c = read();
+        }
+        skipLineBreak(c);
+        return line.toString();
+    }
+
+    /**
+     * Skips the rest of the current line.
+     */
+    void skipLine() throws IOException {
+        int c = read();
+        while (c != EOF && c != '\n' && c != '\r') {
+            if (c == '\\') {
+                read();
+            }
+            c = read();
+        }
+        skipLineBreak(c);
+    }
+
+    /**
+     * Reads a timestamp field, either HH:MM:SS:mmm or a plain number of milliseconds, and the comma that ends it. A
+     * line break that ends the field is left in place.
+     *
+     * @return The timestamp in milliseconds, {@link #MALFORMED} if the field is not a timestamp.
+     */
+    long readTimestamp() throws IOException {
+        long time = 0L;
+        long value = 0L;
+        int groups = 0;
+        int digits = 0;
+        boolean valid = true;
+
+        while (true) {
+            int c = peek(0);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else if (c == ':') {
+                valid &= digits > 0;
+                time = time * 60 + value;
+                value = 0L;
+                digits = 0;
+                groups++;
+            } else if (c == ',') {
+                position++;
+                break;
+            } else if (c == EOF || c == '\n' || c == '\r') {
+                break;
+            } else {
+                valid = false;
+            }
+            position++;
+        }
+
+        if (!valid || digits == 0) {
+            return MALFORMED;
+        } else if (groups == 0) {
+            return value;
+        } else if (groups == 3) {
+            return time * 1000 + value;
+        }
+        return MALFORMED;
+    }
+
+    /**
+     * Reads a field, removing escapes, and the comma or line break that ends it.
+     *
+     * @param stopAtComma True if an unescaped comma ends the field, false to read up to the end of the line.
+     * @return True if the field was ended by a comma, false if it was ended by the line.
+     */
+    boolean readField(final boolean stopAtComma) throws IOException {
+        fieldStart = 0;
+        fieldEnd = 0;
+        lastEscaped = false;
+
+        while (true) {
+            if (position == limit && !fill(1)) {
+                return false;
+            }
+
+            char c = buffer[position++];
+            if (c == '\\') {
+                int next = read();
+                if (next == EOF) {
+                    return false;
+                }
+                // Files that had their line breaks converted carry an escaped "\r\n" for a new line.
+                if (next == '\r' && peek(0) == '\n') {
+                    next = read();
+                }
+                append((char) next);
+                lastEscaped = true;
+            } else if (c == ',' && stopAtComma) {
+                return true;
+            } else if (c == '\n' || c == '\r') {
+                skipLineBreak(c);
+                return false;
+            } else {
+                append(c);
+                lastEscaped = false;
+            }
+        }
+    }
+
+    private void append(final char c) {
+        if (fieldEnd == field.length) {
+            field = Arrays.copyOf(field, field.length * 2);
+        }
+        field[fieldEnd++] = c;
+    }
+
+    /**
+     * Consumes the supplied character if it is next in the input.
+     *
+     * @param c The character to skip.
+     * @return True if the character was skipped, false otherwise.
+     */
+    boolean skip(final char c) throws IOException {
+        if (peek(0) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the supplied character from the end of the current field if it is there unescaped.
+     *
+     * @param c The character to remove.
+     */
+    void trimClosing(final char c) {
+        if (!lastEscaped && fieldEnd > fieldStart && field[fieldEnd - 1] == c) {
+            fieldEnd--;
+        }
+    }
+
+    /**
+     * Removes leading and trailing whitespace from the current field.
+     */
+    void trimField() {
+        while (fieldStart < fieldEnd && field[fieldStart] <= ' ') {
+            fieldStart++;
+        }
+        while (fieldEnd > fieldStart && field[fieldEnd - 1] <= ' ') {
+            fieldEnd--;
+        }
+    }
+
+    /**
+     * @return True if the current field is empty.
+     */
+    boolean isFieldEmpty() {
+        return fieldStart == fieldEnd;
+    }
+
+    /**
+     * @param name The name of a code.
+     * @return True if the current field is the placeholder for the code, i.e. "&lt;name&gt;".
+     */
+    boolean isPlaceholder(final String name) {
+        int length = fieldEnd - fieldStart;
+        if (length != name.length() + 2 || field[fieldStart] != '<' || field[fieldEnd - 1] != '>') {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (field[fieldStart + i + 1] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The current field.
+     */
+    String getField() {
+        return fieldStart == fieldEnd ? "" : new String(field, fieldStart, fieldEnd - fieldStart);
+    }
+
+    /**
+     * @return The current field, shared with earlier fields that had the same characters where possible.
+     */
+    String getInternedField() {
+        int length = fieldEnd - fieldStart;
+        if (length == 0 || length > MAX_INTERNED_LENGTH) {
+            return getField();
+        }
+
+        int hash = 0;
+        for (int i = fieldStart; i < fieldEnd; i++) {
+            hash = 31 * hash + field[i];
+        }
+
+        int slot = (hash ^ (hash >>> 16)) & (INTERN_CACHE_SIZE - 1);
+        String cached = internCache[slot];
+        if (cached != null && cached.length() == length) {
+            int i = 0;
+            while (i < length && cached.charAt(i) == field[fieldStart + i]) {
+                i++;
+            }
+            if (i == length) {
+                return cached;
+            }
+        }
+
+        String value = new String(field, fieldStart, length);
+        internCache[slot] = value;
+        return value;
+    }
+
+    /**
+     * @param text The text to search.
+     * @param c The character to look for.
+     * @param from The index to start the search from.
+     * @return The index of the first occurrence of the character that is not escaped, -1 if there is none.
+     */
+    static int indexOfUnescaped(final String text, final char c, final int from) {
+        for (int i = from; i < text.length(); i++) {
+            char current = text.charAt(i);
+            if (current == '\\') {
+                i++;
+            } else if (current == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param text The text to remove escapes from.
+     * @param from The index of the first character.
+     * @param to The index after the last character.
+     * @return The characters from the text with the escapes removed.
+     */
+    static String unescape(final String text, final int from, final int to) {
+        StringBuilder result = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < to) {
+                c = text.charAt(++i);
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Counts the bytes that are read from a stream.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count = 0L;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -51,7 +51,7 @@ public final class DeleteCellController {
             if (cell.equals(Datavyu.getProjectController().getLastSelectedCell())) {
                 Datavyu.getProjectController().setLastSelectedCell(null);
             }
-            Datavyu.getProjectController().getDataStore().removeCell(cell);
         }
+        Datavyu.getProjectController().getDataStore().removeCells(cellsToDelete);
     }
 }
@@ -0,0 +1,790 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.datavyu.models.db.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Journal of the changes made to a data store since its last checkpoint, a project saved in the binary project format.
+ * Replaying the journal over the checkpoint recovers the changes made after it.
+ *
+ * <pre>
+ * header  int magic "OPFJ", int version, long generation of the checkpoint the journal belongs to
+ * record  int length of the payload, int CRC32 of the payload, payload
+ * payload varint number of variables, then for each variable in order:
+ *             string name, string type, byte hidden, varint number of codes, then for each code: string name,
+ *             string type, then either
+ *             byte 0, string name of the variable in the previous record or the checkpoint, varint number of changed
+ *                 cells, then for each changed cell: varint key, byte 1 if the cell is in the variable or 0 if it was
+ *                 removed, then for a cell in the variable: zigzag onset, zigzag offset, string value of each code,
+ *                 empty if the code is empty
+ *             byte 1, varint number of cells, varint block length, block in the binary project format
+ * </pre>
+ *
+ * A record holds the names, codes and visibility of the variables of the data store, and the cells that changed since
+ * the previous record. A changed cell is identified by its key: the position of the cell in the checkpoint, or in the
+ * last record that carried all the cells of its variable, or for a cell added since, a key past those positions. All
+ * the cells of a variable are only recorded when the variable is new or its codes changed. A record that was cut short
+ * by a crash fails its length or CRC check and ends the replay.
+ *
+ * The changed cells are copied on the event dispatch thread, and the record is encoded and appended on another thread,
+ * see {@link #capture()} and {@link #append(Record)}.
+ */
+public final class EditJournalController {
+
+    /** The logger instance for this class */
+    private static Logger logger = LogManager.getLogger(EditJournalController.class);
+
+    /** "OPFJ" */
+    static final int MAGIC = 0x4F50464A;
+
+    static final int VERSION = 2;
+
+    static final int HEADER_SIZE = 16;
+
+    /** The name of the checkpoint entry that holds the generation of its journal. */
+    public static final String GENERATION_ENTRY = "journal";
+
+    private static final int CHANGED_CELLS = 0;
+
+    private static final int NEW_CELLS = 1;
+
+    private final File file;
+
+    private final long generation;
+
+    private final DataStore dataStore;
+
+    /** The variables in the last record, only used when capturing; also the lock for capturing and closing */
+    private final Map<Variable, JournaledVariable> journaled = new IdentityHashMap<>();
+
+    /** The keys of the cells of each variable in the last record, only used when appending */
+    private final Map<Variable, CellKeys> keys = new IdentityHashMap<>();
+
+    /** True once the journal is closed, guarded by the lock of {@link #journaled} */
+    private boolean closed = false;
+
+    private FileChannel channel;
+
+    private volatile boolean failed = false;
+
+    /**
+     * Creates a journal for the changes made to a data store from now on. Must be created while the data store is
+     * being copied for its checkpoint, see {@link #open()}.
+     *
+     * @param file The file of the journal.
+     * @param generation The generation of the checkpoint.
+     * @param dataStore The data store to journal.
+     */
+    public EditJournalController(final File file, final long generation, final DataStore dataStore) {
+        this.file = file;
+        this.generation = generation;
+        this.dataStore = dataStore;
+        for (Variable variable : dataStore.getAllVariables()) {
+            JournaledVariable recorder = new JournaledVariable(SaveBinaryDataStoreFileController.snapshot(variable,
+                    false));
+            variable.addListener(recorder);
+            journaled.put(variable, recorder);
+            keys.put(variable, CellKeys.of(variable));
+        }
+    }
+
+    /**
+     * @param checkpointFile The checkpoint.
+     * @return The file of the journal that belongs to the checkpoint.
+     */
+    public static File getJournalFile(final File checkpointFile) {
+        return new File(checkpointFile.getAbsoluteFile().getParentFile(), checkpointFile.getName() + ".journal");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public DataStore getDataStore() {
+        return dataStore;
+    }
+
+    /**
+     * @return True if the journal could not be written, the changes made since are not in the journal.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Starts the journal once its checkpoint has been written, replacing any previous journal in the same file.
+     */
+    public synchronized void open() {
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            BinaryDataStoreFormat.Encoder header = new BinaryDataStoreFormat.Encoder();
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeLong(generation);
+            header.flushTo(channel);
+            channel.force(false);
+        } catch (IOException e) {
+            logger.error("Unable to start journal " + file, e);
+            fail();
+        }
+    }
+
+    /**
+     * Marks the journal as failed, nothing more is appended to it.
+     */
+    public synchronized void fail() {
+        failed = true;
+        close();
+    }
+
+    /**
+     * Closes the file of the journal and stops recording the changes made to the data store.
+     */
+    public synchronized void close() {
+        synchronized (journaled) {
+            closed = true;
+            for (Map.Entry<Variable, JournaledVariable> entry : journaled.entrySet()) {
+                entry.getKey().removeListener(entry.getValue());
+            }
+            journaled.clear();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.error("Unable to close journal " + file, e);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Copies the changes made to the data store since the last record for the next record. Only the cells that
+     * changed are copied, except for variables that are new or whose codes changed, which are copied whole.
+     *
+     * @return The record to append.
+     */
+    public Record capture() {
+        List<RecordedVariable> variables = new ArrayList<>();
+        synchronized (journaled) {
+            if (closed) {
+                return new Record(variables);
+            }
+
+            Set<Variable> current = Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+            for (Variable variable : dataStore.getAllVariables()) {
+                current.add(variable);
+                SaveBinaryDataStoreFileController.VariableSnapshot snapshot =
+                        SaveBinaryDataStoreFileController.snapshot(variable, false);
+                JournaledVariable recorder = journaled.get(variable);
+                if (recorder == null) {
+                    recorder = new JournaledVariable(snapshot);
+                    variable.addListener(recorder);
+                    journaled.put(variable, recorder);
+                    variables.add(new RecordedVariable(SaveBinaryDataStoreFileController.snapshot(variable, true),
+                            CellKeys.of(variable)));
+                    recorder.takeChangedCells();
+                } else if (!Arrays.deepEquals(recorder.codes, snapshot.codes)) {
+                    variables.add(new RecordedVariable(SaveBinaryDataStoreFileController.snapshot(variable, true),
+                            CellKeys.of(variable)));
+                    recorder.takeChangedCells();
+                } else {
+                    List<RecordedCell> cells = new ArrayList<>();
+                    for (Cell cell : recorder.takeChangedCells()) {
+                        cells.add(RecordedCell.of(variable, cell, snapshot.numColumns));
+                    }
+                    variables.add(new RecordedVariable(snapshot, recorder.name, cells));
+                }
+                recorder.name = snapshot.name;
+                recorder.codes = snapshot.codes;
+            }
+
+            // Stop listening to the variables that were removed.
+            for (Variable variable : new ArrayList<>(journaled.keySet())) {
+                if (!current.contains(variable)) {
+                    variable.removeListener(journaled.remove(variable));
+                }
+            }
+        }
+        return new Record(variables);
+    }
+
+    /**
+     * Encodes a record and appends it to the journal, which is synced to disk before this returns.
+     *
+     * @param record The record to append.
+     */
+    public synchronized void append(final Record record) {
+        if (failed || channel == null) {
+            return;
+        }
+
+        BinaryDataStoreFormat.Encoder payload = new BinaryDataStoreFormat.Encoder();
+        BinaryDataStoreFormat.Encoder block = new BinaryDataStoreFormat.Encoder();
+        payload.writeVarLong(record.variables.size());
+        Map<Variable, CellKeys> recordedKeys = new IdentityHashMap<>();
+
+        for (RecordedVariable recorded : record.variables) {
+            SaveBinaryDataStoreFileController.VariableSnapshot variable = recorded.variable;
+            payload.writeString(variable.name);
+            payload.writeString(variable.type);
+            payload.writeByte(variable.hidden ? 1 : 0);
+            payload.writeVarLong(variable.codes.length);
+            for (String[] code : variable.codes) {
+                payload.writeString(code[0]);
+                payload.writeString(code[1]);
+            }
+
+            if (recorded.cells != null) {
+                CellKeys cellKeys = keys.get(variable.source);
+                if (cellKeys == null) {
+                    logger.error("Unable to append variable " + variable.name + " to journal " + file
+                            + ", it is not in the previous record");
+                    fail();
+                    return;
+                }
+                recordedKeys.put(variable.source, cellKeys);
+                payload.writeByte(CHANGED_CELLS);
+                payload.writeString(recorded.previousName);
+                payload.writeVarLong(recorded.cells.size());
+                for (RecordedCell cell : recorded.cells) {
+                    payload.writeVarLong(cellKeys.get(variable.source, cell.cell));
+                    payload.writeByte(cell.values == null ? 0 : 1);
+                    if (cell.values != null) {
+                        payload.writeZigZag(cell.onset);
+                        payload.writeZigZag(cell.offset);
+                        for (String value : cell.values) {
+                            payload.writeString(value);
+                        }
+                    }
+                }
+                continue;
+            }
+
+            recordedKeys.put(variable.source, recorded.keys);
+            int numCells;
+            byte[] bytes;
+            if (variable.rows == null) {
+                try {
+                    block.writeBytes(variable.saved.read());
+                } catch (IOException e) {
+                    logger.error("Unable to read variable " + variable.name + " for journal " + file, e);
+                    fail();
+                    return;
+                }
+                bytes = block.takeBytes();
+                numCells = variable.saved.numCells;
+            } else {
+                block.writeBlock(variable.rows);
+                bytes = block.takeBytes();
+                numCells = variable.rows.onsets.length;
+            }
+
+            payload.writeByte(NEW_CELLS);
+            payload.writeVarLong(numCells);
+            payload.writeVarLong(bytes.length);
+            payload.writeBytes(bytes);
+        }
+        keys.clear();
+        keys.putAll(recordedKeys);
+
+        byte[] bytes = payload.takeBytes();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        BinaryDataStoreFormat.Encoder frame = new BinaryDataStoreFormat.Encoder();
+        frame.writeInt(bytes.length);
+        frame.writeInt((int) crc.getValue());
+        frame.writeBytes(bytes);
+
+        try {
+            frame.flushTo(channel);
+            channel.force(false);
+        } catch (IOException e) {
+            logger.error("Unable to append to journal " + file, e);
+            fail();
+        }
+    }
+
+    /**
+     * Replays a journal over the data store read from its checkpoint.
+     *
+     * @param journalFile The journal.
+     * @param generation The generation of the checkpoint, a journal of another generation is not replayed.
+     * @param dataStore The data store read from the checkpoint.
+     * @return The number of records replayed.
+     * @throws IOException If unable to read the journal.
+     */
+    public static int replay(final File journalFile, final long generation, final DataStore dataStore)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journalFile.toPath()));
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a journal: " + journalFile);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported journal version: " + version);
+        }
+        if (buffer.getLong() != generation) {
+            logger.info("Journal " + journalFile + " belongs to another checkpoint");
+            return 0;
+        }
+
+        Map<Variable, ReplayedCells> cells = new IdentityHashMap<>();
+        int replayed = 0;
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            try {
+                apply(ByteBuffer.wrap(bytes), dataStore, cells);
+            } catch (BufferUnderflowException | IllegalArgumentException | UserWarningException e) {
+                throw new IOException("Corrupt record in journal " + journalFile, e);
+            }
+            replayed++;
+        }
+
+        logger.info("Replayed " + replayed + " records from journal " + journalFile);
+        return replayed;
+    }
+
+    /**
+     * Makes the data store look like a record.
+     *
+     * @param cells The cells of each variable by their keys, kept from one record to the next.
+     */
+    private static void apply(final ByteBuffer payload, final DataStore dataStore,
+                              final Map<Variable, ReplayedCells> cells) throws IOException, UserWarningException {
+        List<ReplayedVariable> variables = new ArrayList<>();
+        Set<Variable> kept = Collections.newSetFromMap(new IdentityHashMap<Variable, Boolean>());
+
+        int numVariables = BinaryDataStoreFormat.readVarInt(payload);
+        for (int i = 0; i < numVariables; i++) {
+            ReplayedVariable variable = new ReplayedVariable();
+            variable.name = BinaryDataStoreFormat.readString(payload);
+            variable.type = Argument.Type.valueOf(BinaryDataStoreFormat.readString(payload));
+            variable.hidden = payload.get() != 0;
+            variable.codes = new String[BinaryDataStoreFormat.readVarInt(payload)][];
+            for (int code = 0; code < variable.codes.length; code++) {
+                variable.codes[code] = new String[]{BinaryDataStoreFormat.readString(payload),
+                        BinaryDataStoreFormat.readString(payload)};
+            }
+
+            if (payload.get() == CHANGED_CELLS) {
+                String previousName = BinaryDataStoreFormat.readString(payload);
+                variable.kept = dataStore.getVariable(previousName);
+                if (variable.kept == null) {
+                    throw new IOException("Unknown variable in journal: " + previousName);
+                }
+                kept.add(variable.kept);
+
+                int numColumns = variable.type == Argument.Type.MATRIX ? variable.codes.length : 1;
+                variable.changes = new ArrayList<>();
+                int numChanges = BinaryDataStoreFormat.readVarInt(payload);
+                for (int change = 0; change < numChanges; change++) {
+                    ReplayedCell cell = new ReplayedCell();
+                    cell.key = BinaryDataStoreFormat.readVarInt(payload);
+                    if (payload.get() != 0) {
+                        cell.onset = BinaryDataStoreFormat.readZigZag(payload);
+                        cell.offset = BinaryDataStoreFormat.readZigZag(payload);
+                        cell.values = new String[numColumns];
+                        for (int column = 0; column < numColumns; column++) {
+                            cell.values[column] = BinaryDataStoreFormat.readString(payload);
+                        }
+                    }
+                    variable.changes.add(cell);
+                }
+            } else {
+                variable.numCells = BinaryDataStoreFormat.readVarInt(payload);
+                variable.block = new byte[BinaryDataStoreFormat.readVarInt(payload)];
+                payload.get(variable.block);
+            }
+            variables.add(variable);
+        }
+
+        // Drop the variables the record does not keep, then move the kept ones out of the way of the new names.
+        for (Variable variable : new ArrayList<>(dataStore.getAllVariables())) {
+            if (!kept.contains(variable)) {
+                dataStore.removeVariable(variable);
+            }
+        }
+        int temporary = 0;
+        for (ReplayedVariable variable : variables) {
+            if (variable.kept != null && !variable.kept.getName().equals(variable.name)) {
+                String name;
+                do {
+                    name = "journal" + temporary++;
+                } while (dataStore.getVariable(name) != null);
+                variable.kept.setName(name, true);
+            }
+        }
+
+        for (int i = 0; i < variables.size(); i++) {
+            ReplayedVariable replayed = variables.get(i);
+            Variable variable = replayed.kept;
+            if (variable == null) {
+                variable = OpenBinaryDataStoreFileController.createVariable(dataStore, replayed.name, replayed.type,
+                        replayed.codes);
+                if (replayed.numCells > 0) {
+                    int numColumns = replayed.type == Argument.Type.MATRIX ? replayed.codes.length : 1;
+                    ((ColumnarVariable) variable).setPendingRows(new OpenBinaryDataStoreFileController.Block(
+                            new BinaryDataStoreFormat.SavedBlock(0L, ByteBuffer.wrap(replayed.block),
+                                    replayed.numCells, numColumns), replayed.name));
+                }
+            } else {
+                if (!variable.getName().equals(replayed.name)) {
+                    variable.setName(replayed.name, true);
+                }
+                renameCodes(variable, replayed.codes);
+                if (!replayed.changes.isEmpty()) {
+                    ReplayedCells replayedCells = cells.get(variable);
+                    if (replayedCells == null) {
+                        replayedCells = new ReplayedCells(variable);
+                        cells.put(variable, replayedCells);
+                    }
+                    replayedCells.apply(replayed.changes);
+                }
+            }
+            variable.setHidden(replayed.hidden);
+            variable.setOrderIndex(i);
+        }
+    }
+
+    /**
+     * Gives the codes of a kept matrix variable the names they have in the record.
+     */
+    private static void renameCodes(final Variable variable, final String[][] codes) {
+        Argument root = variable.getRootNode();
+        if (root.type != Argument.Type.MATRIX || root.childArguments.size() != codes.length) {
+            return;
+        }
+
+        boolean renamed = false;
+        for (int i = 0; i < codes.length; i++) {
+            renamed |= !root.childArguments.get(i).name.equals(codes[i][0]);
+        }
+        if (renamed) {
+            List<Argument> arguments = new ArrayList<>();
+            for (String[] code : codes) {
+                arguments.add(new Argument(code[0], Argument.Type.valueOf(code[1])));
+            }
+            root.clearChildArguments();
+            root.childArguments.addAll(arguments);
+            variable.setRootNode(root);
+        }
+    }
+
+    /**
+     * The changes made to a data store as captured for the journal, see {@link #capture()}.
+     */
+    public static final class Record {
+        private final List<RecordedVariable> variables;
+
+        private Record(final List<RecordedVariable> variables) {
+            this.variables = variables;
+        }
+    }
+
+    /**
+     * Records the cells of a variable that change between two records.
+     */
+    private static final class JournaledVariable implements VariableListener {
+        /** The name of the variable in the last record */
+        String name;
+        /** The codes of the variable in the last record */
+        String[][] codes;
+        private Set<Cell> changedCells = new LinkedHashSet<>();
+
+        JournaledVariable(final SaveBinaryDataStoreFileController.VariableSnapshot variable) {
+            name = variable.name;
+            codes = variable.codes;
+        }
+
+        /**
+         * @return The cells that changed since this was last called, in the order they first changed in.
+         */
+        synchronized Set<Cell> takeChangedCells() {
+            Set<Cell> result = changedCells;
+            changedCells = new LinkedHashSet<>();
+            return result;
+        }
+
+        private synchronized void changed(final Cell cell) {
+            changedCells.add(cell);
+        }
+
+        private synchronized void changed(final List<Cell> cells) {
+            changedCells.addAll(cells);
+        }
+
+        @Override
+        public void nameChanged(final String newName) {
+        }
+
+        @Override
+        public void visibilityChanged(final boolean isHidden) {
+        }
+
+        @Override
+        public void cellInserted(final Cell newCell) {
+            changed(newCell);
+        }
+
+        @Override
+        public void cellsInserted(final List<Cell> newCells) {
+            changed(newCells);
+        }
+
+        @Override
+        public void cellRemoved(final Cell deletedCell) {
+            changed(deletedCell);
+        }
+
+        @Override
+        public void cellsRemoved(final List<Cell> deletedCells) {
+            changed(deletedCells);
+        }
+
+        @Override
+        public void cellChanged(final Cell changedCell) {
+            changed(changedCell);
+        }
+    }
+
+    /**
+     * The keys of the cells of a variable, see {@link EditJournalController}. Created on the event dispatch thread
+     * along with the copy of the cells the keys are positions in, and only used when appending after that.
+     */
+    private static final class CellKeys {
+        /** The cells the keys are positions in, null for the rows of a columnar variable that were not decoded */
+        private final List<Cell> base;
+        /** The position of each cell of the base, looked up by the cell list itself for columnar variables */
+        private Map<Cell, Integer> positions = null;
+        /** The keys of the cells that are not in the base */
+        private final Map<Cell, Integer> added = new HashMap<>();
+
+        private CellKeys(final List<Cell> base) {
+            this.base = base;
+        }
+
+        static CellKeys of(final Variable variable) {
+            if (variable instanceof ColumnarVariable) {
+                // The cell list of a columnar variable is a copy already. A variable that was not decoded yet keys
+                // its cells by row, its first rows are in the order of the block it is decoded from.
+                ColumnarVariable columnar = (ColumnarVariable) variable;
+                return new CellKeys(columnar.isLoaded() ? columnar.getCells() : null);
+            }
+            return new CellKeys(new ArrayList<>(variable.getCells()));
+        }
+
+        int get(final Variable variable, final Cell cell) {
+            if (base == null) {
+                return ((ColumnarVariable) variable).getRow(cell);
+            }
+            Integer key = added.get(cell);
+            if (key != null) {
+                return key;
+            }
+
+            int position;
+            if (variable instanceof ColumnarVariable) {
+                position = base.indexOf(cell);
+            } else {
+                if (positions == null) {
+                    positions = new IdentityHashMap<>();
+                    for (int i = 0; i < base.size(); i++) {
+                        positions.put(base.get(i), i);
+                    }
+                }
+                key = positions.get(cell);
+                position = key == null ? -1 : key;
+            }
+            if (position < 0) {
+                position = base.size() + added.size();
+                added.put(cell, position);
+            }
+            return position;
+        }
+    }
+
+    /**
+     * A variable as captured for a record, with either all its cells or the cells that changed.
+     */
+    private static final class RecordedVariable {
+        final SaveBinaryDataStoreFileController.VariableSnapshot variable;
+        /** The name of the variable in the last record, null if all its cells are recorded. */
+        final String previousName;
+        /** The cells that changed since the last record, null if all the cells are recorded. */
+        final List<RecordedCell> cells;
+        /** The keys of the cells from this record on, null if only the changed cells are recorded. */
+        final CellKeys keys;
+
+        RecordedVariable(final SaveBinaryDataStoreFileController.VariableSnapshot variable, final String previousName,
+                         final List<RecordedCell> cells) {
+            this.variable = variable;
+            this.previousName = previousName;
+            this.cells = cells;
+            this.keys = null;
+        }
+
+        RecordedVariable(final SaveBinaryDataStoreFileController.VariableSnapshot variable, final CellKeys keys) {
+            this.variable = variable;
+            this.previousName = null;
+            this.cells = null;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * A cell that changed, as captured for a record.
+     */
+    private static final class RecordedCell {
+        final Cell cell;
+        final long onset;
+        final long offset;
+        /** The value of each code, empty if the code is empty; null if the cell was removed. */
+        final String[] values;
+
+        private RecordedCell(final Cell cell, final long onset, final long offset, final String[] values) {
+            this.cell = cell;
+            this.onset = onset;
+            this.offset = offset;
+            this.values = values;
+        }
+
+        static RecordedCell of(final Variable variable, final Cell cell, final int numColumns) {
+            if (!variable.contains(cell)) {
+                return new RecordedCell(cell, 0L, 0L, null);
+            }
+            String[] values = new String[numColumns];
+            for (int column = 0; column < numColumns; column++) {
+                CellValue value = getValue(cell, column);
+                values[column] = value.isEmpty() ? "" : value.toString();
+            }
+            return new RecordedCell(cell, cell.getOnset(), cell.getOffset(), values);
+        }
+    }
+
+    /**
+     * @return The value of a code of a cell.
+     */
+    private static CellValue getValue(final Cell cell, final int column) {
+        CellValue value = cell.getCellValue();
+        if (value instanceof MatrixCellValue) {
+            return ((MatrixCellValue) value).getArguments().get(column);
+        }
+        return value;
+    }
+
+    /**
+     * A variable as read from a record.
+     */
+    private static final class ReplayedVariable {
+        String name;
+        Argument.Type type;
+        boolean hidden;
+        String[][] codes;
+        /** The variable whose cells are kept, null if the record has all the cells for it. */
+        Variable kept;
+        /** The cells of the kept variable that changed. */
+        List<ReplayedCell> changes;
+        int numCells;
+        byte[] block;
+    }
+
+    /**
+     * A changed cell as read from a record.
+     */
+    private static final class ReplayedCell {
+        int key;
+        long onset;
+        long offset;
+        /** The value of each code, null if the cell was removed. */
+        String[] values;
+    }
+
+    /**
+     * The cells of a variable being replayed by their keys.
+     */
+    private static final class ReplayedCells {
+        private final Variable variable;
+        /** The cells the keys are positions in, copied before the first change */
+        private final List<Cell> base;
+        /** The cells that are not in the base by their keys */
+        private final Map<Integer, Cell> added = new HashMap<>();
+
+        ReplayedCells(final Variable variable) {
+            this.variable = variable;
+            base = new ArrayList<>(variable.getCells());
+        }
+
+        void apply(final List<ReplayedCell> changes) throws IOException {
+            Argument root = variable.getRootNode();
+            int numColumns = root.type == Argument.Type.MATRIX ? root.childArguments.size() : 1;
+            for (ReplayedCell change : changes) {
+                if (change.values != null && change.values.length != numColumns) {
+                    throw new IOException("Wrong number of codes for a cell of variable " + variable.getName());
+                }
+                Cell cell = change.key < base.size() ? base.get(change.key) : added.get(change.key);
+                if (change.values == null) {
+                    if (cell != null && variable.contains(cell)) {
+                        variable.removeCell(cell);
+                    }
+                    continue;
+                }
+
+                if (cell == null) {
+                    cell = variable.createCell();
+                    added.put(change.key, cell);
+                } else if (!variable.contains(cell)) {
+                    variable.addCell(cell);
+                }
+                cell.setOnset(change.onset);
+                cell.setOffset(change.offset);
+                for (int column = 0; column < change.values.length; column++) {
+                    CellValue value = getValue(cell, column);
+                    if (change.values[column].isEmpty()) {
+                        value.clear();
+                    } else {
+                        value.set(change.values[column]);
+                    }
+                }
+            }
+        }
+    }
+}
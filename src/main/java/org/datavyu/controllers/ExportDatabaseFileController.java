@@ -28,14 +28,14 @@ import org.datavyu.models.db.*;
 import org.datavyu.util.MacOS;
 import org.datavyu.util.StringUtils;
 import org.datavyu.util.WindowsOS;
-import org.jdesktop.application.Application;
-import org.jdesktop.application.ResourceMap;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.*;
 
 
 /**
@@ -47,6 +47,12 @@ public final class ExportDatabaseFileController {
     /** Logger for this class */
     private static Logger logger = LogManager.getLogger(ExportDatabaseFileController.class);
 
+    /** Size of the buffer that exported files are written through */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Indent exported JSON files, on by default unless the datavyu.prettyJson property is false */
+    private boolean prettyJSON = Boolean.parseBoolean(System.getProperty("datavyu.prettyJson", "true"));
+
     /**
      * Saves the database to the specified destination in a CSV format.
      *
@@ -56,180 +62,112 @@ public final class ExportDatabaseFileController {
      *                              disk (usually because of permissions errors).
      */
     public void exportByFrame(final String outFile, final DataStore dataStore) throws UserWarningException {
-        try {
-            FileOutputStream fos = new FileOutputStream(outFile);
-            PrintStream ps = new PrintStream(fos);
-
-            List<Variable> variables = dataStore.getAllVariables();
-
-            ArrayList<List<Cell>> cellCache = new ArrayList<>();
-            int[] currentIndex = new int[variables.size()];
-
-            // Get all of the cells from the DB and store them locally
-            for (Variable v : variables) {
-                cellCache.add(v.getCellsTemporally());
-            }
-
-            // Get first and last time point by sweeping over the cells
-            long firstTime = Long.MAX_VALUE;
-            long lastTime = 0;
-
-            for (int i = 0; i < variables.size(); i++) {
-                List<Cell> cells = cellCache.get(i);
-                if (cells.isEmpty()) {
-                    continue;
-                }
-                if (cells.get(0).getOnset() < firstTime) {
-                    firstTime = cells.get(0).getOnset();
-                }
-                if (cells.get(0).getOffset() < firstTime) {
-                    firstTime = cells.get(0).getOffset();
-                }
-
-                if (cells.get(cells.size() - 1).getOnset() > lastTime) {
-                    lastTime = cells.get(cells.size() - 1).getOnset();
-                }
-                if (cells.get(cells.size() - 1).getOffset() > lastTime) {
-                    lastTime = cells.get(cells.size() - 1).getOffset();
-                }
-            }
-
-            // Now that we have the first and last time, we loop over it using
-            // playback model's frameRate as step size. Fallback is 30.0
-            double frameRate;
-            try{
-                frameRate = Datavyu.getVideoController().getFrameRateController().getFrameRate();
-                if (frameRate <= 1.0) {
-                    throw new IllegalArgumentException("Invalid frame rate");
-                }
-            } catch(IllegalArgumentException e) {
-                frameRate = 30.0;
-                String defaultOption = "Cancel";
-                String alternativeOption = "OK";
-                String[] options = Datavyu.getPlatform() == Platform.MAC ? MacOS
-                    .getOptions(defaultOption, alternativeOption) :
-                    WindowsOS.getOptions(defaultOption, alternativeOption);
-                int selectedOption = JOptionPane.showOptionDialog(Datavyu.getView().getComponent(),
-                    "Unable to get frame rate. Would you like to export with a 30 frame per second?",
-                    e.getMessage(),
-                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE,
-                    null, options, defaultOption);
-                boolean confirmation = (Datavyu.getPlatform() == Platform.MAC) ? (selectedOption == 1) : (selectedOption == 0);
-                if (!confirmation) { return; }
-                logger.error("Unable to get frame rate. Assuming value: " + frameRate);
-            }
-            long current_time = firstTime;
-
-            // Print header
-            String header = "nFrame,time,";
-            for (Variable v : variables) {
-
-                header += v.getName() + ".ordinal";
-                header += "," + v.getName() + ".onset";
-                header += "," + v.getName() + ".offset";
-
-                // Test if the variable is a matrix. If it is, then we have to print out all of its arguments.
-                if (v.getRootNode().type == Argument.Type.MATRIX) {
-                    for (Argument a : v.getRootNode().childArguments) {
-                        header += "," + v.getName() + "." + a.name;
-                    }
-                } else {
-                    header += "," + v.getName() + ".value";
-                }
-                header += ',';
-            }
-            header = header.trim();
-
-            // Write header
-            ps.println(header);
+        exportByFrame(outFile, dataStore, false);
+    }
 
-            int nFrame = 1;
-            while (current_time <= lastTime + 1000.0 / frameRate) {
-                // Update the currentIndex list
-                for (int i = 0; i < variables.size(); i++) {
-                    if (!cellCache.get(i).isEmpty()) {
-                        Cell c = cellCache.get(i).get(currentIndex[i]);
-                        if (current_time > c.getOffset()) {
-
-                            for (int j = currentIndex[i]; j < cellCache.get(i).size(); j++) {
-                                Cell nextCell = cellCache.get(i).get(j);
-                                if (current_time >= nextCell.getOnset()) {
-                                    currentIndex[i] = j;
-                                }
-                            }
-                        }
-                    }
-                }
+    /**
+     * Saves the database to the specified destination in a CSV format, with a row for each frame or for each run of
+     * frames that have the same cells.
+     *
+     * @param outFile The path of the file to use when writing to disk.
+     * @param dataStore The data store to save as a CSV file.
+     * @param runLength True to write a row for each run of frames, see {@link ByFrameExporter}.
+     * @throws UserWarningException When unable to save the database as a CSV to
+     *                              disk (usually because of permissions errors).
+     */
+    public void exportByFrame(final String outFile, final DataStore dataStore, final boolean runLength)
+            throws UserWarningException {
+        // Loop over the frames using playback model's frameRate as step size. Fallback is 30.0
+        double frameRate = getFrameRate();
+        if (frameRate > 0) {
+            exportByFrame(outFile, dataStore, runLength, frameRate);
+        }
+    }
 
-                // Now print each frame as we loop through it
-                String row = Integer.toString(nFrame) + "," + Long.toString(current_time) + ",";
-                for (int i = 0; i < variables.size(); i++) {
-                    if (!cellCache.get(i).isEmpty()) {
-
-                        Cell cell = cellCache.get(i).get(currentIndex[i]);
-
-                        if ((cell.getOnset() <= current_time && cell.getOffset() >= current_time) ||
-                                (Math.abs(cell.getOffset() - cell.getOnset()) < 1000.0 / frameRate &&
-                                        cell.getOnset() > current_time - 1000.0 / frameRate + 1 &&
-                                        current_time >= cell.getOnset() &&
-                                        cell.getOnset() < current_time + 1000.0 / frameRate - 1)) {
-
-                            CellValue cellValue = cell.getCellValue();
-
-                            // Print ordinal, onset, offset
-                            row += Integer.toString(currentIndex[i] + 1) + "," +
-                                    Long.toString(cell.getOnset()) + "," +
-                                    Long.toString(cell.getOffset());
-
-
-                            if (cellValue instanceof MatrixCellValue) {
-                                // Then this is a matrix cellValue, get the sub arguments
-                                MatrixCellValue mv = (MatrixCellValue) cellValue;
-                                for (CellValue v : mv.getArguments()) {
-                                    // Loop over each cellValue and print it with a comma separator
-                                    row += "," + StringUtils.escapeCSVQuotes(v.toString());
-                                }
-                            } else {
-                                // Otherwise just print the single argument
-                                row += "," + StringUtils.escapeCSVQuotes(cell.getCellValue().toString());
-                            }
-                            row += ",";
-
-                        } else {
-                            // Figure out what to print if we don't have a cell here
-                            CellValue cellValue = cell.getCellValue();
-
-                            // Print ordinal, onset, offset
-                            row += ",,";
-
-
-                            if (cellValue instanceof MatrixCellValue) {
-                                // Then this is a matrix cellValue, get the sub arguments
-                                MatrixCellValue mv = (MatrixCellValue) cellValue;
-                                for (CellValue v : mv.getArguments()) {
-                                    // Loop over each cellValue and print it with a comma separator
-                                    row += ",";
-                                }
-                            } else {
-                                // Otherwise just print the single argument
-                                row += ",";
-                            }
-                            row += ",";
-                        }
-                    }
+    /**
+     * Saves the database to the specified destination in a CSV format, with a row for each frame or for each run of
+     * frames that have the same cells.
+     *
+     * @param outFile The path of the file to use when writing to disk.
+     * @param dataStore The data store to save as a CSV file.
+     * @param runLength True to write a row for each run of frames, see {@link ByFrameExporter}.
+     * @param frameRate The number of frames per second.
+     * @throws UserWarningException When unable to save the database as a CSV to
+     *                              disk (usually because of permissions errors).
+     */
+    public void exportByFrame(final String outFile, final DataStore dataStore, final boolean runLength,
+                              final double frameRate) throws UserWarningException {
+        try {
+            ByFrameExporter exporter = new ByFrameExporter(dataStore, frameRate);
+            exporter.setRunLength(runLength);
+            exporter.write(new File(outFile));
+        } catch (IOException ie) {
+            logger.error("Export failed. Error: ", ie);
+            throw SaveDataStoreFileController.unableToSave(outFile, ie);
+        }
+    }
 
-                }
-                ps.println(row);
-                current_time += 1000.0 / frameRate;
-                ++nFrame;
-            }
+    /**
+     * Saves the database to the specified destination in a columnar binary format, see {@link ColumnarExporter}.
+     *
+     * @param outFile The path of the file to use when writing to disk.
+     * @param dataStore The data store to save.
+     * @param byFrame True to include a table of frames, using the frame rate of the playback model.
+     * @throws UserWarningException When unable to save the database to disk (usually because of permissions errors).
+     */
+    public void exportAsColumnar(final String outFile, final DataStore dataStore, final boolean byFrame)
+            throws UserWarningException {
+        double frameRate = byFrame ? getFrameRate() : 0;
+        if (!byFrame || frameRate > 0) {
+            exportAsColumnar(outFile, dataStore, frameRate);
+        }
+    }
 
-            fos.close();
+    /**
+     * Saves the database to the specified destination in a columnar binary format, see {@link ColumnarExporter}.
+     *
+     * @param outFile The path of the file to use when writing to disk.
+     * @param dataStore The data store to save.
+     * @param frameRate The number of frames per second of the table of frames, 0 for no table of frames.
+     * @throws UserWarningException When unable to save the database to disk (usually because of permissions errors).
+     */
+    public void exportAsColumnar(final String outFile, final DataStore dataStore, final double frameRate)
+            throws UserWarningException {
+        try {
+            new ColumnarExporter(dataStore, frameRate).write(new File(outFile));
         } catch (IOException ie) {
             logger.error("Export failed. Error: ", ie);
-            ResourceMap rMap = Application.getInstance(Datavyu.class).getContext().getResourceMap(Datavyu.class);
-            throw new UserWarningException(rMap.getString("UnableToSave.message", outFile), ie);
+            throw SaveDataStoreFileController.unableToSave(outFile, ie);
+        }
+    }
+
+    /**
+     * @return The frame rate of the playback model, 30 if there is none and the user agrees to it, or 0 to cancel.
+     */
+    private static double getFrameRate() {
+        double frameRate;
+        try{
+            frameRate = Datavyu.getVideoController().getFrameRateController().getFrameRate();
+            if (frameRate <= 1.0) {
+                throw new IllegalArgumentException("Invalid frame rate");
+            }
+        } catch(IllegalArgumentException e) {
+            frameRate = 30.0;
+            String defaultOption = "Cancel";
+            String alternativeOption = "OK";
+            String[] options = Datavyu.getPlatform() == Platform.MAC ? MacOS
+                .getOptions(defaultOption, alternativeOption) :
+                WindowsOS.getOptions(defaultOption, alternativeOption);
+            int selectedOption = JOptionPane.showOptionDialog(Datavyu.getView().getComponent(),
+                "Unable to get frame rate. Would you like to export with a 30 frame per second?",
+                e.getMessage(),
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE,
+                null, options, defaultOption);
+            boolean confirmation = (Datavyu.getPlatform() == Platform.MAC) ? (selectedOption == 1) : (selectedOption == 0);
+            if (!confirmation) { return 0; }
+            logger.error("Unable to get frame rate. Assuming value: " + frameRate);
         }
+        return frameRate;
     }
 
     public void exportAsCells(final String outFile, final DataStore ds)
@@ -328,8 +266,7 @@ public final class ExportDatabaseFileController {
             outStream.close();
         } catch (IOException ie) {
             logger.error("Export as cells failed. Error: ", ie);
-            ResourceMap rMap = Application.getInstance(Datavyu.class).getContext().getResourceMap(Datavyu.class);
-            throw new UserWarningException(rMap.getString("UnableToSave.message", outFile), ie);
+            throw SaveDataStoreFileController.unableToSave(outFile, ie);
         }
     }
 
@@ -385,89 +322,157 @@ public final class ExportDatabaseFileController {
     }
 
     /**
-     * Save a Datavyu Spreadseet in a JSON File.
+     * Save a Datavyu Spreadseet in a JSON File, pretty printed unless turned off with {@link #setPrettyJSON(boolean)}.
      *
      * @param dbFileName Target File
      * @param dataStore DataStore to be saved as JSON
      */
+    public void exportAsJSON(String dbFileName, DataStore dataStore) throws UserWarningException {
+        exportAsJSON(dbFileName, dataStore, prettyJSON);
+    }
 
-    public void exportAsJSON(String dbFileName, DataStore dataStore) throws UserWarningException{
-        ObjectMapper mapper = new ObjectMapper();
-        JsonFactory f = mapper.getFactory();
+    /**
+     * Save a Datavyu Spreadseet in a JSON File. Compact files are written with the passes serialized concurrently,
+     * each into its own buffer, the buffers are then written to the file in the order of the passes.
+     *
+     * @param dbFileName Target File
+     * @param dataStore DataStore to be saved as JSON
+     * @param pretty True to indent the file, false to write it without any whitespace
+     */
+    public void exportAsJSON(String dbFileName, DataStore dataStore, boolean pretty) throws UserWarningException {
+        final JsonFactory f = new ObjectMapper().getFactory();
         File jsonFile = new File(dbFileName);
-        try {
-            JsonGenerator g = f.createGenerator(jsonFile, JsonEncoding.UTF8);
-            g.setPrettyPrinter(new DefaultPrettyPrinter());
-            //Start a Spreadsheet Object
-            g.writeStartObject();
-            //Spreadsheet name Field
-//            g.writeStringField("name", dataStore.getName());
-
-            //Start an Array of Passes (Column(Spreadsheet)/Variable(DataStore))
-            g.writeArrayFieldStart("passes");
-            for (Variable column : dataStore.getAllVariables()) {
-                // Start an Object for each Pass(Column/Variable)
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(jsonFile), BUFFER_SIZE)) {
+            if (pretty) {
+                JsonGenerator g = f.createGenerator(out, JsonEncoding.UTF8);
+                g.setPrettyPrinter(new DefaultPrettyPrinter());
+                //Start a Spreadsheet Object
                 g.writeStartObject();
-                // Pass(Column/Variable) name
-                g.writeStringField("name", column.getName());
+                //Start an Array of Passes (Column(Spreadsheet)/Variable(DataStore))
+                g.writeArrayFieldStart("passes");
+                for (Variable column : dataStore.getAllVariables()) {
+                    writePass(g, column);
+                }
+                // End the Passes Array
+                g.writeEndArray();
+                //End a Spreadsheet Object
+                g.writeEndObject();
+                g.close();
+            } else {
+                List<Callable<byte[]>> tasks = new ArrayList<>();
+                for (final Variable column : dataStore.getAllVariables()) {
+                    tasks.add(new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() throws IOException {
+                            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                            try (JsonGenerator g = f.createGenerator(buffer, JsonEncoding.UTF8)) {
+                                writePass(g, column);
+                            }
+                            return buffer.toByteArray();
+                        }
+                    });
+                }
 
-                g.writeStringField("type",column.getRootNode().type.toString());
+                // Each pass is a complete JSON object, so the passes are joined with commas into the array.
+                out.write("{\"passes\":[".getBytes(StandardCharsets.UTF_8));
+                boolean first = true;
+                for (Future<byte[]> pass : invokeAll(tasks)) {
+                    if (!first) {
+                        out.write(',');
+                    }
+                    out.write(pass.get());
+                    first = false;
+                }
+                out.write("]}".getBytes(StandardCharsets.UTF_8));
+            }
+            logger.info("JSON File has been successfully saved");
 
-                g.writeObjectFieldStart("arguments");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UserWarningException("Interrupted while exporting " + dbFileName, e);
+        } catch (IOException | ExecutionException e) {
+            logger.error("Export as JSON failed. Error: ", e);
+            throw SaveDataStoreFileController.unableToSave(dbFileName, e);
+        }
+    }
 
-                column.getRootNode().childArguments.forEach(argument -> {
-                    try {
-                        g.writeStringField(argument.type.name(), argument.name);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                });
-                g.writeEndObject();
+    /**
+     * Sets whether {@link #exportAsJSON(String, DataStore)} indents the file, on by default unless the
+     * datavyu.prettyJson property is false.
+     *
+     * @param pretty True to indent the file, false to write it without any whitespace
+     */
+    public void setPrettyJSON(final boolean pretty) {
+        prettyJSON = pretty;
+    }
 
-                //Start an Array of Cells
-                g.writeArrayFieldStart("cells");
-                int count = 1;
-                for (Cell cell : column.getCellsTemporally()) {
-                    // Start an Object for each Cell
-                    g.writeStartObject();
-
-                    g.writeNumberField("id", count);
-                    g.writeStringField("onset", cell.getOnsetString());
-                    g.writeStringField("offset", cell.getOffsetString());
-                    g.writeArrayFieldStart("values");
-
-                    if (column.getRootNode().type == Argument.Type.MATRIX) {
-                        for (int k = 0; k < column.getRootNode().childArguments.size(); k++) {
-                            g.writeString(cell.getMatrixValue(k).toString());
-                        }
-                    } else {
-                        g.writeString(cell.getCellValue().toString());
-                    }
+    /**
+     * Writes the object of a pass (column/variable) with its arguments and cells.
+     *
+     * @param g The generator to write the pass to
+     * @param column The variable of the pass
+     * @throws IOException If unable to write the pass
+     */
+    private static void writePass(final JsonGenerator g, final Variable column) throws IOException {
+        // Start an Object for each Pass(Column/Variable)
+        g.writeStartObject();
+        // Pass(Column/Variable) name
+        g.writeStringField("name", column.getName());
+
+        g.writeStringField("type", column.getRootNode().type.toString());
+
+        g.writeObjectFieldStart("arguments");
+        List<Argument> arguments = column.getRootNode().childArguments;
+        for (Argument argument : arguments) {
+            g.writeStringField(argument.type.name(), argument.name);
+        }
+        g.writeEndObject();
+
+        //Start an Array of Cells
+        g.writeArrayFieldStart("cells");
+        boolean matrix = column.getRootNode().type == Argument.Type.MATRIX;
+        int count = 1;
+        for (Cell cell : column.getCellsTemporally()) {
+            // Start an Object for each Cell
+            g.writeStartObject();
 
-                    g.writeEndArray();
-                    // End Cell Object
-                    g.writeEndObject();
-                    count++;
+            g.writeNumberField("id", count);
+            g.writeStringField("onset", cell.getOnsetString());
+            g.writeStringField("offset", cell.getOffsetString());
+            g.writeArrayFieldStart("values");
+
+            if (matrix) {
+                for (int k = 0; k < arguments.size(); k++) {
+                    g.writeString(cell.getMatrixValue(k).toString());
                 }
-                // End Cells Array
-                g.writeEndArray();
-                // End Pass Object
-                g.writeEndObject();
+            } else {
+                g.writeString(cell.getCellValue().toString());
             }
-            // End the Passes Array
-            g.writeEndArray();
 
-            //End a Spreadsheet Object
+            g.writeEndArray();
+            // End Cell Object
             g.writeEndObject();
-
-            g.close();
-            logger.info("JSON File has been successfully saved");
-
-        } catch (IOException e) {
-            logger.error("Export as JSON failed. Error: ", e);
-            ResourceMap rMap = Application.getInstance(Datavyu.class).getContext().getResourceMap(Datavyu.class);
-            throw new UserWarningException(rMap.getString("UnableToSave.message", dbFileName), e);
+            count++;
         }
+        // End Cells Array
+        g.writeEndArray();
+        // End Pass Object
+        g.writeEndObject();
+    }
 
+    /**
+     * Runs tasks on the common pool, or on the calling thread when there is a single processor.
+     */
+    private static <T> List<Future<T>> invokeAll(final List<Callable<T>> tasks) throws InterruptedException {
+        if (Runtime.getRuntime().availableProcessors() > 1 && tasks.size() > 1) {
+            return ForkJoinPool.commonPool().invokeAll(tasks);
+        }
+        List<Future<T>> results = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            FutureTask<T> result = new FutureTask<>(task);
+            result.run();
+            results.add(result);
+        }
+        return results;
     }
 }
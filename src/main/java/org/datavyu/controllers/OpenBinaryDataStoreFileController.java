@@ -0,0 +1,242 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.datavyu.models.db.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Controller for opening a data store, along with the other entries of a project, from the binary project format.
+ *
+ * Only the header and the directory are read when the file is opened, and the data store is always backed by the
+ * columnar engine. The cells of each variable, and the other entries of the project, are read from the file and decoded
+ * when they are first used, so variables that are never touched are never loaded. A save over the file keeps them
+ * readable, see {@link BinaryDataStoreFormat#replaceFile(File, File, Map)}.
+ *
+ * @see BinaryDataStoreFormat
+ */
+public final class OpenBinaryDataStoreFileController {
+
+    /** The logger instance for this class */
+    private static Logger logger = LogManager.getLogger(OpenBinaryDataStoreFileController.class);
+
+    /** The other entries of the project by name */
+    private final Map<String, BinaryDataStoreFormat.SavedBlock> entries = new LinkedHashMap<>();
+
+    /**
+     * Opens a data store from a binary project file.
+     *
+     * @param file The file to open.
+     * @return The data store read from the file.
+     * @throws IOException If the file can not be read or is not a binary project file.
+     */
+    public DataStore open(final File file) throws IOException {
+        logger.info("Open binary data store from " + file);
+
+        BinaryDataStoreFormat.BlockFile blockFile = new BinaryDataStoreFormat.BlockFile(file);
+        try {
+            return read(blockFile);
+        } catch (BufferUnderflowException | IllegalArgumentException | UserWarningException e) {
+            blockFile.release();
+            throw new IOException("Corrupt binary project file: " + file, e);
+        } catch (IOException e) {
+            blockFile.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The names of the other entries of the project that was opened.
+     */
+    public Set<String> getEntryNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * @param name The name of the entry.
+     * @return The contents of the entry, null if the project has no such entry.
+     * @throws IOException If unable to read the entry from the file.
+     */
+    public InputStream getEntry(final String name) throws IOException {
+        BinaryDataStoreFormat.SavedBlock entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+
+        ByteBuffer buffer = entry.read();
+        return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+
+    private DataStore read(final BinaryDataStoreFormat.BlockFile file) throws IOException, UserWarningException {
+        long size = file.size();
+        if (size < BinaryDataStoreFormat.HEADER_SIZE) {
+            throw new IOException("Not a binary project file");
+        }
+        ByteBuffer header = file.read(0, BinaryDataStoreFormat.HEADER_SIZE);
+        if (header.getInt(0) != BinaryDataStoreFormat.MAGIC) {
+            throw new IOException("Not a binary project file");
+        }
+        int version = header.getInt(4);
+        if (version > BinaryDataStoreFormat.VERSION) {
+            throw new IOException("Unsupported binary project version: " + version);
+        }
+
+        long directoryOffset = header.getLong(BinaryDataStoreFormat.DIRECTORY_OFFSET_POSITION);
+        ByteBuffer directory = file.read(directoryOffset, size - directoryOffset);
+        DataStore dataStore = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+
+        int numVariables = BinaryDataStoreFormat.readVarInt(directory);
+        for (int i = 0; i < numVariables; i++) {
+            String name = BinaryDataStoreFormat.readString(directory);
+            Argument.Type type = Argument.Type.valueOf(BinaryDataStoreFormat.readString(directory));
+            boolean hidden = directory.get() != 0;
+            int numCells = BinaryDataStoreFormat.readVarInt(directory);
+            long offset = directory.getLong();
+            long length = directory.getLong();
+
+            int numCodes = BinaryDataStoreFormat.readVarInt(directory);
+            String[][] codes = new String[numCodes][];
+            for (int code = 0; code < numCodes; code++) {
+                codes[code] = new String[]{BinaryDataStoreFormat.readString(directory),
+                        BinaryDataStoreFormat.readString(directory)};
+            }
+
+            Variable variable = createVariable(dataStore, name, type, codes);
+            variable.setHidden(hidden);
+            variable.setOrderIndex(i);
+
+            if (numCells > 0) {
+                ColumnarVariable columnar = (ColumnarVariable) variable;
+                int numColumns = type == Argument.Type.MATRIX ? numCodes : 1;
+                checkRange(offset, length, directoryOffset);
+                BinaryDataStoreFormat.SavedBlock block = new BinaryDataStoreFormat.SavedBlock(
+                        columnar.getChangeCount(), file, offset, length, numCells, numColumns);
+                columnar.setPendingRows(new Block(block, name));
+                BinaryDataStoreFormat.rememberBlock(columnar, block);
+            }
+        }
+
+        int numEntries = BinaryDataStoreFormat.readVarInt(directory);
+        for (int i = 0; i < numEntries; i++) {
+            String name = BinaryDataStoreFormat.readString(directory);
+            long offset = directory.getLong();
+            long length = directory.getLong();
+            checkRange(offset, length, directoryOffset);
+            entries.put(name, new BinaryDataStoreFormat.SavedBlock(0L, file, offset, length, 0, 0));
+        }
+
+        return dataStore;
+    }
+
+    /**
+     * Creates a variable as it is described in the directory of a binary project file.
+     *
+     * @param dataStore The data store to create the variable in.
+     * @param name The name of the variable.
+     * @param type The type of the variable.
+     * @param codes The name and type of each code of a matrix variable.
+     * @return The new variable.
+     * @throws UserWarningException If unable to create the variable.
+     */
+    static Variable createVariable(final DataStore dataStore, final String name, final Argument.Type type,
+                                   final String[][] codes) throws UserWarningException {
+        Variable variable = dataStore.createVariable(name, type, true);
+        if (type == Argument.Type.MATRIX) {
+            Argument root = variable.getRootNode();
+            root.clearChildArguments();
+            for (String[] code : codes) {
+                root.childArguments.add(new Argument(code[0], Argument.Type.valueOf(code[1])));
+            }
+            variable.setRootNode(root);
+        }
+        return variable;
+    }
+
+    /**
+     * Checks that a block or entry lies between the header and the directory, so it is not read from beyond the end of
+     * the file when it is first used.
+     */
+    private static void checkRange(final long offset, final long length, final long directoryOffset) {
+        if (offset < BinaryDataStoreFormat.HEADER_SIZE || length < 0 || offset + length > directoryOffset) {
+            throw new IllegalArgumentException("Range out of bounds: " + offset + " to " + (offset + length));
+        }
+    }
+
+    /**
+     * The encoded cells of a variable, decoded when the variable is first used.
+     */
+    static final class Block implements ColumnarVariable.PendingRows {
+        private final BinaryDataStoreFormat.SavedBlock block;
+        private final String variableName;
+
+        Block(final BinaryDataStoreFormat.SavedBlock block, final String variableName) {
+            this.block = block;
+            this.variableName = variableName;
+        }
+
+        @Override
+        public void decodeInto(final ColumnarVariable variable) {
+            int numCells = block.numCells;
+            int numColumns = block.numColumns;
+            long[] onsets = new long[numCells];
+            long[] offsets = new long[numCells];
+            String[][] dictionaries = new String[numColumns][];
+            int[][] codes = new int[numColumns][numCells];
+
+            try {
+                ByteBuffer in = block.read();
+                long onset = 0L;
+                for (int i = 0; i < numCells; i++) {
+                    onset += BinaryDataStoreFormat.readZigZag(in);
+                    onsets[i] = onset;
+                }
+                for (int i = 0; i < numCells; i++) {
+                    offsets[i] = onsets[i] + BinaryDataStoreFormat.readZigZag(in);
+                }
+
+                for (int column = 0; column < numColumns; column++) {
+                    // Index 0 is the empty value.
+                    String[] dictionary = new String[BinaryDataStoreFormat.readVarInt(in) + 1];
+                    for (int i = 1; i < dictionary.length; i++) {
+                        dictionary[i] = BinaryDataStoreFormat.readString(in);
+                    }
+                    for (int i = 0; i < numCells; i++) {
+                        int code = BinaryDataStoreFormat.readVarInt(in);
+                        if (code >= dictionary.length) {
+                            throw new IOException("Value out of range: " + code);
+                        }
+                        codes[column][i] = code;
+                    }
+                    dictionaries[column] = dictionary;
+                }
+            } catch (IOException | BufferUnderflowException e) {
+                throw new IllegalStateException("Unable to read the cells of variable " + variableName, e);
+            }
+
+            variable.appendRows(new ColumnarVariable.Rows(onsets, offsets, dictionaries, codes));
+            // The cells are in memory now, the block is only kept to be copied.
+            block.setCopyOnly();
+        }
+    }
+}
@@ -20,7 +20,10 @@ import org.datavyu.models.db.DataStore;
 import org.datavyu.models.project.Project;
 import org.datavyu.models.project.ViewerSetting;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -39,6 +42,16 @@ public final class OpenController {
     /** Reference to the project that this controller opened */
     private Project project = null;
 
+    /** Notified of the number of bytes read while opening a data store, null for none */
+    private OpenDataStoreFileController.ProgressListener progressListener = null;
+
+    /**
+     * @param progressListener The listener to notify of the number of bytes read while opening a data store.
+     */
+    public void setProgressListener(final OpenDataStoreFileController.ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
     /**
      * Opens a file as a Datavyu dataStore.
      *
@@ -56,6 +69,7 @@ public final class OpenController {
      */
     public void openDataStore(final File dataStoreFile) {
         OpenDataStoreFileController odc = new OpenDataStoreFileController();
+        odc.setProgressListener(progressListener);
         dataStore = odc.open(dataStoreFile);
         dataStore.deselectAll();
     }
@@ -67,8 +81,12 @@ public final class OpenController {
      */
     public void openProject(final File projectFile) {
 
-        // If project is archive - open it as such.
-        if (projectFile.getName().endsWith(".opf")) {
+        if (projectFile.getName().endsWith(".opfb")) {
+            logger.info("open binary project");
+            openBinaryProject(projectFile);
+
+            // If project is archive - open it as such.
+        } else if (projectFile.getName().endsWith(".opf")) {
             logger.info("open project archive");
             openProjectArchive(projectFile);
 
@@ -81,6 +99,7 @@ public final class OpenController {
 
             if (project != null) {
                 OpenDataStoreFileController odc = new OpenDataStoreFileController();
+                odc.setProgressListener(progressListener);
                 dataStore = odc.open(new File(projectFile.getParent(),
                         project.getDatabaseFileName()));
             }
@@ -124,7 +143,8 @@ public final class OpenController {
             }
 
             OpenDataStoreFileController odc = new OpenDataStoreFileController();
-            dataStore = odc.openAsCsv(zipFile.getInputStream(zippedDataStore));
+            odc.setProgressListener(progressListener);
+            dataStore = odc.openAsCsv(zipFile.getInputStream(zippedDataStore), zippedDataStore.getSize());
 
             // BugzID:1806
             for (ViewerSetting vs : project.getViewerSettings()) {
@@ -142,6 +162,44 @@ public final class OpenController {
         dataStore.deselectAll();
     }
 
+    /**
+     * Opens a file in the binary project format.
+     *
+     * @param binaryFile The binary project file to open.
+     */
+    private void openBinaryProject(final File binaryFile) {
+
+        OpenBinaryDataStoreFileController obc = new OpenBinaryDataStoreFileController();
+        try {
+            dataStore = obc.open(binaryFile);
+
+            OpenProjectFileController opc = new OpenProjectFileController();
+            project = opc.open(obc.getEntry("project"));
+
+            for (ViewerSetting vs : project.getViewerSettings()) {
+                if (vs.getSettingsId() != null && obc.getEntry(vs.getSettingsId()) != null) {
+                    vs.copySettings(obc.getEntry(vs.getSettingsId()));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Unable to open binary project", e);
+            return;
+        }
+
+        // An autosave is followed by the journal of the edits made after it.
+        File journalFile = EditJournalController.getJournalFile(binaryFile);
+        if (journalFile.isFile()) {
+            try {
+                InputStream generation = obc.getEntry(EditJournalController.GENERATION_ENTRY);
+                if (generation != null) {
+                    EditJournalController.replay(journalFile, new DataInputStream(generation).readLong(), dataStore);
+                }
+            } catch (IOException e) {
+                logger.error("Unable to replay journal " + journalFile, e);
+            }
+        }
+    }
+
     /**
      * Opens a file as a Datavyu project
      *
@@ -26,25 +26,20 @@ import org.datavyu.util.ConfigProperties;
 import org.datavyu.views.discrete.SpreadSheetPanel;
 
 import javax.swing.*;
+import java.awt.GraphicsEnvironment;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
-
-import static java.lang.Math.min;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Controller for opening a data store from disk.
  */
 public final class OpenDataStoreFileController {
 
-    /** The index of the ONSET timestamp in the CSV line */
-    private static final int DATA_ONSET = 0;
-
-    /** The index of the OFFSET timestamp in the CSV line */
-    private static final int DATA_OFFSET = 1;
-
-    /** The start of the data arguments */
-    private static final int DATA_INDEX = 2;
+    /** The onset and offset given to cells that are recovered from corrupted lines */
+    private static final long CORRUPT_CELL_TIME = 99L * 60 * 60 * 1000;
 
     /** The logger instance for this class */
     private static Logger logger = LogManager.getLogger(OpenDataStoreFileController.class);
@@ -52,6 +47,56 @@ public final class OpenDataStoreFileController {
     /** The number of variables that were parsed */
     private int numVariablesParsed = 0;
 
+    /** Notified of the number of bytes read while parsing a CSV file, null for none */
+    private ProgressListener progressListener = null;
+
+    /** Parse the variables of CSV files concurrently, on by default unless the datavyu.parallelLoad property is false */
+    private boolean parallelLoad = Runtime.getRuntime().availableProcessors() > 1
+            && Boolean.parseBoolean(System.getProperty("datavyu.parallelLoad", "true"));
+
+    /**
+     * The largest CSV file parsed concurrently in bytes, 64 MB unless set in MB by the datavyu.parallelLoadLimit
+     * property. Parsing concurrently holds the whole file in memory, larger files are streamed and parsed one
+     * variable after the other.
+     */
+    private long parallelLoadLimit = Math.max(0L, Long.getLong("datavyu.parallelLoadLimit", 64L)) * 1024 * 1024;
+
+    /** The number of cells that could not be read */
+    private final AtomicInteger numCellErrors = new AtomicInteger(0);
+
+    /**
+     * Listener for the progress of reading a data store, notified from the threads that parse the data store.
+     */
+    public interface ProgressListener {
+
+        /**
+         * @param bytesRead The number of bytes read so far.
+         * @param totalBytes The total number of bytes to read, -1 if unknown.
+         */
+        void progressChanged(long bytesRead, long totalBytes);
+    }
+
+    /**
+     * @param progressListener The listener to notify of the number of bytes read, null for none.
+     */
+    public void setProgressListener(final ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * @param parallelLoad True to parse the variables of CSV files concurrently, false to parse them one by one.
+     */
+    public void setParallelLoad(final boolean parallelLoad) {
+        this.parallelLoad = parallelLoad;
+    }
+
+    /**
+     * @param parallelLoadLimit The largest CSV file to parse concurrently in bytes, larger files are streamed.
+     */
+    public void setParallelLoadLimit(final long parallelLoadLimit) {
+        this.parallelLoadLimit = parallelLoadLimit;
+    }
+
     /**
      * Opens a data store
      *
@@ -86,7 +131,7 @@ public final class OpenDataStoreFileController {
         try {
             logger.info("Open CSV data store from file: '" + dataStoreFile.getAbsolutePath() + "'.");
             FileInputStream fis = new FileInputStream(dataStoreFile);
-            DataStore result = openAsCsv(fis);
+            DataStore result = openAsCsv(fis, dataStoreFile.length());
             fis.close();
             return result;
         } catch (Exception e) {
@@ -103,56 +148,54 @@ public final class OpenDataStoreFileController {
      * @return Populated data store on success; otherwise null
      */
     protected DataStore openAsCsv(final InputStream inputStream) {
+        return openAsCsv(inputStream, -1L);
+    }
+
+    /**
+     * This method parses a CSV input stream and populates the data store and spread sheet with data. The caller is
+     * responsible for managing the input stream aka opening and closing it
+     *
+     * @param inputStream The input stream used to deserialize the data store
+     * @param totalBytes The size of the input stream in bytes, -1 if unknown; used to report progress
+     * @return Populated data store on success; otherwise null
+     */
+    protected DataStore openAsCsv(final InputStream inputStream, final long totalBytes) {
         try {
             logger.info("Open csv data base from input stream");
 
             DataStore db = DataStoreFactory.newDataStore();
-            db.setTitleNotifier(Datavyu.getApplication());
-            InputStreamReader isr = new InputStreamReader(inputStream);
-            BufferedReader csvFile = new BufferedReader(isr);
-
-            // Read each line of the CSV file.
-            String line = csvFile.readLine();
-
-            // If we have a version identifier parse the file using the schema
-            // that matches that identifier.
-            if ("#4".equalsIgnoreCase(line)) {
-
-                //Version 4 includes a comment for columns.
-                line = csvFile.readLine();
-                while (line != null) {
-                    line = parseVariable(csvFile, line, db, "#4");
-                }
-                if (!db.getExemptionVariables().isEmpty()) {
-                    logger.info("We have excemption variables");
-                    SwingUtilities.invokeLater(new NameWarning(db.getExemptionVariables()));
-                }
-            } else if ("#3".equalsIgnoreCase(line)) {
-
-                //Version 3 includes column visible status after the column type
-                line = csvFile.readLine();
-                while (line != null) {
-                    line = parseVariable(csvFile, line, db, "#3");
-                }
-            } else if ("#2".equalsIgnoreCase(line)) {
-
-                line = csvFile.readLine();
-                while (line != null) {
-                    line = parseVariable(csvFile, line, db);
-                }
+            // There is no application to notify when exporting without a display, see BatchExport.
+            if (!GraphicsEnvironment.isHeadless()) {
+                db.setTitleNotifier(Datavyu.getApplication());
+            }
 
+            // Buffer the cells of every variable and publish them once the whole file has been read.
+            db.beginBulkLoad();
+            String version;
+            // Streams of unknown size are streamed, they could be larger than the limit.
+            if (parallelLoad && totalBytes >= 0 && totalBytes <= parallelLoadLimit) {
+                version = parseInParallel(readFully(inputStream, totalBytes), db);
             } else {
+                version = parse(new CsvTokenizer(inputStream, totalBytes, progressListener), db);
+            }
 
-                // Use the original schema to load the file - just variables,
-                // and no escape characters.
-                while (line != null) {
-                    line = parseVariable(csvFile, line, db);
-                }
+            if (numCellErrors.get() > 0 && GraphicsEnvironment.isHeadless()) {
+                logger.error(numCellErrors.get() + " cells could not be read, recovered with time 99:00:00:000");
+            } else if (numCellErrors.get() > 0) {
+                JOptionPane.showMessageDialog(null,
+                        "Error reading file. " + String.valueOf(numCellErrors.get()) + " cells could not be read.\n" +
+                                "Recovered files have time 99:00:00:000.\n" +
+                                "Please send this file to Datavyu Support for further analysis!",
+                        "Error reading file: Corrupted cells",
+                        JOptionPane.ERROR_MESSAGE);
             }
 
-            csvFile.close();
-            isr.close();
+            if (version.equals("#4") && !db.getExemptionVariables().isEmpty() && !GraphicsEnvironment.isHeadless()) {
+                logger.info("We have excemption variables");
+                SwingUtilities.invokeLater(new NameWarning(db.getExemptionVariables()));
+            }
 
+            db.endBulkLoad();
             return db;
         } catch (IOException e) {
             logger.error("Unable to read line from CSV file. Error: ", e);
@@ -164,609 +207,628 @@ public final class OpenDataStoreFileController {
         return null;
     }
 
-    public void importJSONToSpreadsheet(File file, SpreadSheetPanel spreadSheet) throws UserWarningException,  JsonParseException, IOException {
-        if (file.getAbsolutePath().endsWith(".json")) {
-            JsonFactory factory = new JsonFactory();
-            JsonParser parser = factory.createParser(file);
-
-            while (!parser.isClosed()) {
-                JsonToken token = parser.nextToken();
-                if (token == null) { break; }
-
-                if (JsonToken.START_OBJECT.equals(token)) {
-
-                    token = parser.nextToken();
-                    if (JsonToken.FIELD_NAME.equals(token) && "passes".equals(parser.getCurrentName())) {
-
-                        DataStore dataStore = spreadSheet.getDataStore();
-
-                        token = parser.nextToken();
-                        if (!JsonToken.START_ARRAY.equals(token)) { break; }
-
-                        while (!JsonToken.END_ARRAY.equals(token)) { // for each pass
-
-                            token = parser.nextToken();
-                            if (token == null) { break; }
-                            if (!JsonToken.START_OBJECT.equals(token)) { break; }
-
-                            token = parser.nextToken();
-                            if (JsonToken.FIELD_NAME.equals(token) && "name".equals(parser.getCurrentName())) {
-
-                                token = parser.nextToken();
-                                String columnName = parser.getValueAsString();
-
-                                // Check if we already have the same column name
-                                if (spreadSheet.getDataStore().getVariable(columnName) == null) {
-
-                                    token = parser.nextToken();
-                                    if (JsonToken.FIELD_NAME.equals(token) && "type".equals(parser.getCurrentName())) {
-                                        token = parser.nextToken();
-                                        Argument.Type variableType = getVarType(parser.getValueAsString());
-
-                                        if (variableType != null) {
-                                            token = parser.nextToken();
-                                            if (JsonToken.FIELD_NAME.equals(token) && "arguments".equals(parser
-                                                    .getCurrentName())) {
-                                                token = parser.nextToken();
-                                                if (token == null) { break; }
-                                                if (!JsonToken.START_OBJECT.equals(token)) { break; }
-
-                                                Variable newColumn = dataStore.createVariable(columnName,
-                                                        variableType, true);
-                                                Argument variableArg = newColumn.getRootNode();
-                                                variableArg.clearChildArguments();
-
-                                                while (!JsonToken.END_OBJECT.equals(token)) {
-                                                    token = parser.nextToken();
-                                                    if (token == null) { break; }
-                                                    if (JsonToken.START_OBJECT.equals(token) || JsonToken
-                                                            .START_OBJECT.equals(token) || JsonToken.END_OBJECT
-                                                            .equals(token)) {
-                                                        break;
-                                                    }
-
-                                                    token = parser.nextToken();
-                                                    if (variableType == Argument.Type.TEXT) {
-                                                        variableArg.name = parser.getValueAsString();
-                                                    }
-                                                    if (variableType == Argument.Type.NOMINAL) {
-                                                        variableArg.name = parser.getValueAsString();
-                                                    }
-                                                    if (variableType == Argument.Type.MATRIX) {
-                                                        if (getVarType(parser.getCurrentName()) != null) {
-                                                            variableArg.childArguments.add(new Argument(parser
-                                                                    .getValueAsString(), getVarType(parser
-                                                                    .getCurrentName())));
-                                                        } else {
-                                                            logger.warn("Unknown argument ('" + parser.getCurrentName
-                                                                    () + "' line " + parser.getCurrentLocation()
-                                                                    .getLineNr() + " ): was expecting " + "argument "
-                                                                    + "(NOMINAL, TEXT or MATRIX)" + " field name");
-                                                            break;
-                                                        }
-                                                    }
-                                                }
-                                                newColumn.setRootNode(variableArg);
-
-                                                token = parser.nextToken();
-                                                if (JsonToken.FIELD_NAME.equals(token) && "cells".equals(parser
-                                                        .getCurrentName())) {
-
-                                                    token = parser.nextToken();
-                                                    if (!JsonToken.START_ARRAY.equals(token)) { break; }
-
-
-                                                    while (!JsonToken.END_ARRAY.equals(token)) { // for each cell
-                                                        token = parser.nextToken();
-                                                        if (!JsonToken.START_OBJECT.equals(token)) { break; }
-                                                        if (JsonToken.END_ARRAY.equals(token)) { break; }
-                                                        if (token == null) { break; }
-
-                                                        Cell newCell = newColumn.createCell();
-
-                                                        token = parser.nextToken();
-                                                        if (JsonToken.FIELD_NAME.equals(token) && "id".equals(parser
-                                                                .getCurrentName())) {
-                                                            token = parser.nextToken(); // we skip the id value
-                                                            token = parser.nextToken();
-                                                            if (JsonToken.FIELD_NAME.equals(token) && "onset".equals
-                                                                    (parser.getCurrentName())) {
-                                                                token = parser.nextToken();
-                                                                String cellONSET = parser.getValueAsString();
-                                                                newCell.setOnset(cellONSET);
-
-                                                                token = parser.nextToken();
-                                                                if (JsonToken.FIELD_NAME.equals(token) && "offset"
-                                                                        .equals(parser.getCurrentName())) {
-                                                                    token = parser.nextToken();
-                                                                    String cellOFFSET = parser.getValueAsString();
-                                                                    newCell.setOffset(cellOFFSET);
-
-                                                                    token = parser.nextToken();
-                                                                    if (JsonToken.FIELD_NAME.equals(token) &&
-                                                                            "values".equals(parser.getCurrentName())) {
-                                                                        token = parser.nextToken();
-                                                                        if (!JsonToken.START_ARRAY.equals(token)) {
-                                                                            break;
-                                                                        }
-
-                                                                        token = parser.nextToken();
-                                                                        int k = 0; // keep track of the matrix value
-                                                                        // number
-                                                                        while (!JsonToken.END_ARRAY.equals(token)) {
-                                                                            if (token == null) { break; }
-
-                                                                            if (newColumn.getRootNode().type ==
-                                                                                    Argument.Type.MATRIX) {
-
-                                                                                newCell.setMatrixValue(k, parser
-                                                                                        .getValueAsString());
-                                                                                k++;
-                                                                            } else {
-                                                                                newCell.getCellValue().set(parser
-                                                                                        .getValueAsString());
-                                                                            }
-                                                                            token = parser.nextToken();
-                                                                        }
-                                                                    } else {
-                                                                        dataStore.removeVariable(newColumn);
-                                                                        String msg = "Unexpected character ('" +
-                                                                                parser.getCurrentName() + "' line " +
-                                                                                parser.getCurrentLocation().getLineNr
-                                                                                        () + " ): " + "was expecting " +
-                                                                                "" + "values field name";
-                                                                        logger.warn(msg);
-                                                                        Datavyu.getApplication().showWarningDialog(msg);
-                                                                        break;
-                                                                    }
-                                                                } else {
-                                                                    dataStore.removeVariable(newColumn);
-                                                                    String msg = "Unexpected character ('" + parser
-                                                                            .getCurrentName() + "' line " + parser
-                                                                            .getCurrentLocation().getLineNr() + " ): " +
-                                                                            "" + "was " + "expecting offset field " +
-                                                                            "name";
-                                                                    logger.warn(msg);
-                                                                    Datavyu.getApplication().showWarningDialog(msg);
-                                                                    break;
-                                                                }
-                                                            } else {
-                                                                dataStore.removeVariable(newColumn);
-                                                                String msg = "Unexpected character ('" + parser
-                                                                        .getCurrentName() + "' line " + parser
-                                                                        .getCurrentLocation().getLineNr() + " ): was " +
-                                                                        "" + "" + "expecting onset field name";
-                                                                logger.warn(msg);
-                                                                Datavyu.getApplication().showWarningDialog(msg);
-                                                                break;
-                                                            }
-                                                        } else {
-                                                            dataStore.removeVariable(newColumn);
-                                                            String msg = "Unexpected character ('" + parser
-                                                                    .getCurrentName() + "' line " + parser
-                                                                    .getCurrentLocation().getLineNr() + " ): was " +
-                                                                    "expecting " + "id field name";
-                                                            logger.warn(msg);
-                                                            Datavyu.getApplication().showWarningDialog(msg);
-                                                            break;
-                                                        }
-                                                        token = parser.nextToken();
-                                                    }
-                                                } else {
-                                                    dataStore.removeVariable(newColumn);
-                                                    String msg = "Unexpected character ('" + parser.getCurrentName() +
-                                                            "' line " + parser.getCurrentLocation().getLineNr() + " )" +
-                                                            ": was expecting cells " + "field name";
-                                                    logger.warn(msg);
-                                                    Datavyu.getApplication().showWarningDialog(msg);
-                                                    break;
-                                                    }
-                                            } else {
-                                                String msg = "Unexpected character ('" + parser.getCurrentName() + "' "
-                                                        + "line " + parser.getCurrentLocation().getLineNr() +
-                                                        " ):" + " was expecting arguments field name";
-                                                logger.warn(msg);
-                                                Datavyu.getApplication().showWarningDialog(msg);
-                                                break;
-                                            }
-                                        } else {
-                                            String msg = "Unknown argument ('" + parser.getCurrentName() + "' line " +
-                                                    parser.getCurrentLocation().getLineNr() + " ): was expecting " +
-                                                    "argument (NOMINAL, TEXT or MATRIX) field name";
-                                            logger.warn(msg);
-                                            Datavyu.getApplication().showWarningDialog(msg);
-                                            break;
-                                        }
-                                    } else {
-                                        String msg = "Unexpected character ('" + parser.getCurrentName() + "' line " +
-                                                parser.getCurrentLocation().getLineNr() + " ): was expecting type " +
-                                                "field name";
-                                        logger.warn(msg);
-                                        Datavyu.getApplication().showWarningDialog(msg);
-                                        break;
-                                    }
-                                } else {
-                                    String msg = "The column " + columnName + " already exists in the current" + " " +
-                                            "spreadsheet";
-                                    logger.warn(msg);
-                                    Datavyu.getApplication().showWarningDialog(msg);
-                                    break;
-                                }
-                            } else {
-                                String msg = "Unexpected character ('" + parser.getCurrentName() + "' line " + parser
-                                        .getCurrentLocation().getLineNr() + " ): was expecting name field name";
-                                logger.warn(msg);
-                                Datavyu.getApplication().showWarningDialog(msg);
-                                break;
-                            }
-                            token = parser.nextToken();
-                        }
-                        parser.close();
-                    } else {
-                        String msg = "Unexpected character ('" + parser.getCurrentName() + "' line " + parser
-                                .getCurrentLocation().getLineNr() + " ): was expecting passes field name";
-                        logger.error(msg);
-                        Datavyu.getApplication().showWarningDialog(msg);
-                        break;
-                    }
-                } else {
-                    String msg ="Unexpected character ('" + parser.getCurrentName() + "' line " + parser
-                            .getCurrentLocation().getLineNr() + " ): was expecting '{'";
-                    logger.error(msg);
-                    Datavyu.getApplication().showWarningDialog(msg);
-                    break;
-                }
-            }
+    /**
+     * If we have a version identifier the file is parsed using the schema that matches that identifier. Version 3
+     * includes column visible status after the column type and version 4 includes a comment for columns. Otherwise
+     * the original schema is used to load the file - just variables.
+     *
+     * @param line The first line of the file
+     * @return The version identifier in the line, null if the line has none
+     */
+    private String getVersion(final String line) {
+        return "#4".equals(line) || "#3".equals(line) || "#2".equals(line) ? line : null;
+    }
+
+    /**
+     * Parses the variables of a CSV file one after the other.
+     *
+     * @param tokenizer The tokenizer of the CSV file
+     * @param dataStore The data store we are populating with data from the CSV file
+     * @return The version identifier of the file
+     * @throws IOException When we are unable to read from the CSV file
+     * @throws UserWarningException When we are unable to create variables
+     */
+    private String parse(final CsvTokenizer tokenizer, final DataStore dataStore)
+            throws IOException, UserWarningException {
+        // Read each line of the CSV file.
+        String line = tokenizer.readRawLine();
+        String version = getVersion(line);
+        if (version != null) {
+            line = tokenizer.readRawLine();
         } else {
-            String msg = "The selected file is a not a JSON format";
-            logger.error(msg);
-            Datavyu.getApplication().showWarningDialog(msg);
+            version = "#2";
+        }
+
+        while (line != null) {
+            line = line.isEmpty() ? tokenizer.readRawLine() : parseVariable(tokenizer, line, dataStore, version);
         }
+        return version;
     }
 
     /**
-     * Strip escape characters from a line of text
+     * Parses a CSV file that is held in memory, parsing the cells of different variables concurrently.
      *
-     * @param line The line of text to strip escape characters from
-     * @return The line free of escape characters, i.e. '\'
+     * A first pass over the bytes finds where the cells of each variable start and end and creates the variables in
+     * file order. The blocks of cells are then parsed on the fork/join pool; each task only touches its own variable,
+     * the cells are published once the enclosing bulk load ends. Progress is reported in
+     * bytes parsed as each task reads through its block.
+     *
+     * @param data The content of the CSV file
+     * @param dataStore The data store we are populating with data from the CSV file
+     * @return The version identifier of the file
+     * @throws IOException When we are unable to parse the CSV file
+     * @throws UserWarningException When we are unable to create variables
      */
-    private String stripEscapeCharacters(final String line) {
-        String result = null;
-
-        if (line != null) {
-            result = "";
-
-            for (int i = 0; i < line.length(); i++) {
-
-                if (i < (line.length() - 1)) {
-
-                    if ((line.charAt(i) == '\\')
-                            && (line.charAt(i + 1) == '\\')) {
-                        char[] buff = {'\\'};
-                        result = result.concat(new String(buff));
-
-                        // Move over the escape character.
-                        i++;
-                    } else if ((line.charAt(i) == '\\')
-                            && (line.charAt(i + 1) == ',')) {
-                        char[] buff = {','};
-                        result = result.concat(new String(buff));
-
-                        // Move over the escape character.
-                        i++;
-                    } else if ((line.charAt(i) == '\\')
-                            && (line.charAt(i + 1) == '-')) {
-                        char[] buff = {'-'};
-                        result = result.concat(new String(buff));
-
-                        // Move over the escape character.
-                        i++;
-                    } else {
-                        result += line.charAt(i);
+    private String parseInParallel(final byte[] data, final DataStore dataStore)
+            throws IOException, UserWarningException {
+        int lineStart = 0;
+        int lineEnd = endOfLine(data, lineStart);
+        String version = getVersion(new String(data, lineStart, lineEnd - lineStart));
+        if (version != null) {
+            lineStart = nextLine(data, lineEnd);
+        } else {
+            version = "#2";
+        }
+
+        // Find the block of cells of each variable. Within the cells of text and nominal variables lines that do not
+        // describe a variable are corrupted cells; these are recovered by the variable they follow.
+        List<Section> sections = new ArrayList<>();
+        Section section = null;
+        boolean endsAtAnyLine = true;
+        while (lineStart < data.length) {
+            lineEnd = endOfLine(data, lineStart);
+            if (lineEnd > lineStart && !isCell(data, lineStart)) {
+                String line = new String(data, lineStart, lineEnd - lineStart);
+                if (endsAtAnyLine || isVariable(line)) {
+                    if (section != null) {
+                        section.end = lineStart;
                     }
-                } else {
-                    result += line.charAt(i);
+                    Variable variable = createVariable(line, dataStore, version);
+                    section = variable == null ? null : new Section(variable, nextLine(data, lineEnd));
+                    if (section != null) {
+                        sections.add(section);
+                    }
+                    endsAtAnyLine = variable == null || variable.getRootNode().type == Argument.Type.MATRIX;
+                }
+            }
+            lineStart = nextLine(data, lineEnd);
+        }
+        if (section != null) {
+            section.end = data.length;
+        }
+
+        // Start with the largest blocks so that no single task is left running at the end.
+        Collections.sort(sections, new Comparator<Section>() {
+            @Override
+            public int compare(final Section s1, final Section s2) {
+                return Integer.compare(s2.end - s2.start, s1.end - s1.start);
+            }
+        });
+
+        final AtomicLong bytesParsed = new AtomicLong(0L);
+        List<Callable<Void>> tasks = new ArrayList<>(sections.size());
+        for (final Section s : sections) {
+            tasks.add(new Callable<Void>() {
+                /** The bytes of the block that were added to the bytes parsed */
+                private long reported = 0L;
+
+                @Override
+                public Void call() throws IOException {
+                    ProgressListener blockProgress = progressListener == null ? null : new ProgressListener() {
+                        @Override
+                        public void progressChanged(final long bytesRead, final long totalBytes) {
+                            long parsed = bytesParsed.addAndGet(bytesRead - reported);
+                            reported = bytesRead;
+                            progressListener.progressChanged(parsed, data.length);
+                        }
+                    };
+                    parseCells(new CsvTokenizer(new ByteArrayInputStream(data, s.start, s.end - s.start),
+                            s.end - s.start, blockProgress), s.variable);
+                    return null;
                 }
+            });
+        }
+
+        try {
+            List<Future<Void>> results = ForkJoinPool.commonPool().invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Unable to parse the cells of variable "
+                            + sections.get(i).variable.getName(), e.getCause());
+                }
+            }
+            // The lines that describe the variables are not part of any block.
+            if (progressListener != null) {
+                progressListener.progressChanged(data.length, data.length);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing variables");
         }
 
-        return result;
+        return version;
     }
 
     /**
-     * Method to create data values for the formal arguments of a vocab element
-     *
-     * @param tokens The array of string tokens
-     * @param startIndex The start index
-     * @param destValue The destination value that we are populating
+     * The block of cells of a variable in a CSV file that is held in memory.
      */
-    private void parseFormalArgs(final String[] tokens, final int startIndex, final Argument destPattern,
-                                 final MatrixCellValue destValue) {
+    private static final class Section {
 
-        // Check to see if the list of tokens we have here is correct.
-        // If it is not, then mark an error state and do our best to parse.
-        // Fill in missing info with a missing value.
+        /** The variable that the cells belong to */
+        final Variable variable;
 
-        List<CellValue> args = destValue.getArguments();
+        /** The index of the first byte of the cells */
+        final int start;
 
-        int endIndex = tokens.length;
-        boolean parseError = false;
-        if (args.size() != tokens.length - startIndex) {
-            // We have a problem. Arguments are of different length.
-            // Get as much from the string as we can.
+        /** The index after the last byte of the cells */
+        int end;
 
-            parseError = true; // TODO: Do something with this: warning, user warning exception?
-            endIndex = min(tokens.length, destValue.getArguments().size() + startIndex);
-        }
-
-        for (int tokenIndex = startIndex; tokenIndex < endIndex; tokenIndex++) {
-            int argIndex = tokenIndex - startIndex;
-            Argument fa = destPattern.childArguments.get(argIndex);
-            boolean emptyArg = false;
-
-            // If the field doesn't contain anything or matches the FargName
-            // we consider the argument to be 'empty'. 
-            if ((tokens[tokenIndex].length() == 0) || tokens[tokenIndex].equals("<" + fa.name + ">")) {
-                emptyArg = true;
-                tokens[tokenIndex] = ""; //set <placeholder> to empty string. 
-            }
-
-            tokens[tokenIndex] = tokens[tokenIndex].trim(); //is this desirable?
-            destValue.getArguments().get(argIndex).set(tokens[tokenIndex]);
+        Section(final Variable variable, final int start) {
+            this.variable = variable;
+            this.start = start;
         }
     }
 
     /**
-     * Method to invoke when we encounter a block of text in the CSV file that is the contents of a matrix variable
+     * Reads a stream to its end.
      *
-     * @param csvReader The csvReader we are currently parsing
-     * @param variable The variable that we will be adding cells too.
-     * @param argument The matrix template we are using when parsing individual matrix elements to put in the
-     *                 spread sheet
-     * @return The next line in the file that is not part of the block of text in the CSV file
-     * @throws IOException If unable to read the file correctly
+     * @param inputStream The stream to read
+     * @param totalBytes The size of the stream in bytes, -1 if unknown
+     * @return The content of the stream
+     * @throws IOException If unable to read the stream
      */
-    private String parseMatrixVariable(final BufferedReader csvReader, final Variable variable, final Argument argument)
-            throws IOException {
-
-        // TODO: Check if we need the argument possibly for proper error reporting
-        String line = csvReader.readLine();
-
-        while ((line != null) && isCell(line)) {
-
-            ArrayList tokensList = new ArrayList<String>();
-            String[] onsetOffsetVals = line.split(",", 3);
-            tokensList.add(onsetOffsetVals[0]); //onset
-            tokensList.add(onsetOffsetVals[1]); //offset
-
-            String valuesStr = onsetOffsetVals[2];
-            StringBuilder sb = new StringBuilder();
-
-            for (int i = 0; i < valuesStr.length(); i++) {
-                char cur = valuesStr.charAt(i);
-                if (cur == '\\') {
-                    if (i + 1 == valuesStr.length()) //newline
-                    {
-                        sb.append('\n');
-                        valuesStr += csvReader.readLine();
-                    } else //stuff following escape backslash
-                    {
-                        i++;
-                        sb.append(valuesStr.charAt(i));
-                    }
-                } else if (cur == ',') //structural comma
-                {
-                    tokensList.add(sb.toString());
-                    sb = new StringBuilder();
-                } else sb.append(cur); //ordinary char
+    private static byte[] readFully(final InputStream inputStream, final long totalBytes) throws IOException {
+        byte[] data = new byte[totalBytes > 0 && totalBytes < Integer.MAX_VALUE ? (int) totalBytes : 1 << 16];
+        int length = 0;
+        while (true) {
+            // Only grow the buffer if the stream is longer than expected.
+            if (length == data.length) {
+                int next = inputStream.read();
+                if (next < 0) {
+                    return data;
+                }
+                data = Arrays.copyOf(data, data.length * 2);
+                data[length++] = (byte) next;
             }
-            tokensList.add(sb.toString());
 
-            String[] tokens = (String[]) tokensList.toArray(new String[tokensList.size()]);
-
-            Cell newCell = variable.createCell();
-            // Set the onset and offset from tokens in the line.
-            newCell.setOnset(tokens[DATA_ONSET]);
-            newCell.setOffset(tokens[DATA_OFFSET]);
+            int read = inputStream.read(data, length, data.length - length);
+            if (read < 0) {
+                return Arrays.copyOf(data, length);
+            }
+            length += read;
+        }
+    }
 
-            // Strip the first and last chars - presumably parens
-            tokens[DATA_INDEX] = tokens[DATA_INDEX].substring(1, tokens[DATA_INDEX].length());
-            int end = tokens.length - 1;
-            tokens[end] = tokens[end].substring(0, tokens[end].length() - 1);
+    /**
+     * @param data The content of a CSV file
+     * @param lineStart The index of the first byte of a line
+     * @return The index of the line break that ends the line, escaped line breaks do not end a line
+     */
+    private static int endOfLine(final byte[] data, final int lineStart) {
+        int i = lineStart;
+        while (i < data.length && data[i] != '\n' && data[i] != '\r') {
+            i += data[i] == '\\' ? 2 : 1;
+        }
+        return Math.min(i, data.length);
+    }
 
-            parseFormalArgs(tokens, DATA_INDEX, variable.getRootNode(), (MatrixCellValue) newCell.getCellValue());
-            // Get the next line in the file for reading.
-            line = csvReader.readLine();
+    /**
+     * @param data The content of a CSV file
+     * @param lineEnd The index of the line break that ends a line
+     * @return The index of the first byte of the next line
+     */
+    private static int nextLine(final byte[] data, final int lineEnd) {
+        if (lineEnd + 1 < data.length && data[lineEnd] == '\r' && data[lineEnd + 1] == '\n') {
+            return lineEnd + 2;
         }
+        return Math.min(lineEnd + 1, data.length);
+    }
 
-        return line;
+    /**
+     * @param data The content of a CSV file
+     * @param lineStart The index of the first byte of a line
+     * @return True if the line holds a cell, i.e. starts with digits followed by ':' or ','
+     */
+    private static boolean isCell(final byte[] data, final int lineStart) {
+        int i = lineStart;
+        while (i < data.length && data[i] >= '0' && data[i] <= '9') {
+            i++;
+        }
+        return i > lineStart && i < data.length && (data[i] == ':' || data[i] == ',');
     }
 
     /**
-     * Does the string represent a cell?
-     *
-     * @param string The string.
+     * Imports the passes of a JSON file as new columns of the spreadsheet. The whole file is read first, then the
+     * columns are added to the spreadsheet at once, see {@link #readJSON(File)} and
+     * {@link #addToDataStore(List, DataStore)}.
      *
-     * @return True if it is a cell; otherwise false.
+     * @param file The JSON file to import
+     * @param spreadSheet The spreadsheet to import the columns into
      */
-    private boolean isCell(String string) {
-        return Character.isDigit(string.charAt(0))
-                && Character.isDigit(string.charAt(1))
-                && string.charAt(2) == ':';
+    public void importJSONToSpreadsheet(File file, SpreadSheetPanel spreadSheet) throws UserWarningException,
+            JsonParseException, IOException {
+        addToDataStore(readJSON(file), spreadSheet.getDataStore());
     }
 
     /**
-     * Method to invoke when we encounter a block of text in the CSV file that is the contents of a variable
+     * Reads the passes of a JSON file. No data store is touched, so the file can be read off the event dispatch
+     * thread.
      *
-     * @param csvReader The csvReader we are currently parsing
-     * @param variable The variable that we will be adding cells too
-     * @param populateEntry Populates entries to use when converting the contents of the cell into a data value that can
-     *                      be inserted into the spread sheet
-     * @return The next line in the file that is not part of the block of text in the CSV file
-     * @throws IOException Exception if unable to read the file correctly
+     * @param file The JSON file to read
+     * @return The variable of each pass, in the order of the file
+     * @throws UserWarningException If the file is not laid out as an export of the spreadsheet
+     * @throws IOException If unable to read the file
      */
-    private String parseEntries(final BufferedReader csvReader, final Variable variable,
-                                final PopulateEntry populateEntry) throws IOException {
+    public List<ImportedVariable> readJSON(final File file) throws UserWarningException, IOException {
+        if (!file.getAbsolutePath().endsWith(".json")) {
+            throw new UserWarningException("The selected file is a not a JSON format");
+        }
 
-        // Keep parsing lines and putting them in the newly formed nominal variable until we get to a line indicating
-        // the end of file or a new variable section
-        String line = csvReader.readLine();
+        List<ImportedVariable> variables = new ArrayList<>();
+        try (JsonParser parser = new JsonFactory().createParser(file)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw unexpected(parser, "'{'");
+            }
+            boolean hasPasses = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                if ("passes".equals(parser.getCurrentName())) {
+                    if (parser.nextToken() != JsonToken.START_ARRAY) {
+                        throw unexpected(parser, "'['");
+                    }
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        variables.add(readPass(parser));
+                    }
+                    hasPasses = true;
+                } else {
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            }
+            if (!hasPasses) {
+                throw unexpected(parser, "passes field name");
+            }
+        }
+        return variables;
+    }
 
-        boolean hasParseError = false;
-        int nError = 0;
+    /**
+     * Adds the variables read from a JSON file to a data store. The cells of all the variables are published to the
+     * listeners of the data store once they have all been added.
+     *
+     * @param variables The variables to add
+     * @param dataStore The data store to add the variables to
+     * @throws UserWarningException If the data store already has a variable of the same name as one of the variables,
+     * in which case none of the variables are added
+     */
+    public void addToDataStore(final List<ImportedVariable> variables, final DataStore dataStore)
+            throws UserWarningException {
+        for (ImportedVariable imported : variables) {
+            if (dataStore.getVariable(imported.name) != null) {
+                throw new UserWarningException("The column " + imported.name
+                        + " already exists in the current spreadsheet");
+            }
+        }
 
-        while ((line != null) && Character.isDigit(line.charAt(0))) {
+        dataStore.beginBulkLoad();
+        try {
+            for (ImportedVariable imported : variables) {
+                Variable variable = dataStore.createVariable(imported.name, imported.type, true);
+                Argument root = variable.getRootNode();
+                root.clearChildArguments();
+                if (imported.rootName != null) {
+                    root.name = imported.rootName;
+                }
+                root.childArguments.addAll(imported.codes);
+                variable.setRootNode(root);
 
-            // Remove backslashes if there are more than would be used for newline escapes
-            if (line.contains("\\")) {
-                if (line.endsWith("\\") || line.endsWith("\\\\")) {
-                    line = line.replace("\\", "") + "\\";
-                } else {
-                    line = line.replace("\\", "");
+                ColumnarVariable.Rows rows = imported.rows;
+                if (variable instanceof ColumnarVariable) {
+                    ((ColumnarVariable) variable).insertRows(rows);
+                    continue;
+                }
+                for (int i = 0; i < rows.onsets.length; i++) {
+                    Cell cell = variable.createCell();
+                    cell.setOnset(rows.onsets[i]);
+                    cell.setOffset(rows.offsets[i]);
+                    for (int column = 0; column < rows.codes.length; column++) {
+                        int code = rows.codes[column][i];
+                        if (code == 0) {
+                            continue;
+                        }
+                        if (imported.type == Argument.Type.MATRIX) {
+                            cell.setMatrixValue(column, rows.dictionaries[column][code]);
+                        } else {
+                            cell.getCellValue().set(rows.dictionaries[column][code]);
+                        }
+                    }
                 }
             }
+        } finally {
+            dataStore.endBulkLoad();
+        }
+    }
 
-            try {
-                // Split the line into tokens using a comma delimiter
-                String[] tokens = line.split(",");
-
-                // BugzID: 1075 - If the line ends with an escaped new line - add
-                // the next line to the current text field.
-                while ((line != null) && line.endsWith("\\") && !line.endsWith("\\\\")) {
-                    line = csvReader.readLine();
-                    String content = tokens[tokens.length - 1];
-                    content = content.substring(0, content.length() - 1);
-                    tokens[tokens.length - 1] = content + '\n' + line;
+    /**
+     * Reads a pass, the parser is at the start of the pass object.
+     */
+    private ImportedVariable readPass(final JsonParser parser) throws UserWarningException, IOException {
+        String name = null;
+        Argument.Type type = null;
+        ImportedVariable variable = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("name".equals(field)) {
+                name = parser.getValueAsString();
+            } else if ("type".equals(field)) {
+                type = getVarType(parser.getValueAsString());
+                if (type == null) {
+                    throw unexpected(parser, "argument (NOMINAL, TEXT or MATRIX)");
                 }
+            } else if ("arguments".equals(field)) {
+                if (name == null || type == null) {
+                    throw unexpected(parser, name == null ? "name field name" : "type field name");
+                }
+                variable = readArguments(parser, name, type);
+            } else if ("cells".equals(field)) {
+                if (variable == null) {
+                    throw unexpected(parser, "arguments field name");
+                }
+                variable.rows = readCells(parser, variable);
+            } else {
+                parser.skipChildren();
+            }
+        }
 
-                Cell newCell = variable.createCell();
+        if (variable == null || variable.rows == null) {
+            throw unexpected(parser, variable == null ? "arguments field name" : "cells field name");
+        }
+        return variable;
+    }
+
+    private ImportedVariable readArguments(final JsonParser parser, final String name, final Argument.Type type)
+            throws UserWarningException, IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            throw unexpected(parser, "'{'");
+        }
+
+        ImportedVariable variable = new ImportedVariable(name, type);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String codeType = parser.getCurrentName();
+            parser.nextToken();
+            if (type != Argument.Type.MATRIX) {
+                variable.rootName = parser.getValueAsString();
+            } else if (getVarType(codeType) != null) {
+                variable.codes.add(new Argument(parser.getValueAsString(), getVarType(codeType)));
+            } else {
+                throw unexpected(parser, "argument (NOMINAL, TEXT or MATRIX) field name");
+            }
+        }
+        return variable;
+    }
+
+    /**
+     * Reads the cells of a pass column-wise, the parser is at the start of the array of cells.
+     */
+    private ColumnarVariable.Rows readCells(final JsonParser parser, final ImportedVariable variable)
+            throws UserWarningException, IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            throw unexpected(parser, "'['");
+        }
+
+        int numColumns = variable.type == Argument.Type.MATRIX ? variable.codes.size() : 1;
+        List<Map<String, Integer>> dictionaries = new ArrayList<>(numColumns);
+        int[][] codes = new int[numColumns][16];
+        for (int column = 0; column < numColumns; column++) {
+            Map<String, Integer> dictionary = new LinkedHashMap<>();
+            dictionary.put(null, 0);
+            dictionaries.add(dictionary);
+        }
+        long[] onsets = new long[16];
+        long[] offsets = new long[16];
+        int numCells = 0;
+
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            if (numCells == onsets.length) {
+                onsets = Arrays.copyOf(onsets, numCells * 2);
+                offsets = Arrays.copyOf(offsets, numCells * 2);
+                for (int column = 0; column < numColumns; column++) {
+                    codes[column] = Arrays.copyOf(codes[column], numCells * 2);
+                }
+            }
 
-                // Set the onset and offset from tokens in the line
-                newCell.setOnset(tokens[DATA_ONSET]);
-                newCell.setOffset(tokens[DATA_OFFSET]);
-                populateEntry.populate(tokens, newCell.getCellValue());
-
-                // Get the next line in the file for reading
-                line = csvReader.readLine();
-
-                // Test to see if the new line is an error line
-                if ((line != null) && !Character.isDigit(line.charAt(0))) {
-                    if (testForCorruptLine(line)) {
-                        hasParseError = true;
-                        nError += 1;
-                        line = fixCorruptLine(line);
-                        logger.error("Error in line " + line);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("onset".equals(field)) {
+                    onsets[numCells] = readTime(parser);
+                } else if ("offset".equals(field)) {
+                    offsets[numCells] = readTime(parser);
+                } else if ("values".equals(field)) {
+                    if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+                        throw unexpected(parser, "'['");
                     }
+                    // Non-matrix values only have one column, the last value is the one that is kept.
+                    int column = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        String value = parser.getValueAsString();
+                        if (column < numColumns) {
+                            codes[column][numCells] = value == null || value.isEmpty()
+                                    ? 0 : encode(dictionaries.get(column), value);
+                        }
+                        if (variable.type == Argument.Type.MATRIX) {
+                            column++;
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
                 }
-            } catch (Exception e) {
-                // TODO: Add in fix here for matrix cells that are corrupted in the data values
-                hasParseError = true;
-                nError += 1;
-                logger.error("Error in line: " + line + ". Error: ", e);
             }
+            numCells++;
         }
 
-        if (hasParseError) {
-            JOptionPane.showMessageDialog(null,
-                    "Error reading file. " + String.valueOf(nError) + " cells could not be read.\n" +
-                            "Recovered files have time 99:00:00:000.\n" +
-                            "Please send this file to Datavyu Support for further analysis!",
-                    "Error reading file: Corrupted cells",
-                    JOptionPane.ERROR_MESSAGE);
+        String[][] values = new String[numColumns][];
+        for (int column = 0; column < numColumns; column++) {
+            Set<String> dictionary = dictionaries.get(column).keySet();
+            values[column] = dictionary.toArray(new String[dictionary.size()]);
+            codes[column] = Arrays.copyOf(codes[column], numCells);
         }
+        return new ColumnarVariable.Rows(Arrays.copyOf(onsets, numCells), Arrays.copyOf(offsets, numCells), values,
+                codes);
+    }
 
-        return line;
+    private static int encode(final Map<String, Integer> dictionary, final String value) {
+        Integer code = dictionary.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.put(value, code);
+        }
+        return code;
     }
 
-    private boolean testForCorruptLine(String line) {
-        return line.split("\\(").length != 2;
+    private static long readTime(final JsonParser parser) throws UserWarningException, IOException {
+        try {
+            return DatavyuCell.convertTimestampToMS(parser.getValueAsString());
+        } catch (RuntimeException e) {
+            throw unexpected(parser, "timestamp");
+        }
+    }
+
+    private static UserWarningException unexpected(final JsonParser parser, final String expected) throws IOException {
+        return new UserWarningException("Unexpected character ('" + parser.getCurrentName() + "' line "
+                + parser.getCurrentLocation().getLineNr() + " ): was expecting " + expected);
     }
 
-    private String fixCorruptLine(String line) {
-        return "99:00:00:000,99:00:00:000," + line;
+    /**
+     * A variable read from a JSON file, see {@link #readJSON(File)}.
+     */
+    public static final class ImportedVariable {
+        private final String name;
+        private final Argument.Type type;
+        /** The name of the argument of a text or nominal variable, null for the default. */
+        private String rootName;
+        /** The codes of a matrix variable. */
+        private final List<Argument> codes = new ArrayList<>();
+        private ColumnarVariable.Rows rows;
+
+        private ImportedVariable(final String name, final Argument.Type type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getNumCells() {
+            return rows.onsets.length;
+        }
     }
 
     /**
      * Method to build a formal argument.
      *
-     * @param content The string holding the formal argument content to be parsed.
+     * @param name The name of the formal argument.
+     * @param type The type of the formal argument.
      * @return The formal argument.
      */
-    private Argument parseFormalArgument(final String content) {
+    private Argument parseFormalArgument(final String name, final String type) {
         Argument argument;
-        String[] formalArgument = content.split("\\|");
-        formalArgument[0] = this.stripEscapeCharacters(formalArgument[0]);
 
         // Add text formal argument.
-        if (formalArgument[1].equalsIgnoreCase("quote_string")) {
+        if (type.equalsIgnoreCase("quote_string")) {
             argument = null;
 
-        } else if (formalArgument[1].equalsIgnoreCase("integer")) {
+        } else if (type.equalsIgnoreCase("integer")) {
             // Add integer formal argument.
-            argument = new Argument(formalArgument[0], Argument.Type.NOMINAL);
+            argument = new Argument(name, Argument.Type.NOMINAL);
 
-        } else if (formalArgument[1].equalsIgnoreCase("float")) {
+        } else if (type.equalsIgnoreCase("float")) {
             // Add float formal argument.
-            argument = new Argument(formalArgument[0], Argument.Type.NOMINAL);
+            argument = new Argument(name, Argument.Type.NOMINAL);
 
         } else {
             // Add nominal formal argument.
-            argument = new Argument(formalArgument[0], Argument.Type.NOMINAL);
+            argument = new Argument(name, Argument.Type.NOMINAL);
         }
 
         return argument;
     }
 
     /**
-     * Method to invoke when we encounter a block of text that is a variable.
+     * Does the line hold a variable, i.e. a name followed by its type and settings in a single pair of parens?
      *
-     * @param csvFile The CSV file we are currently reading.
-     * @param line    The line of the CSV file we are currently reading.
-     * @param db      The data store we are populating with data from the CSV file.
-     * @return The next String that is not part of the currently variable that
-     * we are parsing.
-     * @throws IOException          When we are unable to read from the csvFile.
-     * @throws UserWarningException When we are unable to create a new variable.
+     * @param line The line.
+     *
+     * @return True if it is a variable; otherwise false.
      */
-    private String parseVariable(final BufferedReader csvFile,
-                                 final String line,
-                                 final DataStore db)
-            throws IOException, UserWarningException {
-        return parseVariable(csvFile, line, db, "#2");
+    private boolean isVariable(final String line) {
+        int open = line.indexOf('(');
+        return open >= 0 && open == line.lastIndexOf('(') && open < line.length() - 1;
     }
 
     /**
      * Method to invoke when we encounter a block of text that is a variable.
      *
-     * @param csvFile The CSV file we are currently reading
+     * @param tokenizer The tokenizer of the CSV file we are currently reading
      * @param line The line of the CSV file we are currently reading
      * @param dataStore The data store we are populating with data from the CSV file
-     * @return The next String that is not part of the currently variable that we are parsing
-     * @throws IOException When we are unable to read from the csvFile
+     * @param version The version identifier of the file
+     * @return The next line that is not part of the variable that we are parsing, null at the end of the file
+     * @throws IOException When we are unable to read from the CSV file
      * @throws UserWarningException When we are unable to create variables
      */
-    private String parseVariable(final BufferedReader csvFile, final String line, final DataStore dataStore,
+    private String parseVariable(final CsvTokenizer tokenizer, final String line, final DataStore dataStore,
                                  final String version)
             throws IOException, UserWarningException {
+        Variable newVar = createVariable(line, dataStore, version);
+
+        // Skip the cells of variables that are ignored.
+        if (newVar == null) {
+            while (tokenizer.atCell()) {
+                tokenizer.skipLine();
+            }
+            return tokenizer.readRawLine();
+        }
+
+        return parseCells(tokenizer, newVar);
+    }
+
+    /**
+     * Creates the variable described by the line that starts a block of text that is a variable.
+     *
+     * @param line The line of the CSV file that starts the variable
+     * @param dataStore The data store we are populating with data from the CSV file
+     * @param version The version identifier of the file
+     * @return The new variable, null if the variable is ignored
+     * @throws IOException When the line does not describe a variable
+     * @throws UserWarningException When we are unable to create variables
+     */
+    private Variable createVariable(final String line, final DataStore dataStore, final String version)
+            throws IOException, UserWarningException {
+        logger.info("Parsing variable from line: " + line);
+
         // Determine the variable name and type.
-        String[] tokens = line.split("\\(");
-        String varName = this.stripEscapeCharacters(tokens[0].trim());
-        String varType;
+        int open = line.indexOf('(');
+        if (open < 0) {
+            throw new IOException("Unable to parse variable from line: " + line);
+        }
+        int close = line.indexOf(')', open);
+        String varName = CsvTokenizer.unescape(line, 0, open).trim();
+        String settings = line.substring(open + 1, close < 0 ? line.length() : close);
+        int comma = settings.indexOf(',');
+        String varType = comma < 0 ? settings : settings.substring(0, comma);
         boolean varVisible = true;
 
-        logger.info("Parsing variable from line: " + line);
-        logger.info("Found " + tokens.length + " tokens");
-        if (version.equals("#4")) {
-            String[] varArgs = tokens[1].split(",");
-            varType = varArgs[0];
-            varVisible = Boolean.parseBoolean(varArgs[1]);
-            //varComment = varArgs[2].substring(0, varArgs[2].indexOf(")"));
-        } else if (version.equals("#3")) {
-            varType = tokens[1].substring(0, tokens[1].indexOf(","));
-            varVisible = Boolean.parseBoolean(tokens[1].substring(
-                    tokens[1].indexOf(",") + 1, tokens[1].indexOf(")")));
-        } else {
-            varType = tokens[1].substring(0, tokens[1].indexOf(")"));
+        // Version 3 and later include the column visible status after the column type
+        if ((version.equals("#4") || version.equals("#3")) && comma >= 0) {
+            int next = settings.indexOf(',', comma + 1);
+            varVisible = Boolean.parseBoolean(settings.substring(comma + 1, next < 0 ? settings.length() : next));
         }
 
         // BugzID:1703 - Ignore old macshapa query variables, we don't have a
@@ -774,57 +836,179 @@ public final class OpenDataStoreFileController {
         // between the untyped nature of macshapa and the typed nature of
         // Datavyu.
         if (varName.equals("###QueryVar###")) {
-            String lineEater = csvFile.readLine();
-
-            while ((lineEater != null)
-                    && Character.isDigit(lineEater.charAt(0))) {
-                lineEater = csvFile.readLine();
-            }
-
-            return lineEater;
+            return null;
         }
 
         // Create variable to put cells within.
         Argument.Type variableType = getVarType(varType);
+        if (variableType == null) {
+            throw new IllegalStateException("Unknown variable type.");
+        }
         Variable newVar = dataStore.createVariable(varName, variableType, true);
-        
+
         newVar.setHidden(!varVisible);
 
         newVar.setOrderIndex(numVariablesParsed);
         numVariablesParsed++;
-        // Read text variable.
-        if (variableType == Argument.Type.TEXT) {
-            return parseEntries(csvFile, newVar, new PopulateText());
-
-        } else if (variableType == Argument.Type.NOMINAL) {
-            // Read nominal variable.
-            return parseEntries(csvFile, newVar, new PopulateNominal());
-
-        } else if (variableType == Argument.Type.MATRIX) {
-            if(tokens.length > 1) {
-                // Read matrix variable - Build vocab for matrix.
-                String[] vocabString = tokens[1].split("(?<!\\\\)-");
-
-                // Get the vocab element for the matrix and clean it up to be
-                // populated with arguments from the CSV file.
-                Argument newArg = newVar.getRootNode();
-                newArg.clearChildArguments();
-
-                if (vocabString.length > 1) {
-                    // For each of the formal arguments in the file - parse it and
-                    // create a formal argument in the matrix vocab element.
-                    for (String arg : vocabString[1].split(",")) {
-                        newArg.childArguments.add(parseFormalArgument(arg));
+
+        if (variableType == Argument.Type.MATRIX) {
+            // Read matrix variable - Build vocab for matrix.
+            Argument newArg = newVar.getRootNode();
+            newArg.clearChildArguments();
+
+            // For each of the formal arguments in the file - parse it and create a formal argument in the matrix
+            // vocab element.
+            int start = CsvTokenizer.indexOfUnescaped(line, '-', open) + 1;
+            if (start > 0) {
+                while (start <= line.length()) {
+                    int end = CsvTokenizer.indexOfUnescaped(line, ',', start);
+                    if (end < 0) {
+                        end = line.length();
                     }
-                } else {
-                    logger.error("Can not parse codes from: " + tokens[1]);
+                    int bar = line.lastIndexOf('|', end - 1);
+                    if (bar >= start) {
+                        newArg.childArguments.add(parseFormalArgument(CsvTokenizer.unescape(line, start, bar),
+                                line.substring(bar + 1, end)));
+                    }
+                    start = end + 1;
+                }
+            } else {
+                logger.error("Can not parse codes from: " + line);
+            }
+            newVar.setRootNode(newArg);
+        }
+
+        return newVar;
+    }
+
+    /**
+     * Method to invoke when we encounter the block of cells that follows a variable in the CSV file.
+     *
+     * @param tokenizer The tokenizer of the CSV file we are currently reading
+     * @param variable The variable that we will be adding cells too
+     * @return The next line in the file that is not part of the block of cells, null at the end of the file
+     * @throws IOException If unable to read the file correctly
+     */
+    private String parseCells(final CsvTokenizer tokenizer, final Variable variable) throws IOException {
+        Argument.Type type = variable.getRootNode().type;
+        List<Argument> codes = variable.getRootNode().childArguments;
+        String[] values = new String[Math.max(1, codes.size())];
+        String line;
+        int nError = 0;
+
+        // Keep parsing cells and putting them in the variable until we get to a line indicating the end of file or a
+        // new variable section
+        while (true) {
+            long onset;
+            long offset;
+            int numValues;
+
+            if (tokenizer.atCell()) {
+                onset = tokenizer.readTimestamp();
+                offset = onset == CsvTokenizer.MALFORMED ? onset : tokenizer.readTimestamp();
+                if (offset == CsvTokenizer.MALFORMED) {
+                    tokenizer.skipLine();
+                    nError++;
+                    logger.error("Error in cell " + variable.getCells().size() + " of " + variable.getName());
+                    continue;
+                }
+                numValues = readValues(tokenizer, type, codes, values);
+            } else {
+                line = tokenizer.readRawLine();
+                if (line == null || type == Argument.Type.MATRIX || isVariable(line)) {
+                    break;
+                } else if (line.isEmpty()) {
+                    continue;
+                }
+
+                // Recover the content of a corrupted cell.
+                nError++;
+                logger.error("Error in line " + line);
+                onset = CORRUPT_CELL_TIME;
+                offset = CORRUPT_CELL_TIME;
+                int end = type == Argument.Type.NOMINAL ? CsvTokenizer.indexOfUnescaped(line, ',', 0) : -1;
+                values[0] = CsvTokenizer.unescape(line, 0, end < 0 ? line.length() : end);
+                numValues = 1;
+            }
+
+            try {
+                Cell newCell = variable.createCell();
+                newCell.setOnset(onset);
+                newCell.setOffset(offset);
+
+                if (type == Argument.Type.MATRIX) {
+                    List<CellValue> args = ((MatrixCellValue) newCell.getCellValue()).getArguments();
+                    for (int i = 0; i < numValues; i++) {
+                        if (values[i] != null) {
+                            args.get(i).set(values[i]);
+                        }
+                    }
+                } else if (values[0] != null) {
+                    newCell.getCellValue().set(values[0]);
                 }
-                newVar.setRootNode(newArg);
+            } catch (Exception e) {
+                nError++;
+                logger.error("Error in cell " + variable.getCells().size() + " of " + variable.getName()
+                        + ". Error: ", e);
+            }
+        }
+
+        numCellErrors.addAndGet(nError);
+        return line;
+    }
+
+    /**
+     * Reads the values that follow the onset and offset of a cell, up to the end of the line.
+     *
+     * @param tokenizer The tokenizer of the CSV file we are currently reading
+     * @param type The type of the variable
+     * @param codes The codes of a matrix variable
+     * @param values Filled with the value of each code, null for values that are empty
+     * @return The number of values read
+     * @throws IOException If unable to read the file correctly
+     */
+    private int readValues(final CsvTokenizer tokenizer, final Argument.Type type, final List<Argument> codes,
+                           final String[] values) throws IOException {
+        if (type == Argument.Type.TEXT) {
+            tokenizer.readField(false);
+            values[0] = tokenizer.isFieldEmpty() ? null : tokenizer.getField();
+            return 1;
+
+        } else if (type == Argument.Type.NOMINAL) {
+            if (tokenizer.readField(true)) {
+                tokenizer.skipLine();
+            }
+            values[0] = tokenizer.isFieldEmpty() ? null : tokenizer.getInternedField();
+            return 1;
+        }
 
-                return parseMatrixVariable(csvFile, newVar, newArg);
+        // Matrix values are enclosed in parens; if the number of values does not match the number of codes we get as
+        // much from the line as we can.
+        tokenizer.skip('(');
+        int numValues = 0;
+        boolean more = true;
+        while (more) {
+            more = tokenizer.readField(true);
+            if (!more) {
+                tokenizer.trimClosing(')');
+            }
+            if (numValues < codes.size()) {
+                Argument code = codes.get(numValues);
+                tokenizer.trimField();
+
+                // If the field doesn't contain anything or matches the name of the code we consider the value to be
+                // empty.
+                if (tokenizer.isFieldEmpty() || (code != null && tokenizer.isPlaceholder(code.name))) {
+                    values[numValues] = null;
+                } else if (code != null && code.type == Argument.Type.NOMINAL) {
+                    values[numValues] = tokenizer.getInternedField();
+                } else {
+                    values[numValues] = tokenizer.getField();
+                }
+                numValues++;
             }
         }
-        throw new IllegalStateException("Unknown variable type.");
+        return numValues;
     }
 
     /**
@@ -859,70 +1043,6 @@ public final class OpenDataStoreFileController {
         return null;
     }
 
-    /**
-     * Populate entries in spreadsheet cells.
-     */
-    private abstract class PopulateEntry {
-
-        /**
-         * Populates a DataValue from the supplied array of tokens.
-         *
-         * @param tokens    The tokens to use when building a DataValue.
-         * @param destCellValue That this populator is filling with content.
-         */
-        abstract void populate(final String[] tokens, final CellValue destCellValue);
-    }
-
-    /**
-     * PopulateEntry for creating nominal data values.
-     */
-    private class PopulateNominal extends PopulateEntry {
-
-        /**
-         * Populates a DataValue from the supplied array of tokens.
-         *
-         * @param tokens The tokens to use when building a DataValue.
-         * @param destCellValue That this populator is filling with content.
-         */
-        @Override
-        void populate(final String[] tokens, final CellValue destCellValue) {
-            // BugzID:722 - Only populate the value if we have one from the file
-            if (tokens.length > DATA_INDEX) {
-                destCellValue.set(stripEscapeCharacters(tokens[DATA_INDEX]));
-            }
-        }
-    }
-
-    /**
-     * PopulateEntry for creating text data values.
-     */
-    private class PopulateText extends PopulateEntry {
-
-        /**
-         * Populates a DataValue from the supplied array of tokens.
-         *
-         * @param tokens    The tokens to use when building a DataValue.
-         * @param destCellValue That this populator is filling with content.
-         */
-        @Override
-        void populate(final String[] tokens, final CellValue destCellValue) {
-            // BugzID:722 - Only populate the value if we have one from the file
-            if (tokens.length > DATA_INDEX) {
-                String text = "";
-
-                for (int i = DATA_INDEX; i < tokens.length; i++) {
-                    text = text.concat(tokens[i]);
-
-                    if (i < (tokens.length - 1)) {
-                        text = text.concat(",");
-                    }
-                }
-
-                destCellValue.set(stripEscapeCharacters(text));
-            }
-        }
-    }
-    
     private class NameWarning implements Runnable {
         private String names;
         
@@ -0,0 +1,321 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.datavyu.models.db.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Controller for saving a data store, along with the other entries of a project, in the binary project format.
+ *
+ * @see BinaryDataStoreFormat
+ */
+public final class SaveBinaryDataStoreFileController {
+
+    /** The logger instance for this class */
+    private static Logger logger = LogManager.getLogger(SaveBinaryDataStoreFileController.class);
+
+    /**
+     * Saves the data store to the destination. The file is written next to the destination first and then moved in
+     * place, so a data store that is still being read lazily from the destination stays intact while it is saved.
+     *
+     * Variables that have not changed since they were last read or written in this format are copied as is,
+     * only the variables that changed are encoded again. The blocks are remembered by their position in the file
+     * rather than kept in memory, see {@link BinaryDataStoreFormat#replaceFile(File, File, Map)}.
+     *
+     * @param destinationFile The file to save to.
+     * @param dataStore The data store to save.
+     * @param entries The other entries of the project by name, e.g. the project itself and the viewer settings.
+     * @throws IOException If unable to write the file.
+     */
+    public void save(final File destinationFile, final DataStore dataStore, final Map<String, byte[]> entries)
+            throws IOException {
+        save(destinationFile, snapshot(dataStore), entries);
+    }
+
+    /**
+     * Takes a copy of the data store that can be saved later, e.g. on another thread, while the data store keeps
+     * changing. Unchanged variables are not copied, their saved blocks are immutable; the other variables are
+     * copied column-wise.
+     *
+     * @param dataStore The data store to copy.
+     * @return The copy of the data store.
+     */
+    public Snapshot snapshot(final DataStore dataStore) {
+        List<VariableSnapshot> variables = new ArrayList<>();
+        for (Variable variable : dataStore.getAllVariables()) {
+            variables.add(snapshot(variable, true));
+        }
+        return new Snapshot(variables);
+    }
+
+    /**
+     * Takes a copy of a variable, see {@link #snapshot(DataStore)}.
+     *
+     * @param variable The variable to copy.
+     * @param copyCells False to only copy the name, type and codes of the variable.
+     * @return The copy of the variable.
+     */
+    static VariableSnapshot snapshot(final Variable variable, final boolean copyCells) {
+        Argument root = variable.getRootNode();
+        int numColumns = root.type == Argument.Type.MATRIX ? root.childArguments.size() : 1;
+        List<Argument> codes = root.type == Argument.Type.MATRIX
+                ? root.childArguments : Collections.<Argument>emptyList();
+
+        String[][] codeNamesAndTypes = new String[codes.size()][];
+        for (int i = 0; i < codes.size(); i++) {
+            codeNamesAndTypes[i] = new String[]{codes.get(i).name, codes.get(i).type.name()};
+        }
+
+        VariableSnapshot snapshot = new VariableSnapshot(variable, variable.getName(), root.type.name(),
+                variable.isHidden(), codeNamesAndTypes, numColumns);
+        // Read the count first, a change made while the variable is copied makes the copy stale.
+        snapshot.changeCount = variable.getChangeCount();
+        snapshot.saved = BinaryDataStoreFormat.getSavedBlock(variable, numColumns);
+        if (snapshot.saved == null && copyCells) {
+            snapshot.rows = variable instanceof ColumnarVariable ? ((ColumnarVariable) variable).getRows()
+                    : getRows(variable.getCells(), root, numColumns);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Saves a copy of a data store to the destination, see {@link #save(File, DataStore, Map)}.
+     *
+     * @param destinationFile The file to save to.
+     * @param snapshot The copy of the data store to save.
+     * @param entries The other entries of the project by name, e.g. the project itself and the viewer settings.
+     * @return The size of the file in bytes.
+     * @throws IOException If unable to write the file.
+     */
+    public long save(final File destinationFile, final Snapshot snapshot, final Map<String, byte[]> entries)
+            throws IOException {
+        logger.info("Save data store as binary to " + destinationFile);
+
+        File directory = destinationFile.getAbsoluteFile().getParentFile();
+        File tempFile = File.createTempFile(destinationFile.getName(), ".tmp", directory);
+        List<WrittenBlock> written;
+        long size;
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                written = write(channel, snapshot, entries);
+                channel.force(false);
+                size = channel.size();
+            }
+            Map<BinaryDataStoreFormat.SavedBlock, Long> copied = new IdentityHashMap<>();
+            for (WrittenBlock block : written) {
+                if (block.copied != null) {
+                    copied.put(block.copied, block.offset);
+                }
+            }
+            BinaryDataStoreFormat.BlockFile writtenFile =
+                    BinaryDataStoreFormat.replaceFile(tempFile, destinationFile, copied);
+
+            // Remember the blocks of the variables, so the next save can copy them as they are.
+            for (WrittenBlock block : written) {
+                if (block.copied == null) {
+                    BinaryDataStoreFormat.SavedBlock saved = new BinaryDataStoreFormat.SavedBlock(block.changeCount,
+                            writtenFile, block.offset, block.length, block.numCells, block.numColumns);
+                    saved.setCopyOnly();
+                    BinaryDataStoreFormat.rememberBlock(block.variable, saved);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        return size;
+    }
+
+    /**
+     * @return The blocks written for the variables.
+     */
+    private List<WrittenBlock> write(final FileChannel channel, final Snapshot snapshot,
+                                     final Map<String, byte[]> entries) throws IOException {
+        BinaryDataStoreFormat.Encoder encoder = new BinaryDataStoreFormat.Encoder();
+        encoder.writeInt(BinaryDataStoreFormat.MAGIC);
+        encoder.writeInt(BinaryDataStoreFormat.VERSION);
+        encoder.writeLong(0L);
+        long position = encoder.flushTo(channel);
+
+        List<WrittenBlock> written = new ArrayList<>();
+        BinaryDataStoreFormat.Encoder directory = new BinaryDataStoreFormat.Encoder();
+        directory.writeVarLong(snapshot.variables.size());
+
+        for (VariableSnapshot variable : snapshot.variables) {
+            long offset = position;
+            int numCells;
+            ByteBuffer block;
+
+            if (variable.saved != null) {
+                block = variable.saved.read();
+                numCells = variable.saved.numCells;
+            } else {
+                numCells = variable.rows.onsets.length;
+                if (numCells > 0) {
+                    encoder.writeBlock(variable.rows);
+                }
+                block = ByteBuffer.wrap(encoder.takeBytes());
+            }
+            ByteBuffer bytes = block.duplicate();
+            while (bytes.hasRemaining()) {
+                position += channel.write(bytes);
+            }
+
+            if (numCells > 0) {
+                written.add(new WrittenBlock(variable.source, variable.changeCount, variable.saved, offset,
+                        position - offset, numCells, variable.numColumns));
+            }
+
+            directory.writeString(variable.name);
+            directory.writeString(variable.type);
+            directory.writeByte(variable.hidden ? 1 : 0);
+            directory.writeVarLong(numCells);
+            directory.writeLong(offset);
+            directory.writeLong(position - offset);
+
+            directory.writeVarLong(variable.codes.length);
+            for (String[] code : variable.codes) {
+                directory.writeString(code[0]);
+                directory.writeString(code[1]);
+            }
+        }
+
+        directory.writeVarLong(entries.size());
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            encoder.writeBytes(entry.getValue());
+            directory.writeString(entry.getKey());
+            directory.writeLong(position);
+            directory.writeLong(entry.getValue().length);
+            position += encoder.flushTo(channel);
+        }
+
+        long directoryOffset = position;
+        directory.flushTo(channel);
+
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putLong(0, directoryOffset);
+        while (header.hasRemaining()) {
+            channel.write(header, BinaryDataStoreFormat.DIRECTORY_OFFSET_POSITION + header.position());
+        }
+        return written;
+    }
+
+    /**
+     * Collects the cells of a variable that is not stored column-wise.
+     */
+    static ColumnarVariable.Rows getRows(final List<Cell> cells, final Argument root, final int numColumns) {
+        long[] onsets = new long[cells.size()];
+        long[] offsets = new long[cells.size()];
+        for (int i = 0; i < onsets.length; i++) {
+            onsets[i] = cells.get(i).getOnset();
+            offsets[i] = cells.get(i).getOffset();
+        }
+
+        String[][] dictionaries = new String[numColumns][];
+        int[][] codes = new int[numColumns][cells.size()];
+        for (int column = 0; column < numColumns; column++) {
+            Map<String, Integer> dictionary = new LinkedHashMap<>();
+            dictionary.put(null, 0);
+            for (int i = 0; i < onsets.length; i++) {
+                CellValue value = cells.get(i).getCellValue();
+                if (root.type == Argument.Type.MATRIX) {
+                    value = ((MatrixCellValue) value).getArguments().get(column);
+                }
+                if (!value.isEmpty()) {
+                    Integer code = dictionary.get(value.toString());
+                    if (code == null) {
+                        code = dictionary.size();
+                        dictionary.put(value.toString(), code);
+                    }
+                    codes[column][i] = code;
+                }
+            }
+            dictionaries[column] = dictionary.keySet().toArray(new String[dictionary.size()]);
+        }
+        return new ColumnarVariable.Rows(onsets, offsets, dictionaries, codes);
+    }
+
+    /**
+     * A copy of a data store, see {@link #snapshot(DataStore)}.
+     */
+    public static final class Snapshot {
+        final List<VariableSnapshot> variables;
+
+        private Snapshot(final List<VariableSnapshot> variables) {
+            this.variables = variables;
+        }
+    }
+
+    /**
+     * A copy of a variable: either the block it was last saved to, or its cells.
+     */
+    static final class VariableSnapshot {
+        /** The variable that was copied. */
+        final Variable source;
+        final String name;
+        final String type;
+        final boolean hidden;
+        /** The name and type of each code of a matrix variable. */
+        final String[][] codes;
+        final int numColumns;
+        long changeCount;
+        BinaryDataStoreFormat.SavedBlock saved;
+        ColumnarVariable.Rows rows;
+
+        VariableSnapshot(final Variable source, final String name, final String type, final boolean hidden,
+                         final String[][] codes, final int numColumns) {
+            this.source = source;
+            this.name = name;
+            this.type = type;
+            this.hidden = hidden;
+            this.codes = codes;
+            this.numColumns = numColumns;
+        }
+    }
+
+    /**
+     * The block written for a variable.
+     */
+    private static final class WrittenBlock {
+        final Variable variable;
+        final long changeCount;
+        /** The saved block that was copied, null if the cells were encoded again. */
+        final BinaryDataStoreFormat.SavedBlock copied;
+        final long offset;
+        final long length;
+        final int numCells;
+        final int numColumns;
+
+        WrittenBlock(final Variable variable, final long changeCount, final BinaryDataStoreFormat.SavedBlock copied,
+                     final long offset, final long length, final int numCells, final int numColumns) {
+            this.variable = variable;
+            this.changeCount = changeCount;
+            this.copied = copied;
+            this.offset = offset;
+            this.length = length;
+            this.numCells = numCells;
+            this.numColumns = numColumns;
+        }
+    }
+}
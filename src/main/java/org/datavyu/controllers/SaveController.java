@@ -22,12 +22,17 @@ import org.datavyu.models.db.DataStore;
 import org.datavyu.models.db.UserWarningException;
 import org.datavyu.models.project.Project;
 import org.datavyu.models.project.ViewerSetting;
+import org.datavyu.util.FileSystemUtils;
 import org.jdesktop.application.Application;
 import org.jdesktop.application.ResourceMap;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -99,31 +104,49 @@ public final class SaveController {
         try {
             logger.info("Save project.");
 
-            FileOutputStream fos = new FileOutputStream(projectFile);
-            ZipOutputStream zos = new ZipOutputStream(fos);
-
-            ZipEntry projectEntry = new ZipEntry("project");
-            zos.putNextEntry(projectEntry);
-            new SaveProjectFileController().save(zos, project);
-            zos.closeEntry();
-
-            ZipEntry dbEntry = new ZipEntry("db");
-            zos.putNextEntry(dbEntry);
-            new SaveDataStoreFileController().saveAsCsv(zos, dataStore);
-            zos.closeEntry();
-
-            // BugzID:1806
-            for (ViewerSetting vs : project.getViewerSettings()) {
-                ZipEntry vsEntry = new ZipEntry(vs.getSettingsId());
-                zos.putNextEntry(vsEntry);
-                vs.writeSettings(zos);
+            if (projectFile.getName().endsWith(".opfb")) {
+                saveBinaryProject(projectFile, project, dataStore);
+                if (remember) {
+                    FileHistory.rememberProject(projectFile);
+                }
+                return;
             }
 
-            zos.finish();
-            zos.close();
-
-            fos.flush();
-            fos.close();
+            // Write next to the project first, a failed save leaves the previous version intact.
+            File tempFile = File.createTempFile(projectFile.getName(), ".tmp",
+                    projectFile.getAbsoluteFile().getParentFile());
+            try {
+                FileOutputStream fos = new FileOutputStream(tempFile);
+                ZipOutputStream zos = new ZipOutputStream(fos);
+
+                ZipEntry projectEntry = new ZipEntry("project");
+                zos.putNextEntry(projectEntry);
+                new SaveProjectFileController().save(zos, project);
+                zos.closeEntry();
+
+                ZipEntry dbEntry = new ZipEntry("db");
+                zos.putNextEntry(dbEntry);
+                new SaveDataStoreFileController().saveAsCsv(zos, dataStore);
+                zos.closeEntry();
+
+                // BugzID:1806
+                for (ViewerSetting vs : project.getViewerSettings()) {
+                    ZipEntry vsEntry = new ZipEntry(vs.getSettingsId());
+                    zos.putNextEntry(vsEntry);
+                    vs.writeSettings(zos);
+                }
+
+                zos.finish();
+                zos.close();
+
+                fos.flush();
+                fos.getFD().sync();
+                fos.close();
+
+                FileSystemUtils.replaceFile(tempFile, projectFile);
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
 
             if (remember) {
                 FileHistory.rememberProject(projectFile);
@@ -135,4 +158,38 @@ public final class SaveController {
             throw new UserWarningException(rMap.getString("UnableToSave.message", projectFile), e);
         }
     }
+
+    /**
+     * Saves an entire project in the binary project format, the project and viewer settings are kept as entries
+     * under the same names they have in a project archive.
+     *
+     * @param projectFile The destination to save the project too
+     * @param project The project to save to disk
+     * @param dataStore The dataStore to save to disk
+     * @throws IOException If unable to write the project
+     */
+    private void saveBinaryProject(final File projectFile, final Project project, final DataStore dataStore)
+            throws IOException {
+        new SaveBinaryDataStoreFileController().save(projectFile, dataStore, getProjectEntries(project));
+    }
+
+    /**
+     * @param project The project to save.
+     * @return The project and its viewer settings, by the names of their entries in a project file.
+     * @throws IOException If unable to write the viewer settings
+     */
+    Map<String, byte[]> getProjectEntries(final Project project) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+
+        ByteArrayOutputStream projectEntry = new ByteArrayOutputStream();
+        new SaveProjectFileController().save(projectEntry, project);
+        entries.put("project", projectEntry.toByteArray());
+
+        for (ViewerSetting vs : project.getViewerSettings()) {
+            ByteArrayOutputStream vsEntry = new ByteArrayOutputStream();
+            vs.writeSettings(vsEntry);
+            entries.put(vs.getSettingsId(), vsEntry.toByteArray());
+        }
+        return entries;
+    }
 }
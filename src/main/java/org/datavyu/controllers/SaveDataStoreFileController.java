@@ -18,11 +18,14 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.datavyu.Datavyu;
 import org.datavyu.models.db.*;
+import org.datavyu.util.FileSystemUtils;
 import org.datavyu.util.StringUtils;
 import org.jdesktop.application.Application;
 import org.jdesktop.application.ResourceMap;
 
+import java.awt.GraphicsEnvironment;
 import java.io.*;
+import java.nio.file.Files;
 
 
 /**
@@ -98,6 +101,7 @@ public final class SaveDataStoreFileController {
                 ps.println();
             }
         }
+        ps.flush();
     }
 
     /**
@@ -111,13 +115,35 @@ public final class SaveDataStoreFileController {
     public void saveAsCsv(final String outFile, final DataStore dataStore) throws UserWarningException {
 
         try {
-            FileOutputStream fos = new FileOutputStream(outFile);
-            saveAsCsv(fos, dataStore);
-            fos.close();
+            File destinationFile = new File(outFile);
+            File tempFile = File.createTempFile(destinationFile.getName(), ".tmp",
+                    destinationFile.getAbsoluteFile().getParentFile());
+            try {
+                FileOutputStream fos = new FileOutputStream(tempFile);
+                saveAsCsv(fos, dataStore);
+                fos.getFD().sync();
+                fos.close();
+                FileSystemUtils.replaceFile(tempFile, destinationFile);
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
         } catch (IOException ie) {
-            ResourceMap rMap = Application.getInstance(Datavyu.class)
-                    .getContext().getResourceMap(Datavyu.class);
-            throw new UserWarningException(rMap.getString("UnableToSave.message", outFile), ie);
+            throw unableToSave(outFile, ie);
         }
     }
-}
+
+    /**
+     * Creates the warning shown when a file can not be saved. Without a display there is no application to look the
+     * message up in, see BatchExport, so a plain message is used.
+     *
+     * @param fileName The name of the file that could not be saved.
+     * @param cause The cause of the failure.
+     * @return The warning for the user.
+     */
+    static UserWarningException unableToSave(final String fileName, final Exception cause) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new UserWarningException("Unable to save '" + fileName + "': " + cause.getMessage(), cause);
+        }
+        ResourceMap rMap = Application.getInstance(Datavyu.class).getContext().getResourceMap(Datavyu.class);
+        return new UserWarningException(rMap.getString("UnableToSave.message", fileName), cause);
+    }}
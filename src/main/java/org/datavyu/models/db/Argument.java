@@ -25,6 +25,7 @@ package org.datavyu.models.db;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SortedMap;
 
 /**
  * The arguments held within a matrix.
@@ -51,6 +52,9 @@ public final class Argument implements Serializable {
 
     private int lastCodeNumber = 0;
 
+    // The dictionary of the values of this argument, shared by all the cells of the variable
+    private transient SymbolTable symbolTable;
+
     /**
      * Constructor.
      *
@@ -82,6 +86,44 @@ public final class Argument implements Serializable {
         return child;
     }
 
+    /**
+     * @return The dictionary of the values of this argument.
+     */
+    synchronized SymbolTable getSymbolTable() {
+        if (symbolTable == null) {
+            symbolTable = new SymbolTable();
+        }
+        return symbolTable;
+    }
+
+    /**
+     * Values are only tracked for nominal arguments.
+     *
+     * @return The number of cells with each value of this argument, ordered by value.
+     */
+    public SortedMap<String, Integer> getValueFrequencies() {
+        return getSymbolTable().getFrequencies();
+    }
+
+    /**
+     * Values are only tracked for nominal arguments.
+     *
+     * @return The distinct values of this argument, ordered by value.
+     */
+    public List<String> getDistinctValues() {
+        return getSymbolTable().getDistinctValues();
+    }
+
+    /**
+     * Values are only tracked for nominal arguments.
+     *
+     * @param value The value to look up.
+     * @return The number of cells with the value.
+     */
+    public int getValueFrequency(final String value) {
+        return getSymbolTable().getFrequency(value);
+    }
+
     public void clearChildArguments() {
         childArguments.clear();
     }
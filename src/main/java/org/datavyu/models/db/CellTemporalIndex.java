@@ -0,0 +1,393 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.models.db;
+
+import java.util.*;
+
+/**
+ * Temporal index over the cells of a single variable.
+ *
+ * The index is an AVL tree ordered by (onset, offset, insertion order) where every node is augmented with the size
+ * and the maximum offset of its subtree. This gives O(log n) access to the n-th cell temporally and O(log n + k)
+ * point and range queries, where k is the number of cells reported.
+ *
+ * The tree keeps its own copy of the onset and offset of each cell, so the owning variable must call
+ * {@link #update(Cell)} whenever the onset or offset of an indexed cell changes.
+ */
+final class CellTemporalIndex {
+
+    /** Node of the augmented interval tree. */
+    private static final class Node {
+        final Cell cell;
+        final long sequence;
+        long onset;
+        long offset;
+        long maxOffset;
+        int height;
+        int size;
+        Node left;
+        Node right;
+
+        Node(final Cell cell, final long sequence) {
+            this.cell = cell;
+            this.sequence = sequence;
+            reset();
+        }
+
+        /** Copies the times from the cell and detaches the node, ready to be (re)inserted. */
+        void reset() {
+            onset = cell.getOnset();
+            offset = cell.getOffset();
+            maxOffset = offset;
+            height = 1;
+            size = 1;
+            left = null;
+            right = null;
+        }
+    }
+
+    /** Root of the tree, null when the index is empty. */
+    private Node root = null;
+
+    /** Lookup of the tree node for each indexed cell. */
+    private final Map<Cell, Node> nodes = new IdentityHashMap<>();
+
+    /** The cells in temporal order, null when the index has changed since the last snapshot. */
+    private List<Cell> snapshot = null;
+
+    /** Insertion counter, used to break ties between cells with the same onset and offset. */
+    private long nextSequence = 0L;
+
+    /**
+     * Adds a cell to the index, does nothing if the cell is already indexed.
+     *
+     * @param cell The cell to add.
+     */
+    synchronized void add(final Cell cell) {
+        if (!nodes.containsKey(cell)) {
+            Node node = new Node(cell, nextSequence++);
+            nodes.put(cell, node);
+            root = insert(root, node);
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Removes a cell from the index.
+     *
+     * @param cell The cell to remove.
+     */
+    synchronized void remove(final Cell cell) {
+        Node node = nodes.remove(cell);
+        if (node != null) {
+            root = delete(root, node);
+            snapshot = null;
+        }
+    }
+
+    /**
+     * Repositions a cell in the index after its onset or offset has changed.
+     *
+     * @param cell The cell whose times have changed.
+     */
+    synchronized void update(final Cell cell) {
+        Node node = nodes.get(cell);
+        if (node != null && (node.onset != cell.getOnset() || node.offset != cell.getOffset())) {
+            root = delete(root, node);
+            node.reset();
+            root = insert(root, node);
+            snapshot = null;
+        }
+    }
+
+    /**
+     * @param cell The cell to look for.
+     * @return True if the cell is in the index, false otherwise.
+     */
+    synchronized boolean contains(final Cell cell) {
+        return nodes.containsKey(cell);
+    }
+
+    /**
+     * Removes all the cells from the index.
+     */
+    synchronized void clear() {
+        root = null;
+        nodes.clear();
+        snapshot = null;
+    }
+
+    /**
+     * @return The number of cells in the index.
+     */
+    synchronized int size() {
+        return size(root);
+    }
+
+    /**
+     * @param index The position of the cell from first onset to last offset.
+     * @return The cell at the supplied position.
+     * @throws IndexOutOfBoundsException If the index is not within [0, size).
+     */
+    synchronized Cell get(final int index) {
+        if (index < 0 || index >= size(root)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+        }
+
+        Node node = root;
+        int remaining = index;
+        while (true) {
+            int leftSize = size(node.left);
+            if (remaining < leftSize) {
+                node = node.left;
+            } else if (remaining == leftSize) {
+                return node.cell;
+            } else {
+                remaining -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * @return An immutable snapshot of all the indexed cells in temporal order, shared until the index changes.
+     */
+    synchronized List<Cell> getCells() {
+        if (snapshot == null) {
+            List<Cell> result = new ArrayList<>(size(root));
+            collect(root, result);
+            snapshot = new Snapshot(result.toArray(new Cell[result.size()]));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Finds the cells that overlap the closed interval [start, end], i.e. cells with an onset at or before end and an
+     * offset at or after start.
+     *
+     * @param start The start of the interval in milliseconds.
+     * @param end The end of the interval in milliseconds.
+     * @return The overlapping cells in temporal order.
+     */
+    synchronized List<Cell> getOverlapping(final long start, final long end) {
+        List<Cell> result = new ArrayList<>();
+        if (start <= end) {
+            collectOverlapping(root, start, end, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param time The time in milliseconds.
+     * @return The first cell in temporal order with an onset strictly after time, null if there is no such cell.
+     */
+    synchronized Cell getNextAfter(final long time) {
+        Node node = root;
+        Node candidate = null;
+        while (node != null) {
+            if (node.onset > time) {
+                candidate = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return candidate == null ? null : candidate.cell;
+    }
+
+    /**
+     * Immutable list of cells in temporal order; the position of each cell is looked up once and then cached.
+     */
+    private static final class Snapshot extends AbstractList<Cell> implements RandomAccess {
+        private final Cell[] cells;
+        private Map<Cell, Integer> positions;
+
+        Snapshot(final Cell[] cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public Cell get(final int index) {
+            return cells[index];
+        }
+
+        @Override
+        public int size() {
+            return cells.length;
+        }
+
+        @Override
+        public synchronized int indexOf(final Object o) {
+            if (positions == null) {
+                positions = new HashMap<>(cells.length * 2);
+                for (int i = cells.length - 1; i >= 0; i--) {
+                    positions.put(cells[i], i);
+                }
+            }
+            Integer position = positions.get(o);
+            return position == null ? -1 : position;
+        }
+
+        @Override
+        public int lastIndexOf(final Object o) {
+            return indexOf(o);
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return indexOf(o) >= 0;
+        }
+    }
+
+    private static void collect(final Node node, final List<Cell> result) {
+        if (node != null) {
+            collect(node.left, result);
+            result.add(node.cell);
+            collect(node.right, result);
+        }
+    }
+
+    private static void collectOverlapping(final Node node, final long start, final long end,
+                                           final List<Cell> result) {
+        // Nothing in this subtree finishes at or after the start of the interval.
+        if (node == null || node.maxOffset < start) {
+            return;
+        }
+
+        collectOverlapping(node.left, start, end, result);
+
+        // This node and everything to its right starts after the interval.
+        if (node.onset > end) {
+            return;
+        }
+
+        if (node.offset >= start) {
+            result.add(node.cell);
+        }
+
+        collectOverlapping(node.right, start, end, result);
+    }
+
+    private static int compare(final Node n1, final Node n2) {
+        int result = Long.compare(n1.onset, n2.onset);
+        if (result == 0) {
+            result = Long.compare(n1.offset, n2.offset);
+        }
+        if (result == 0) {
+            result = Long.compare(n1.sequence, n2.sequence);
+        }
+        return result;
+    }
+
+    private static int size(final Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int height(final Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static Node refresh(final Node node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        node.size = size(node.left) + size(node.right) + 1;
+        node.maxOffset = node.offset;
+        if (node.left != null) {
+            node.maxOffset = Math.max(node.maxOffset, node.left.maxOffset);
+        }
+        if (node.right != null) {
+            node.maxOffset = Math.max(node.maxOffset, node.right.maxOffset);
+        }
+        return node;
+    }
+
+    private static Node rotateLeft(final Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = refresh(node);
+        return refresh(pivot);
+    }
+
+    private static Node rotateRight(final Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = refresh(node);
+        return refresh(pivot);
+    }
+
+    private static Node balance(final Node node) {
+        refresh(node);
+        int balance = height(node.left) - height(node.right);
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        } else if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static Node insert(final Node node, final Node newNode) {
+        if (node == null) {
+            return newNode;
+        }
+        if (compare(newNode, node) < 0) {
+            node.left = insert(node.left, newNode);
+        } else {
+            node.right = insert(node.right, newNode);
+        }
+        return balance(node);
+    }
+
+    private static Node delete(final Node node, final Node target) {
+        if (node == null) {
+            return null;
+        }
+        if (node == target) {
+            if (node.left == null) {
+                return node.right;
+            } else if (node.right == null) {
+                return node.left;
+            }
+
+            // Replace the target with its in-order successor.
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = deleteMin(node.right);
+            successor.left = node.left;
+            return balance(successor);
+        }
+        if (compare(target, node) < 0) {
+            node.left = delete(node.left, target);
+        } else {
+            node.right = delete(node.right, target);
+        }
+        return balance(node);
+    }
+
+    private static Node deleteMin(final Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = deleteMin(node.left);
+        return balance(node);
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.models.db;
+
+/**
+ * View of a single row of a {@link ColumnarVariable}.
+ *
+ * Views hold no state of their own; any number of them can exist for the same row and they are all equal.
+ */
+final class ColumnarCell implements Cell {
+
+    final ColumnarVariable variable;
+    final int row;
+
+    ColumnarCell(final ColumnarVariable variable, final int row) {
+        this.variable = variable;
+        this.row = row;
+    }
+
+    @Override
+    public Variable getVariable() {
+        return variable;
+    }
+
+    @Override
+    public String getOffsetString() {
+        return DatavyuCell.convertMStoTimestamp(getOffset());
+    }
+
+    @Override
+    public long getOffset() {
+        return variable.getOffset(row);
+    }
+
+    @Override
+    public void setOffset(final long newOffset) {
+        variable.setOffset(row, newOffset);
+    }
+
+    @Override
+    public void setOffset(final String newOffset) {
+        setOffset(DatavyuCell.convertTimestampToMS(newOffset));
+    }
+
+    @Override
+    public Cell getFreshCell() {
+        return this;
+    }
+
+    @Override
+    public long getOnset() {
+        return variable.getOnset(row);
+    }
+
+    @Override
+    public void setOnset(final String newOnset) {
+        setOnset(DatavyuCell.convertTimestampToMS(newOnset));
+    }
+
+    @Override
+    public void setOnset(final long newOnset) {
+        variable.setOnset(row, newOnset);
+    }
+
+    @Override
+    public String getOnsetString() {
+        return DatavyuCell.convertMStoTimestamp(getOnset());
+    }
+
+    @Override
+    public String getValueAsString() {
+        return getCellValue().toString();
+    }
+
+    @Override
+    public CellValue getCellValue() {
+        return variable.getCellValue(row);
+    }
+
+    @Override
+    public boolean isSelected() {
+        return variable.isSelected(row);
+    }
+
+    @Override
+    public void setSelected(final boolean selected) {
+        variable.setSelectedFlag(row, selected);
+        if (!selected) {
+            setHighlighted(false);
+        }
+
+        for (CellListener cl : variable.getCellListeners(row)) {
+            cl.selectionChange(selected);
+            if (!selected) {
+                cl.highlightingChange(false);
+            }
+        }
+    }
+
+    @Override
+    public boolean isHighlighted() {
+        return variable.isHighlighted(row);
+    }
+
+    @Override
+    public void setHighlighted(final boolean highlighted) {
+        variable.setHighlightedFlag(row, highlighted);
+
+        if (highlighted) {
+            setSelected(highlighted);
+        }
+
+        for (CellListener cl : variable.getCellListeners(row)) {
+            cl.highlightingChange(highlighted);
+        }
+    }
+
+    /**
+     * Codes are shared by all the cells of a columnar variable, so this adds the code to every cell of the variable.
+     */
+    @Override
+    public void addMatrixValue(final Argument type) {
+        variable.addArgument(type);
+    }
+
+    /**
+     * Codes are shared by all the cells of a columnar variable, so this moves the code in every cell of the variable.
+     */
+    @Override
+    public void moveMatrixValue(final int oldIndex, final int newIndex) {
+        variable.moveArgument(oldIndex, newIndex);
+    }
+
+    /**
+     * Codes are shared by all the cells of a columnar variable, so this removes the code from every cell of the
+     * variable.
+     */
+    @Override
+    public void removeMatrixValue(final int index) {
+        variable.removeArgument(variable.getRootNode().childArguments.get(index).name);
+    }
+
+    @Override
+    public void setMatrixValue(final int index, final String value) {
+        getMatrixValue(index).set(value);
+    }
+
+    @Override
+    public CellValue getMatrixValue(final int index) {
+        return variable.getColumnValue(row, index);
+    }
+
+    @Override
+    public void clearMatrixValue(final int index) {
+        getMatrixValue(index).clear();
+    }
+
+    @Override
+    public void addListener(final CellListener cellListener) {
+        variable.addCellListener(row, cellListener);
+    }
+
+    @Override
+    public void removeListener(final CellListener cellListener) {
+        variable.removeCellListener(row, cellListener);
+    }
+
+    @Override
+    public String getCellId() {
+        return variable.getCellId(row);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * variable.hashCode() + row;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ColumnarCell)) {
+            return false;
+        }
+        ColumnarCell otherC = (ColumnarCell) other;
+        return otherC.variable == variable && otherC.row == row;
+    }
+
+    @Override
+    public boolean isInTimeWindow(long time) {
+        return time >= getOnset() && time <= getOffset();
+    }
+
+    @Override
+    public boolean isPastTimeWindow(long time) {
+        return time > Math.max(getOnset(), getOffset());
+    }
+
+    @Override
+    /* Print string representation of this cell. */
+    public String toString() {
+        return "[" + getOnset() + "," + getOffset() + "," + getValueAsString() + "]";
+    }
+}
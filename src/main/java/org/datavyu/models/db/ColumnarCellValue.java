@@ -0,0 +1,80 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.models.db;
+
+import org.datavyu.util.StringUtils;
+
+/**
+ * View of a single code of a row of a {@link ColumnarVariable}.
+ */
+abstract class ColumnarCellValue implements CellValue {
+
+    final ColumnarVariable variable;
+    final int row;
+    final int column;
+
+    ColumnarCellValue(final ColumnarVariable variable, final int row, final int column) {
+        this.variable = variable;
+        this.row = row;
+        this.column = column;
+    }
+
+    @Override
+    public boolean isValid(final String value) {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        variable.setValue(row, column, null);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        String value = variable.getValue(row, column);
+        return value == null || value.isEmpty();
+    }
+
+    @Override
+    public void set(final String newValue) {
+        String value = variable.getValue(row, column);
+        if (!newValue.equals(value == null ? "" : value)) {
+            variable.setValue(row, column, newValue);
+        }
+    }
+
+    @Override
+    public Argument getArgument() {
+        return variable.getColumnArgument(column);
+    }
+
+    @Override
+    public String toString() {
+        String value = variable.getValue(row, column);
+        return value == null ? "" : value;
+    }
+
+    @Override
+    public String getPlaceholderString() {
+        return "<" + getArgument().name + ">";
+    }
+
+    @Override
+    public String serialize() {
+        String value = variable.getValue(row, column);
+        if (value == null) return "";
+        return StringUtils.escapeCSVArgument(value);
+    }
+}
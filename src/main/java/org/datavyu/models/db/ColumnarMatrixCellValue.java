@@ -0,0 +1,145 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.models.db;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * View of the codes of a row of a matrix {@link ColumnarVariable}.
+ */
+final class ColumnarMatrixCellValue implements MatrixCellValue {
+
+    private static Logger logger = LogManager.getLogger(ColumnarMatrixCellValue.class);
+
+    private final ColumnarVariable variable;
+    private final int row;
+
+    ColumnarMatrixCellValue(final ColumnarVariable variable, final int row) {
+        this.variable = variable;
+        this.row = row;
+    }
+
+    @Override
+    public boolean isValid(final String value) {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (CellValue v : getArguments()) {
+            v.clear();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (CellValue v : getArguments()) {
+            if (!v.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void set(String value) {
+        if (value.startsWith("(") && value.endsWith(")")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        String[] args = value.split(",", -1);
+        List<CellValue> cellValues = getArguments();
+
+        // Handle legacy variable types
+        if (cellValues.size() == 1 && cellValues.get(0).getArgument().type != Argument.Type.MATRIX) {
+            cellValues.get(0).set(value);
+        } else {
+            if (args.length != cellValues.size()) {
+                logger.error("Arg list and value list are different sizes, cannot undo.");
+            }
+            for (int i = 0; i < args.length && i < cellValues.size(); i++) {
+                cellValues.get(i).set(args[i]);
+            }
+        }
+    }
+
+    @Override
+    public Argument getArgument() {
+        return variable.getRootNode();
+    }
+
+    @Override
+    public List<CellValue> getArguments() {
+        int numArguments = variable.getRootNode().childArguments.size();
+        List<CellValue> result = new ArrayList<>(numArguments);
+        for (int i = 0; i < numArguments; i++) {
+            result.add(variable.getColumnValue(row, i));
+        }
+        return result;
+    }
+
+    /**
+     * Codes are stored per variable, use {@link Variable#addArgument(Argument.Type)} to add one.
+     *
+     * @return The value of the supplied argument in this row, null if the variable has no such argument.
+     */
+    @Override
+    public CellValue createArgument(final Argument arg) {
+        int index = variable.getRootNode().childArguments.indexOf(arg);
+        return index < 0 ? null : variable.getColumnValue(row, index);
+    }
+
+    /**
+     * Codes are stored per variable, use {@link Variable#removeArgument(String)} to remove one.
+     */
+    @Override
+    public void removeArgument(final int index) {
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("(");
+        for (Iterator<CellValue> i = getArguments().iterator(); i.hasNext(); ) {
+            result.append(i.next().toString());
+            if (i.hasNext())
+                result.append(',');
+        }
+        result.append(')');
+
+        return result.toString();
+    }
+
+    @Override
+    public String serialize() {
+        StringBuilder result = new StringBuilder("(");
+        for (Iterator<CellValue> i = getArguments().iterator(); i.hasNext(); ) {
+            result.append(i.next().serialize());
+            if (i.hasNext())
+                result.append(',');
+        }
+        result.append(')');
+
+        return result.toString();
+    }
+
+    @Override
+    public String getPlaceholderString() {
+        return "<" + getArgument().name + ">";
+    }
+}
@@ -0,0 +1,1207 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.models.db;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * A variable that stores its cells column-wise in primitive arrays.
+ *
+ * Every cell is a row: onsets and offsets are held in long arrays and each code is held as an int array of ids into a
+ * {@link SymbolTable}. The {@link Cell} and {@link CellValue} objects handed out by this variable are lightweight
+ * views over a row that are created on demand. Rows are never moved or reused, so any view of a removed cell still
+ * reads the values it had when it was removed and can be added back to the variable (for undo). The rows of removed
+ * cells are dropped when the project is saved and opened again.
+ *
+ * The rows of a variable that has been read from a binary file can be left encoded until they are first needed, see
+ * {@link #setPendingRows(PendingRows)}. Until then the values of the variable are not part of the value frequencies
+ * of its arguments.
+ */
+public final class ColumnarVariable implements Variable, BulkLoadTarget {
+
+    private static Logger logger = LogManager.getLogger(ColumnarVariable.class);
+    private static final int INITIAL_CAPACITY = 16;
+
+    final private UUID variableId = IdGenerator.toUUID(IdGenerator.nextId());
+    private final ListenerList<VariableListener> listeners = new ListenerList<>();
+    private Argument rootNodeArgument = null;
+    private Boolean selected;
+    private Boolean hidden;
+    private String name;
+    private int orderIndex = -1;
+    private DatavyuDataStore owningDatastore;
+
+    // Row storage, shared by live and removed cells
+    private int numRows = 0;
+    private long[] onsets = new long[INITIAL_CAPACITY];
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    private final BitSet liveRows = new BitSet();
+    private final BitSet selectedRows = new BitSet();
+    private final BitSet highlightedRows = new BitSet();
+    // One column of code ids per child argument of a matrix variable, a single column otherwise
+    private final List<CodeColumn> codeColumns = new ArrayList<>();
+
+    // Live rows in insertion order
+    private int[] cellOrder = new int[INITIAL_CAPACITY];
+    private int numCells = 0;
+
+    // Snapshots of the live rows, rebuilt on demand after a change
+    private List<Cell> cellsSnapshot = null;
+    private int[] temporalOrder = null;
+    private long[] maxOffsets = null;
+    private List<Cell> temporalSnapshot = null;
+
+    // Listeners of the cells that have any, by row
+    private final Map<Integer, ListenerList<CellListener>> cellListeners = new HashMap<>();
+    // Cells created during a bulk load that listeners have not been told about yet
+    private final List<Cell> unpublishedCells = new ArrayList<>();
+    // Rows that have not been decoded yet, null once all the rows are in memory
+    private PendingRows pendingRows = null;
+    // Bumped whenever the cells or codes change, so copies saved earlier can be told apart from current ones
+    private long changeCount = 0L;
+
+    /**
+     * Rows of a variable that are kept encoded until they are first needed.
+     */
+    public interface PendingRows {
+
+        /**
+         * Decodes the rows and appends them to the variable, see {@link #appendRows}.
+         *
+         * @param variable The variable to append the rows to.
+         */
+        void decodeInto(ColumnarVariable variable);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name          The name to use for the variable being constructed.
+     * @param type          The type to use for the variable being constructed.
+     * @param grandfathered Flag to exempt variable from naming rules.
+     * @param dds           The datastore to which this variable belongs
+     */
+    public ColumnarVariable(String name,
+                            Argument type,
+                            boolean grandfathered,
+                            DatavyuDataStore dds) throws UserWarningException {
+        owningDatastore = dds;
+        this.setName(name, grandfathered);
+        this.setRootNode(type);
+        this.setHidden(false);
+        this.setSelected(true);
+        owningDatastore.markAsChanged();
+    }
+
+    /**
+     * @return The internal Identifier for this variable.
+     */
+    public UUID getID() {
+        return variableId;
+    }
+
+    @Override
+    public DataStore getOwningDatastore() {
+        return owningDatastore;
+    }
+
+    @Override
+    public void addCell(final Cell cell) {
+        if (!(cell instanceof ColumnarCell) || ((ColumnarCell) cell).variable != this) {
+            logger.error("Unable to add a cell that was not created by this variable.");
+            return;
+        }
+
+        int row = ((ColumnarCell) cell).row;
+        synchronized (this) {
+            if (liveRows.get(row)) {
+                return;
+            }
+            appendLiveRow(row);
+            for (CodeColumn column : codeColumns) {
+                column.count(row);
+            }
+        }
+        owningDatastore.trackCell(cell);
+        cellInserted(cell);
+    }
+
+    @Override
+    public Cell createCell() {
+        int row;
+        synchronized (this) {
+            loadPendingRows();
+            if (numRows == onsets.length) {
+                onsets = Arrays.copyOf(onsets, numRows * 2);
+                offsets = Arrays.copyOf(offsets, numRows * 2);
+            }
+            row = numRows++;
+            selectedRows.set(row);
+            highlightedRows.set(row);
+            appendLiveRow(row);
+        }
+
+        Cell c = new ColumnarCell(this, row);
+        owningDatastore.trackCell(c);
+        cellInserted(c);
+        return c;
+    }
+
+    private void appendLiveRow(final int row) {
+        if (numCells == cellOrder.length) {
+            cellOrder = Arrays.copyOf(cellOrder, numCells * 2);
+        }
+        cellOrder[numCells++] = row;
+        liveRows.set(row);
+        cellsChanged();
+    }
+
+    private void cellInserted(final Cell cell) {
+        rowsChanged();
+        if (owningDatastore.isBulkLoading()) {
+            synchronized (this) {
+                unpublishedCells.add(cell);
+            }
+            return;
+        }
+
+        for (VariableListener vl : listeners) {
+            vl.cellInserted(cell);
+        }
+    }
+
+    @Override
+    public void publishBufferedCells() {
+        List<Cell> newCells;
+        synchronized (this) {
+            if (unpublishedCells.isEmpty()) {
+                return;
+            }
+            newCells = Collections.unmodifiableList(new ArrayList<>(unpublishedCells));
+            unpublishedCells.clear();
+        }
+
+        for (VariableListener vl : listeners) {
+            vl.cellsInserted(newCells);
+        }
+    }
+
+    @Override
+    public void removeCell(final Cell cell) {
+        if (!contains(cell)) {
+            return;
+        }
+
+        boolean unpublished;
+        synchronized (this) {
+            int row = ((ColumnarCell) cell).row;
+            int position = numCells - 1;
+            while (cellOrder[position] != row) {
+                position--;
+            }
+            System.arraycopy(cellOrder, position + 1, cellOrder, position, numCells - position - 1);
+            numCells--;
+            liveRows.clear(row);
+            for (CodeColumn column : codeColumns) {
+                column.uncount(row);
+            }
+            cellsChanged();
+
+            // Listeners never heard of cells that were created and removed within the same bulk load.
+            unpublished = unpublishedCells.remove(cell);
+        }
+
+        owningDatastore.untrackCell(cell);
+        rowsChanged();
+        if (!unpublished) {
+            for (VariableListener vl : listeners) {
+                vl.cellRemoved(cell);
+            }
+        }
+    }
+
+    @Override
+    public void removeCells(final Collection<Cell> cells) {
+        List<Cell> removedCells = new ArrayList<>();
+        List<Cell> deletedCells = new ArrayList<>();
+        synchronized (this) {
+            BitSet removedRows = new BitSet();
+            for (Cell cell : cells) {
+                if (cell instanceof ColumnarCell && ((ColumnarCell) cell).variable == this
+                        && liveRows.get(((ColumnarCell) cell).row) && !removedRows.get(((ColumnarCell) cell).row)) {
+                    int row = ((ColumnarCell) cell).row;
+                    removedRows.set(row);
+                    removedCells.add(cell);
+                    liveRows.clear(row);
+                    for (CodeColumn column : codeColumns) {
+                        column.uncount(row);
+                    }
+
+                    // Listeners never heard of cells that were created and removed within the same bulk load.
+                    if (unpublishedCells.isEmpty() || !unpublishedCells.remove(cell)) {
+                        deletedCells.add(cell);
+                    }
+                }
+            }
+            if (removedRows.isEmpty()) {
+                return;
+            }
+
+            int kept = 0;
+            for (int i = 0; i < numCells; i++) {
+                if (!removedRows.get(cellOrder[i])) {
+                    cellOrder[kept++] = cellOrder[i];
+                }
+            }
+            numCells = kept;
+            cellsChanged();
+        }
+
+        for (Cell cell : removedCells) {
+            owningDatastore.untrackCell(cell);
+        }
+
+        rowsChanged();
+        if (!deletedCells.isEmpty()) {
+            deletedCells = Collections.unmodifiableList(deletedCells);
+            for (VariableListener vl : listeners) {
+                vl.cellsRemoved(deletedCells);
+            }
+        }
+    }
+
+    @Override
+    public synchronized List<Cell> getCells() {
+        loadPendingRows();
+        if (cellsSnapshot == null) {
+            cellsSnapshot = new CellList(Arrays.copyOf(cellOrder, numCells));
+        }
+        return cellsSnapshot;
+    }
+
+    @Override
+    public synchronized Cell getCellTemporally(final int index) {
+        updateTemporalOrder();
+        if (index < 0 || index >= numCells) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numCells);
+        }
+        return new ColumnarCell(this, temporalOrder[index]);
+    }
+
+    @Override
+    public synchronized List<Cell> getCellsTemporally() {
+        updateTemporalOrder();
+        if (temporalSnapshot == null) {
+            temporalSnapshot = new CellList(temporalOrder);
+        }
+        return temporalSnapshot;
+    }
+
+    @Override
+    public List<Cell> getCellsAt(final long time) {
+        return getCellsOverlapping(time, time);
+    }
+
+    @Override
+    public synchronized List<Cell> getCellsOverlapping(final long start, final long end) {
+        List<Cell> result = new ArrayList<>();
+        if (start > end) {
+            return result;
+        }
+
+        updateTemporalOrder();
+
+        // The first cell whose offset, or the offset of a cell before it, reaches the start of the range.
+        int low = 0;
+        int high = numCells;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (maxOffsets[mid] < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        for (int i = low; i < numCells && onsets[temporalOrder[i]] <= end; i++) {
+            if (offsets[temporalOrder[i]] >= start) {
+                result.add(new ColumnarCell(this, temporalOrder[i]));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Cell getNextCellAfter(final long time) {
+        updateTemporalOrder();
+
+        int low = 0;
+        int high = numCells;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (onsets[temporalOrder[mid]] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < numCells ? new ColumnarCell(this, temporalOrder[low]) : null;
+    }
+
+    @Override
+    public boolean contains(final Cell c) {
+        if (!(c instanceof ColumnarCell) || ((ColumnarCell) c).variable != this) {
+            return false;
+        }
+        synchronized (this) {
+            return liveRows.get(((ColumnarCell) c).row);
+        }
+    }
+
+    /**
+     * Counts a change to the cells or codes and marks the data store as changed.
+     */
+    private void rowsChanged() {
+        synchronized (this) {
+            changeCount++;
+        }
+        owningDatastore.markAsChanged();
+    }
+
+    /**
+     * Counts a change to the onset, offset or values of a row and tells the listeners.
+     */
+    private void rowChanged(final int row) {
+        rowsChanged();
+        Cell cell = new ColumnarCell(this, row);
+        for (VariableListener vl : listeners) {
+            vl.cellChanged(cell);
+        }
+    }
+
+    @Override
+    public synchronized long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Discards the snapshots of the live rows after cells have been inserted or removed.
+     */
+    private void cellsChanged() {
+        cellsSnapshot = null;
+        temporalOrder = null;
+        temporalSnapshot = null;
+    }
+
+    /**
+     * Sorts the live rows by onset, offset and row after a change, along with the running maximum of their offsets.
+     */
+    private void updateTemporalOrder() {
+        loadPendingRows();
+        if (temporalOrder != null) {
+            return;
+        }
+
+        int[] rows = Arrays.copyOf(cellOrder, numCells);
+        int[] buffer = new int[numCells];
+        for (int width = 1; width < numCells; width *= 2) {
+            for (int low = 0; low < numCells - width; low += 2 * width) {
+                merge(rows, buffer, low, low + width, Math.min(low + 2 * width, numCells));
+            }
+        }
+
+        maxOffsets = new long[numCells];
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < numCells; i++) {
+            max = Math.max(max, offsets[rows[i]]);
+            maxOffsets[i] = max;
+        }
+        temporalOrder = rows;
+    }
+
+    /**
+     * @param row A live row.
+     * @return The position of the row in the temporal order, -1 if the order has to be sorted again anyway.
+     */
+    private int findTemporalPosition(final int row) {
+        if (temporalOrder == null) {
+            return -1;
+        }
+        int low = 0;
+        int high = numCells - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int result = compareRows(temporalOrder[mid], row);
+            if (result < 0) {
+                low = mid + 1;
+            } else if (result > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves a row whose onset or offset changed to its new place in the temporal order, rather than sorting all the
+     * rows again, and updates the running maximum of the offsets from the first position that moved.
+     *
+     * @param row The row that changed.
+     * @param from The position of the row in the temporal order before it changed, see {@link #findTemporalPosition}.
+     */
+    private void moveInTemporalOrder(final int row, final int from) {
+        if (from < 0) {
+            temporalOrder = null;
+            temporalSnapshot = null;
+            return;
+        }
+        // The snapshot handed out shares the order and must not change.
+        if (temporalSnapshot != null) {
+            temporalOrder = temporalOrder.clone();
+            temporalSnapshot = null;
+        }
+
+        // The position among the other rows, as if the row had been taken out of the order.
+        int low = 0;
+        int high = numCells - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareRows(temporalOrder[mid < from ? mid : mid + 1], row) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int to = low;
+        if (to > from) {
+            System.arraycopy(temporalOrder, from + 1, temporalOrder, from, to - from);
+        } else if (to < from) {
+            System.arraycopy(temporalOrder, to, temporalOrder, to + 1, from - to);
+        }
+        temporalOrder[to] = row;
+
+        int start = Math.min(from, to);
+        long max = start > 0 ? maxOffsets[start - 1] : Long.MIN_VALUE;
+        for (int i = start; i < numCells; i++) {
+            max = Math.max(max, offsets[temporalOrder[i]]);
+            maxOffsets[i] = max;
+        }
+    }
+
+    private void merge(final int[] rows, final int[] buffer, final int low, final int mid, final int high) {
+        System.arraycopy(rows, low, buffer, low, high - low);
+        int i = low;
+        int j = mid;
+        for (int k = low; k < high; k++) {
+            if (j >= high || (i < mid && compareRows(buffer[i], buffer[j]) <= 0)) {
+                rows[k] = buffer[i++];
+            } else {
+                rows[k] = buffer[j++];
+            }
+        }
+    }
+
+    private int compareRows(final int row1, final int row2) {
+        int result = Long.compare(onsets[row1], onsets[row2]);
+        if (result == 0) {
+            result = Long.compare(offsets[row1], offsets[row2]);
+        }
+        if (result == 0) {
+            result = Integer.compare(row1, row2);
+        }
+        return result;
+    }
+
+    // *************************************************************************
+    // Row access for the cell and value views
+    // *************************************************************************
+
+    synchronized long getOnset(final int row) {
+        return onsets[row];
+    }
+
+    synchronized long getOffset(final int row) {
+        return offsets[row];
+    }
+
+    void setOnset(final int row, final long newOnset) {
+        boolean changed;
+        synchronized (this) {
+            changed = onsets[row] != newOnset;
+            if (changed) {
+                int position = findTemporalPosition(row);
+                onsets[row] = newOnset;
+                moveInTemporalOrder(row, position);
+            }
+        }
+        if (changed) {
+            rowChanged(row);
+        }
+        for (CellListener cl : getCellListeners(row)) {
+            cl.onsetChanged(newOnset);
+        }
+    }
+
+    void setOffset(final int row, final long newOffset) {
+        boolean changed;
+        synchronized (this) {
+            changed = offsets[row] != newOffset;
+            if (changed) {
+                int position = findTemporalPosition(row);
+                offsets[row] = newOffset;
+                moveInTemporalOrder(row, position);
+            }
+        }
+        if (changed) {
+            rowChanged(row);
+        }
+        for (CellListener cl : getCellListeners(row)) {
+            cl.offsetChanged(newOffset);
+        }
+    }
+
+    synchronized boolean isSelected(final int row) {
+        return selectedRows.get(row);
+    }
+
+    void setSelectedFlag(final int row, final boolean isSelected) {
+        synchronized (this) {
+            selectedRows.set(row, isSelected);
+        }
+        owningDatastore.cellSelectionChanged(new ColumnarCell(this, row), isSelected);
+    }
+
+    synchronized boolean isHighlighted(final int row) {
+        return highlightedRows.get(row);
+    }
+
+    void setHighlightedFlag(final int row, final boolean isHighlighted) {
+        synchronized (this) {
+            highlightedRows.set(row, isHighlighted);
+        }
+        owningDatastore.cellHighlightingChanged(new ColumnarCell(this, row), isHighlighted);
+    }
+
+    /**
+     * @param row    The row of the cell.
+     * @param column The code column, the index of the child argument for matrix variables and 0 otherwise.
+     * @return The value of the code, null if it is empty.
+     */
+    synchronized String getValue(final int row, final int column) {
+        return column < codeColumns.size() ? codeColumns.get(column).get(row) : null;
+    }
+
+    /**
+     * @param row    The row of the cell.
+     * @param column The code column, the index of the child argument for matrix variables and 0 otherwise.
+     * @param value  The new value of the code, null or empty to clear it.
+     */
+    void setValue(final int row, final int column, final String value) {
+        synchronized (this) {
+            codeColumn(column).set(row, value, liveRows.get(row));
+        }
+        rowChanged(row);
+    }
+
+    /**
+     * @param column The code column, the index of the child argument for matrix variables and 0 otherwise.
+     * @return The argument describing the code column.
+     */
+    Argument getColumnArgument(final int column) {
+        Argument root = getRootNode();
+        return root.type == Argument.Type.MATRIX ? root.childArguments.get(column) : root;
+    }
+
+    /**
+     * @param row    The row of the cell.
+     * @param column The code column, the index of the child argument for matrix variables and 0 otherwise.
+     * @return A view of the value of the code.
+     */
+    CellValue getColumnValue(final int row, final int column) {
+        if (getColumnArgument(column).type == Argument.Type.TEXT) {
+            return new ColumnarTextCellValue(this, row, column);
+        }
+        return new ColumnarNominalCellValue(this, row, column);
+    }
+
+    /**
+     * @param row The row of the cell.
+     * @return A view of the value of the cell.
+     */
+    CellValue getCellValue(final int row) {
+        if (getRootNode().type == Argument.Type.MATRIX) {
+            return new ColumnarMatrixCellValue(this, row);
+        }
+        return getColumnValue(row, 0);
+    }
+
+    /**
+     * @param row The row of the cell.
+     * @return The identifier of the cell.
+     */
+    String getCellId(final int row) {
+        return new UUID(variableId.getLeastSignificantBits(), row).toString();
+    }
+
+    synchronized void addCellListener(final int row, final CellListener listener) {
+        ListenerList<CellListener> result = cellListeners.get(row);
+        if (result == null) {
+            result = new ListenerList<>();
+            cellListeners.put(row, result);
+        }
+        result.add(listener);
+    }
+
+    synchronized void removeCellListener(final int row, final CellListener listener) {
+        ListenerList<CellListener> result = cellListeners.get(row);
+        if (result != null) {
+            result.remove(listener);
+            if (result.isEmpty()) {
+                cellListeners.remove(row);
+            }
+        }
+    }
+
+    synchronized Iterable<CellListener> getCellListeners(final int row) {
+        ListenerList<CellListener> result = cellListeners.get(row);
+        return result == null ? Collections.<CellListener>emptyList() : result;
+    }
+
+    /**
+     * Leaves rows encoded until they are first needed; they are decoded as soon as the cells of the variable are
+     * asked for, a cell is created or the codes of the variable change.
+     *
+     * @param rows The rows of the variable, null for none.
+     */
+    public synchronized void setPendingRows(final PendingRows rows) {
+        loadPendingRows();
+        pendingRows = rows;
+    }
+
+    /**
+     * @return True if all the rows of the variable are in memory, false if some are still encoded.
+     */
+    public synchronized boolean isLoaded() {
+        return pendingRows == null;
+    }
+
+    /**
+     * Rows are never reused, and the rows decoded for a variable that had no rows are its first rows, in the order
+     * they were decoded in, see {@link #setPendingRows(PendingRows)}.
+     *
+     * @param cell A cell of this variable.
+     * @return The row of the cell.
+     */
+    public int getRow(final Cell cell) {
+        return ((ColumnarCell) cell).row;
+    }
+
+    private synchronized void loadPendingRows() {
+        if (pendingRows != null) {
+            PendingRows rows = pendingRows;
+            pendingRows = null;
+            rows.decodeInto(this);
+        }
+    }
+
+    /**
+     * Appends decoded rows as live cells that are neither selected nor highlighted. Listeners are not notified and
+     * the variable is not marked as changed, the rows are assumed to be part of the variable already.
+     *
+     * @param rows The rows to append.
+     */
+    public synchronized void appendRows(final Rows rows) {
+        long[] newOnsets = rows.onsets;
+        long[] newOffsets = rows.offsets;
+        String[][] dictionaries = rows.dictionaries;
+        int[][] codes = rows.codes;
+        int count = newOnsets.length;
+        int firstRow = numRows;
+        if (numRows + count > onsets.length) {
+            onsets = Arrays.copyOf(onsets, Math.max(numRows + count, onsets.length * 2));
+            offsets = Arrays.copyOf(offsets, onsets.length);
+        }
+        System.arraycopy(newOnsets, 0, onsets, firstRow, count);
+        System.arraycopy(newOffsets, 0, offsets, firstRow, count);
+        numRows += count;
+
+        if (numCells + count > cellOrder.length) {
+            cellOrder = Arrays.copyOf(cellOrder, Math.max(numCells + count, cellOrder.length * 2));
+        }
+        for (int row = firstRow; row < numRows; row++) {
+            cellOrder[numCells++] = row;
+        }
+        liveRows.set(firstRow, numRows);
+        cellsChanged();
+
+        for (int column = 0; column < codes.length; column++) {
+            codeColumn(column).load(firstRow, dictionaries[column], codes[column]);
+        }
+    }
+
+    /**
+     * Inserts new cells from rows, as if each had been created and given its onset, offset and values, except that
+     * the new cells are neither selected nor highlighted. Listeners are notified once for all the new cells.
+     *
+     * @param rows The rows to insert.
+     */
+    public void insertRows(final Rows rows) {
+        List<Cell> newCells = new ArrayList<>(rows.onsets.length);
+        synchronized (this) {
+            loadPendingRows();
+            int firstRow = numRows;
+            appendRows(rows);
+            for (int row = firstRow; row < numRows; row++) {
+                newCells.add(new ColumnarCell(this, row));
+            }
+        }
+        if (newCells.isEmpty()) {
+            return;
+        }
+
+        rowsChanged();
+        if (owningDatastore.isBulkLoading()) {
+            synchronized (this) {
+                unpublishedCells.addAll(newCells);
+            }
+            return;
+        }
+
+        newCells = Collections.unmodifiableList(newCells);
+        for (VariableListener vl : listeners) {
+            vl.cellsInserted(newCells);
+        }
+    }
+
+    /**
+     * @return The live cells in insertion order, with one dictionary encoded column per code.
+     */
+    public synchronized Rows getRows() {
+        loadPendingRows();
+        int[] rows = Arrays.copyOf(cellOrder, numCells);
+        long[] rowOnsets = new long[numCells];
+        long[] rowOffsets = new long[numCells];
+        for (int i = 0; i < numCells; i++) {
+            rowOnsets[i] = onsets[rows[i]];
+            rowOffsets[i] = offsets[rows[i]];
+        }
+
+        Argument root = getRootNode();
+        int numColumns = root.type == Argument.Type.MATRIX ? root.childArguments.size() : 1;
+        String[][] dictionaries = new String[numColumns][];
+        int[][] codes = new int[numColumns][];
+        for (int column = 0; column < numColumns; column++) {
+            List<String> dictionary = new ArrayList<>();
+            dictionary.add(null);
+            codes[column] = column < codeColumns.size()
+                    ? codeColumns.get(column).encode(rows, dictionary) : new int[numCells];
+            dictionaries[column] = dictionary.toArray(new String[dictionary.size()]);
+        }
+        return new Rows(rowOnsets, rowOffsets, dictionaries, codes);
+    }
+
+    /**
+     * Cells stored column-wise: the onsets and offsets of each cell, and one dictionary encoded column per code.
+     */
+    public static final class Rows {
+
+        /** The onset of each cell. */
+        public final long[] onsets;
+
+        /** The offset of each cell. */
+        public final long[] offsets;
+
+        /** The distinct values of each code column, index 0 is the empty value and holds null. */
+        public final String[][] dictionaries;
+
+        /** The index into the dictionary of the value of each cell, for each code column. */
+        public final int[][] codes;
+
+        public Rows(final long[] onsets, final long[] offsets, final String[][] dictionaries, final int[][] codes) {
+            this.onsets = onsets;
+            this.offsets = offsets;
+            this.dictionaries = dictionaries;
+            this.codes = codes;
+        }
+    }
+
+    private CodeColumn codeColumn(final int column) {
+        while (codeColumns.size() <= column) {
+            codeColumns.add(new CodeColumn(getColumnArgument(codeColumns.size())));
+        }
+        return codeColumns.get(column);
+    }
+
+    // *************************************************************************
+    // Variable attributes
+    // *************************************************************************
+
+    @Override
+    public Argument getRootNode() {
+        return rootNodeArgument;
+    }
+
+    @Override
+    public void setRootNode(final Argument a) {
+        rowsChanged();
+        rootNodeArgument = a;
+    }
+
+    @Override
+    @Deprecated
+    public Argument getVariableType() {
+        return getRootNode();
+    }
+
+    @Override
+    @Deprecated
+    public void setVariableType(final Argument a) {
+        setRootNode(a);
+    }
+
+    @Override
+    public boolean isSelected() {
+        return selected;
+    }
+
+    @Override
+    public void setSelected(final boolean selected) {
+        this.selected = selected;
+    }
+
+    @Override
+    public boolean isHidden() {
+        return hidden;
+    }
+
+    @Override
+    public void setHidden(final boolean hiddenParm) {
+        if (hidden == null || hiddenParm != hidden) {
+            owningDatastore.markAsChanged();
+            hidden = hiddenParm;
+
+            for (VariableListener vl : listeners) {
+                vl.visibilityChanged(hidden);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(final String newName) throws UserWarningException {
+        this.setName(newName, false);
+    }
+
+    @Override
+    public void setName(final String newName, boolean grandfathered) throws UserWarningException {
+        // Pre-conditions, the newName must have at least one character.
+        if (newName.length() < 1) {
+            throw new UserWarningException("Unable to add column, a name must be supplied.");
+        }
+
+        // Pre-conditions, check to make sure newName doesn't contain invalid chars or begin with a number or underscore
+        if (!grandfathered && !isNameValid(newName)) {
+            throw new UserWarningException("Unable to add column:\n\tOnly alphanumeric characters and underscore are permitted.\n\tName must begin with a letter\n\tMust contain fewer than 255 characters");
+        }
+
+        if (grandfathered && !isNameValid(newName)) {
+            owningDatastore.addExemptionVariable(newName);
+        }
+
+        if (name != null && owningDatastore != null) {
+            owningDatastore.updateVariableName(name, newName, this);
+        }
+        this.name = newName;
+        for (VariableListener vl : listeners) {
+            vl.nameChanged(newName);
+        }
+    }
+
+    private boolean isNameValid(String nameCandidate) {
+        return nameCandidate != null && nameCandidate.matches("[a-zA-Z][a-zA-Z0-9_]*") && nameCandidate.length() < 255;
+    }
+
+    // *************************************************************************
+    // Codes - each code is a single column shared by all the cells
+    // *************************************************************************
+
+    @Override
+    public Argument addArgument(final Argument.Type type) {
+        loadPendingRows();
+        Argument arg = getRootNode();
+        Argument child = arg.addChildArgument(type);
+
+        synchronized (this) {
+            int column = arg.childArguments.size() - 1;
+            if (column < codeColumns.size()) {
+                codeColumns.add(column, new CodeColumn(child));
+            }
+        }
+
+        this.setRootNode(arg);
+        return child;
+    }
+
+    @Override
+    public void moveArgument(final int old_index, final int new_index) {
+        loadPendingRows();
+        Argument arg = getRootNode();
+
+        // Test to see if this is out of bounds
+        if (new_index > arg.childArguments.size() - 1 || new_index < 0) {
+            return;
+        }
+
+        synchronized (this) {
+            codeColumn(Math.max(old_index, new_index));
+            codeColumns.add(new_index, codeColumns.remove(old_index));
+        }
+
+        Argument moved_arg = arg.childArguments.get(old_index);
+        arg.childArguments.remove(moved_arg);
+        arg.childArguments.add(new_index, moved_arg);
+
+        this.setRootNode(arg);
+    }
+
+    /**
+     * Adds an argument as the last code of this variable, unless it already is one of its codes.
+     *
+     * @param child The argument to add.
+     */
+    void addArgument(final Argument child) {
+        loadPendingRows();
+        Argument arg = getRootNode();
+        if (arg.childArguments.contains(child)) {
+            return;
+        }
+        arg.childArguments.add(child);
+
+        synchronized (this) {
+            int column = arg.childArguments.size() - 1;
+            if (column < codeColumns.size()) {
+                codeColumns.add(column, new CodeColumn(child));
+            }
+        }
+
+        this.setRootNode(arg);
+    }
+
+    @Override
+    public void moveArgument(final String name, final int new_index) {
+        int old_index = getArgumentIndex(name);
+        moveArgument(old_index, new_index);
+        owningDatastore.markAsChanged();
+    }
+
+    @Override
+    public void removeArgument(final String name) {
+        loadPendingRows();
+        Argument arg = getRootNode();
+        int arg_index = getArgumentIndex(name);
+        arg.childArguments.remove(arg_index);
+
+        synchronized (this) {
+            if (arg_index < codeColumns.size()) {
+                codeColumns.remove(arg_index).dispose(numRows, liveRows);
+            }
+        }
+
+        this.setRootNode(arg);
+    }
+
+    @Override
+    public int getArgumentIndex(final String name) {
+        Argument arg = getRootNode();
+        for (int i = 0; i < arg.childArguments.size(); i++) {
+            if (arg.childArguments.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void addListener(final VariableListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(final VariableListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public int getOrderIndex() {
+        return orderIndex;
+    }
+
+    @Override
+    public void setOrderIndex(final int newIndex) {
+        orderIndex = newIndex;
+        owningDatastore.markAsChanged();
+    }
+
+    /**
+     * The ids of the values of a single code, indexed by row. Nominal codes share the symbol table of their argument,
+     * so the values of live rows show up in the value frequencies of the argument.
+     */
+    private static final class CodeColumn {
+        private final SymbolTable symbols;
+        private int[] ids = new int[INITIAL_CAPACITY];
+
+        CodeColumn(final Argument argument) {
+            symbols = argument.type == Argument.Type.NOMINAL ? argument.getSymbolTable() : new SymbolTable();
+        }
+
+        String get(final int row) {
+            return row < ids.length ? symbols.valueOf(ids[row]) : null;
+        }
+
+        void set(final int row, final String value, final boolean live) {
+            if (row >= ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(row + 1, ids.length * 2));
+            }
+            int id = symbols.acquire(value);
+            if (live) {
+                symbols.count(id);
+                symbols.uncount(ids[row]);
+            }
+            symbols.release(ids[row]);
+            ids[row] = id;
+        }
+
+        /**
+         * Sets the values of consecutive live rows that have no values yet.
+         */
+        void load(final int firstRow, final String[] dictionary, final int[] codes) {
+            if (firstRow + codes.length > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(firstRow + codes.length, ids.length * 2));
+            }
+            for (int i = 0; i < codes.length; i++) {
+                int id = symbols.acquire(dictionary[codes[i]]);
+                symbols.count(id);
+                ids[firstRow + i] = id;
+            }
+        }
+
+        /**
+         * Dictionary encodes the values of rows, adding the values that are not in the dictionary yet.
+         */
+        int[] encode(final int[] rows, final List<String> dictionary) {
+            int[] codes = new int[rows.length];
+            int[] codeOfId = new int[INITIAL_CAPACITY];
+            for (int i = 0; i < rows.length; i++) {
+                int id = rows[i] < ids.length ? ids[rows[i]] : SymbolTable.EMPTY;
+                if (id != SymbolTable.EMPTY) {
+                    if (id >= codeOfId.length) {
+                        codeOfId = Arrays.copyOf(codeOfId, Math.max(id + 1, codeOfId.length * 2));
+                    }
+                    if (codeOfId[id] == 0) {
+                        codeOfId[id] = dictionary.size();
+                        dictionary.add(symbols.valueOf(id));
+                    }
+                    codes[i] = codeOfId[id];
+                }
+            }
+            return codes;
+        }
+
+        void count(final int row) {
+            if (row < ids.length) {
+                symbols.count(ids[row]);
+            }
+        }
+
+        void uncount(final int row) {
+            if (row < ids.length) {
+                symbols.uncount(ids[row]);
+            }
+        }
+
+        /**
+         * Releases every value of the column, once the code has been removed from the variable.
+         */
+        void dispose(final int numRows, final BitSet liveRows) {
+            for (int row = 0; row < Math.min(numRows, ids.length); row++) {
+                if (liveRows.get(row)) {
+                    symbols.uncount(ids[row]);
+                }
+                symbols.release(ids[row]);
+            }
+        }
+    }
+
+    /**
+     * Immutable list of cell views over a snapshot of rows; the position of each row is looked up once and then
+     * cached.
+     */
+    private final class CellList extends AbstractList<Cell> implements RandomAccess {
+        private final int[] rows;
+        private int[] positions;
+
+        CellList(final int[] rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Cell get(final int index) {
+            return new ColumnarCell(ColumnarVariable.this, rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows.length;
+        }
+
+        @Override
+        public synchronized int indexOf(final Object o) {
+            if (!(o instanceof ColumnarCell) || ((ColumnarCell) o).variable != ColumnarVariable.this) {
+                return -1;
+            }
+            if (positions == null) {
+                int numRows = 0;
+                for (int row : rows) {
+                    numRows = Math.max(numRows, row + 1);
+                }
+                positions = new int[numRows];
+                Arrays.fill(positions, -1);
+                for (int i = 0; i < rows.length; i++) {
+                    positions[rows[i]] = i;
+                }
+            }
+            int row = ((ColumnarCell) o).row;
+            return row < positions.length ? positions[row] : -1;
+        }
+
+        @Override
+        public int lastIndexOf(final Object o) {
+            return indexOf(o);
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return indexOf(o) >= 0;
+        }
+    }
+}
@@ -22,6 +22,7 @@
  */
 package org.datavyu.models.db;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -127,6 +128,14 @@ public interface DataStore {
      */
     void removeCell(final Cell cell);
 
+    /**
+     * Removes several cells from the datastore, removing the cells of each
+     * variable in a single pass.
+     *
+     * @param cells The cells to remove from the datastore.
+     */
+    void removeCells(final Collection<Cell> cells);
+
     /**
      * @return The name of the datastore.
      */
@@ -148,6 +157,28 @@ public interface DataStore {
      */
     boolean isChanged();
 
+    /**
+     * Starts a bulk load of cells into this data store. Until the matching call
+     * to {@link #endBulkLoad()}, cells created in the variables of this data
+     * store are buffered, variable listeners are not notified of insertions and
+     * the data store is not marked as changed. Bulk loads may be nested.
+     */
+    void beginBulkLoad();
+
+    /**
+     * Ends a bulk load. When the outermost bulk load ends, the buffered cells
+     * are published with a single {@link VariableListener#cellsInserted}
+     * notification per variable and the data store is marked as changed if
+     * anything was modified while loading.
+     */
+    void endBulkLoad();
+
+    /**
+     * @return True if the data store is currently in a bulk load, false
+     * otherwise.
+     */
+    boolean isBulkLoading();
+
     /**
      * Sets the name of the datastore.
      *
@@ -19,12 +19,57 @@ package org.datavyu.models.db;
  */
 public class DataStoreFactory {
 
+    /** System property that selects the storage engine used by {@link #newDataStore()}. */
+    public static final String ENGINE_PROPERTY = "datavyu.datastore";
+
     /**
-     * Create a new empty DataStore.
+     * The storage engines that can back a DataStore.
+     */
+    public enum Engine {
+        /** Every cell and value is an object of its own, see {@link DatavyuDataStore}. */
+        OBJECT,
+        /** Cells are rows in primitive arrays held by each variable, see {@link ColumnarDataStore}. */
+        COLUMNAR
+    }
+
+    /**
+     * Create a new empty DataStore, using the engine named by the {@value #ENGINE_PROPERTY} system property or the
+     * object engine if the property is not set.
      *
      * @return A new empty DataStore.
      */
     public static DataStore newDataStore() {
-        return new DatavyuDataStore();
+        return newDataStore(getDefaultEngine());
+    }
+
+    /**
+     * Create a new empty DataStore.
+     *
+     * @param engine The storage engine to use.
+     * @return A new empty DataStore.
+     */
+    public static DataStore newDataStore(final Engine engine) {
+        switch (engine) {
+            case COLUMNAR:
+                return new ColumnarDataStore();
+            default:
+                return new DatavyuDataStore();
+        }
+    }
+
+    /**
+     * @return The engine named by the {@value #ENGINE_PROPERTY} system property, {@link Engine#OBJECT} if the property
+     * is not set or unknown.
+     */
+    public static Engine getDefaultEngine() {
+        String engine = System.getProperty(ENGINE_PROPERTY);
+        if (engine != null) {
+            for (Engine e : Engine.values()) {
+                if (e.name().equalsIgnoreCase(engine.trim())) {
+                    return e;
+                }
+            }
+        }
+        return Engine.OBJECT;
     }
 }
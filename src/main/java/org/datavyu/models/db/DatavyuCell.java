@@ -19,16 +19,16 @@ import java.util.*;
 
 public class DatavyuCell implements Cell {
 
-    static Map<UUID, List<CellListener>> allListeners = new HashMap<UUID, List<CellListener>>();
-    final private UUID id = UUID.randomUUID();
+    final private long id = IdGenerator.nextId();
+    private UUID uuid;
     private long onset = 0L;
     private long offset = 0L;
     private Argument type;
     private boolean selected;
     private boolean highlighted;
     private Variable parent;
-    private Map<String, CellValue> arguments = new HashMap<String, CellValue>();
     private CellValue cellValue;
+    private final ListenerList<CellListener> listeners = new ListenerList<>();
 
     public DatavyuCell() {
     }
@@ -45,34 +45,38 @@ public class DatavyuCell implements Cell {
         // Build argument list from the argument given
 
         if (type.type == Argument.Type.NOMINAL) {
-            this.cellValue = new DatavyuNominalCellValue(getID(), type, this);
+            this.cellValue = new DatavyuNominalCellValue(id, type, this);
         } else if (type.type == Argument.Type.TEXT) {
-            this.cellValue = new DatavyuTextCellValue(getID(), type, this);
+            this.cellValue = new DatavyuTextCellValue(id, type, this);
         } else {
-            this.cellValue = new DatavyuMatrixCellValue(getID(), type, this);
+            this.cellValue = new DatavyuMatrixCellValue(id, type, this);
         }
     }
 
+    public Variable getVariable() {
+        return parent;
+    }
+
     /**
-     * @param cellId The Identifier of the variable we want the listeners for.
-     * @return The list of listeners for the specified cellId.
+     * Lets the parent variable reposition this cell after a change to its onset or offset.
      */
-    private static List<CellListener> getListeners(UUID cellId) {
-        List<CellListener> result = allListeners.get(cellId);
-
-        if (result == null) {
-            result = new ArrayList<CellListener>();
-            allListeners.put(cellId, result);
+    private void reindex() {
+        if (parent instanceof DatavyuVariable) {
+            ((DatavyuVariable) parent).cellTimesChanged(this);
         }
-
-        return result;
     }
 
-    public Variable getVariable() {
-        return parent;
+    /**
+     * Marks the data store as changed and counts a change to the cells of the parent variable.
+     */
+    private void markChanged() {
+        parent.getOwningDatastore().markAsChanged();
+        if (parent instanceof DatavyuVariable) {
+            ((DatavyuVariable) parent).cellChanged(this);
+        }
     }
 
-    private String convertMStoTimestamp(long time) {
+    static String convertMStoTimestamp(long time) {
         long hours = Math.round(Math.floor((time / 1000.0 / 60.0 / 60.0)));
         long minutes = Math.round(Math.floor(time / 1000.0 / 60.0 - (hours * 60)));
         long seconds = Math.round(Math.floor(time / 1000.0 - (hours * 60 * 60) - (minutes * 60)));
@@ -81,7 +85,7 @@ public class DatavyuCell implements Cell {
         return String.format("%02d:%02d:%02d:%03d", hours, minutes, seconds, mseconds);
     }
 
-    private long convertTimestampToMS(String timestamp) {
+    public static long convertTimestampToMS(String timestamp) {
 
         String[] s = timestamp.split(":");
         if(s.length == 1){
@@ -108,9 +112,10 @@ public class DatavyuCell implements Cell {
 
     @Override
     public void setOffset(final long newOffset) {
-        if (newOffset != offset) parent.getOwningDatastore().markAsChanged();
+        if (newOffset != offset) markChanged();
         offset = newOffset;
-        for (CellListener cl : getListeners(getID())) {
+        reindex();
+        for (CellListener cl : listeners) {
             cl.offsetChanged(offset);
         }
     }
@@ -137,9 +142,10 @@ public class DatavyuCell implements Cell {
 
     @Override
     public void setOnset(final long newOnset) {
-        if (newOnset != onset) parent.getOwningDatastore().markAsChanged();
+        if (newOnset != onset) markChanged();
         onset = newOnset;
-        for (CellListener cl : getListeners(getID())) {
+        reindex();
+        for (CellListener cl : listeners) {
             cl.onsetChanged(onset);
         }
     }
@@ -160,6 +166,26 @@ public class DatavyuCell implements Cell {
         return this.cellValue;
     }
 
+    /**
+     * Sets whether the value of this cell is counted in the value frequencies of its arguments, i.e. whether this
+     * cell is part of its variable.
+     *
+     * @param counted True if the value is counted, false otherwise.
+     */
+    void setCounted(final boolean counted) {
+        ((DatavyuCellValue) cellValue).setCounted(counted);
+    }
+
+    /**
+     * @return The data store tracking the selection of this cell, null if there is none.
+     */
+    private DatavyuDataStore getDataStore() {
+        if (parent != null && parent.getOwningDatastore() instanceof DatavyuDataStore) {
+            return (DatavyuDataStore) parent.getOwningDatastore();
+        }
+        return null;
+    }
+
     @Override
     public boolean isSelected() {
         return selected;
@@ -168,11 +194,15 @@ public class DatavyuCell implements Cell {
     @Override
     public void setSelected(final boolean selected) {
         this.selected = selected;
+        DatavyuDataStore dataStore = getDataStore();
+        if (dataStore != null) {
+            dataStore.cellSelectionChanged(this, selected);
+        }
         if (!selected) {
             setHighlighted(false);
         }
 
-        for (CellListener cl : getListeners(getID())) {
+        for (CellListener cl : listeners) {
             cl.selectionChange(selected);
             if (!selected) {
                 cl.highlightingChange(false);
@@ -188,12 +218,16 @@ public class DatavyuCell implements Cell {
     @Override
     public void setHighlighted(final boolean highlighted) {
         this.highlighted = highlighted;
+        DatavyuDataStore dataStore = getDataStore();
+        if (dataStore != null) {
+            dataStore.cellHighlightingChanged(this, highlighted);
+        }
 
         if (highlighted) {
             setSelected(highlighted);
         }
 
-        for (CellListener cl : getListeners(getID())) {
+        for (CellListener cl : listeners) {
             cl.highlightingChange(highlighted);
         }
     }
@@ -202,6 +236,7 @@ public class DatavyuCell implements Cell {
     public void addMatrixValue(Argument type) {
         DatavyuMatrixCellValue val = (DatavyuMatrixCellValue) getCellValue();
         val.createArgument(type);
+        markChanged();
     }
 
     @Override
@@ -216,11 +251,13 @@ public class DatavyuCell implements Cell {
         for (int i = 0; i < cellValues.size(); i++) {
             ((DatavyuCellValue) cellValues.get(i)).setIndex(i);
         }
+        markChanged();
     }
 
     @Override
     public void removeMatrixValue(final int index) {
         ((DatavyuMatrixCellValue) getCellValue()).removeArgument(index);
+        markChanged();
     }
 
     @Override
@@ -244,16 +281,22 @@ public class DatavyuCell implements Cell {
 
     @Override
     public void addListener(final CellListener cellListener) {
-        getListeners(getID()).add(cellListener);
+        listeners.add(cellListener);
     }
 
     @Override
     public void removeListener(final CellListener cellListener) {
-        getListeners(getID()).remove(cellListener);
+        listeners.remove(cellListener);
     }
 
+    /**
+     * @return The UUID of this cell, derived from its identifier the first time it is needed.
+     */
     public UUID getID() {
-        return id;
+        if (uuid == null) {
+            uuid = IdGenerator.toUUID(id);
+        }
+        return uuid;
     }
 
     @Override
@@ -263,7 +306,7 @@ public class DatavyuCell implements Cell {
 
     @Override
     public int hashCode() {
-        return this.getID().hashCode();
+        return Long.hashCode(id);
     }
 
     @Override
@@ -276,11 +319,7 @@ public class DatavyuCell implements Cell {
         }
         DatavyuCell otherC = (DatavyuCell) other;
 
-        if (otherC.getID().toString().equals(this.getID().toString())) {
-            return true;
-        } else {
-            return false;
-        }
+        return otherC.id == this.id;
     }
 
     @Override
@@ -26,15 +26,14 @@ package org.datavyu.models.db;
 import org.datavyu.util.StringUtils;
 
 import java.io.Serializable;
-import java.util.UUID;
 
 
 public abstract class DatavyuCellValue implements CellValue, Serializable, Comparable<DatavyuCellValue> {
 
     String value;
     int index;
-    UUID parent_id;
-    UUID id = UUID.randomUUID();
+    long parent_id;
+    long id = IdGenerator.nextId();
     String name = "";
     Argument arg;
     Cell parent;
@@ -46,7 +45,8 @@ public abstract class DatavyuCellValue implements CellValue, Serializable, Compa
 
     @Override
     public void clear() {
-        this.value = null;
+        store(null);
+        countChange();
     }
 
     @Override
@@ -80,11 +80,45 @@ public abstract class DatavyuCellValue implements CellValue, Serializable, Compa
     @Override
     public void set(final String newValue) {
         if (!newValue.equals(toString()) && !newValue.equals(this.value)) {
-            this.value = newValue;
+            store(newValue);
             this.parent.getVariable().getOwningDatastore().markAsChanged();
+            countChange();
         }
     }
 
+    /**
+     * Counts a change to the cells of the variable this value belongs to.
+     */
+    private void countChange() {
+        if (parent != null && parent.getVariable() instanceof DatavyuVariable) {
+            ((DatavyuVariable) parent.getVariable()).cellChanged(parent);
+        }
+    }
+
+    /**
+     * Replaces the value held by this cell value.
+     *
+     * @param newValue The new value, null to clear it.
+     */
+    void store(final String newValue) {
+        this.value = newValue;
+    }
+
+    /**
+     * Sets whether this value is counted in the frequencies of its argument, i.e. whether its cell is part of a
+     * variable.
+     *
+     * @param counted True if the value is counted, false otherwise.
+     */
+    void setCounted(final boolean counted) {
+    }
+
+    /**
+     * Releases the value from the dictionary of its argument, once the value has been removed from its cell.
+     */
+    void dispose() {
+    }
+
     public Argument getArgument() {
         return arg;
     }
@@ -46,12 +46,24 @@ public class DatavyuDataStore implements DataStore {
     /** Has the DataStore changed since it has last been marked as not changed. */
     private boolean changed;
 
+    /** Nesting depth of bulk loads, zero when not bulk loading. */
+    private int bulkLoadDepth = 0;
+
+    /** Has the DataStore been marked as changed during the current bulk load. */
+    private boolean changedDuringBulkLoad = false;
+
     /** All listeners of this data store */
     private List<DataStoreListener> dataStoreListeners = new ArrayList<DataStoreListener>();
 
     /** The variable that this data store holds */
     private Map<String, Variable> variables;
 
+    /** The selected cells of the variables in this data store, kept up to date by the cells. */
+    private final Set<Cell> selectedCells = new LinkedHashSet<>();
+
+    /** The highlighted cells of the variables in this data store, kept up to date by the cells. */
+    private final Set<Cell> highlightedCells = new LinkedHashSet<>();
+
     /** Compare variable with this class instance */
     private VariableComparator VariableComparator = new VariableComparator();
     
@@ -65,7 +77,9 @@ public class DatavyuDataStore implements DataStore {
 
     @Override
     public void markAsChanged() {
-        if (!changed) {
+        if (bulkLoadDepth > 0) {
+            changedDuringBulkLoad = true;
+        } else if (!changed) {
             changed = true;
             if (DatavyuDataStore.titleNotifier != null) {
                 DatavyuDataStore.titleNotifier.updateTitle();
@@ -73,6 +87,37 @@ public class DatavyuDataStore implements DataStore {
         }
     }
 
+    @Override
+    public void beginBulkLoad() {
+        bulkLoadDepth++;
+    }
+
+    @Override
+    public void endBulkLoad() {
+        if (bulkLoadDepth == 0) {
+            logger.error("Ending a bulk load that was never started.");
+            return;
+        }
+
+        bulkLoadDepth--;
+        if (bulkLoadDepth == 0) {
+            for (Variable variable : getAllVariables()) {
+                if (variable instanceof BulkLoadTarget) {
+                    ((BulkLoadTarget) variable).publishBufferedCells();
+                }
+            }
+            if (changedDuringBulkLoad) {
+                changedDuringBulkLoad = false;
+                markAsChanged();
+            }
+        }
+    }
+
+    @Override
+    public boolean isBulkLoading() {
+        return bulkLoadDepth > 0;
+    }
+
     @Override
     public List<Variable> getAllVariables() {
         List<Variable> allVariables = new ArrayList<Variable>();
@@ -113,32 +158,86 @@ public class DatavyuDataStore implements DataStore {
     }
 
     @Override
-    public List<Cell> getSelectedCells() {
-        List<Cell> selectedCells = new ArrayList<Cell>();
-        for (Variable variable : variables.values()) {
-            for (Cell cell : variable.getCells()) {
-                if (cell.isSelected()) {
-                    selectedCells.add(cell);
-                }
-            }
-        }
-        return selectedCells;
+    public synchronized List<Cell> getSelectedCells() {
+        return new ArrayList<>(selectedCells);
     }
 
     @Override
     public void clearCellSelection() {
-        for (Variable variable : variables.values()) {
-            for (Cell cell : variable.getCells()) {
-                if (cell.isSelected()) {
-                    cell.setSelected(false);
-                }
-                if (cell.isHighlighted()) {
-                    cell.setHighlighted(false);
-                }
+        Set<Cell> cells;
+        synchronized (this) {
+            cells = new LinkedHashSet<>(selectedCells);
+            cells.addAll(highlightedCells);
+        }
+
+        for (Cell cell : cells) {
+            if (cell.isSelected()) {
+                cell.setSelected(false);
+            }
+            if (cell.isHighlighted()) {
+                cell.setHighlighted(false);
             }
         }
     }
 
+    /**
+     * Called by the cells of this data store when they are selected or deselected.
+     *
+     * @param cell     The cell whose selection has changed.
+     * @param selected True if the cell is now selected, false otherwise.
+     */
+    void cellSelectionChanged(final Cell cell, final boolean selected) {
+        boolean live = selected && getVariable(cell) != null;
+        synchronized (this) {
+            if (live) {
+                selectedCells.add(cell);
+            } else {
+                selectedCells.remove(cell);
+            }
+        }
+    }
+
+    /**
+     * Called by the cells of this data store when they are highlighted or no longer highlighted.
+     *
+     * @param cell        The cell whose highlighting has changed.
+     * @param highlighted True if the cell is now highlighted, false otherwise.
+     */
+    void cellHighlightingChanged(final Cell cell, final boolean highlighted) {
+        boolean live = highlighted && getVariable(cell) != null;
+        synchronized (this) {
+            if (live) {
+                highlightedCells.add(cell);
+            } else {
+                highlightedCells.remove(cell);
+            }
+        }
+    }
+
+    /**
+     * Called by the variables of this data store when a cell joins a variable, so that its selection is tracked.
+     *
+     * @param cell The cell that has been added.
+     */
+    synchronized void trackCell(final Cell cell) {
+        if (cell.isSelected()) {
+            selectedCells.add(cell);
+        }
+        if (cell.isHighlighted()) {
+            highlightedCells.add(cell);
+        }
+    }
+
+    /**
+     * Called by the variables of this data store when a cell leaves a variable.
+     *
+     * @param cell The cell that has been removed.
+     */
+    synchronized void untrackCell(final Cell cell) {
+        selectedCells.remove(cell);
+        highlightedCells.remove(cell);
+    }
+
     @Override
     public void deselectAll() {
         this.clearCellSelection();
@@ -152,8 +251,9 @@ public class DatavyuDataStore implements DataStore {
 
     @Override
     public Variable getVariable(Cell cell) {
-        for (Variable v : variables.values()) {
-            if (v.getCells().contains(cell)) return v;
+        Variable v = cell.getVariable();
+        if (v != null && variables.get(v.getName()) == v && v.contains(cell)) {
+            return v;
         }
         return null;
     }
@@ -177,7 +277,7 @@ public class DatavyuDataStore implements DataStore {
         if (type == Argument.Type.MATRIX) rootNode = new Argument(name + name.hashCode(), type);
         else rootNode = new Argument("var", type);
 
-        Variable v = new DatavyuVariable(name, rootNode, grandfathered, this);
+        Variable v = newVariable(name, rootNode, grandfathered);
         variables.put(name, v);
 
         for (DataStoreListener dbl : this.dataStoreListeners) {
@@ -188,12 +288,29 @@ public class DatavyuDataStore implements DataStore {
         return v;
     }
 
+    /**
+     * Constructs the variable objects held by this data store.
+     *
+     * @param name          The name of the new variable.
+     * @param rootNode      The type of the new variable.
+     * @param grandfathered Flag to exempt variable from naming rules.
+     * @return The new variable, not yet added to the data store.
+     * @throws UserWarningException If the name of the variable is invalid.
+     */
+    protected Variable newVariable(final String name, final Argument rootNode, final boolean grandfathered)
+            throws UserWarningException {
+        return new DatavyuVariable(name, rootNode, grandfathered, this);
+    }
+
     @Override
     public void removeVariable(final Variable var) {
         for (DataStoreListener listener : this.dataStoreListeners) {
             listener.variableRemoved(var);
         }
         variables.remove(var.getName());
+        for (Cell cell : var.getCells()) {
+            untrackCell(cell);
+        }
         markAsChanged();
     }
 
@@ -204,6 +321,9 @@ public class DatavyuDataStore implements DataStore {
         }
 
         variables.put(var.getName(), var);
+        for (Cell cell : var.getCells()) {
+            trackCell(cell);
+        }
         markAsChanged();
     }
 
@@ -213,6 +333,27 @@ public class DatavyuDataStore implements DataStore {
         markAsChanged();
     }
 
+    @Override
+    public void removeCells(final Collection<Cell> cells) {
+        Map<Variable, List<Cell>> cellsByVariable = new LinkedHashMap<>();
+        for (Cell cell : cells) {
+            Variable v = getVariable(cell);
+            if (v != null) {
+                List<Cell> variableCells = cellsByVariable.get(v);
+                if (variableCells == null) {
+                    variableCells = new ArrayList<>();
+                    cellsByVariable.put(v, variableCells);
+                }
+                variableCells.add(cell);
+            }
+        }
+
+        for (Map.Entry<Variable, List<Cell>> entry : cellsByVariable.entrySet()) {
+            entry.getKey().removeCells(entry.getValue());
+        }
+        markAsChanged();
+    }
+
     @Override
     public String getName() {
         return name;
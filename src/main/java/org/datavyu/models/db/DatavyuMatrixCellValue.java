@@ -28,7 +28,7 @@ import java.util.*;
 
 public final class DatavyuMatrixCellValue extends DatavyuCellValue implements MatrixCellValue {
 
-    private UUID parentId;
+    private long parentId;
     private String value;
     private List<CellValue> cellValues;
 
@@ -36,7 +36,7 @@ public final class DatavyuMatrixCellValue extends DatavyuCellValue implements Ma
     public DatavyuMatrixCellValue() {
     }
 
-    public DatavyuMatrixCellValue(UUID parent_id, Argument type, Cell parent) {
+    public DatavyuMatrixCellValue(long parent_id, Argument type, Cell parent) {
         this.parentId = parent_id;
         this.parent = parent;
         cellValues = new ArrayList<CellValue>();
@@ -125,11 +125,18 @@ public final class DatavyuMatrixCellValue extends DatavyuCellValue implements Ma
     @Override
     public void removeArgument(final int index) {
         List<CellValue> args = getArguments();
-        args.remove(index);
+        ((DatavyuCellValue) args.remove(index)).dispose();
         CellValue v;
         for (int i = 0; i < args.size(); i++) {
             v = args.get(i);
-            ((DatavyuNominalCellValue) v).setIndex(i);
+            ((DatavyuCellValue) v).setIndex(i);
+        }
+    }
+
+    @Override
+    void setCounted(final boolean counted) {
+        for (CellValue v : getArguments()) {
+            ((DatavyuCellValue) v).setCounted(counted);
         }
     }
 
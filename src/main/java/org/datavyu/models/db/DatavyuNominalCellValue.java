@@ -23,29 +23,75 @@
 
 package org.datavyu.models.db;
 
-import java.util.UUID;
-
+/**
+ * Nominal values are dictionary encoded: the value is the canonical instance held by the symbol table of the argument
+ * and the code is its id in that table.
+ */
 public final class DatavyuNominalCellValue extends DatavyuCellValue implements NominalCellValue {
 
+    // Id of the value in the symbol table of the argument
+    private int code = SymbolTable.EMPTY;
+
+    // Is the value counted in the frequencies of the argument
+    private boolean counted = true;
+
     public DatavyuNominalCellValue() {
     }
 
-    public DatavyuNominalCellValue(UUID parent_id, Cell parent) {
+    public DatavyuNominalCellValue(long parent_id, Cell parent) {
         this.parent_id = parent_id;
         this.index = -1;
         this.parent = parent;
     }
 
-    public DatavyuNominalCellValue(UUID parent_id, Argument arg, Cell parent) {
+    public DatavyuNominalCellValue(long parent_id, Argument arg, Cell parent) {
         this(parent_id, parent);
         this.arg = arg;
     }
 
-    public DatavyuNominalCellValue(UUID parent_id, String name, int index, Argument type, Cell parent) {
+    public DatavyuNominalCellValue(long parent_id, String name, int index, Argument type, Cell parent) {
         this(parent_id, parent);
         this.index = index;
         this.name = name;
         this.arg = type;
     }
 
+    @Override
+    void store(final String newValue) {
+        if (arg == null) {
+            super.store(newValue);
+            return;
+        }
+
+        SymbolTable symbols = arg.getSymbolTable();
+        int newCode = symbols.acquire(newValue);
+        if (counted) {
+            symbols.count(newCode);
+            symbols.uncount(code);
+        }
+        symbols.release(code);
+        code = newCode;
+        this.value = newCode == SymbolTable.EMPTY ? newValue : symbols.valueOf(newCode);
+    }
+
+    @Override
+    void setCounted(final boolean counted) {
+        if (arg != null && counted != this.counted) {
+            if (counted) {
+                arg.getSymbolTable().count(code);
+            } else {
+                arg.getSymbolTable().uncount(code);
+            }
+        }
+        this.counted = counted;
+    }
+
+    @Override
+    void dispose() {
+        setCounted(false);
+        if (arg != null) {
+            arg.getSymbolTable().release(code);
+            code = SymbolTable.EMPTY;
+        }
+    }
 }
@@ -23,26 +23,24 @@
 
 package org.datavyu.models.db;
 
-import java.util.UUID;
-
 public final class DatavyuTextCellValue extends DatavyuCellValue implements TextCellValue {
 
     public DatavyuTextCellValue() {
     }
 
-    public DatavyuTextCellValue(UUID parent_id, Cell parent) {
+    public DatavyuTextCellValue(long parent_id, Cell parent) {
         this.parent_id = parent_id;
         this.index = -1;
         this.parent = parent;
     }
 
-    public DatavyuTextCellValue(UUID parent_id, Argument arg, Cell parent) {
+    public DatavyuTextCellValue(long parent_id, Argument arg, Cell parent) {
         this(parent_id, parent);
         this.arg = arg;
         this.parent = parent;
     }
 
-    public DatavyuTextCellValue(UUID parent_id, String name, int index, Argument arg, Cell parent) {
+    public DatavyuTextCellValue(long parent_id, String name, int index, Argument arg, Cell parent) {
         this(parent_id, parent);
         this.name = name;
         this.index = index;
@@ -28,24 +28,29 @@ import org.apache.logging.log4j.Logger;
 
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Maps a Datavyu variable to a data store.
  */
-public final class DatavyuVariable implements Variable {
+public final class DatavyuVariable implements Variable, BulkLoadTarget {
 
-    // All the listeners for variables in the data store
     private static Logger logger = LogManager.getLogger(DatavyuVariable.class);
-    private static Map<UUID, List<VariableListener>> allListeners = new HashMap<UUID, List<VariableListener>>();
-    private static CellComparator CellComparator = new CellComparator();
-    final private UUID variableId = UUID.randomUUID();
+    final private UUID variableId = IdGenerator.toUUID(IdGenerator.nextId());
+    private final ListenerList<VariableListener> listeners = new ListenerList<>();
     private List<Cell> cells = new CopyOnWriteArrayList<>();
+    private final CellTemporalIndex temporalIndex = new CellTemporalIndex();
+    // Cells created during a bulk load that have not been appended to cells yet
+    private List<Cell> bufferedCells = new ArrayList<>();
+    // Cells appended during a bulk load that listeners have not been told about yet
+    private List<Cell> unpublishedCells = new ArrayList<>();
     private Argument rootNodeArgument = null;
     private Boolean selected;
     private Boolean hidden;
     private String name;
     private int orderIndex = -1;
     private DatavyuDataStore owningDatastore;
+    private final AtomicLong changeCount = new AtomicLong();
 
     /**
      * Default constructor.
@@ -82,30 +87,19 @@ public final class DatavyuVariable implements Variable {
         owningDatastore.markAsChanged();
     }
 
-    /**
-     * @param variableId The Identifier of the variable we want the listeners for.
-     * @return The list of listeners for the specified variableId.
-     */
-    private static List<VariableListener> getListeners(UUID variableId) {
-        List<VariableListener> result = allListeners.get(variableId);
-        if (result == null) {
-            result = new ArrayList<>();
-            allListeners.put(variableId, result);
-        }
-        return result;
-    }
-
-    /**
-     * Removes all the listeners for all the variables.
-     */
-    public static void clearListeners() {
-        allListeners.clear();
-    }
-
     public void addCell(Cell cell) {
         if (cell.getCellValue().getArgument() == this.getRootNode()) {
+            setCounted(cell, true);
+            temporalIndex.add(cell);
+            owningDatastore.trackCell(cell);
+            cellsChanged();
+            if (owningDatastore.isBulkLoading()) {
+                bufferedCells.add(cell);
+                owningDatastore.markAsChanged();
+                return;
+            }
             cells.add(cell);
-            for (VariableListener vl : getListeners(getID())) {
+            for (VariableListener vl : listeners) {
                 vl.cellInserted(cell);
             }
             owningDatastore.markAsChanged();
@@ -127,10 +121,23 @@ public final class DatavyuVariable implements Variable {
     @Override
     public Cell createCell() {
         Cell c = new DatavyuCell(this, this.getRootNode());
+        cellsChanged();
+
+        if (owningDatastore != null && owningDatastore.isBulkLoading()) {
+            bufferedCells.add(c);
+            temporalIndex.add(c);
+            owningDatastore.trackCell(c);
+            owningDatastore.markAsChanged();
+            return c;
+        }
 
         cells.add(c);
+        temporalIndex.add(c);
+        if (owningDatastore != null) {
+            owningDatastore.trackCell(c);
+        }
 
-        for (VariableListener vl : getListeners(getID())) {
+        for (VariableListener vl : listeners) {
             vl.cellInserted(c);
         }
 
@@ -140,25 +147,106 @@ public final class DatavyuVariable implements Variable {
 
     @Override
     public void removeCell(final Cell cell) {
-        cells.remove(cell);
+        appendBufferedCells();
+        if (cells.remove(cell)) {
+            setCounted(cell, false);
+            owningDatastore.untrackCell(cell);
+        }
+        temporalIndex.remove(cell);
 
+        cellsChanged();
         owningDatastore.markAsChanged();
 
-        for (VariableListener vl : getListeners(getID())) {
+        // Listeners never heard of cells that were created and removed within the same bulk load.
+        if (unpublishedCells.remove(cell)) {
+            return;
+        }
+
+        for (VariableListener vl : listeners) {
             vl.cellRemoved(cell);
         }
 
     }
 
+    @Override
+    public void removeCells(final Collection<Cell> cellsToRemove) {
+        appendBufferedCells();
+        Set<Cell> removed = new LinkedHashSet<>();
+        for (Cell cell : cellsToRemove) {
+            if (temporalIndex.contains(cell)) {
+                removed.add(cell);
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+
+        cells.removeAll(removed);
+        List<Cell> deletedCells = new ArrayList<>(removed.size());
+        for (Cell cell : removed) {
+            temporalIndex.remove(cell);
+            setCounted(cell, false);
+            owningDatastore.untrackCell(cell);
+
+            // Listeners never heard of cells that were created and removed within the same bulk load.
+            if (unpublishedCells.isEmpty() || !unpublishedCells.remove(cell)) {
+                deletedCells.add(cell);
+            }
+        }
+
+        cellsChanged();
+        owningDatastore.markAsChanged();
+        if (!deletedCells.isEmpty()) {
+            deletedCells = Collections.unmodifiableList(deletedCells);
+            for (VariableListener vl : listeners) {
+                vl.cellsRemoved(deletedCells);
+            }
+        }
+    }
+
+    /**
+     * Sets whether the values of a cell are counted in the value frequencies of the arguments of this variable.
+     */
+    private static void setCounted(final Cell cell, final boolean counted) {
+        if (cell instanceof DatavyuCell) {
+            ((DatavyuCell) cell).setCounted(counted);
+        }
+    }
+
+    /**
+     * Appends the cells created so far in a bulk load to the cell list, so that
+     * readers see them. Listeners are not notified until the bulk load ends.
+     */
+    private void appendBufferedCells() {
+        if (!bufferedCells.isEmpty()) {
+            cells.addAll(bufferedCells);
+            unpublishedCells.addAll(bufferedCells);
+            bufferedCells.clear();
+        }
+    }
+
+    @Override
+    public void publishBufferedCells() {
+        appendBufferedCells();
+        if (!unpublishedCells.isEmpty()) {
+            List<Cell> newCells = Collections.unmodifiableList(new ArrayList<>(unpublishedCells));
+            unpublishedCells.clear();
+
+            for (VariableListener vl : listeners) {
+                vl.cellsInserted(newCells);
+            }
+        }
+    }
+
     @Override
     public List<Cell> getCells() {
+        appendBufferedCells();
         return cells;
     }
 
     @Override
     public Cell getCellTemporally(final int index) {
-        Collections.sort(cells, CellComparator);
-        return cells.get(index);
+        return temporalIndex.get(index);
     }
 
     @Override
@@ -168,6 +256,7 @@ public final class DatavyuVariable implements Variable {
 
     @Override
     public void setRootNode(final Argument a) {
+        cellsChanged();
         owningDatastore.markAsChanged();
         rootNodeArgument = a;
     }
@@ -186,13 +275,62 @@ public final class DatavyuVariable implements Variable {
 
     @Override
     public List<Cell> getCellsTemporally() {
-        Collections.sort(cells, CellComparator);
-        return cells;
+        return temporalIndex.getCells();
+    }
+
+    @Override
+    public List<Cell> getCellsAt(final long time) {
+        return temporalIndex.getOverlapping(time, time);
+    }
+
+    @Override
+    public List<Cell> getCellsOverlapping(final long start, final long end) {
+        return temporalIndex.getOverlapping(start, end);
+    }
+
+    @Override
+    public Cell getNextCellAfter(final long time) {
+        return temporalIndex.getNextAfter(time);
+    }
+
+    /**
+     * Repositions a cell in the temporal index, called by cells of this variable
+     * when their onset or offset changes.
+     *
+     * @param cell The cell whose onset or offset has changed.
+     */
+    void cellTimesChanged(final Cell cell) {
+        temporalIndex.update(cell);
+    }
+
+    /**
+     * Counts a change to the cells or codes of this variable.
+     */
+    void cellsChanged() {
+        changeCount.incrementAndGet();
+    }
+
+    /**
+     * Counts a change to a cell of this variable and tells the listeners, called by its cells when their onset,
+     * offset or value changes.
+     *
+     * @param cell The cell that has changed.
+     */
+    void cellChanged(final Cell cell) {
+        cellsChanged();
+        for (VariableListener vl : listeners) {
+            vl.cellChanged(cell);
+        }
+    }
+
+    @Override
+    public long getChangeCount() {
+        return changeCount.get();
     }
 
     @Override
     public boolean contains(final Cell c) {
-        return cells.contains(c);
+        return temporalIndex.contains(c);
     }
 
     @Override
@@ -216,7 +354,7 @@ public final class DatavyuVariable implements Variable {
             owningDatastore.markAsChanged();
             hidden = hiddenParm;
 
-            for (VariableListener vl : getListeners(getID())) {
+            for (VariableListener vl : listeners) {
                 vl.visibilityChanged(hidden);
             }
         }
@@ -252,7 +390,7 @@ public final class DatavyuVariable implements Variable {
             owningDatastore.updateVariableName(name, newName, this);
         }
         this.name = newName;
-        for (VariableListener vl : getListeners(getID())) {
+        for (VariableListener vl : listeners) {
             vl.nameChanged(newName);
         }
     }
@@ -332,12 +470,12 @@ public final class DatavyuVariable implements Variable {
 
     @Override
     public void addListener(final VariableListener listener) {
-        getListeners(getID()).add(listener);
+        listeners.add(listener);
     }
 
     @Override
     public void removeListener(final VariableListener listener) {
-        getListeners(getID()).remove(listener);
+        listeners.remove(listener);
     }
 
     @Override
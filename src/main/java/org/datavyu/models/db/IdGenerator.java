@@ -0,0 +1,51 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.models.db;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out identifiers for the objects of the data model.
+ *
+ * Identifiers are sequential 64-bit numbers, which are far cheaper to create and compare than random UUIDs. Where a
+ * UUID is needed it is derived from the identifier and a random session prefix, so it is still unique across
+ * sessions.
+ */
+final class IdGenerator {
+
+    /** Random prefix of the UUIDs derived during this session. */
+    private static final long SESSION_PREFIX = UUID.randomUUID().getMostSignificantBits();
+
+    private static final AtomicLong nextId = new AtomicLong(1L);
+
+    private IdGenerator() {
+    }
+
+    /**
+     * @return A new identifier, unique within this session.
+     */
+    static long nextId() {
+        return nextId.getAndIncrement();
+    }
+
+    /**
+     * @param id An identifier handed out by {@link #nextId()}.
+     * @return The UUID for the identifier.
+     */
+    static UUID toUUID(final long id) {
+        return new UUID(SESSION_PREFIX, id);
+    }
+}
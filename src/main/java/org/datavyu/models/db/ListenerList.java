@@ -0,0 +1,143 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.models.db;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * The listeners of a single model object.
+ *
+ * Listeners are held until they are removed; views remove themselves from the model when they are discarded. The
+ * listeners are kept in an array that is replaced, never modified, whenever a listener is added or removed; notifying
+ * the listeners therefore needs no lock and is not disturbed by listeners that add or remove listeners while they are
+ * being notified.
+ *
+ * @param <T> The type of listener.
+ */
+public final class ListenerList<T> implements Iterable<T> {
+
+    private static final Object[] NO_LISTENERS = new Object[0];
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<ListenerList, Object[]> LISTENERS =
+            AtomicReferenceFieldUpdater.newUpdater(ListenerList.class, Object[].class, "listeners");
+
+    /** Every list that has had a listener added, for the diagnostic count. */
+    private static final Set<ListenerList<?>> registeredLists =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<ListenerList<?>, Boolean>()));
+
+    private volatile Object[] listeners = NO_LISTENERS;
+
+    private volatile boolean registered = false;
+
+    /**
+     * Adds a listener.
+     *
+     * @param listener The listener to add.
+     */
+    void add(final T listener) {
+        if (!registered) {
+            registered = true;
+            registeredLists.add(this);
+        }
+
+        Object[] current;
+        Object[] updated;
+        do {
+            current = listeners;
+            updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = listener;
+        } while (!LISTENERS.compareAndSet(this, current, updated));
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener The listener to remove.
+     */
+    void remove(final T listener) {
+        Object[] current;
+        Object[] updated;
+        do {
+            current = listeners;
+            List<Object> result = new ArrayList<>(current.length);
+            for (Object l : current) {
+                if (l != listener) {
+                    result.add(l);
+                }
+            }
+            if (result.size() == current.length) {
+                return;
+            }
+            updated = result.isEmpty() ? NO_LISTENERS : result.toArray();
+        } while (!LISTENERS.compareAndSet(this, current, updated));
+    }
+
+    /**
+     * @return True if there are no listeners.
+     */
+    boolean isEmpty() {
+        return listeners.length == 0;
+    }
+
+    /**
+     * @return The number of listeners.
+     */
+    int size() {
+        return listeners.length;
+    }
+
+    /**
+     * Iterates over the listeners registered at the time of the call.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        final Object[] snapshot = listeners;
+        return new Iterator<T>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < snapshot.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (index >= snapshot.length) {
+                    throw new NoSuchElementException();
+                }
+                return (T) snapshot[index++];
+            }
+        };
+    }
+
+    /**
+     * Diagnostic for tracking down leaked views: the number of listeners registered with all the cells and variables
+     * that are still in memory.
+     *
+     * @return The number of registered listeners.
+     */
+    public static int getRegisteredListenerCount() {
+        int result = 0;
+        synchronized (registeredLists) {
+            for (ListenerList<?> list : registeredLists) {
+                result += list.size();
+            }
+        }
+        return result;
+    }
+}
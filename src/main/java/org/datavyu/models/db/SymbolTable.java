@@ -0,0 +1,160 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.models.db;
+
+import java.util.*;
+
+/**
+ * Dictionary that maps the distinct values of a code to small integer ids.
+ *
+ * Id 0 is reserved for the empty value and is never handed out. Every id carries a reference count; when the count of
+ * a value drops to zero the value is forgotten and its id is recycled. Each value has a single canonical String
+ * instance, so holders of the same value share it.
+ *
+ * Separately from the references, the table keeps the frequency of every value among the cells that are currently
+ * part of a variable. Cells that have been removed, e.g. those held for undo, keep their references but are not
+ * counted.
+ */
+final class SymbolTable {
+
+    /** The id of the empty value. */
+    static final int EMPTY = 0;
+
+    /** Values indexed by id, null for free ids. */
+    private String[] values = new String[8];
+
+    /** Reference counts indexed by id. */
+    private int[] counts = new int[8];
+
+    /** Frequencies indexed by id. */
+    private int[] frequencies = new int[8];
+
+    /** Lookup of the id for each value. */
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /** Ids that have been released and can be handed out again. */
+    private int[] freeIds = new int[8];
+
+    private int numFreeIds = 0;
+
+    /** The next id that has never been handed out. */
+    private int nextId = 1;
+
+    /**
+     * Looks up the id of a value, adding the value to the table if needed, and takes a reference to it.
+     *
+     * @param value The value to look up.
+     * @return The id of the value, {@link #EMPTY} for null or empty values.
+     */
+    synchronized int acquire(final String value) {
+        if (value == null || value.isEmpty()) {
+            return EMPTY;
+        }
+
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = numFreeIds > 0 ? freeIds[--numFreeIds] : nextId++;
+            if (id >= values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+                counts = Arrays.copyOf(counts, counts.length * 2);
+                frequencies = Arrays.copyOf(frequencies, frequencies.length * 2);
+            }
+            values[id] = value;
+            ids.put(value, id);
+        }
+        counts[id]++;
+        return id;
+    }
+
+    /**
+     * Releases a reference to a value.
+     *
+     * @param id The id of the value.
+     */
+    synchronized void release(final int id) {
+        if (id != EMPTY && --counts[id] == 0) {
+            ids.remove(values[id]);
+            values[id] = null;
+            if (numFreeIds == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+            }
+            freeIds[numFreeIds++] = id;
+        }
+    }
+
+    /**
+     * @param id The id of the value.
+     * @return The value for the id, null for {@link #EMPTY}.
+     */
+    synchronized String valueOf(final int id) {
+        return values[id];
+    }
+
+    /**
+     * @param value The value to look up.
+     * @return The id of the value, {@link #EMPTY} for null, empty or unknown values.
+     */
+    synchronized int idOf(final String value) {
+        Integer id = value == null ? null : ids.get(value);
+        return id == null ? EMPTY : id;
+    }
+
+    /**
+     * Counts one more occurrence of a value in the live cells.
+     *
+     * @param id The id of the value, which must be referenced.
+     */
+    synchronized void count(final int id) {
+        frequencies[id]++;
+    }
+
+    /**
+     * Counts one less occurrence of a value in the live cells.
+     *
+     * @param id The id of the value, which must be referenced.
+     */
+    synchronized void uncount(final int id) {
+        frequencies[id]--;
+    }
+
+    /**
+     * @param value The value to look up.
+     * @return The number of live cells with the value.
+     */
+    synchronized int getFrequency(final String value) {
+        int id = idOf(value);
+        return id == EMPTY ? 0 : frequencies[id];
+    }
+
+    /**
+     * @return The number of live cells with each value that occurs at least once, ordered by value.
+     */
+    synchronized SortedMap<String, Integer> getFrequencies() {
+        SortedMap<String, Integer> result = new TreeMap<>();
+        for (int id = 1; id < nextId; id++) {
+            if (values[id] != null && frequencies[id] > 0) {
+                result.put(values[id], frequencies[id]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The values that occur in at least one live cell, ordered by value.
+     */
+    synchronized List<String> getDistinctValues() {
+        return new ArrayList<>(getFrequencies().keySet());
+    }
+}
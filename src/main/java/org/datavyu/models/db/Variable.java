@@ -22,6 +22,7 @@
  */
 package org.datavyu.models.db;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -50,6 +51,14 @@ public interface Variable {
      */
     void removeCell(final Cell cell);
 
+    /**
+     * Removes several cells from the variable in one pass, notifying listeners
+     * once. Cells that do not belong to the variable are ignored.
+     *
+     * @param cells The cells to remove from the variable.
+     */
+    void removeCells(final Collection<Cell> cells);
+
     /**
      * @return All the cells stored in the variable.
      */
@@ -82,10 +91,40 @@ public interface Variable {
     void setVariableType(final Argument newType);
 
     /**
-     * @return All the cells stored in the variable using a temporal alignment.
+     * @return All the cells stored in the variable using a temporal alignment,
+     * as an immutable snapshot that is not affected by later changes. Looking up
+     * the position of a cell in the snapshot with indexOf takes constant time.
      */
     List<Cell> getCellsTemporally();
 
+    /**
+     * @param time The time in milliseconds.
+     * @return The cells whose onset is at or before time and whose offset is at
+     * or after time, in temporal order.
+     */
+    List<Cell> getCellsAt(final long time);
+
+    /**
+     * @param start The start of the time range in milliseconds.
+     * @param end   The end of the time range in milliseconds.
+     * @return The cells that overlap the closed range [start, end], in
+     * temporal order.
+     */
+    List<Cell> getCellsOverlapping(final long start, final long end);
+
+    /**
+     * @param time The time in milliseconds.
+     * @return The first cell temporally with an onset after time, null if no
+     * such cell exists.
+     */
+    Cell getNextCellAfter(final long time);
+
+    /**
+     * @return A count that increases every time the cells or codes of this variable change; changes to the name,
+     * visibility or order of the variable are not counted.
+     */
+    long getChangeCount();
+
     /**
      * @param c The cell to check if it exists in this variable.
      * @return True if this variable contains the supplied cell, false otherwise.
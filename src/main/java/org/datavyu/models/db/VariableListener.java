@@ -22,6 +22,8 @@
  */
 package org.datavyu.models.db;
 
+import java.util.List;
+
 /**
  * Implement this interface to be notified of changes to a variable.
  */
@@ -49,10 +51,33 @@ public interface VariableListener {
      */
     void cellInserted(final Cell newCell);
 
+    /**
+     * A batch of cells has been inserted into the variable at the end of a bulk
+     * load, see {@link DataStore#beginBulkLoad()}.
+     *
+     * @param newCells The new cells that have been added to the variable.
+     */
+    void cellsInserted(final List<Cell> newCells);
+
     /**
      * A cell has been removed from the variable.
      *
      * @param deletedCell The cell that has been removed from the variable.
      */
     void cellRemoved(final Cell deletedCell);
+
+    /**
+     * A batch of cells has been removed from the variable, see
+     * {@link Variable#removeCells(java.util.Collection)}.
+     *
+     * @param deletedCells The cells that have been removed from the variable.
+     */
+    void cellsRemoved(final List<Cell> deletedCells);
+
+    /**
+     * The onset, offset or value of a cell of the variable has changed.
+     *
+     * @param changedCell The cell that has changed.
+     */
+    void cellChanged(final Cell changedCell);
 }
@@ -15,6 +15,7 @@
 package org.datavyu.undoableedits;
 
 import org.datavyu.Datavyu;
+import org.datavyu.controllers.AutoSaveController;
 import org.datavyu.undoableedits.ChangeCellEdit.Granularity;
 
 import javax.swing.*;
@@ -40,12 +41,14 @@ public class SpreadsheetUndoManager extends UndoManager implements ListModel {
     @Override
     public synchronized void undo() throws CannotUndoException {
         super.undo();
+        AutoSaveController.editMade();
         Datavyu.getView().getSpreadsheetPanel().redrawCells();
     }
 
     @Override
     public synchronized void redo() throws CannotRedoException {
         super.redo();
+        AutoSaveController.editMade();
     }
 
     @Override
@@ -80,6 +83,7 @@ public class SpreadsheetUndoManager extends UndoManager implements ListModel {
         } else {
             result = false;
         }
+        AutoSaveController.editMade();
 
         for (ListDataListener l : listeners) {
             l.contentsChanged(null);
@@ -161,5 +165,6 @@ public class SpreadsheetUndoManager extends UndoManager implements ListModel {
         } else if (edit.canRedo()) {
             this.redoTo(edit);
         }
+        AutoSaveController.editMade();
     }
 }
@@ -14,18 +14,39 @@
  */
 package org.datavyu.util;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.HashSet;
+import javax.swing.*;
+import java.awt.*;
 import java.util.Set;
 
 
 /**
  * Keeps multiple streams in periodic sync and does not play beyond the boundaries of a stream.
+ *
+ * The clock ticks on a single thread. Each tick reads the clock once and then notifies the listeners in phases: the
+ * periodic sync, the clock boundary check, the streams boundary check and the seek playback. Listeners registered to
+ * run on the event dispatch thread are sent every event, ticks included, through a single queue, so they are notified
+ * of the events in order. A tick reads the clock when it is notified rather than when it is queued, and a tick queued
+ * right after another one is merged into it, so a busy event dispatch thread only sees the latest time. Forced syncs
+ * of those listeners are queued as ticks and are notified before the phases of the tick they are merged into.
+ *
+ * The number of ticks per second is set by the datavyu.clockTickRate property, 10 by default, or "display" to tick at
+ * the refresh rate of the screen.
+ *
+ * The state of the clock is an immutable {@link State} that is replaced whenever the clock changes. Reading the clock
+ * never waits: the current time is computed from the state and System.nanoTime. Changes to the clock are made one at
+ * a time, holding the lock of the clock, so that listeners are notified of them in order.
  */
 public final class ClockTimer {
 
@@ -35,8 +56,14 @@ public final class ClockTimer {
     /** Synchronization threshold in milliseconds */
     public static final long SYNC_THRESHOLD = 1500L; // 1.5 sec  (because some plugins are not very precise in seek)
 
-    /** Clock tick period in milliseconds */
-    private static final long CLOCK_INTERVAL = 100L;
+    /** Default number of clock ticks per second */
+    private static final double DEFAULT_TICK_RATE = 10.0;
+
+    /** The number of ticks per second when ticking with a screen whose refresh rate is unknown */
+    private static final double DEFAULT_REFRESH_RATE = 60.0;
+
+    /** The value of the datavyu.clockTickRate property to tick at the refresh rate of the screen */
+    public static final String DISPLAY_TICK_RATE = "display";
 
     /** Clock initial delay in milliseconds */
     private static final long CLOCK_DELAY = 0L;
@@ -44,50 +71,105 @@ public final class ClockTimer {
     /** Convert nanoseconds to milliseconds */
     private static final long NANO_IN_MILLI = 1000000L;
 
-    /** Minimum time for the clock in milliseconds */
-    private long minTime;
+    /** Convert seconds to nanoseconds */
+    private static final double NANO_IN_SECOND = 1e9;
 
-    /** Maximum time for the clock in milliseconds */
-    private long maxTime;
+    /** The state of the clock */
+    private final AtomicReference<State> state = new AtomicReference<>(new State(System.nanoTime(), 0, 1F, 0, 0, true));
 
-    /** Current time of the clock in milliseconds */
-    private double clockTime;
+    private ScheduledExecutorService execService
+        =   Executors.newSingleThreadScheduledExecutor();
 
-    /** Last time in nanoseconds; it is used to calculate the elapsed */
-    private double lastTime;
+    /** The scheduled ticks */
+    private ScheduledFuture<?> tickTask;
 
-    /** Is the clock stopped */
-    private boolean isStopped;
+    /** The number of ticks per second */
+    private volatile double tickRate;
 
-    /** The rate factor for the clock updates */
-    private float rate = 1F;
+    /** Listeners of this clock, notified on the clock thread */
+    private Set<ClockListener> clockListeners = new CopyOnWriteArraySet<>();
 
-    private ScheduledExecutorService execService
-        =   Executors.newScheduledThreadPool(4);
+    /** Listeners of this clock, notified on the event dispatch thread */
+    private Set<ClockListener> uiListeners = new CopyOnWriteArraySet<>();
 
-    /** Listeners of this clock */
-    private Set<ClockListener> clockListeners = new HashSet<>();
+    /** The events waiting to be sent to the event dispatch thread, in order, guarded by itself */
+    private final Deque<UiEvent> pendingUiEvents = new ArrayDeque<>();
 
     /**
      * Default constructor.
      */
     public ClockTimer() {
+        setTickRate(getConfiguredTickRate());
+    }
+
+    /**
+     * @return The number of ticks per second set by the datavyu.clockTickRate property.
+     */
+    static double getConfiguredTickRate() {
+        String value = System.getProperty("datavyu.clockTickRate");
+        if (value == null) {
+            return DEFAULT_TICK_RATE;
+        }
+        if (DISPLAY_TICK_RATE.equalsIgnoreCase(value.trim())) {
+            return getDisplayRefreshRate();
+        }
+        try {
+            double rate = Double.parseDouble(value);
+            if (rate > 0 && !Double.isInfinite(rate)) {
+                return rate;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        logger.warn("Invalid clock tick rate " + value + ", using " + DEFAULT_TICK_RATE);
+        return DEFAULT_TICK_RATE;
+    }
 
-        // Initialize values
-        clockTime = 0;
-        lastTime = 0;
-        minTime = 0;
-        maxTime = 0;
-        isStopped = true;
+    /**
+     * @return The refresh rate of the default screen in Hz.
+     */
+    public static double getDisplayRefreshRate() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return DEFAULT_REFRESH_RATE;
+        }
+        int refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDisplayMode().getRefreshRate();
+        return refreshRate != DisplayMode.REFRESH_RATE_UNKNOWN ? refreshRate : DEFAULT_REFRESH_RATE;
+    }
 
-        execService.scheduleAtFixedRate(() -> periodicSync()
-            , CLOCK_DELAY, CLOCK_INTERVAL, TimeUnit.MILLISECONDS);
-        execService.scheduleAtFixedRate(() -> checkClockBoundary()
-            , CLOCK_DELAY, CLOCK_INTERVAL, TimeUnit.MILLISECONDS);
-        execService.scheduleAtFixedRate(() -> checkStreamsBoundary()
-            , CLOCK_DELAY, CLOCK_INTERVAL, TimeUnit.MILLISECONDS);
-        execService.scheduleAtFixedRate(() -> notifySeekPlayback()
-            , CLOCK_DELAY, CLOCK_INTERVAL, TimeUnit.MILLISECONDS);
+    /**
+     * Sets how often the clock ticks, for example to the refresh rate of the display.
+     *
+     * @param ticksPerSecond The number of ticks per second
+     */
+    public synchronized void setTickRate(double ticksPerSecond) {
+        if (!(ticksPerSecond > 0) || Double.isInfinite(ticksPerSecond)) {
+            throw new IllegalArgumentException("Invalid tick rate " + ticksPerSecond);
+        }
+        logger.debug("Setting Clock tick rate to " + ticksPerSecond);
+        if (tickTask != null) {
+            tickTask.cancel(false);
+        }
+        tickRate = ticksPerSecond;
+        tickTask = execService.scheduleAtFixedRate(() -> tick()
+            , CLOCK_DELAY, Math.max(1L, Math.round(NANO_IN_SECOND / ticksPerSecond)), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return The number of ticks per second
+     */
+    public double getTickRate() {
+        return tickRate;
+    }
+
+    /**
+     * @return The state of the clock, moved to the current time. Only replace the state while holding the lock.
+     */
+    private State now() {
+        State current = state.get();
+        long nanos = System.nanoTime();
+        return new State(nanos, current.getTime(nanos), current.rate, current.minTime, current.maxTime,
+                current.stopped);
     }
 
     /**
@@ -97,7 +179,9 @@ public final class ClockTimer {
      */
     public synchronized void setMinTime(long minTime) {
         logger.debug("Setting Clock minimum time");
-        this.minTime = minTime;
+        State current = now();
+        state.set(new State(current.anchorNanos, current.anchorTime, current.rate, minTime, current.maxTime,
+                current.stopped));
     }
 
     /**
@@ -107,7 +191,9 @@ public final class ClockTimer {
      */
     public synchronized void setMaxTime(long maxTime) {
         logger.debug("Setting Clock maximum time");
-        this.maxTime = maxTime;
+        State current = now();
+        state.set(new State(current.anchorNanos, current.anchorTime, current.rate, current.minTime, maxTime,
+                current.stopped));
     }
 
     /**
@@ -117,8 +203,9 @@ public final class ClockTimer {
      *
      * @return Clock time in range for this clock timer
      */
-    public synchronized long toRange(long clockTime) {
-        return Math.min(Math.max(clockTime, minTime), maxTime);
+    public long toRange(long clockTime) {
+        State current = state.get();
+        return Math.min(Math.max(clockTime, current.minTime), current.maxTime);
     }
 
 
@@ -127,24 +214,25 @@ public final class ClockTimer {
      *
      * @return Current stream time
      */
-    public synchronized double getStreamTime() {
-        return (long) clockTime + minTime;
+    public double getStreamTime() {
+        State current = state.get();
+        return (long) current.getTime(System.nanoTime()) + current.minTime;
     }
 
     /**
-     * Get the current Clock time, within the tolerance of the periodic sync.
+     * Get the current Clock time.
      *
      * @return Current clock time
      */
-    public synchronized double getClockTime() {
-        return clockTime;
+    public double getClockTime() {
+        return state.get().getTime(System.nanoTime());
     }
 
     /**
      * @return Current clock rate.
      */
-    public synchronized float getRate() {
-        return rate;
+    public float getRate() {
+        return state.get().rate;
     }
 
     /**
@@ -157,9 +245,11 @@ public final class ClockTimer {
      * @param time The new time
      */
     public synchronized void setTime(long time) {
-        if (minTime <= time && time <= maxTime) {
+        State current = state.get();
+        if (current.minTime <= time && time <= current.maxTime) {
             logger.debug("Setting Clock time to: " + time);
-            clockTime = time;
+            state.set(new State(System.nanoTime(), time, current.rate, current.minTime, current.maxTime,
+                    current.stopped));
             // Don't notify a sync or force a sync
             // The time will be updated by a periodic sync
         }
@@ -173,22 +263,26 @@ public final class ClockTimer {
      * @param time The new time
      */
     public synchronized void setForceTime(long time) {
-        if (minTime <= time && time <= maxTime) {
-            clockTime = time;
-            // Notify a force sync
-            notifyForceSync();
-        }else if (time < minTime){
-            clockTime = minTime;
-            // Notify a force sync
-            notifyForceSync();
+        State current = state.get();
+        long newTime;
+        if (current.minTime <= time && time <= current.maxTime) {
+            newTime = time;
+        } else if (time < current.minTime) {
+            newTime = current.minTime;
+        } else {
+            return;
         }
+        state.set(new State(System.nanoTime(), newTime, current.rate, current.minTime, current.maxTime,
+                current.stopped));
+        // Notify a force sync
+        notifyForceSync();
     }
 
     /**
      * Toggles between start/stop
      */
     public synchronized void toggle() {
-        if (isStopped) {
+        if (isPaused()) {
             start();
         } else {
             stop();
@@ -205,12 +299,13 @@ public final class ClockTimer {
    */
   public synchronized void setRate(float newRate) {
         logger.debug("Setting Clock Rate to " + newRate + "X");
-        updateElapsedTime();
-        rate = newRate;
+        State current = now();
+        state.set(new State(current.anchorNanos, current.anchorTime, newRate, current.minTime, current.maxTime,
+                current.stopped));
         // FIRST notify about the rate change
         notifyRate();
         // SECOND start or stop
-        if (Math.abs(rate) < Math.ulp(1f)) {
+        if (Math.abs(newRate) < Math.ulp(1f)) {
             stop();
         } else {
             start();
@@ -222,19 +317,19 @@ public final class ClockTimer {
      * start event with the current clock time
      */
     public synchronized void start() {
-        if (isStopped) {
+        State current = state.get();
+        if (current.stopped) {
             logger.debug("Starting Clock");
-            isStopped = false;
-            lastTime = System.nanoTime();
+            state.set(new State(System.nanoTime(), current.anchorTime, current.rate, current.minTime,
+                    current.maxTime, false));
             notifyStart();
         }
     }
 
     private synchronized void stop() {
-        if (!isStopped) {
+        if (!isPaused()) {
             logger.debug("Stopping Clock");
-            updateElapsedTime();
-            isStopped = true;
+            setStopped();
             notifyStop();
             // Force sync after a stop
             notifyForceSync();
@@ -249,21 +344,29 @@ public final class ClockTimer {
      * instead of calling stop directly!
      */
     public synchronized void pause() {
-        if (!isStopped) {
+        if (!isPaused()) {
             logger.debug("Pausing Clock");
-            updateElapsedTime();
-            isStopped = true;
+            setStopped();
             notifyPause();
             // Force sync after a stop
             notifyForceSync();
         }
     }
 
+    /**
+     * Stops the clock at the current time.
+     */
+    private void setStopped() {
+        State current = now();
+        state.set(new State(current.anchorNanos, current.anchorTime, current.rate, current.minTime,
+                current.maxTime, true));
+    }
+
     /**
      * @return True if clock is Paused.
      */
     public boolean isPaused() {
-        return isStopped;
+        return state.get().stopped;
     }
 
     /**
@@ -278,8 +381,23 @@ public final class ClockTimer {
      *
      * @param listener Listener requiring clockTick updates
      */
-    public synchronized void registerListener(final ClockListener listener) {
-        clockListeners.add(listener);
+    public void registerListener(final ClockListener listener) {
+        registerListener(listener, false);
+    }
+
+    /**
+     * Registers a clock listener
+     *
+     * @param listener Listener requiring clockTick updates
+     * @param onEventThread True to notify the listener on the event dispatch thread, for listeners that update the
+     *                      user interface
+     */
+    public void registerListener(final ClockListener listener, final boolean onEventThread) {
+        if (onEventThread) {
+            uiListeners.add(listener);
+        } else {
+            clockListeners.add(listener);
+        }
     }
 
   /**
@@ -287,111 +405,216 @@ public final class ClockTimer {
    *
    * @param listener Listener requiring clockTick updates
    */
-    public synchronized void unRegisterListener(final ClockListener listener) {
+    public void unRegisterListener(final ClockListener listener) {
         clockListeners.remove(listener);
+        uiListeners.remove(listener);
     }
 
     /**
-     * Update the clock time with the elapsed time since the last update
+     * The tick of the clock - reads the time once and notifies the listeners of each phase in turn.
      */
-    private synchronized void updateElapsedTime() {
-        double newTime = System.nanoTime();
-        clockTime = isStopped ? clockTime : Math.min(Math.max(
-                clockTime + rate * (newTime - lastTime) / NANO_IN_MILLI, minTime), maxTime);
-        lastTime = newTime;
+    private void tick() {
+        final double time = getClockTime();
+
+        try {
+            notifyTick(clockListeners, time);
+        } catch (RuntimeException e) {
+            // Keep ticking, an exception would cancel the scheduled ticks.
+            logger.error("Clock listener failed", e);
+        }
+
+        postUiEvent(null, false);
     }
 
     /**
-     * The "periodicSync" of the clock - updates listeners of changes in time.
+     * Queues an event for the listeners on the event dispatch thread, posting the queue if it was empty. A tick is
+     * merged into the last event if that is a tick as well.
+     *
+     * @param notification Notifies a listener, null for a tick
+     * @param forceSync True if the listeners are forced to sync to the time of the tick
      */
-    private synchronized void periodicSync() {
-        updateElapsedTime();
-        notifyPeriodicSync();
-    }
-
-    private synchronized void checkClockBoundary() {
-        updateElapsedTime();
-        notifyCheckClockBoundary();
-    }
-
-    private synchronized void checkStreamsBoundary() {
-        updateElapsedTime();
-        notifyCheckStreamsBoundary();
-    }
-
-    // Notify seek playback could be used if a different interval is need for the
-    // For the fake playback scheduler
-    private void notifySeekPlayback() {
-        for (ClockListener clockListener : clockListeners) {
-            clockListener.clockSeekPlayback(clockTime);
+    private void postUiEvent(final Consumer<ClockListener> notification, final boolean forceSync) {
+        if (uiListeners.isEmpty()) {
+            return;
+        }
+        boolean wasEmpty;
+        synchronized (pendingUiEvents) {
+            wasEmpty = pendingUiEvents.isEmpty();
+            UiEvent last = pendingUiEvents.peekLast();
+            if (notification == null && last != null && last.notification == null) {
+                last.forceSync |= forceSync;
+            } else {
+                pendingUiEvents.addLast(new UiEvent(notification, forceSync));
+            }
+        }
+        if (SwingUtilities.isEventDispatchThread()) {
+            notifyUiEvents();
+        } else if (wasEmpty) {
+            SwingUtilities.invokeLater(() -> notifyUiEvents());
         }
     }
 
-    private void notifyCheckClockBoundary() {
-        for (ClockListener clockListener : clockListeners) {
-            clockListener.clockBoundaryCheck(clockTime);
+    /**
+     * Notifies the listeners on the event dispatch thread of the events waiting for them, ticks at the current time.
+     */
+    private void notifyUiEvents() {
+        while (true) {
+            UiEvent event;
+            synchronized (pendingUiEvents) {
+                event = pendingUiEvents.pollFirst();
+                if (event == null) {
+                    return;
+                }
+            }
+            if (event.notification != null) {
+                for (ClockListener clockListener : uiListeners) {
+                    event.notification.accept(clockListener);
+                }
+                continue;
+            }
+
+            double time = getClockTime();
+            if (event.forceSync) {
+                for (ClockListener clockListener : uiListeners) {
+                    clockListener.clockForceSync(time);
+                }
+            }
+            notifyTick(uiListeners, time);
         }
     }
 
-    private void notifyCheckStreamsBoundary() {
-        for (ClockListener clockListener : clockListeners) {
-            clockListener.streamsBoundaryCheck(clockTime);
+    private static void notifyTick(final Set<ClockListener> listeners, final double time) {
+        for (ClockListener clockListener : listeners) {
+            clockListener.clockPeriodicSync(time);
+        }
+        for (ClockListener clockListener : listeners) {
+            clockListener.clockBoundaryCheck(time);
+        }
+        for (ClockListener clockListener : listeners) {
+            clockListener.streamsBoundaryCheck(time);
+        }
+        // Notify seek playback could be used if a different interval is need for the
+        // For the fake playback scheduler
+        for (ClockListener clockListener : listeners) {
+            clockListener.clockSeekPlayback(time);
         }
     }
 
     /**
-     * Notify clock listeners of a force periodicSync -- consumers must act on this
+     * Notifies the listeners of an event, those registered for the event dispatch thread on it.
+     *
+     * @param notification Notifies a listener
      */
-    private void notifyForceSync() {
+    private void notifyListeners(final Consumer<ClockListener> notification) {
         for (ClockListener clockListener : clockListeners) {
-            clockListener.clockForceSync(clockTime);
+            notification.accept(clockListener);
         }
+        postUiEvent(notification, false);
     }
 
     /**
-     * Notify clock listeners of a periodic periodicSync -- consumers may act on this
+     * Notify clock listeners of a force periodicSync -- consumers must act on this
      */
-    private void notifyPeriodicSync() {
+    private void notifyForceSync() {
+        final double time = getClockTime();
         for (ClockListener clockListener : clockListeners) {
-            clockListener.clockPeriodicSync(clockTime);
+            clockListener.clockForceSync(time);
         }
+        postUiEvent(null, true);
     }
 
     /**
      * Notify clock listeners of rate update.
      */
     private void notifyRate() {
-        for (ClockListener clockListener : clockListeners) {
-            clockListener.clockRate(rate);
-        }
+        final float newRate = getRate();
+        notifyListeners(clockListener -> clockListener.clockRate(newRate));
     }
 
     /**
      * Notify clock listeners of start event.
      */
     private void notifyStart() {
-        for (ClockListener clockListener : clockListeners) {
-            clockListener.clockStart(clockTime);
-        }
+        final double time = getClockTime();
+        notifyListeners(clockListener -> clockListener.clockStart(time));
     }
 
     /**
      * Notify clock listeners of stop event.
      */
     private void notifyStop() {
-        for (ClockListener clockListener : clockListeners) {
-            clockListener.clockStop(clockTime);
-        }
+        final double time = getClockTime();
+        notifyListeners(clockListener -> clockListener.clockStop(time));
     }
 
     /**
      * Notify clock listeners of pause event.
      */
     private void notifyPause() {
-        for (ClockListener clockListener : clockListeners) {
-            clockListener.clockPause(clockTime);
+        final double time = getClockTime();
+        notifyListeners(clockListener -> clockListener.clockPause(time));
+    }
+
+    /**
+     * An event for the listeners on the event dispatch thread.
+     */
+    private static final class UiEvent {
+        /** Notifies a listener, null for a tick */
+        final Consumer<ClockListener> notification;
+
+        /** True if the listeners are forced to sync to the time of the tick, guarded by the queue */
+        boolean forceSync;
+
+        UiEvent(final Consumer<ClockListener> notification, final boolean forceSync) {
+            this.notification = notification;
+            this.forceSync = forceSync;
         }
     }
+
+    /**
+     * The state of the clock at an instant, from which the time at any later instant is computed.
+     */
+    private static final class State {
+        /** The instant in nanoseconds, from System.nanoTime */
+        final long anchorNanos;
+
+        /** The clock time at the instant in milliseconds */
+        final double anchorTime;
+
+        /** The rate factor for the clock updates */
+        final float rate;
+
+        /** Minimum time for the clock in milliseconds */
+        final long minTime;
+
+        /** Maximum time for the clock in milliseconds */
+        final long maxTime;
+
+        /** Is the clock stopped */
+        final boolean stopped;
+
+        State(final long anchorNanos, final double anchorTime, final float rate, final long minTime,
+              final long maxTime, final boolean stopped) {
+            this.anchorNanos = anchorNanos;
+            this.anchorTime = anchorTime;
+            this.rate = rate;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.stopped = stopped;
+        }
+
+        /**
+         * @param nanos An instant in nanoseconds, from System.nanoTime
+         * @return The clock time at the instant in milliseconds
+         */
+        double getTime(final long nanos) {
+            if (stopped) {
+                return anchorTime;
+            }
+            return Math.min(Math.max(anchorTime + rate * (nanos - anchorNanos) / NANO_IN_MILLI, minTime), maxTime);
+        }
+    }
+
     /**
      * Listener interface for clock 'ticks'.
      */
@@ -30,12 +30,12 @@ public class OpfFilter extends FileFilter {
 
     @Override
     public boolean accept(final File file) {
-        return (file.getName().endsWith(".opf") || file.isDirectory());
+        return (file.getName().endsWith(".opf") || file.getName().endsWith(".opfb") || file.isDirectory());
     }
 
     @Override
     public String getDescription() {
-        return "Datavyu project file (*.opf)";
+        return "Datavyu project file (*.opf, *.opfb)";
     }
 
 }
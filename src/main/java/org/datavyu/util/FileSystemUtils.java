@@ -21,6 +21,10 @@ import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.io.filefilter.TrueFileFilter;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Iterator;
 
 
@@ -205,4 +209,21 @@ public final class FileSystemUtils {
         }
         return null;
     }
+
+    /**
+     * Moves a completely written file over its destination, atomically where the file system supports it, so the
+     * destination is either the old or the new version of the file.
+     *
+     * @param tempFile The file that was written, in the same directory as the destination.
+     * @param destinationFile The file to replace.
+     * @throws IOException If unable to move the file.
+     */
+    public static void replaceFile(final File tempFile, final File destinationFile) throws IOException {
+        try {
+            Files.move(tempFile.toPath(), destinationFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), destinationFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 }
@@ -14,7 +14,6 @@
  */
 package org.datavyu.views;
 
-import com.fasterxml.jackson.core.JsonParseException;
 import javafx.embed.swing.JFXPanel;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.logging.log4j.LogManager;
@@ -63,6 +62,7 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * The main FrameView, representing the interface for Datavyu the user will
@@ -748,6 +748,7 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
                     // the last time datavyu crashed
                     if ((f.isFile()) &&
                             ((FilenameUtils.wildcardMatchOnSystem(f.getName(), "~*.opf")) ||
+                                    (FilenameUtils.wildcardMatchOnSystem(f.getName(), "~*.opfb")) ||
                                     (FilenameUtils.wildcardMatchOnSystem(f.getName(), "~*.csv")))) {
 
                         // Show the Dialog
@@ -760,6 +761,7 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
                         }
                         // delete the recovered file
                         f.delete();
+                        EditJournalController.getJournalFile(f).delete();
                     }
                 }
             }
@@ -831,6 +833,8 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
     public void closeTab() {
         if(Datavyu.getApplication().safeQuit(getTabbedPane().getSelectedComponent())) {
             getTabbedPane().remove(getTabbedPane().getSelectedComponent());
+            logger.debug("Model listeners still registered after closing tab: "
+                    + ListenerList.getRegisteredListenerCount());
         }
         if(getTabbedPane().getTabCount() == 0) {
             safeQuit();
@@ -1010,36 +1014,58 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
         if (result == JFileChooser.APPROVE_OPTION){
             importJSON(fileChooser);
         }
+    }
 
-        Datavyu.getView().getSpreadsheetPanel().redrawCells();
+    private void importJSON(DatavyuFileChooser fc){
+        String dbFileName = fc.getSelectedFile().getPath();
+        if (!dbFileName.endsWith(".json")) {
+            logger.error("The selected file is not a JSON File.");
+        }
 
+        // The file is read in the background and its passes added to the spreadsheet once it has been read.
+        new ImportJSONTask(fc.getSelectedFile(), getSpreadsheetPanel()).execute();
     }
 
-    private void importJSON(DatavyuFileChooser fc){
-        ProjectController projectController = Datavyu.getProjectController();
-        //TODO: why the project controller can't update (Have to Check it!)
-//        projectController.updateProject();
+    /**
+     * Reads the passes of a JSON file off the event dispatch thread, then adds them to the spreadsheet all at once.
+     */
+    private static final class ImportJSONTask extends SwingWorker<List<OpenDataStoreFileController.ImportedVariable>,
+            Void> {
 
-        try{
-            OpenDataStoreFileController importJSON = new OpenDataStoreFileController();
+        private final OpenDataStoreFileController importJSON = new OpenDataStoreFileController();
 
-            String dbFileName = fc.getSelectedFile().getPath();
-            if (!dbFileName.endsWith(".json")) {
-                logger.error("The selected file is not a JSON File.");
-            }
+        private final File file;
 
-            File file = fc.getSelectedFile();
+        private final SpreadSheetPanel spreadSheet;
 
-            importJSON.importJSONToSpreadsheet(file, getSpreadsheetPanel());
-        } catch (UserWarningException e) {
-            logger.error("Failed export to JSON. Error: ", e);
-            Datavyu.getApplication().showWarningDialog(e);
-        } catch (JsonParseException e) {
-            logger.error("Failed export to JSON. Error: ", e);
-            Datavyu.getApplication().showWarningDialog(e.getMessage());
-        } catch (IOException e) {
-            logger.error("Failed export to JSON. Error: ", e);
-            Datavyu.getApplication().showWarningDialog(e.getMessage());
+        ImportJSONTask(final File file, final SpreadSheetPanel spreadSheet) {
+            this.file = file;
+            this.spreadSheet = spreadSheet;
+        }
+
+        @Override
+        protected List<OpenDataStoreFileController.ImportedVariable> doInBackground() throws Exception {
+            return importJSON.readJSON(file);
+        }
+
+        @Override
+        protected void done() {
+            try {
+                importJSON.addToDataStore(get(), spreadSheet.getDataStore());
+                spreadSheet.redrawCells();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.error("Failed import from JSON. Error: ", e.getCause());
+                if (e.getCause() instanceof UserWarningException) {
+                    Datavyu.getApplication().showWarningDialog((UserWarningException) e.getCause());
+                } else {
+                    Datavyu.getApplication().showWarningDialog(e.getCause().getMessage());
+                }
+            } catch (UserWarningException e) {
+                logger.error("Failed import from JSON. Error: ", e);
+                Datavyu.getApplication().showWarningDialog(e);
+            }
         }
     }
 
@@ -1053,6 +1079,7 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
         DatavyuFileChooser fileChooser = new DatavyuFileChooser();
 
         fileChooser.addChoosableFileFilter(CellCsvFilter.INSTANCE);
+        fileChooser.addChoosableFileFilter(ColumnarFilter.INSTANCE);
         fileChooser.setFileFilter(CellCsvFilter.INSTANCE);
 
         int result = fileChooser.showSaveDialog(getComponent());
@@ -1069,9 +1096,11 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
         try {
             ExportDatabaseFileController exportC = new ExportDatabaseFileController();
 
+            boolean columnar = fc.getFileFilter() == ColumnarFilter.INSTANCE;
+            String extension = columnar ? ".dvc" : ".csv";
             String dbFileName = fc.getSelectedFile().getPath();
-            if (!dbFileName.endsWith(".csv")) {
-                dbFileName = dbFileName.concat(".csv");
+            if (!dbFileName.endsWith(extension)) {
+                dbFileName = dbFileName.concat(extension);
             }
 
             // Only save if the project file does not exists or if the user
@@ -1079,9 +1108,12 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
             if (!canSave(fc.getSelectedFile().getParent(), dbFileName)) {
                 return;
             }
-            File f = new File(fc.getSelectedFile().getParent(), dbFileName);
 
-            exportC.exportAsCells(dbFileName, projectController.getDataStore());
+            if (columnar) {
+                exportC.exportAsColumnar(dbFileName, projectController.getDataStore(), false);
+            } else {
+                exportC.exportAsCells(dbFileName, projectController.getDataStore());
+            }
         } catch (Exception e) {
             logger.error("Failed export to CSV. Error: ", e);
         }
@@ -1095,6 +1127,8 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
         DatavyuFileChooser fileChooser = new DatavyuFileChooser();
 
         fileChooser.addChoosableFileFilter(FrameCsvFilter.INSTANCE);
+        fileChooser.addChoosableFileFilter(FrameRunCsvFilter.INSTANCE);
+        fileChooser.addChoosableFileFilter(ColumnarFilter.INSTANCE);
         fileChooser.setFileFilter(FrameCsvFilter.INSTANCE);
 
         int result = fileChooser.showSaveDialog(getComponent());
@@ -1111,9 +1145,11 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
         try {
             ExportDatabaseFileController exportC = new ExportDatabaseFileController();
 
+            boolean columnar = fc.getFileFilter() == ColumnarFilter.INSTANCE;
+            String extension = columnar ? ".dvc" : ".csv";
             String dbFileName = fc.getSelectedFile().getPath();
-            if (!dbFileName.endsWith(".csv")) {
-                dbFileName = dbFileName.concat(".csv");
+            if (!dbFileName.endsWith(extension)) {
+                dbFileName = dbFileName.concat(extension);
             }
 
             // Only save if the project file does not exists or if the user
@@ -1122,7 +1158,12 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
                 return;
             }
 
-            exportC.exportByFrame(dbFileName, projController.getDataStore());
+            if (columnar) {
+                exportC.exportAsColumnar(dbFileName, projController.getDataStore(), true);
+            } else {
+                exportC.exportByFrame(dbFileName, projController.getDataStore(),
+                        fc.getFileFilter() == FrameRunCsvFilter.INSTANCE);
+            }
 
         } catch (Exception e) {
             logger.error("Export to CSV by frame failed. Error: ", e);
@@ -1193,7 +1234,7 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
             } else if (filter instanceof OpfFilter) {
                 String archiveName = fileChooser.getSelectedFile().getName();
 
-                if (!archiveName.endsWith(".opf")) {
+                if (!archiveName.endsWith(".opf") && !archiveName.endsWith(".opfb")) {
                     archiveName = archiveName.concat(".opf");
                 }
 
@@ -1288,7 +1329,7 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
             } else if (filter instanceof OpfFilter) {
                 String archiveName = fc.getSelectedFile().getName();
 
-                if (!archiveName.endsWith(".opf")) {
+                if (!archiveName.endsWith(".opf") && !archiveName.endsWith(".opfb")) {
                     archiveName = archiveName.concat(".opf");
                 }
 
@@ -1384,7 +1425,7 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
         } else if ("odb".equalsIgnoreCase(ext)) {
             fc.setFileFilter(MobdFilter.INSTANCE);
             open(fc);
-        } else if ("opf".equalsIgnoreCase(ext)) {
+        } else if ("opf".equalsIgnoreCase(ext) || "opfb".equalsIgnoreCase(ext)) {
             fc.setFileFilter(OpfFilter.INSTANCE);
             open(fc);
         }
@@ -1421,7 +1462,8 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
                             msg = "Completed!";
                             break;
                         default:
-                            msg = "Error loading project!";
+                            // Progress in between reports the bytes read from the project.
+                            msg = (val > 10 && val < 40) ? "Opening project" : "Error loading project!";
                     }
 
                     progressBar.setProgress(val, msg);
@@ -1458,19 +1500,21 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
         // Clear the current spreadsheet before loading the new content - we need to clean up resources
         String ext = FilenameUtils.getExtension(f.getAbsolutePath());
         // Opening a project or project archive file
-        if (ext.equalsIgnoreCase("opf")) {
-            openProject(f);
+        if (ext.equalsIgnoreCase("opf") || ext.equalsIgnoreCase("opfb")) {
+            openProject(f, null);
         } else {
-            openDatabase(f);
+            openDatabase(f, null);
         }
         // Default is to highlight cells when created - clear selection on load.
         panel.clearCellSelection();
     }
 
-    private OpenController openDatabase(final File databaseFile) {
+    private OpenController openDatabase(final File databaseFile,
+                                        final OpenDataStoreFileController.ProgressListener progressListener) {
 
         // Set the database to the freshly loaded database.
         OpenController openController = new OpenController();
+        openController.setProgressListener(progressListener);
         openController.openDataStore(databaseFile);
 
         // Make a project for the new database.
@@ -1480,8 +1524,10 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
         return null;
     }
 
-    private OpenController openProject(final File projectFile) {
+    private OpenController openProject(final File projectFile,
+                                       final OpenDataStoreFileController.ProgressListener progressListener) {
         OpenController openController = new OpenController();
+        openController.setProgressListener(progressListener);
         openController.openProject(projectFile);
 
         // Check to make sure that this project file isn't already open
@@ -2918,12 +2964,19 @@ public final class DatavyuView extends FrameView implements FileDropEventListene
             setProgress(10);
             OpenController openController;
 
+            // Report the bytes read from the data store in between opening the project and having opened it.
+            OpenDataStoreFileController.ProgressListener progressListener = (bytesRead, totalBytes) -> {
+                if (totalBytes > 0) {
+                    setProgress(11 + (int) (28 * Math.min(bytesRead, totalBytes) / totalBytes));
+                }
+            };
+
             if ((filter == ShapaFilter.INSTANCE) || (filter == OpfFilter.INSTANCE)) {
                 // Opening a project or project archive file
-                openController = openProject(fileChooser.getSelectedFile());
+                openController = openProject(fileChooser.getSelectedFile(), progressListener);
             } else {
                 // Opening a database file
-                openController = openDatabase(fileChooser.getSelectedFile());
+                openController = openDatabase(fileChooser.getSelectedFile(), progressListener);
             }
 
             if (openController == null) {
@@ -245,7 +245,9 @@ public final class VideoController extends DatavyuDialog
     public VideoController(final Frame parent, final boolean modal) {
         super(parent, modal);
 
-        clockTimer.registerListener(this);
+        // The label and needle are updated on the event dispatch thread, the region is checked on the clock thread.
+        clockTimer.registerListener(this, true);
+        clockTimer.registerListener(new RegionBoundaryCheck());
 
         setDefaultCloseOperation(WindowConstants.HIDE_ON_CLOSE);
 
@@ -443,14 +445,7 @@ public final class VideoController extends DatavyuDialog
 
     @Override
     public void clockBoundaryCheck(double clockTime) {
-        if((clockTime >= mixerController.getRegionController().getModel().getRegion().getRegionEnd()
-                || clockTime <= mixerController.getRegionController().getModel().getRegion().getRegionStart())
-                && !clockTimer.isPaused()){
-            logger.info("Clock Boundary Pausing Master Clock at " + clockTime );
-            clockTimer.pause();
-            labelSpeed.setText("[" + FloatingPointUtils.doubleToFractionStr(clockTimer.getRate())  + "]");
-        }
-
+        // The region is checked on the clock thread, see RegionBoundaryCheck.
         // Updates the position of the needle and label
         // Check for visible to remove Java Null pointer exception for non-initialised Needle Model
         if (visible) {
@@ -1707,4 +1702,52 @@ public final class VideoController extends DatavyuDialog
     public ClockTimer getClockTimer() {
         return clockTimer;
     }
+
+    /**
+     * Pauses the clock once it reaches either end of the playback region. Notified on the clock thread, so playback
+     * stops at the tick that reaches the boundary even while the event dispatch thread is busy.
+     */
+    private final class RegionBoundaryCheck implements ClockListener {
+
+        @Override
+        public void clockBoundaryCheck(double clockTime) {
+            if ((clockTime >= mixerController.getRegionController().getModel().getRegion().getRegionEnd()
+                    || clockTime <= mixerController.getRegionController().getModel().getRegion().getRegionStart())
+                    && !clockTimer.isPaused()) {
+                logger.info("Clock Boundary Pausing Master Clock at " + clockTime);
+                clockTimer.pause();
+                final float rate = clockTimer.getRate();
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        labelSpeed.setText("[" + FloatingPointUtils.doubleToFractionStr(rate) + "]");
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void clockForceSync(double clockTime) { }
+
+        @Override
+        public void clockPeriodicSync(double clockTime) { }
+
+        @Override
+        public void clockStart(double clockTime) { }
+
+        @Override
+        public void clockStop(double clockTime) { }
+
+        @Override
+        public void clockPause(double clockTime) { }
+
+        @Override
+        public void clockRate(float rate) { }
+
+        @Override
+        public void streamsBoundaryCheck(double clockTime) { }
+
+        @Override
+        public void clockSeekPlayback(double clockTime) { }
+    }
 }
@@ -35,6 +35,22 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
      * The logger for this class.
      */
     private static final Logger logger = LogManager.getLogger(ColumnDataPanel.class);
+    /**
+     * True to only build the components of the cells in view, false to build
+     * them for every cell.
+     */
+    private static final boolean VIRTUALIZED =
+            Boolean.parseBoolean(System.getProperty("datavyu.virtualSpreadsheet", "true"));
+    /**
+     * The distance in pixels above and below the viewport within which cells
+     * have components, so that scrolling a little does not build any.
+     */
+    private static final int OVERSCAN = 400;
+    /**
+     * The height of a cell that has never been in view, until one has been
+     * measured.
+     */
+    private static final int ESTIMATED_CELL_HEIGHT = 45;
     /**
      * Width of the column.
      */
@@ -59,6 +75,40 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
      * The mapping between the database and the spreadsheet cells.
      */
     private Map<Cell, SpreadsheetCell> viewMap;
+    /**
+     * The SpreadsheetCells in temporal order, null when the cells of the column
+     * have changed since they were last ordered.
+     */
+    private List<SpreadsheetCell> temporalCells = null;
+    /**
+     * The model snapshot that temporalCells was built from.
+     */
+    private List<Cell> temporalSource = null;
+    /**
+     * The SpreadsheetCells that have components.
+     */
+    private Set<SpreadsheetCell> realizedCells =
+            Collections.newSetFromMap(new IdentityHashMap<SpreadsheetCell, Boolean>());
+    /**
+     * The components released by cells scrolled out of view, to reuse for
+     * cells scrolled into view.
+     */
+    private Deque<SpreadsheetCell.Components> componentPool = new ArrayDeque<>();
+    /**
+     * The smallest height of a cell measured in this column, -1 until one has
+     * been measured.
+     */
+    private int defaultCellHeight = -1;
+    /**
+     * True when all the cells of the column need to be laid out again.
+     */
+    private boolean layoutInvalid = true;
+    /**
+     * The earliest and latest times of the cells changed since the column was
+     * last laid out, before and after they changed.
+     */
+    private long changedFrom = Long.MAX_VALUE;
+    private long changedTo = Long.MIN_VALUE;
     /**
      * button for creating a new empty cell.
      */
@@ -140,8 +190,10 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
             SpreadsheetCell sc = new SpreadsheetCell(column, cell, cellSelL);
             cell.addListener(sc);
 
-            // add cell to the JPanel
-            this.add(sc);
+            // add cell to the JPanel, unless only the cells in view are
+            if (!VIRTUALIZED) {
+                realize(sc);
+            }
 
             // and add it to our reference list
             cells.add(sc);
@@ -150,6 +202,8 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
             viewMap.put(cell, sc);
             columnHeight += sc.getHeight();
         }
+        temporalCells = null;
+        layoutInvalid = true;
 
         this.add(newCellButton);
         this.setSize(columnWidth, columnHeight);
@@ -161,11 +215,13 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
     public void clear() {
         for (SpreadsheetCell cell : cells) {
             cell.getCell().removeListener(cell);
-            this.remove(cell);
+            release(cell);
         }
 
         cells.clear();
         viewMap.clear();
+        temporalCells = null;
+        layoutInvalid = true;
     }
 
     /**
@@ -176,9 +232,31 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
     public void deleteCell(final Cell cell) {
         SpreadsheetCell sCell = viewMap.get(cell);
         cell.removeListener(sCell);
-        this.remove(sCell);
+        cellChanged(sCell);
+        release(sCell);
         cells.remove(sCell);
         viewMap.remove(cell);
+        temporalCells = null;
+    }
+
+    /**
+     * Delete the SpreadsheetCells of several cells in a single pass.
+     *
+     * @param deletedCells The cells to find and delete from the column data panel.
+     */
+    public void deleteCells(final List<Cell> deletedCells) {
+        Set<SpreadsheetCell> deleted = Collections.newSetFromMap(new IdentityHashMap<SpreadsheetCell, Boolean>());
+        for (Cell cell : deletedCells) {
+            SpreadsheetCell sCell = viewMap.remove(cell);
+            if (sCell != null) {
+                cell.removeListener(sCell);
+                cellChanged(sCell);
+                release(sCell);
+                deleted.add(sCell);
+            }
+        }
+        cells.removeAll(deleted);
+        temporalCells = null;
     }
 
     /**
@@ -198,12 +276,196 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
 //        cellSelectionL.clearColumnSelection();
 
         nCell.setAlignmentX(Component.RIGHT_ALIGNMENT);
-        this.add(nCell);
+        realize(nCell);
         this.cells.add(nCell);
         viewMap.put(cell, nCell);
+        temporalCells = null;
+        cellChanged(nCell);
         nCell.requestFocus();
     }
 
+    /**
+     * Insert new SpreadsheetCells for a batch of cells, without moving the
+     * focus to any of them.
+     *
+     * @param column   The column containing the cells.
+     * @param newCells The cells to create and insert into this column data
+     *                 panel.
+     * @param cellSelL SpreadsheetCellSelectionListener to notify of changes in
+     *                 selection.
+     */
+    public void insertCells(final SpreadsheetColumn column, final List<Cell> newCells,
+                            final CellSelectionListener cellSelL) {
+        for (Cell cell : newCells) {
+            SpreadsheetCell nCell = new SpreadsheetCell(column, cell, cellSelL);
+            nCell.setWidth(this.getWidth());
+            cell.addListener(nCell);
+
+            nCell.setAlignmentX(Component.RIGHT_ALIGNMENT);
+            if (!VIRTUALIZED) {
+                realize(nCell);
+            }
+            this.cells.add(nCell);
+            viewMap.put(cell, nCell);
+            cellChanged(nCell);
+        }
+        temporalCells = null;
+    }
+
+    /**
+     * Builds the components of a cell, reusing those of a cell that has been
+     * scrolled out of view if there are any.
+     *
+     * @param cell The cell to display.
+     */
+    void realize(final SpreadsheetCell cell) {
+        if (!cell.isRealized()) {
+            SpreadsheetCell.Components components = componentPool.poll();
+            cell.realize(components != null ? components : new SpreadsheetCell.Components(cell.getCell()));
+            this.add(cell);
+            realizedCells.add(cell);
+
+            // The cell was laid out without components, lay them out now.
+            cell.validate();
+            cell.repaint();
+        }
+    }
+
+    /**
+     * Releases the components of a cell for reuse.
+     *
+     * @param cell The cell to stop displaying.
+     */
+    private void release(final SpreadsheetCell cell) {
+        if (cell.isRealized()) {
+            this.remove(cell);
+            componentPool.push(cell.release());
+            realizedCells.remove(cell);
+        }
+    }
+
+    /**
+     * Builds the components of the cells within the overscan band around the
+     * viewport, and releases those of the cells that have left it. The cells
+     * must have been laid out, which lays them out top to bottom in temporal
+     * order without overlapping the top of the next cell.
+     *
+     * @param viewRect The area of the spreadsheet visible in the viewport.
+     * @return True if a cell displayed now has a different height than it was
+     * laid out with, so the spreadsheet needs to be laid out again.
+     */
+    public boolean updateViewport(final Rectangle viewRect) {
+        if (!VIRTUALIZED) {
+            return false;
+        }
+
+        List<SpreadsheetCell> inView = new ArrayList<>();
+        if (isVisible()) {
+            int top = viewRect.y - getY() - OVERSCAN;
+            int bottom = viewRect.y + viewRect.height - getY() + OVERSCAN;
+            List<SpreadsheetCell> ordered = getCellsTemporally();
+
+            // The first cell whose top is in the band, then any cells above
+            // it that reach into the band.
+            int low = 0;
+            int high = ordered.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ordered.get(mid).getY() < top) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            while (low > 0 && ordered.get(low - 1).getY() + ordered.get(low - 1).getHeight() >= top) {
+                low--;
+            }
+            for (int i = low; i < ordered.size() && ordered.get(i).getY() <= bottom; i++) {
+                inView.add(ordered.get(i));
+            }
+        }
+
+        Set<SpreadsheetCell> keep = Collections.newSetFromMap(new IdentityHashMap<SpreadsheetCell, Boolean>());
+        keep.addAll(inView);
+        for (SpreadsheetCell cell : new ArrayList<>(realizedCells)) {
+            // The cell being edited keeps its components until it loses focus.
+            if (!keep.contains(cell) && !cell.isFocusOwner()) {
+                release(cell);
+            }
+        }
+
+        boolean resized = false;
+        for (SpreadsheetCell cell : inView) {
+            realize(cell);
+            int height = cell.getPreferredSize().height;
+            if (defaultCellHeight < 0 || height < defaultCellHeight) {
+                // Changes the height of the cells that have never been in view.
+                resized |= defaultCellHeight != height;
+                layoutInvalid |= defaultCellHeight != height;
+                defaultCellHeight = height;
+            }
+            if (!cell.isLaidOut() || height != cell.getLaidHeight()) {
+                cellChanged(cell);
+                resized = true;
+            }
+        }
+        return resized;
+    }
+
+    /**
+     * Records that a cell needs to be laid out again, along with the cells
+     * near it in time.
+     *
+     * @param cell The cell that has been added, removed or changed.
+     */
+    void cellChanged(final SpreadsheetCell cell) {
+        if (cell.isLaidOut()) {
+            changedFrom = Math.min(changedFrom, cell.getLaidOnset());
+            changedTo = Math.max(changedTo, cell.getLaidEnd());
+        }
+        changedFrom = Math.min(changedFrom, cell.getOnsetTicks());
+        changedTo = Math.max(changedTo, cell.getOffsetTicks());
+    }
+
+    /**
+     * @return True if all the cells of the column need to be laid out again.
+     */
+    public boolean isLayoutInvalid() {
+        return layoutInvalid;
+    }
+
+    /**
+     * @return The earliest time of the cells that need to be laid out again,
+     * Long.MAX_VALUE if none do.
+     */
+    public long getChangedFrom() {
+        return changedFrom;
+    }
+
+    /**
+     * @return The latest time of the cells that need to be laid out again,
+     * Long.MIN_VALUE if none do.
+     */
+    public long getChangedTo() {
+        return changedTo;
+    }
+
+    /**
+     * Called by the layout once it has laid out the changes to the column.
+     */
+    public void clearLayoutChanges() {
+        layoutInvalid = false;
+        changedFrom = Long.MAX_VALUE;
+        changedTo = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return The height of a cell that has never been in view.
+     */
+    int getDefaultCellHeight() {
+        return defaultCellHeight >= 0 ? defaultCellHeight : ESTIMATED_CELL_HEIGHT;
+    }
+
     /**
      * Set the width of the SpreadsheetCell.
      *
@@ -211,6 +473,7 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
      */
     public void setWidth(final int width) {
         columnWidth = width;
+        layoutInvalid = true;
     }
 
     public void setHeight(final int height) {
@@ -241,22 +504,96 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
     }
 
     /**
-     * @return The SpreadsheetCells in this column temporally.
+     * @return The SpreadsheetCells in this column temporally, as an immutable
+     * list. The list and the ordinals of the cells are only rebuilt when the
+     * cells of the column or their temporal order have changed.
      */
     public List<SpreadsheetCell> getCellsTemporally() {
+        List<Cell> source = model.getCellsTemporally();
+        if (temporalCells == null || source != temporalSource) {
+            List<SpreadsheetCell> result = new ArrayList<>(source.size());
+            int ord = 1;
+            for (Cell c : source) {
+                SpreadsheetCell sc = viewMap.get(c);
+                if (sc != null) {
+                    sc.setOrdinal(ord++);
+                    result.add(sc);
+                }
+            }
+            temporalCells = new OrderedCells(result);
+            temporalSource = source;
+        }
+        return temporalCells;
+    }
+
+    /**
+     * @param time The time in milliseconds.
+     * @return The SpreadsheetCells in this column whose cell spans the supplied
+     * time, in temporal order.
+     */
+    public List<SpreadsheetCell> getCellsAt(final long time) {
         ArrayList<SpreadsheetCell> result = new ArrayList<>();
 
-        int ord = 1;
-        for (Cell c : model.getCellsTemporally()) {
+        for (Cell c : model.getCellsAt(time)) {
             SpreadsheetCell sc = viewMap.get(c);
             if (sc != null) {
-                sc.setOrdinal(ord++);
                 result.add(sc);
             }
         }
         return result;
     }
 
+    /**
+     * Updates the highlighting of the cells in view that start or end between
+     * two times, the only cells whose highlighting changes when the current
+     * time moves from one to the other.
+     *
+     * @param start The earlier of the times in milliseconds.
+     * @param end   The later of the times in milliseconds.
+     */
+    void updateHighlights(final long start, final long end) {
+        if (realizedCells.isEmpty()) {
+            return;
+        }
+
+        // The cells that start or end in the range, or span it.
+        for (Cell c : model.getCellsOverlapping(start, end)) {
+            SpreadsheetCell sc = viewMap.get(c);
+            if (sc != null && sc.isRealized()) {
+                sc.updateSelectionDisplay();
+            }
+        }
+
+        // The cells with an offset before their onset, which end at their onset.
+        List<Cell> ordered = model.getCellsTemporally();
+        int low = 0;
+        int high = ordered.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ordered.get(mid).getOnset() < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < ordered.size() && ordered.get(i).getOnset() <= end; i++) {
+            Cell c = ordered.get(i);
+            SpreadsheetCell sc = c.getOffset() < start ? viewMap.get(c) : null;
+            if (sc != null && sc.isRealized()) {
+                sc.updateSelectionDisplay();
+            }
+        }
+    }
+
+    /**
+     * Updates the highlighting of all the cells in view.
+     */
+    void updateHighlights() {
+        for (SpreadsheetCell sc : realizedCells) {
+            sc.updateSelectionDisplay();
+        }
+    }
+
     /**
      * @return The number of cells stored in this column.
      */
@@ -362,4 +699,49 @@ public final class ColumnDataPanel extends JPanel implements KeyEventDispatcher
         }
         return false;
     }
+
+    /**
+     * Immutable list of SpreadsheetCells whose positions are looked up once and
+     * then cached, so that navigating from cell to cell does not search the list.
+     */
+    private static final class OrderedCells extends AbstractList<SpreadsheetCell> implements RandomAccess {
+        private final List<SpreadsheetCell> cells;
+        private Map<SpreadsheetCell, Integer> positions;
+
+        OrderedCells(final List<SpreadsheetCell> cells) {
+            this.cells = cells;
+        }
+
+        @Override
+        public SpreadsheetCell get(final int index) {
+            return cells.get(index);
+        }
+
+        @Override
+        public int size() {
+            return cells.size();
+        }
+
+        @Override
+        public int indexOf(final Object o) {
+            if (positions == null) {
+                positions = new IdentityHashMap<>(cells.size() * 2);
+                for (int i = 0; i < cells.size(); i++) {
+                    positions.put(cells.get(i), i);
+                }
+            }
+            Integer position = positions.get(o);
+            return position == null ? -1 : position;
+        }
+
+        @Override
+        public int lastIndexOf(final Object o) {
+            return indexOf(o);
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return indexOf(o) >= 0;
+        }
+    }
 }
@@ -108,6 +108,16 @@ public final class EditorTracker
 
     }
 
+    /**
+     * Forget the current editor without storing its value, for when the
+     * editors are rebuilt for another cell.
+     */
+    public void reset() {
+        currentEditor = NO_EDITOR;
+        preCharCount = 0;
+        postCharCount = 0;
+    }
+
     /**
      * Calculate the preCharCount and postCharCount values.
      */
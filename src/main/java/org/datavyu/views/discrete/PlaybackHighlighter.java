@@ -0,0 +1,117 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.views.discrete;
+
+import org.datavyu.Datavyu;
+import org.datavyu.util.ClockTimer;
+import org.datavyu.views.VideoController;
+
+/**
+ * Highlights the cells of the spreadsheet at the current time during
+ * playback, in place of every cell and column listening to the clock.
+ *
+ * On each tick only the cells that start or end between the previous and
+ * current time are updated, found through the temporal index of each
+ * variable, and only if they are in view. The cells scrolled into view are
+ * brought up to date as they are displayed, so the work done per tick does not
+ * grow with the size of the spreadsheet. The highlighter is registered to be
+ * notified on the event dispatch thread.
+ */
+final class PlaybackHighlighter implements ClockTimer.ClockListener {
+
+    /** The spreadsheet whose cells are highlighted */
+    private final SpreadsheetView view;
+
+    /** True if every cell in view needs to be updated, such as after a seek */
+    private boolean updateAll = true;
+
+    /** The time of the last update, -1 before the first */
+    private long lastTime = -1;
+
+    /** The highlighting options at the last update */
+    private boolean lastHighlighting = false;
+    private boolean lastHighlightAndFocus = false;
+
+    /**
+     * @param view The spreadsheet whose cells are highlighted.
+     */
+    PlaybackHighlighter(final SpreadsheetView view) {
+        this.view = view;
+    }
+
+    /**
+     * Updates the cells whose highlighting has changed since the last update.
+     */
+    private void update() {
+        VideoController videoController = Datavyu.getVideoController();
+        boolean highlighting = videoController.getCellHighlighting();
+        boolean highlightAndFocus = videoController.getCellHighlightAndFocus();
+        long time = videoController.getCurrentTime();
+
+        boolean all = updateAll || lastTime < 0
+                || highlighting != lastHighlighting || highlightAndFocus != lastHighlightAndFocus;
+        boolean moved = (highlighting || highlightAndFocus) && time != lastTime;
+        updateAll = false;
+
+        for (SpreadsheetColumn col : view.getColumns()) {
+            ColumnDataPanel dataPanel = col.getDataPanel();
+            if (all) {
+                dataPanel.updateHighlights();
+            } else if (moved) {
+                dataPanel.updateHighlights(Math.min(lastTime, time), Math.max(lastTime, time));
+            }
+
+            if (col.isSelected() && highlightAndFocus && !videoController.getClockTimer().isPaused()) {
+                col.focusNextCell();
+            }
+        }
+
+        lastTime = time;
+        lastHighlighting = highlighting;
+        lastHighlightAndFocus = highlightAndFocus;
+    }
+
+    @Override
+    public void clockForceSync(double clockTime) {
+        updateAll = true;
+        update();
+    }
+
+    @Override
+    public void clockPeriodicSync(double clockTime) {
+        update();
+    }
+
+    @Override
+    public void clockStop(double clockTime) { }
+
+    @Override
+    public void clockPause(double clockTime) { }
+
+    @Override
+    public void clockStart(double clockTime) { }
+
+    @Override
+    public void clockRate(float rate) { }
+
+    @Override
+    public void clockBoundaryCheck(double clockTime) { }
+
+    @Override
+    public void streamsBoundaryCheck(double clockTime) { }
+
+    @Override
+    public void clockSeekPlayback(double clockTime) { }
+}
@@ -26,6 +26,7 @@ import org.datavyu.event.component.FileDropEventListener;
 import org.datavyu.models.db.*;
 import org.datavyu.undoableedits.AddCellEdit;
 import org.datavyu.util.ArrayDirection;
+import org.datavyu.util.ClockTimer;
 import org.datavyu.util.Constants;
 import org.datavyu.views.DataviewProgressBar;
 import org.datavyu.views.VideoController;
@@ -38,6 +39,8 @@ import org.jdesktop.application.ResourceMap;
 
 import javax.swing.*;
 import javax.swing.Box.Filler;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
@@ -121,12 +124,19 @@ public final class SpreadSheetPanel extends JPanel implements DataStoreListener,
     /** Drop down menu for hidden columns */
     private JPopupMenu dropdown = new JPopupMenu();
 
+    /** Highlights the cells at the current time during playback */
+    private PlaybackHighlighter playbackHighlighter;
+
+    /** The clock the highlighter is registered with, null if it is not */
+    private ClockTimer highlightClock;
+
     public SpreadSheetPanel(final ProjectController projectController, DataviewProgressBar progressBar) {
         setName(this.getClass().getSimpleName());
         setLayout(new BorderLayout());
 
         mainView = new SpreadsheetView();
         mainView.setLayout(new BoxLayout(mainView, BoxLayout.X_AXIS));
+        playbackHighlighter = new PlaybackHighlighter(mainView);
 
         headerView = new JPanel();
         headerView.setLayout(new BoxLayout(headerView, BoxLayout.X_AXIS));
@@ -141,6 +151,16 @@ public final class SpreadSheetPanel extends JPanel implements DataStoreListener,
         scrollPane.setViewportView(mainView);
         scrollPane.setColumnHeaderView(headerView);
 
+        // Only the cells in view have components, update them as the view scrolls.
+        scrollPane.getViewport().addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(final ChangeEvent e) {
+                if (mainView.updateViewport(scrollPane.getViewport().getViewRect())) {
+                    scrollPane.revalidate();
+                }
+            }
+        });
+
 
         // Default layout is ordinal.
         setLayoutType(SheetLayoutType.Ordinal);
@@ -174,7 +194,7 @@ public final class SpreadSheetPanel extends JPanel implements DataStoreListener,
 
         // set the database and layout the columns
         if (projectController.getDataStore() == null) {
-            projectController.setDataStore(new DatavyuDataStore());
+            projectController.setDataStore(DataStoreFactory.newDataStore());
         }
         setDatabase(projectController.getDataStore());
         newVariableSpacerButton.setText(" + ");
@@ -284,6 +304,10 @@ public final class SpreadSheetPanel extends JPanel implements DataStoreListener,
     public void registerListeners() {
         KeyboardFocusManager m = KeyboardFocusManager.getCurrentKeyboardFocusManager();
         m.addKeyEventDispatcher(this);
+        if (highlightClock == null) {
+            highlightClock = Datavyu.getVideoController().getClockTimer();
+            highlightClock.registerListener(playbackHighlighter, true);
+        }
     }
 
     /**
@@ -293,6 +317,10 @@ public final class SpreadSheetPanel extends JPanel implements DataStoreListener,
     public void deregisterListeners() {
         KeyboardFocusManager m = KeyboardFocusManager.getCurrentKeyboardFocusManager();
         m.removeKeyEventDispatcher(this);
+        if (highlightClock != null) {
+            highlightClock.unRegisterListener(playbackHighlighter);
+            highlightClock = null;
+        }
     }
 
     /**
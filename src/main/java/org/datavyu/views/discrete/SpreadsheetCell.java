@@ -20,7 +20,6 @@ import org.datavyu.Datavyu;
 import org.datavyu.models.db.Cell;
 import org.datavyu.models.db.CellListener;
 import org.datavyu.models.db.CellValue;
-import org.datavyu.util.ClockTimer;
 import org.datavyu.util.ConfigProperties;
 import org.datavyu.views.discrete.datavalues.MatrixRootView;
 import org.datavyu.views.discrete.datavalues.TimeStampDataValueEditor.TimeStampSource;
@@ -43,7 +42,7 @@ import java.util.List;
  * Visual representation of a spreadsheet cell.
  */
 public class SpreadsheetCell extends JPanel
-        implements MouseListener, FocusListener, CellListener, ClockTimer.ClockListener {
+        implements MouseListener, FocusListener, CellListener {
 
     /**
      * Border to use if cell overlaps with another.
@@ -100,46 +99,55 @@ public class SpreadsheetCell extends JPanel
      * The logger for this class.
      */
     private static Logger logger = LogManager.getLogger(SpreadsheetCell.class);
+    /**
+     * Default width of the cell.
+     */
+    private static final int DEFAULT_WIDTH = 229;
+    private static final Color TIME_HIGHLIGHT_COLOR = new Color(116, 242, 190);
+    private static final Color PAST_TIME_HIGHLIGHT_COLOR = new Color(247, 153, 153);
     boolean isLaid = false;
     private boolean brandNew;
     /**
-     * The panel that displays the cell.
+     * The components that display the cell, null while the cell is scrolled
+     * out of view.
      */
-    private JPanel cellPanel;
+    private Components components = null;
     /**
-     * A panel for holding the header to the cell.
+     * The cell that this SpreadsheetCell represents.
      */
-    private JPanel topPanel;
+    private Cell model;
     /**
-     * A panel for holding the value of the cell.
+     * The width of the cell.
      */
-    private MatrixRootView dataPanel;
+    private int width = DEFAULT_WIDTH;
     /**
-     * The Ordinal display component.
+     * The ordinal of the cell, 0 until set.
      */
-    private JLabel ord;
-    private Color timeHighlightColor = new Color(116, 242, 190);
-    private Color pastTimeHighlightColor = new Color(247, 153, 153);
+    private int ordinal = 0;
     /**
-     * The Onset display component.
+     * The preferred height of the cell when its components were last
+     * measured, -1 if never measured.
      */
-    private TimeStampTextField onset;
+    private int measuredHeight = -1;
     /**
-     * The Offset display component.
+     * True once the cell has been laid out.
      */
-    private TimeStampTextField offset;
+    private boolean laidOut = false;
     /**
-     * The cell that this SpreadsheetCell represents.
+     * The onset and the later of the onset and offset the cell was last laid
+     * out with.
      */
-    private Cell model;
+    private long laidOnset;
+    private long laidEnd;
     /**
-     * Component that sets the width of the cell.
+     * The preferred height the cell was last laid out with.
      */
-    private Filler stretcher;
+    private int laidHeight;
     /**
-     * strut creates the gap between this cell and the previous cell.
+     * The bottom of the cell when last laid out, before any stretching to
+     * meet the following cells.
      */
-    private Filler strut;
+    private int laidBottom;
     /**
      * Does this cell overlap another?
      */
@@ -164,98 +172,65 @@ public class SpreadsheetCell extends JPanel
         model = cell;
         setName(this.getClass().getSimpleName());
 
-        ResourceMap rMap = Application.getInstance(Datavyu.class).getContext()
-                .getResourceMap(SpreadsheetCell.class);
-
         // Check the selected state of the datacell
         // If it is already selected in the database, we need to inform
         // the selector, but not trigger a selection change or deselect others.
         cellSelL = listener;
 
-        cellPanel = new JPanel();
-        cellPanel.addMouseListener(this);
-        strut = new Filler(new Dimension(0, 0),
-                new Dimension(0, 0),
-                new Dimension(Short.MAX_VALUE, 0));
-
+        // The components are only built once the cell is scrolled into view,
+        // see ColumnDataPanel.
         setLayout(new BorderLayout());
-        this.add(strut, BorderLayout.NORTH);
-        this.add(cellPanel, BorderLayout.CENTER);
-
-        // Build components used for the spreadsheet cell.
-        topPanel = new JPanel();
-        topPanel.addMouseListener(this);
-        ord = new JLabel();
-        ord.setFont(ConfigProperties.getInstance().getSpreadSheetLabelFont());
-        ord.setForeground(ConfigProperties.getInstance().getSpreadSheetOrdinalForegroundColor());
-        ord.setToolTipText(rMap.getString("ord.tooltip"));
-        ord.addMouseListener(this);
-        ord.setFocusable(true);
-
-        onset = new TimeStampTextField(model, TimeStampSource.Onset);
-        onset.setFont(ConfigProperties.getInstance().getSpreadSheetLabelFont());
-        onset.setForeground(ConfigProperties.getInstance().getSpreadSheetTimeStampForegroundColor());
-        onset.setToolTipText(rMap.getString("onset.tooltip"));
-        onset.addFocusListener(this);
-        onset.addMouseListener(this);
-        onset.setName("onsetTextField");
-
-        offset = new TimeStampTextField(model, TimeStampSource.Offset);
-        offset.setFont(ConfigProperties.getInstance().getSpreadSheetLabelFont());
-        offset.setForeground(ConfigProperties.getInstance().getSpreadSheetTimeStampForegroundColor());
-        offset.setToolTipText(rMap.getString("offset.tooltip"));
-        offset.addFocusListener(this);
-        offset.addMouseListener(this);
-        offset.setName("offsetTextField");
-
-        dataPanel = new MatrixRootView(model, cell.getCellValue());
-        dataPanel.setFont(ConfigProperties.getInstance().getSpreadSheetDataFont());
-        dataPanel.setForeground(ConfigProperties.getInstance().getSpreadSheetForegroundColor());
-
-        dataPanel.setOpaque(false);
-        dataPanel.addFocusListener(this);
-        dataPanel.addMouseListener(this);
-        dataPanel.setName("cellValue");
-
-        // Set the appearance of the spreadsheet cell.
-        cellPanel.setBackground(ConfigProperties.getInstance().getSpreadSheetBackgroundColor());
-        // Cell is highlighted by default.
-        cellPanel.setBorder(NORMAL_BORDER);
-        cellPanel.setLayout(new BorderLayout());
-
-        // Set the apperance of the top panel and add child elements (ord, onset
-        // and offset).
-        topPanel.setOpaque(false);
-        topPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 2, 0));
-        topPanel.setLayout(new BoxLayout(topPanel, BoxLayout.X_AXIS));
-        cellPanel.add(topPanel, BorderLayout.NORTH);
-        topPanel.add(ord);
-
-        Component strut1 = Box.createHorizontalStrut(TIME_SPACER);
-        topPanel.add(strut1);
-
-        Component glue = Box.createGlue();
-        topPanel.add(glue);
-
-        topPanel.add(onset);
-
-        Component strut2 = Box.createHorizontalStrut(TIME_SPACER);
-        topPanel.add(strut2);
-        topPanel.add(offset);
-
-        // Set the apperance of the data panel - add elements for dis6playing
-        // the actual data of the panel.
-        cellPanel.add(dataPanel, BorderLayout.CENTER);
-
-        Dimension d = new Dimension(229, 0);
-        stretcher = new Filler(d, d, d);
-        cellPanel.add(stretcher, BorderLayout.SOUTH);
-
-        Datavyu.getVideoController().getClockTimer().registerListener(this);
 
         brandNew = true;
     }
 
+    /**
+     * @return True if the components that display the cell have been built.
+     */
+    boolean isRealized() {
+        return components != null;
+    }
+
+    /**
+     * Displays the cell with a set of components.
+     *
+     * @param newComponents The components to display the cell with, either
+     *                      new or released by another cell of the column.
+     */
+    void realize(final Components newComponents) {
+        components = newComponents;
+        components.setCell(model);
+        components.setListeners(this, true);
+        components.ord.setText(ordinal > 0 ? Integer.toString(ordinal) : "");
+        components.setWidth(width);
+        this.add(components.cellPanel, BorderLayout.CENTER);
+        updateSelectionDisplay();
+    }
+
+    /**
+     * Stops displaying the cell, so that its components can be reused.
+     *
+     * @return The components that displayed the cell.
+     */
+    Components release() {
+        Components released = components;
+        this.remove(released.cellPanel);
+        released.setListeners(this, false);
+        components = null;
+        return released;
+    }
+
+    /**
+     * @return The components that display the cell, built if the cell is
+     * out of view.
+     */
+    private Components getRealizedComponents() {
+        if (components == null) {
+            parentColumn.getDataPanel().realize(this);
+        }
+        return components;
+    }
+
     public boolean isBeingProcessed() {
         return beingProcessed;
     }
@@ -268,6 +243,75 @@ public class SpreadsheetCell extends JPanel
         model = model.getFreshCell();
     }
 
+    /**
+     * Records the geometry the cell has been laid out with, so that it can be
+     * laid out again only when it changes.
+     *
+     * @param height The preferred height of the cell.
+     * @param bottom The bottom of the cell before any stretching.
+     */
+    public void setLaidOut(final int height, final int bottom) {
+        laidOut = true;
+        laidOnset = getOnsetTicks();
+        laidEnd = getOffsetTicks();
+        laidHeight = height;
+        laidBottom = bottom;
+    }
+
+    /**
+     * Moves the cell vertically, when the cells above it have been laid out
+     * again.
+     *
+     * @param delta The distance to move the cell down by in pixels.
+     */
+    public void shiftLaidOut(final int delta) {
+        setLocation(getX(), getY() + delta);
+        laidBottom += delta;
+    }
+
+    public boolean isLaidOut() {
+        return laidOut;
+    }
+
+    public long getLaidOnset() {
+        return laidOnset;
+    }
+
+    public long getLaidEnd() {
+        return laidEnd;
+    }
+
+    public int getLaidHeight() {
+        return laidHeight;
+    }
+
+    public int getLaidBottom() {
+        return laidBottom;
+    }
+
+    /**
+     * Tells the column that the cell needs to be laid out again.
+     */
+    private void changed() {
+        ColumnDataPanel dataPanel = parentColumn.getDataPanel();
+        if (dataPanel != null) {
+            dataPanel.cellChanged(this);
+        }
+    }
+
+    /**
+     * Sets the border of the displayed cell. The borders have different
+     * insets, so a new border changes the height of the cell.
+     *
+     * @param border The border to use.
+     */
+    private void setCellBorder(final Border border) {
+        if (components.cellPanel.getBorder() != border) {
+            components.cellPanel.setBorder(border);
+            changed();
+        }
+    }
+
     /**
      * @return True if onset been processed and the layout position calculated.
      * false otherwise.
@@ -318,14 +362,14 @@ public class SpreadsheetCell extends JPanel
      * @return onset view
      */
     public TimeStampTextField getOnset() {
-        return onset;
+        return getRealizedComponents().onset;
     }
 
     /**
      * @return offset view
      */
     public TimeStampTextField getOffset() {
-        return offset;
+        return getRealizedComponents().offset;
     }
 
     /**
@@ -334,7 +378,10 @@ public class SpreadsheetCell extends JPanel
      * @param ordinal The new ordinal value to use with this cell.
      */
     public void setOrdinal(final Integer ordinal) {
-        ord.setText(ordinal.toString());
+        this.ordinal = ordinal;
+        if (components != null) {
+            components.ord.setText(ordinal.toString());
+        }
     }
 
     /**
@@ -375,8 +422,10 @@ public class SpreadsheetCell extends JPanel
      * @param width New width of the SpreadsheetCell.
      */
     public void setWidth(final int width) {
-        Dimension d = new Dimension(width, 0);
-        stretcher.changeShape(d, d, d);
+        this.width = width;
+        if (components != null) {
+            components.setWidth(width);
+        }
     }
 
     /**
@@ -411,19 +460,22 @@ public class SpreadsheetCell extends JPanel
      */
     public void setOverlapBorder(final boolean overlap) {
         cellOverlap = overlap;
+        if (components == null) {
+            return;
+        }
 
         if (cellOverlap) {
 
             if (model.isHighlighted()) {
-                cellPanel.setBorder(HIGHLIGHT_OVERLAP_BORDER);
+                setCellBorder(HIGHLIGHT_OVERLAP_BORDER);
             } else {
-                cellPanel.setBorder(OVERLAP_BORDER);
+                setCellBorder(OVERLAP_BORDER);
             }
         } else {
             if (model.isHighlighted()) {
-                cellPanel.setBorder(HIGHLIGHT_BORDER);
+                setCellBorder(HIGHLIGHT_BORDER);
             } else {
-                cellPanel.setBorder(NORMAL_BORDER);
+                setCellBorder(NORMAL_BORDER);
             }
         }
     }
@@ -439,62 +491,71 @@ public class SpreadsheetCell extends JPanel
      * @return The MatrixRootView of this cell.
      */
     public final MatrixRootView getDataView() {
-        return dataPanel;
+        return getRealizedComponents().dataPanel;
     }
 
     public void selectOnset() {
-        onset.selectAll();
-        offset.select(0, 0);
-        dataPanel.select(0, 0);
-        onset.requestFocusInWindow();
+        Components c = getRealizedComponents();
+        c.onset.selectAll();
+        c.offset.select(0, 0);
+        c.dataPanel.select(0, 0);
+        c.onset.requestFocusInWindow();
     }
 
     public void selectOffset() {
-        offset.selectAll();
-        onset.select(0, 0);
-        dataPanel.select(0, 0);
-        offset.requestFocusInWindow();
+        Components c = getRealizedComponents();
+        c.offset.selectAll();
+        c.onset.select(0, 0);
+        c.dataPanel.select(0, 0);
+        c.offset.requestFocusInWindow();
     }
 
     public void selectVal() {
-        dataPanel.selectAll();
-        onset.select(0, 0);
-        offset.select(0, 0);
-        dataPanel.requestFocusInWindow();
+        Components c = getRealizedComponents();
+        c.dataPanel.selectAll();
+        c.onset.select(0, 0);
+        c.offset.select(0, 0);
+        c.dataPanel.requestFocusInWindow();
     }
 
     public void updateSelectionDisplay() {
+        // Out of view, the display is brought up to date when realized.
+        if (components == null) {
+            return;
+        }
+        JPanel cellPanel = components.cellPanel;
+
         if (model.isHighlighted() && !Datavyu.getVideoController().getCellHighlightAndFocus()) {
             if (cellOverlap) {
-                cellPanel.setBorder(HIGHLIGHT_OVERLAP_BORDER);
+                setCellBorder(HIGHLIGHT_OVERLAP_BORDER);
             } else {
-                cellPanel.setBorder(HIGHLIGHT_BORDER);
+                setCellBorder(HIGHLIGHT_BORDER);
             }
         } else if (model.isSelected()) {
             if (cellOverlap) {
-                cellPanel.setBorder(FILL_OVERLAP_BORDER);
+                setCellBorder(FILL_OVERLAP_BORDER);
             } else {
-                cellPanel.setBorder(FILL_BORDER);
+                setCellBorder(FILL_BORDER);
             }
         } else {
             if (cellOverlap) {
-                cellPanel.setBorder(OVERLAP_BORDER);
+                setCellBorder(OVERLAP_BORDER);
             } else {
-                cellPanel.setBorder(NORMAL_BORDER);
+                setCellBorder(NORMAL_BORDER);
             }
         }
 
         if (Datavyu.getVideoController().getCellHighlightAndFocus()) {
             if (model.isPastTimeWindow(Datavyu.getVideoController().getCurrentTime())) {
-                cellPanel.setBackground(pastTimeHighlightColor);
-            } else if (cellPanel.getBackground() == pastTimeHighlightColor) {
+                cellPanel.setBackground(PAST_TIME_HIGHLIGHT_COLOR);
+            } else if (cellPanel.getBackground() == PAST_TIME_HIGHLIGHT_COLOR) {
                 cellPanel.setBackground(ConfigProperties.getInstance().getSpreadSheetBackgroundColor());
             }
         } else if (Datavyu.getVideoController().getCellHighlighting()) {
             if(model.isPastTimeWindow(Datavyu.getVideoController().getCurrentTime())) {
-                cellPanel.setBackground(pastTimeHighlightColor);
+                cellPanel.setBackground(PAST_TIME_HIGHLIGHT_COLOR);
             } else if(model.isInTimeWindow(Datavyu.getVideoController().getCurrentTime())) {
-                cellPanel.setBackground(timeHighlightColor);
+                cellPanel.setBackground(TIME_HIGHLIGHT_COLOR);
             } else {
                 cellPanel.setBackground(ConfigProperties.getInstance().getSpreadSheetBackgroundColor());
             }
@@ -508,7 +569,10 @@ public class SpreadsheetCell extends JPanel
     // *************************************************************************
     @Override
     public void offsetChanged(final long newOffset) {
-        offset.setValue();
+        if (components != null) {
+            components.offset.setValue();
+        }
+        changed();
         if (model.isSelected()) {
             // Update the find windows to the newly selected cell's values
             Datavyu.getVideoController().setOnsetField(model.getOnset());
@@ -518,7 +582,10 @@ public class SpreadsheetCell extends JPanel
 
     @Override
     public void onsetChanged(final long newOnset) {
-        onset.setValue();
+        if (components != null) {
+            components.onset.setValue();
+        }
+        changed();
         if (model.isSelected()) {
             Datavyu.getVideoController().setOnsetField(model.getOnset());
             Datavyu.getVideoController().setOffsetField(model.getOffset());
@@ -542,14 +609,19 @@ public class SpreadsheetCell extends JPanel
             // Update the find windows to the newly selected cell's values
             Datavyu.getVideoController().setOnsetField(model.getOnset());
             Datavyu.getVideoController().setOffsetField(model.getOffset());
-        } else if(getDataView().getEdTracker().indexOfCurrentEditor() > -1) {
-            parentColumn.setIndexOfPreviousFocusedCell(getDataView().getEdTracker().indexOfCurrentEditor());
+        } else if (components != null && components.dataPanel.getEdTracker().indexOfCurrentEditor() > -1) {
+            parentColumn.setIndexOfPreviousFocusedCell(components.dataPanel.getEdTracker().indexOfCurrentEditor());
         }
     }
 
     @Override
     public void valueChange(final CellValue newCellValue) {
-        dataPanel.setMatrix(newCellValue);
+        if (components != null) {
+            components.dataPanel.setMatrix(newCellValue);
+        } else {
+            measuredHeight = -1;
+        }
+        changed();
         revalidate();
     }
 
@@ -580,7 +652,7 @@ public class SpreadsheetCell extends JPanel
         // currently selected cells and select this cell.
         if (!isEditorSrc && !groupSel && !contSel) {
           logger.debug("User has clicked in magic spot, without modifier");
-            ord.requestFocus();
+            components.ord.requestFocus();
             cellSelL.clearCellSelection();
             model.setHighlighted(!model.isSelected());
 
@@ -592,7 +664,7 @@ public class SpreadsheetCell extends JPanel
             // this cell to the current selection.
         } else if (groupSel && !contSel) {
           logger.debug("User has clicked on editor or magic spot with modifier.");
-            ord.requestFocus();
+            components.ord.requestFocus();
             model.setHighlighted(!model.isSelected());
 
             if (model.isSelected()) {
@@ -603,7 +675,7 @@ public class SpreadsheetCell extends JPanel
             // Add this cell and everything in between the current selection.
         } else if (contSel) {
           logger.debug("User has clicked on editor or magic spot with shift modifier");
-            ord.requestFocus();
+            components.ord.requestFocus();
             cellSelL.addCellToContinousSelection(this);
 
             // User has clicked somewhere in the cell without modifier. This
@@ -675,12 +747,28 @@ public class SpreadsheetCell extends JPanel
 
     @Override
     public boolean isFocusOwner() {
-        return (onset.isFocusOwner() || offset.isFocusOwner() || dataPanel.isFocusOwner());
+        return components != null && (components.onset.isFocusOwner() || components.offset.isFocusOwner()
+                || components.dataPanel.isFocusOwner());
     }
 
     @Override
     public void requestFocus() {
-        dataPanel.requestFocus();
+        getRealizedComponents().dataPanel.requestFocus();
+    }
+
+    /**
+     * @return The preferred size of the components that display the cell, or
+     * when out of view the size they had when last measured.
+     */
+    @Override
+    public Dimension getPreferredSize() {
+        if (components != null) {
+            Dimension d = super.getPreferredSize();
+            measuredHeight = d.height;
+            return d;
+        }
+        return new Dimension(width, measuredHeight >= 0 ? measuredHeight
+                : parentColumn.getDataPanel().getDefaultCellHeight());
     }
 
     // *************************************************************************
@@ -690,38 +778,150 @@ public class SpreadsheetCell extends JPanel
     public void paint(final Graphics g) {
         // BugzID:474 - Set the size at paint time - somewhere else may have
         // altered the font.
-        dataPanel.setFont(ConfigProperties.getInstance().getSpreadSheetDataFont());
+        components.dataPanel.setFont(ConfigProperties.getInstance().getSpreadSheetDataFont());
         super.paint(g);
     }
 
-    @Override
-    public void clockForceSync(double clockTime) {
-        updateSelectionDisplay();
-    }
-
-    @Override
-    public void clockPeriodicSync(double clockTime) {
-        updateSelectionDisplay();
-    }
-
-    @Override
-    public void clockStop(double clockTime) { }
-
-    @Override
-    public void clockPause(double clockTime) { }
-
-    @Override
-    public void clockStart(double clockTime) { }
-
-    @Override
-    public void clockRate(float rate) { }
+    /**
+     * The components that display a cell. Only the cells in view have
+     * components, which are reused as cells scroll in and out of view.
+     */
+    static final class Components {
+        /**
+         * The panel that displays the cell.
+         */
+        private final JPanel cellPanel;
+        /**
+         * A panel for holding the header to the cell.
+         */
+        private final JPanel topPanel;
+        /**
+         * A panel for holding the value of the cell.
+         */
+        private final MatrixRootView dataPanel;
+        /**
+         * The Ordinal display component.
+         */
+        private final JLabel ord;
+        /**
+         * The Onset display component.
+         */
+        private final TimeStampTextField onset;
+        /**
+         * The Offset display component.
+         */
+        private final TimeStampTextField offset;
+        /**
+         * Component that sets the width of the cell.
+         */
+        private final Filler stretcher;
+        /**
+         * The cell displayed.
+         */
+        private Cell cell;
+
+        /**
+         * Builds the components used for a spreadsheet cell.
+         *
+         * @param cell The cell to display.
+         */
+        Components(final Cell cell) {
+            this.cell = cell;
+            ResourceMap rMap = Application.getInstance(Datavyu.class).getContext()
+                    .getResourceMap(SpreadsheetCell.class);
+
+            cellPanel = new JPanel();
+            topPanel = new JPanel();
+            ord = new JLabel();
+            ord.setFont(ConfigProperties.getInstance().getSpreadSheetLabelFont());
+            ord.setForeground(ConfigProperties.getInstance().getSpreadSheetOrdinalForegroundColor());
+            ord.setToolTipText(rMap.getString("ord.tooltip"));
+            ord.setFocusable(true);
+
+            onset = new TimeStampTextField(cell, TimeStampSource.Onset);
+            onset.setFont(ConfigProperties.getInstance().getSpreadSheetLabelFont());
+            onset.setForeground(ConfigProperties.getInstance().getSpreadSheetTimeStampForegroundColor());
+            onset.setToolTipText(rMap.getString("onset.tooltip"));
+            onset.setName("onsetTextField");
+
+            offset = new TimeStampTextField(cell, TimeStampSource.Offset);
+            offset.setFont(ConfigProperties.getInstance().getSpreadSheetLabelFont());
+            offset.setForeground(ConfigProperties.getInstance().getSpreadSheetTimeStampForegroundColor());
+            offset.setToolTipText(rMap.getString("offset.tooltip"));
+            offset.setName("offsetTextField");
+
+            dataPanel = new MatrixRootView(cell, cell.getCellValue());
+            dataPanel.setFont(ConfigProperties.getInstance().getSpreadSheetDataFont());
+            dataPanel.setForeground(ConfigProperties.getInstance().getSpreadSheetForegroundColor());
+            dataPanel.setOpaque(false);
+            dataPanel.setName("cellValue");
+
+            // Set the appearance of the spreadsheet cell.
+            cellPanel.setBackground(ConfigProperties.getInstance().getSpreadSheetBackgroundColor());
+            cellPanel.setBorder(NORMAL_BORDER);
+            cellPanel.setLayout(new BorderLayout());
+
+            // Set the apperance of the top panel and add child elements (ord,
+            // onset and offset).
+            topPanel.setOpaque(false);
+            topPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 2, 0));
+            topPanel.setLayout(new BoxLayout(topPanel, BoxLayout.X_AXIS));
+            cellPanel.add(topPanel, BorderLayout.NORTH);
+            topPanel.add(ord);
+            topPanel.add(Box.createHorizontalStrut(TIME_SPACER));
+            topPanel.add(Box.createGlue());
+            topPanel.add(onset);
+            topPanel.add(Box.createHorizontalStrut(TIME_SPACER));
+            topPanel.add(offset);
+
+            // Set the apperance of the data panel - add elements for
+            // displaying the actual data of the panel.
+            cellPanel.add(dataPanel, BorderLayout.CENTER);
+
+            Dimension d = new Dimension(DEFAULT_WIDTH, 0);
+            stretcher = new Filler(d, d, d);
+            cellPanel.add(stretcher, BorderLayout.SOUTH);
+        }
 
-    @Override
-    public void clockBoundaryCheck(double clockTime) { }
+        /**
+         * @param newCell The cell to display.
+         */
+        private void setCell(final Cell newCell) {
+            if (newCell != cell) {
+                cell = newCell;
+                onset.setCell(newCell);
+                offset.setCell(newCell);
+                dataPanel.setCell(newCell);
+                cellPanel.setBackground(ConfigProperties.getInstance().getSpreadSheetBackgroundColor());
+            }
+        }
 
-    @Override
-    public void streamsBoundaryCheck(double clockTime) { }
+        private void setWidth(final int width) {
+            Dimension d = new Dimension(width, 0);
+            stretcher.changeShape(d, d, d);
+        }
 
-    @Override
-    public void clockSeekPlayback(double clockTime) { }
+        /**
+         * @param owner The spreadsheet cell that handles the mouse and focus
+         *              events of the components.
+         * @param add   True to add the spreadsheet cell as a listener, false to
+         *              remove it.
+         */
+        private void setListeners(final SpreadsheetCell owner, final boolean add) {
+            for (Component c : new Component[]{cellPanel, topPanel, ord, onset, offset, dataPanel}) {
+                if (add) {
+                    c.addMouseListener(owner);
+                } else {
+                    c.removeMouseListener(owner);
+                }
+            }
+            for (Component c : new Component[]{onset, offset, dataPanel}) {
+                if (add) {
+                    c.addFocusListener(owner);
+                } else {
+                    c.removeFocusListener(owner);
+                }
+            }
+        }
+    }
 }
@@ -19,7 +19,6 @@ import org.apache.logging.log4j.Logger;
 import org.datavyu.Datavyu;
 import org.datavyu.models.db.*;
 import org.datavyu.undoableedits.ChangeNameVariableEdit;
-import org.datavyu.util.ClockTimer;
 import org.datavyu.util.ConfigProperties;
 import org.datavyu.util.Constants;
 import org.datavyu.util.DragAndDrop.TransparentPanel;
@@ -38,8 +37,7 @@ import java.util.ListIterator;
  * This class maintains the visual representation of the column in the
  * Spreadsheet window.
  */
-public final class SpreadsheetColumn extends JLabel implements VariableListener, MouseListener, MouseMotionListener,
-        ClockTimer.ClockListener {
+public final class SpreadsheetColumn extends JLabel implements VariableListener, MouseListener, MouseMotionListener {
 
     /** The logger for this class */
     private static Logger logger = LogManager.getLogger(SpreadsheetColumn.class);
@@ -172,8 +170,6 @@ public final class SpreadsheetColumn extends JLabel implements VariableListener,
         datapanel = new ColumnDataPanel(this, width, var, cellSelL);
         this.setVisible(!var.isHidden());
         datapanel.setVisible(!var.isHidden());
-
-        Datavyu.getVideoController().getClockTimer().registerListener(this);
     }
 
     /**
@@ -487,9 +483,13 @@ public final class SpreadsheetColumn extends JLabel implements VariableListener,
         return variable.getName();
     }
 
-    private void focusNextCell() {
+    /**
+     * Focuses the cell of this column at the current time, when playing with
+     * cells highlighted and focused.
+     */
+    void focusNextCell() {
         long time = Datavyu.getVideoController().getCurrentTime();
-        List<SpreadsheetCell> tempCells = getCellsTemporally();
+        List<SpreadsheetCell> tempCells = datapanel.getCellsAt(time);
         for(int i = 0; i < tempCells.size(); i++) {
             SpreadsheetCell c = tempCells.get(i);
             if(c.getCell().isInTimeWindow(time)) {
@@ -589,11 +589,40 @@ public final class SpreadsheetColumn extends JLabel implements VariableListener,
         datapanel.insertCell(this, newCell, cellSelList);
     }
 
+    @Override
+    public void cellsInserted(final List<Cell> newCells) {
+        datapanel.insertCells(this, newCells, cellSelList);
+    }
+
     @Override
     public void cellRemoved(final Cell deletedCell) {
         datapanel.deleteCell(deletedCell);
+        focusCellFrom(deletedCell.getOnset());
+    }
+
+    @Override
+    public void cellChanged(final Cell changedCell) {
+        // The cell views listen to their own cells.
+    }
+
+    @Override
+    public void cellsRemoved(final List<Cell> deletedCells) {
+        datapanel.deleteCells(deletedCells);
+        long onset = Long.MAX_VALUE;
+        for (Cell cell : deletedCells) {
+            onset = Math.min(onset, cell.getOnset());
+        }
+        focusCellFrom(onset);
+    }
+
+    /**
+     * Focuses the first cell with an onset at or after the supplied time.
+     *
+     * @param time The time in milliseconds.
+     */
+    private void focusCellFrom(final long time) {
         for(SpreadsheetCell c : getCellsTemporally()) {
-            if(c.getOnsetTicks() >= deletedCell.getOnset()) {
+            if(c.getOnsetTicks() >= time) {
                 c.requestFocus();
                 break;
             }
@@ -759,37 +788,4 @@ public final class SpreadsheetColumn extends JLabel implements VariableListener,
             setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
         }
     }
-
-    @Override
-    public void clockPeriodicSync(double clockTime) {
-        if(isSelected()
-            && Datavyu.getVideoController().getCellHighlightAndFocus()
-            && !Datavyu.getVideoController().getClockTimer().isPaused()) {
-            focusNextCell();
-        }
-    }
-
-    @Override
-    public void clockForceSync(double clockTime) { }
-
-    @Override
-    public void clockRate(float rate) { }
-
-    @Override
-    public void clockStart(double clockTime) { }
-
-    @Override
-    public void clockStop(double clockTime) { }
-
-    @Override
-    public void clockPause(double clockTime) { }
-
-    @Override
-    public void clockBoundaryCheck(double clockTime) { }
-
-    @Override
-    public void streamsBoundaryCheck(double clockTime) { }
-
-    @Override
-    public void clockSeekPlayback(double clockTime) { }
 }
@@ -74,6 +74,21 @@ public class SpreadsheetView extends JPanel implements Scrollable {
         columns.remove(delColumn);
     }
 
+    /**
+     * Builds the components of the cells in view and releases those of the
+     * cells out of view, see {@link ColumnDataPanel#updateViewport(Rectangle)}.
+     *
+     * @param viewRect The area of this view visible in the viewport.
+     * @return True if the spreadsheet needs to be laid out again.
+     */
+    public boolean updateViewport(final Rectangle viewRect) {
+        boolean resized = false;
+        for (SpreadsheetColumn column : columns) {
+            resized |= column.getDataPanel().updateViewport(viewRect);
+        }
+        return resized;
+    }
+
     /**
      * @return All the columns held in this spreadsheet view.
      */
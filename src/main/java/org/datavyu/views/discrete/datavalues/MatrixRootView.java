@@ -147,6 +147,22 @@ public final class MatrixRootView extends JTextArea implements FocusListener {
         comp.setCaretPosition(edPos);
     }
 
+    /**
+     * Shows the value of another cell, so that a spreadsheet cell's view can
+     * be reused for another cell.
+     *
+     * @param cell The cell to display.
+     */
+    public void setCell(final Cell cell) {
+        parentCell = cell;
+        oldValue = "";
+        edTracker.reset();
+        allEditors.clear();
+        allEditors.addAll(DataValueEditorFactory.buildMatrix(this, parentCell));
+        rebuildText();
+        setCaretPosition(0);
+    }
+
     /**
      * Recalculates and sets the text to display.
      */
@@ -46,6 +46,10 @@ public final class TimeStampTextField extends JTextField
      * The editors that make up the representation of the data.
      */
     private TimeStampDataValueEditor myEditor;
+    /**
+     * Which TimeStamp of the cell to display.
+     */
+    private final TimeStampSource source;
 
     /**
      * Creates a new instance of MatrixV.
@@ -57,6 +61,7 @@ public final class TimeStampTextField extends JTextField
         super();
 
         parentCell = cell;
+        source = tsType;
         myEditor = new TimeStampDataValueEditor(this, cell, tsType);
 
         setValue();
@@ -68,6 +73,19 @@ public final class TimeStampTextField extends JTextField
         addKeyListener(this);
     }
 
+    /**
+     * Shows the time stamp of another cell, so that a spreadsheet cell's view
+     * can be reused for another cell.
+     *
+     * @param cell The cell to display.
+     */
+    public void setCell(final Cell cell) {
+        parentCell = cell;
+        myEditor = new TimeStampDataValueEditor(this, cell, source);
+        setCaretPosition(0);
+        setValue();
+    }
+
     /**
      * Sets the value to be displayed.
      */
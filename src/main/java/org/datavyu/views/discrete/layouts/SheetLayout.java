@@ -17,20 +17,84 @@ package org.datavyu.views.discrete.layouts;
 import org.datavyu.views.discrete.ColumnDataPanel;
 import org.datavyu.views.discrete.SpreadsheetCell;
 import org.datavyu.views.discrete.SpreadsheetColumn;
+import org.datavyu.views.discrete.SpreadsheetView;
 
 import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * SheetLayout - abstract class for spreadsheet layouts.
  */
 public abstract class SheetLayout extends ScrollPaneLayout {
 
+    /**
+     * The visible columns when last laid out.
+     */
+    private List<SpreadsheetColumn> laidColumns = new ArrayList<>();
+
+    /**
+     * The widths of the visible columns when last laid out.
+     */
+    private int[] laidWidths = new int[0];
+
     /**
      * SheetLayout constructor.
      */
     protected SheetLayout() {
     }
 
+    /**
+     * Checks whether the visible columns are the same, in the same order and
+     * with the same widths, as when last laid out.
+     *
+     * @param columns The visible columns.
+     * @return True if all the cells need to be laid out again.
+     */
+    protected boolean columnsChanged(final List<SpreadsheetColumn> columns) {
+        int[] widths = new int[columns.size()];
+        for (int i = 0; i < widths.length; i++) {
+            widths[i] = columns.get(i).getWidth();
+        }
+        boolean changed = !columns.equals(laidColumns) || !Arrays.equals(widths, laidWidths);
+        laidColumns = new ArrayList<>(columns);
+        laidWidths = widths;
+        return changed;
+    }
+
+    /**
+     * @param cells The cells of a column in temporal order.
+     * @param time  The time in milliseconds.
+     * @return The index of the first cell with an onset at or after the time.
+     */
+    protected static int indexAtOrAfter(final List<SpreadsheetCell> cells, final long time) {
+        int low = 0;
+        int high = cells.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cells.get(mid).getOnsetTicks() < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Displays the cells in view once they have been laid out, laying the
+     * spreadsheet out again if their heights have changed.
+     *
+     * @param pane The scroll pane of the spreadsheet.
+     */
+    protected void updateViewport(final JScrollPane pane) {
+        SpreadsheetView mainView = (SpreadsheetView) pane.getViewport().getView();
+        if (mainView.updateViewport(pane.getViewport().getViewRect())) {
+            pane.revalidate();
+        }
+    }
+
     public abstract void reorientView(SpreadsheetCell cell);
 
     public abstract void reorientView(SpreadsheetColumn column);
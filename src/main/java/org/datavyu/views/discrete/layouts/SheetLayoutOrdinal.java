@@ -81,38 +81,51 @@ public class SheetLayoutOrdinal extends SheetLayout {
 
         List<ColInfo> columnHeight = new ArrayList<ColInfo>();
 
+        List<SpreadsheetColumn> visibleColumns = new ArrayList<>();
+        for (SpreadsheetColumn col : mainView.getColumns()) {
+            if (col.isVisible()) {
+                visibleColumns.add(col);
+            }
+        }
+        boolean layoutAll = columnsChanged(visibleColumns);
+
         int maxHeight = 0;
-        int selectedHeight = -1;
         int colID = 0;
-        SpreadsheetCell selectedCell = null;
         for (SpreadsheetColumn col : mainView.getColumns()) {
 
             // Only layout 'visible' columns.
             if (col.isVisible()) {
-                int ord = 1;
-                int currentHeight = 0;
-                SpreadsheetCell prevCell = null;
-
-                for (SpreadsheetCell cell : col.getCellsTemporally()) {
-                    if (cell == null) {
-                        // We may have a race condition where a cell got deleted but
-                        // we don't know about it yet
-                        continue;
-                    }
+                ColumnDataPanel dataPanel = col.getDataPanel();
+                List<SpreadsheetCell> cells = col.getCellsTemporally();
+
+                /* Only lay out the cells from the one before the first
+                   changed cell, to update its overlap, through the one after
+                   the last, then move the cells below. */
+                int start = 0;
+                int end = cells.size();
+                if (!layoutAll && !dataPanel.isLayoutInvalid()) {
+                    start = Math.max(0, indexAtOrAfter(cells, dataPanel.getChangedFrom()) - 1);
+                    end = dataPanel.getChangedFrom() <= dataPanel.getChangedTo()
+                            ? Math.min(cells.size(), indexAtOrAfter(cells, dataPanel.getChangedTo() + 1) + 1)
+                            : start;
+                }
+                dataPanel.clearLayoutChanges();
+
+                int currentHeight = start == 0 ? 0 : cells.get(start - 1).getLaidBottom();
+                SpreadsheetCell prevCell = start == 0 ? null : cells.get(start - 1);
+
+                for (int i = start; i < end; i++) {
+                    SpreadsheetCell cell = cells.get(i);
                     Dimension d = cell.getPreferredSize();
-                    if (cell.getCell().isSelected()) {
-                        selectedHeight = currentHeight;
-                        selectedCell = cell;
-                    }
 
                     cell.setBounds(0,
                             currentHeight,
                             (col.getWidth() - marginSize),
                             (int) d.getHeight());
-                    cell.setOrdinal(ord);
+                    cell.setOrdinal(i + 1);
                     cell.repaint();
-                    ord++;
                     currentHeight += d.getHeight();
+                    cell.setLaidOut((int) d.getHeight(), currentHeight);
 
                     // Determine if this cell overlaps with the previous cell.
                     if (prevCell != null) {
@@ -131,9 +144,18 @@ public class SheetLayoutOrdinal extends SheetLayout {
                     prevCell = cell;
                 }
 
+                // The cells below only move, their ordinals are kept by the column.
+                if (end < cells.size()) {
+                    int delta = currentHeight - cells.get(end).getY();
+                    for (int i = end; delta != 0 && i < cells.size(); i++) {
+                        cells.get(i).shiftLaidOut(delta);
+                    }
+                }
+                currentHeight = cells.isEmpty() ? 0 : cells.get(cells.size() - 1).getLaidBottom();
+
                 // Put the new cell button at the end of the column.
-                Dimension d = col.getDataPanel().getNewCellButton().getPreferredSize();
-                col.getDataPanel().getNewCellButton().setBounds(0,
+                Dimension d = dataPanel.getNewCellButton().getPreferredSize();
+                dataPanel.getNewCellButton().setBounds(0,
                         currentHeight,
                         parent.getWidth(),
                         (int) d.getHeight());
@@ -158,10 +180,7 @@ public class SheetLayoutOrdinal extends SheetLayout {
                     (maxHeight - colHeight));
         }
 
-        if (selectedCell != null) {
-
-
-        }
+        updateViewport(pane);
     }
 
     public void reorientView(SpreadsheetCell cell) {
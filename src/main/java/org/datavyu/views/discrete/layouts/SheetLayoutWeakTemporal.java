@@ -14,6 +14,7 @@
  */
 package org.datavyu.views.discrete.layouts;
 
+import org.datavyu.views.discrete.ColumnDataPanel;
 import org.datavyu.views.discrete.SpreadsheetCell;
 import org.datavyu.views.discrete.SpreadsheetColumn;
 import org.datavyu.views.discrete.SpreadsheetView;
@@ -30,10 +31,48 @@ import java.util.stream.Collectors;
 public class SheetLayoutWeakTemporal extends SheetLayout {
     // The of the right hand margin.
 
+    /**
+     * Default space separating unique times.
+     */
+    private static final int GAP_SIZE = 15;
+
+    /**
+     * Marks a time that no cell ends at.
+     */
+    private static final int NO_POSITION = Integer.MIN_VALUE;
+
     // The maximum height of the layout in pixels.
     int maxHeight;
     private JScrollPane pane;
 
+    /**
+     * The onset and offset times of the cells when last laid out, sorted and
+     * without duplicates.
+     */
+    private long[] times = new long[0];
+
+    /**
+     * The position of each time.
+     */
+    private int[] positions = new int[0];
+
+    /**
+     * For each time, true if no cell starting before the time ends at or
+     * within a millisecond of it. The cells from such a time on are laid out
+     * the same whatever is above them, only shifted.
+     */
+    private boolean[] cuts = new boolean[0];
+
+    /**
+     * The position after the last time.
+     */
+    private int endPosition = 0;
+
+    /**
+     * The bottom of the lowest laid out cell of each visible column.
+     */
+    private int[] columnBottoms = new int[0];
+
     /**
      * SheetLayoutOrdinal constructor.
      *
@@ -44,8 +83,6 @@ public class SheetLayoutWeakTemporal extends SheetLayout {
 
     @Override
     public void layoutContainer(Container parent) {
-        //TODO: figure out how to make this whole algorithm neater.
-//        long startTime = System.currentTimeMillis();
         super.layoutContainer(parent);
         pane = (JScrollPane) parent;
 
@@ -58,133 +95,335 @@ public class SheetLayoutWeakTemporal extends SheetLayout {
         List<SpreadsheetColumn> visible_columns = getVisibleColumns(mainView);
 
         // Map columns to temporally ordered cells from column.
-        HashMap<SpreadsheetColumn, List<SpreadsheetCell>> cellMap = new HashMap<>();
-        for(SpreadsheetColumn col : visible_columns){
-            cellMap.put(col, col.getCellsTemporally());
+        List<List<SpreadsheetCell>> cellLists = new ArrayList<>(visible_columns.size());
+        for (SpreadsheetColumn col : visible_columns) {
+            cellLists.add(col.getCellsTemporally());
+        }
+
+        /* Only lay out the cells that have changed since the last layout, unless
+           the columns themselves have changed.
+         */
+        boolean layoutAll = columnsChanged(visible_columns);
+        long changedFrom = Long.MAX_VALUE;
+        long changedTo = Long.MIN_VALUE;
+        boolean[] changedColumns = new boolean[visible_columns.size()];
+        for (int i = 0; i < visible_columns.size(); i++) {
+            ColumnDataPanel dataPanel = visible_columns.get(i).getDataPanel();
+            layoutAll |= dataPanel.isLayoutInvalid();
+            changedColumns[i] = dataPanel.getChangedFrom() <= dataPanel.getChangedTo();
+            changedFrom = Math.min(changedFrom, dataPanel.getChangedFrom());
+            changedTo = Math.max(changedTo, dataPanel.getChangedTo());
+            dataPanel.clearLayoutChanges();
+        }
+        if (layoutAll) {
+            times = new long[0];
+            positions = new int[0];
+            cuts = new boolean[0];
+            endPosition = 0;
+            columnBottoms = new int[visible_columns.size()];
+            Arrays.fill(changedColumns, true);
+            layoutTimes(visible_columns, cellLists, changedColumns, Long.MIN_VALUE, Long.MAX_VALUE);
+        } else if (changedFrom <= changedTo) {
+            layoutTimes(visible_columns, cellLists, changedColumns, changedFrom, changedTo);
+        }
+
+        // Set the working heights of the columns whose lowest cell has moved.
+        for (int i = 0; i < visible_columns.size(); i++) {
+            SpreadsheetColumn col = visible_columns.get(i);
+            if (layoutAll || col.getWorkingHeight() != columnBottoms[i]) {
+                col.setWorkingHeight(columnBottoms[i]);
+            }
+            maxHeight = Math.max(maxHeight, columnBottoms[i]);
         }
 
-        TreeSet<Long> times = new TreeSet<Long>();
-        HashMap<Long, Integer> heightMap = new HashMap<>();
+        padColumns(mainView, parent);
+        updateViewport(pane);
+    }
+
+    /**
+     * Lays out the cells between the cuts around a range of times, and shifts
+     * the cells after them by the change in height. Updates the bottom of
+     * each column as it goes: no cell before a cut ends below it, so the
+     * lowest cell of a column is after the cells laid out if it has any,
+     * otherwise among them.
+     *
+     * @param columns        The visible columns.
+     * @param cellLists      The cells of each column in temporal order.
+     * @param changedColumns For each column, true if its cells have changed.
+     * @param first          The first time of the cells that have changed.
+     * @param last           The last time of the cells that have changed.
+     */
+    private void layoutTimes(final List<SpreadsheetColumn> columns, final List<List<SpreadsheetCell>> cellLists,
+                             final boolean[] changedColumns, final long first, final long last) {
+        // Start at the last cut at or before the first changed time.
+        int a = upperBound(times, first) - 1;
+        while (a > 0 && !cuts[a]) {
+            a--;
+        }
+        long from = a >= 0 && first != Long.MIN_VALUE ? times[a] : Long.MIN_VALUE;
+        a = Math.max(a, 0);
+
+        /* End at the first onset after the changed times that no cell spans,
+           which is a cut both before and after the change. */
+        int numColumns = columns.size();
+        int[] start = new int[numColumns];
+        int[] end = new int[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            start[i] = indexAtOrAfter(cellLists.get(i), from);
+            end[i] = last == Long.MAX_VALUE ? cellLists.get(i).size() : start[i];
+        }
+        long to = Long.MAX_VALUE;
+        if (last != Long.MAX_VALUE) {
+            long reach = last + 1;
+            boolean advanced = true;
+            while (advanced) {
+                advanced = false;
+                for (int i = 0; i < numColumns; i++) {
+                    List<SpreadsheetCell> cells = cellLists.get(i);
+                    while (end[i] < cells.size() && cells.get(end[i]).getOnsetTicks() <= reach) {
+                        reach = Math.max(reach, cells.get(end[i]).getOffsetTicks() + 1);
+                        end[i]++;
+                        advanced = true;
+                    }
+                }
+            }
+            for (int i = 0; i < numColumns; i++) {
+                if (end[i] < cellLists.get(i).size()) {
+                    to = Math.min(to, cellLists.get(i).get(end[i]).getOnsetTicks());
+                }
+            }
+        }
+        int b = to == Long.MAX_VALUE ? times.length : upperBound(times, to - 1);
+        int top = a < times.length ? positions[a] : endPosition;
+        int oldEnd = b < times.length ? positions[b] : endPosition;
+
+        /* Accumulate all unique times, and the preferred height of each cell. */
+        int numTimes = 0;
+        for (int i = 0; i < numColumns; i++) {
+            numTimes += 2 * (end[i] - start[i]);
+        }
+        long[] bandTimes = new long[numTimes];
+        int[][] heights = new int[numColumns][];
+        numTimes = 0;
+        for (int i = 0; i < numColumns; i++) {
+            List<SpreadsheetCell> cells = cellLists.get(i);
+            heights[i] = new int[end[i] - start[i]];
+            for (int j = start[i]; j < end[i]; j++) {
+                SpreadsheetCell cell = cells.get(j);
+                heights[i][j - start[i]] = cell.getPreferredSize().height;
+                long onset = cell.getOnsetTicks();
+                long offset = cell.getOffsetTicksActual();
+                bandTimes[numTimes++] = onset;
+                if (offset > onset) {
+                    bandTimes[numTimes++] = offset;
+                }
+            }
+        }
+        Arrays.sort(bandTimes, 0, numTimes);
+        int unique = 0;
+        for (int k = 0; k < numTimes; k++) {
+            if (unique == 0 || bandTimes[k] != bandTimes[unique - 1]) {
+                bandTimes[unique++] = bandTimes[k];
+            }
+        }
+        bandTimes = Arrays.copyOf(bandTimes, unique);
 
         /* Go through each column and assign "height" values to onset times.
            This will determine how much space to allocate between onset times.
-           For each column, create an intermediate map and then merge with the
-           actual map using maximum values.  This is required since a column can have
-           multiple cells with the same onset.
-           Also accumulate all unique times.
+           A column can have multiple cells with the same onset, so the height
+           of an onset in a column is the sum of their heights, and the height
+           of an onset is the maximum over the columns.
          */
-        for( SpreadsheetColumn col : visible_columns){
-            HashMap<Long, Integer> intermediateMap = new HashMap<>();
-            for( SpreadsheetCell curCell : cellMap.get(col)){
-                long onset = curCell.getOnsetTicks();
-                int height = curCell.getPreferredSize().height;
-                intermediateMap.compute(onset, (k, v) -> (v == null) ? height : v + height);
-
-                // Add the onset and offset times to our master set.
-                times.add(onset);
-                long offset = curCell.getOffsetTicksActual();
-                if(offset > onset) times.add(offset);
+        int[] heightAt = new int[unique];
+        for (int i = 0; i < numColumns; i++) {
+            List<SpreadsheetCell> cells = cellLists.get(i);
+            int sum = 0;
+            for (int j = start[i]; j < end[i]; j++) {
+                sum += heights[i][j - start[i]];
+                long onset = cells.get(j).getOnsetTicks();
+                if (j + 1 == end[i] || cells.get(j + 1).getOnsetTicks() != onset) {
+                    int k = Arrays.binarySearch(bandTimes, onset);
+                    heightAt[k] = Math.max(heightAt[k], sum);
+                    sum = 0;
+                }
             }
-            // Merge the intermediate map entries.
-            intermediateMap.forEach( (k, v) -> heightMap.merge(k, v, Integer::max));
         }
 
-        /* Iterate over sorted set of times and assign position values.
-           For onset times o1, o2 : Map(o2) = Map(o1) + heightMap(o1) + gapSize
+        /* Iterate over sorted times and assign position values.
+           For times t1, t2 : pos(t2) = pos(t1) + heightAt(t1) + gapSize
          */
-        int gapSize = 15;   // default space separating unique times
-        HashMap<Long, Integer> onsetMap = new HashMap<>();
-        int pos = 0;    // position to assign to next onset time
-        for(Long time : times){
-            onsetMap.put(time, pos);
-            pos += heightMap.getOrDefault(time, 0);
-            pos += gapSize;
+        int[] bandPositions = new int[unique];
+        int pos = top;
+        for (int k = 0; k < unique; k++) {
+            bandPositions[k] = pos;
+            pos += heightAt[k] + GAP_SIZE;
         }
+        int delta = pos - oldEnd;
 
-        /* Iterate over all spreadsheet cells and set boundaries using onset and offset maps.
-           Keep a local copy of the position maps.  Since each time value gets a range of positions
-           (starting from onset map's value and ending at the offset's value), update the local copy of
-           the onset map to get positions for cells sharing onsets.
+        /* Iterate over the spreadsheet cells and set boundaries using onset and offset positions.
+           Keep a local copy of the onset positions. Since each time value gets a range of positions
+           (starting from onset's position and ending at the offset's position), update the local copy
+           of the onset positions to get positions for cells sharing onsets.
          */
-        HashMap<Long, Integer> offsetMap = new HashMap<>();
-        for( SpreadsheetColumn col : visible_columns){
-            List<SpreadsheetCell> orderedCells = cellMap.get(col);
-            int colWidth = col.getWidth();
-            int colHeight = 0;
-            HashMap<Long, Integer> onsetMapLocal = new HashMap<>(onsetMap);
+        int[] offsetPositions = new int[unique];
+        Arrays.fill(offsetPositions, NO_POSITION);
+        long[] reachAt = new long[unique];
+        Arrays.fill(reachAt, Long.MIN_VALUE);
+        int[] bandBottoms = new int[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            List<SpreadsheetCell> cells = cellLists.get(i);
+            int colWidth = columns.get(i).getWidth();
+            int[] onsetLocal = bandPositions.clone();
             SpreadsheetCell prevCell = null;
-            for (int i = 0; i < orderedCells.size(); i++) {
-                SpreadsheetCell curCell = orderedCells.get(i);
-                SpreadsheetCell nextCell = (i == orderedCells.size() - 1) ? null : orderedCells.get(i + 1);
+            for (int j = start[i]; j < end[i]; j++) {
+                SpreadsheetCell curCell = cells.get(j);
+                SpreadsheetCell nextCell = (j == end[i] - 1) ? null : cells.get(j + 1);
+                int preferredHeight = heights[i][j - start[i]];
 
                 long onset = curCell.getOnsetTicks();
                 long offset = curCell.getOffsetTicksActual();
-                int cellTopY = onsetMapLocal.get(onset);
+                int onsetIndex = Arrays.binarySearch(bandTimes, onset);
+                int cellTopY = onsetLocal[onsetIndex];
+                reachAt[onsetIndex] = Math.max(reachAt[onsetIndex], curCell.getOffsetTicks() + 1);
 
                 // Get height for cell
                 int cellHeight;
                 // Figure out height by looking at next cell's onset and offset times.
                 if (onset > offset) { // cell is reversed
                     curCell.setOverlapBorder(true);
-                    cellHeight = curCell.getPreferredSize().height;
+                    cellHeight = preferredHeight;
                 }
                 // Current onset equals next onset
                 else if (nextCell != null && onset == nextCell.getOnsetTicks()) {
                     if (onset != offset || offset == nextCell.getOffsetTicksActual())
                         curCell.setOverlapBorder(true);
-                    cellHeight = curCell.getPreferredSize().height;
+                    cellHeight = preferredHeight;
                 }
                 // Current offset greater than or equal to next onset
                 else if (nextCell != null && offset >= nextCell.getOnsetTicks()) {
                     curCell.setOverlapBorder(true);
-                    cellHeight = onsetMapLocal.get(nextCell.getOnsetTicks()) - cellTopY;
+                    cellHeight = onsetLocal[Arrays.binarySearch(bandTimes, nextCell.getOnsetTicks())] - cellTopY;
                 } else {
                     curCell.setOverlapBorder(false);
-                    cellHeight = offsetMap.getOrDefault(offset, onsetMap.get(offset)) - cellTopY;
+                    int offsetIndex = Arrays.binarySearch(bandTimes, offset);
+                    int offsetPosition = offsetPositions[offsetIndex];
+                    cellHeight = (offsetPosition != NO_POSITION ? offsetPosition : bandPositions[offsetIndex])
+                            - cellTopY;
                 }
 
                 // Treat cells with 1ms interval as continuous. Stretch bottom of previous cell to top of current cell.
                 if (prevCell != null && onset - prevCell.getOffsetTicks() == 1) {
                     prevCell.setBounds(0, prevCell.getY(), colWidth - 1, cellTopY - prevCell.getY());
-                    offsetMap.compute(offset, (k, v) -> (v == null) ? cellTopY : Math.max(v, cellTopY));
+                    int offsetIndex = Arrays.binarySearch(bandTimes, offset);
+                    if (offsetIndex >= 0) {
+                        offsetPositions[offsetIndex] = Math.max(offsetPositions[offsetIndex], cellTopY);
+                    }
                 }
 
-                cellHeight = Math.max(cellHeight, curCell.getPreferredSize().height); // fix for edge cases...maybe investigate later
+                cellHeight = Math.max(cellHeight, preferredHeight); // fix for edge cases...maybe investigate later
                 // Set cell boundary
                 curCell.setBounds(0, cellTopY, colWidth - 1, cellHeight);
 
-                // Update local onset map
-                int adjOn = cellHeight;
-                onsetMapLocal.compute(onset, (k, v) -> v + adjOn);
+                // Update local onset position
+                onsetLocal[onsetIndex] += cellHeight;
 
-                // Update offset map
-                if(!curCell.getOverlapBorder()) {
-                    int adjOff = cellTopY + cellHeight;
-                    offsetMap.compute(offset, (k, v) -> (v == null) ? adjOff : Math.max(v, adjOff));
+                // Update offset position
+                if (!curCell.getOverlapBorder()) {
+                    int offsetIndex = Arrays.binarySearch(bandTimes, offset);
+                    offsetPositions[offsetIndex] = Math.max(offsetPositions[offsetIndex], cellTopY + cellHeight);
                 }
 
-                // Update vars
-                colHeight = cellTopY + cellHeight;
+                curCell.setLaidOut(preferredHeight, cellTopY + cellHeight);
+                bandBottoms[i] = Math.max(bandBottoms[i], cellTopY + cellHeight);
                 prevCell = curCell;
             }
-
-            // Set column working height
-            col.setWorkingHeight(colHeight);
-            maxHeight = Math.max(maxHeight, colHeight);
         }
 
         /* Do a second pass to update the offsets again. */
-        for (SpreadsheetColumn col : visible_columns) {
-            int colWidth = col.getWidth();
-            for (SpreadsheetCell sc : cellMap.get(col)) {
-                int mapHeight = offsetMap.getOrDefault(sc.getOffsetTicks(), -1) - sc.getY();
+        for (int i = 0; i < numColumns; i++) {
+            List<SpreadsheetCell> cells = cellLists.get(i);
+            int colWidth = columns.get(i).getWidth();
+            for (int j = start[i]; j < end[i]; j++) {
+                SpreadsheetCell sc = cells.get(j);
+                int offsetPosition = offsetPositions[Arrays.binarySearch(bandTimes, sc.getOffsetTicks())];
+                int mapHeight = (offsetPosition != NO_POSITION ? offsetPosition : -1) - sc.getY();
                 if (!sc.getOverlapBorder() && sc.getSize().getHeight() < mapHeight)
                     sc.setBounds(0, sc.getY(), colWidth - 1, mapHeight);
             }
         }
 
-        padColumns(mainView, parent);
-//        System.err.println(String.format("Aligned.  Time: %d.", System.currentTimeMillis() - startTime));
+        /* Find the cuts among the new times. */
+        boolean[] bandCuts = new boolean[unique];
+        long reach = Long.MIN_VALUE;
+        for (int k = 0; k < unique; k++) {
+            bandCuts[k] = reach < bandTimes[k];
+            reach = Math.max(reach, reachAt[k]);
+        }
+
+        /* Replace the times that have been laid out again, and shift those after them. */
+        times = splice(times, a, b, bandTimes);
+        cuts = splice(cuts, a, b, bandCuts);
+        int[] newPositions = new int[times.length];
+        System.arraycopy(positions, 0, newPositions, 0, a);
+        System.arraycopy(bandPositions, 0, newPositions, a, unique);
+        for (int k = b; k < positions.length; k++) {
+            newPositions[a + unique + k - b] = positions[k] + delta;
+        }
+        positions = newPositions;
+        endPosition += delta;
+
+        for (int i = 0; i < numColumns; i++) {
+            List<SpreadsheetCell> cells = cellLists.get(i);
+            if (end[i] < cells.size()) {
+                for (int j = end[i]; delta != 0 && j < cells.size(); j++) {
+                    cells.get(j).shiftLaidOut(delta);
+                }
+                columnBottoms[i] += delta;
+            } else if (start[i] < end[i]) {
+                columnBottoms[i] = bandBottoms[i];
+            } else if (changedColumns[i]) {
+                // The cells that were lowest have been removed.
+                int bottom = 0;
+                for (int j = 0; j < start[i]; j++) {
+                    bottom = Math.max(bottom, cells.get(j).getLaidBottom());
+                }
+                columnBottoms[i] = bottom;
+            }
+        }
+    }
+
+    /**
+     * @return The index of the first time after a time.
+     */
+    private static int upperBound(final long[] times, final long time) {
+        int low = 0;
+        int high = times.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long[] splice(final long[] values, final int from, final int to, final long[] replacement) {
+        long[] result = new long[values.length - (to - from) + replacement.length];
+        System.arraycopy(values, 0, result, 0, from);
+        System.arraycopy(replacement, 0, result, from, replacement.length);
+        System.arraycopy(values, to, result, from + replacement.length, values.length - to);
+        return result;
+    }
+
+    private static boolean[] splice(final boolean[] values, final int from, final int to,
+                                    final boolean[] replacement) {
+        boolean[] result = new boolean[values.length - (to - from) + replacement.length];
+        System.arraycopy(values, 0, result, 0, from);
+        System.arraycopy(replacement, 0, result, from, replacement.length);
+        System.arraycopy(values, to, result, from + replacement.length, values.length - to);
+        return result;
     }
 
     public void reorientView(SpreadsheetCell cell) {
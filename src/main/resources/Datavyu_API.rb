@@ -875,47 +875,54 @@ def set_column(*args, sanitize_codes: true)
 
   end
 
-  # Create new cells and fill them in for each cell in the variable
-  for cell in var.cells
-    # Copy the information from the ruby variable to the new cell
+  # Create new cells and fill them in for each cell in the variable.
+  # New cells are published to the spreadsheet in one batch at the end.
+  data_store = var.db_var.getOwningDatastore
+  data_store.beginBulkLoad
+  begin
+    for cell in var.cells
+      # Copy the information from the ruby variable to the new cell
 
-    if cell.db_cell == nil or cell.parent != name
-      cell.db_cell = var.db_var.createCell()
-    end
+      if cell.db_cell == nil or cell.parent != name
+        cell.db_cell = var.db_var.createCell()
+      end
 
-    value = cell.db_cell.getCellValue()
+      value = cell.db_cell.getCellValue()
 
-    if cell.onset != cell.db_cell.getOnset
-      cell.db_cell.setOnset(cell.onset)
-    end
+      if cell.onset != cell.db_cell.getOnset
+        cell.db_cell.setOnset(cell.onset)
+      end
 
-    if cell.offset != cell.db_cell.getOffset
-      cell.db_cell.setOffset(cell.offset)
-    end
+      if cell.offset != cell.db_cell.getOffset
+        cell.db_cell.setOffset(cell.offset)
+      end
 
-    # Matrix cell
-    if cell.db_cell.getVariable.getRootNode.type == Argument::Type::MATRIX
-      values = cell.db_cell.getCellValue().getArguments()
-      for arg in var.old_args
-        # Find the arg in the dataStore's arglist that we are looking for
-        for i in 0...values.size
-          dbarg = values[i]
-          dbarg_name = dbarg.getArgument.name
-          if dbarg_name == arg and not ["", nil].include?(cell.get_arg(var.convert_argname(arg)))
-            dbarg.set(cell.get_arg(var.convert_argname(arg)))
-            break
+      # Matrix cell
+      if cell.db_cell.getVariable.getRootNode.type == Argument::Type::MATRIX
+        values = cell.db_cell.getCellValue().getArguments()
+        for arg in var.old_args
+          # Find the arg in the dataStore's arglist that we are looking for
+          for i in 0...values.size
+            dbarg = values[i]
+            dbarg_name = dbarg.getArgument.name
+            if dbarg_name == arg and not ["", nil].include?(cell.get_arg(var.convert_argname(arg)))
+              dbarg.set(cell.get_arg(var.convert_argname(arg)))
+              break
+            end
           end
         end
-      end
 
-      # Non-matrix cell
-    else
-      value = cell.db_cell.getCellValue()
-      value.set(cell.get_arg("var"))
-    end
+        # Non-matrix cell
+      else
+        value = cell.db_cell.getCellValue()
+        value.set(cell.get_arg("var"))
+      end
 
-    # Save the changes back to the DB
+      # Save the changes back to the DB
 
+    end
+  ensure
+    data_store.endBulkLoad
   end
   # if var.hidden
   var.db_var.setHidden(var.hidden)
@@ -2720,6 +2727,34 @@ def get_datavyu_files_from(dir, recurse=false)
   return files
 end
 
+# Read a run-length frame-by-frame CSV file one frame at a time.
+# Each row of the file is a run of frames with the same cells; the frames of a run are only expanded as they are read, so long recordings can be read without holding every frame in memory.
+# @param filename [String] path to a file exported with "Run-length frame-by-frame CSV file" as the type
+# @yield [frame] a frame of the recording
+# @yieldparam frame [Hash] mapping from the column names of a frame-by-frame CSV file ('nFrame', 'time', 'column.ordinal', 'column.code', ...) to values; nFrame and time are integers, values are strings and nil where there is no cell
+# @return [Enumerator] frames of the file if no block is given
+# @example
+#   frames = each_frame_from_run_length_csv('~/Desktop/session_frames.csv')
+#   looking = frames.lazy.select{ |frame| frame['look.value'] == 'y' }.first(10)
+def each_frame_from_run_length_csv(filename)
+  return enum_for(:each_frame_from_run_length_csv, filename) unless block_given?
+
+  CSV.foreach(File.expand_path(filename), headers: true) do |row|
+    start_frame = row['startFrame'].to_i
+    end_frame = row['endFrame'].to_i
+    start_time = row['startTime'].to_i
+    end_time = row['endTime'].to_i
+    # Frames are evenly spaced, so the duration of a frame follows from the first and last frame of the run.
+    step = (end_frame > start_frame) ? (end_time - start_time) / (end_frame - start_frame) : 0
+
+    values = row.to_h.reject{ |k, _| k.nil? || %w(startFrame endFrame startTime endTime).include?(k) }
+    (start_frame..end_frame).each do |n|
+      yield({ 'nFrame' => n, 'time' => start_time + (n - start_frame) * step }.merge(values))
+    end
+  end
+end
+alias :eachFrameFromRunLengthCsv :each_frame_from_run_length_csv
+
 # Hide the given columns in the spreadsheet
 # @param names [Array<String>] names of columns to hide
 def hide_columns(*names)
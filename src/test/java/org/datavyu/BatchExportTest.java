@@ -0,0 +1,150 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu;
+
+import org.datavyu.controllers.SaveBinaryDataStoreFileController;
+import org.datavyu.controllers.SaveDataStoreFileController;
+import org.datavyu.controllers.SaveProjectFileController;
+import org.datavyu.controllers.TempFileTest;
+import org.datavyu.models.db.Argument;
+import org.datavyu.models.db.DataStore;
+import org.datavyu.models.db.DataStoreFactory;
+import org.datavyu.models.db.Variable;
+import org.datavyu.models.project.Project;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for exporting the projects in a directory.
+ */
+public class BatchExportTest extends TempFileTest {
+
+    private File directory;
+
+    public BatchExportTest() {
+        super("batch", ".opfb");
+    }
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = File.createTempFile("batch", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testOutputFile() {
+        BatchExport batchExport = new BatchExport(BatchExport.Mode.parse("frames-rle"));
+        assertEquals(batchExport.getOutputFile(new File(directory, "a.b.opf")),
+                new File(directory, "a.b_opf_frames_rle.csv"));
+        batchExport.setOutputDirectory(new File("out"));
+        // Projects with the same name and different extensions are exported to different files.
+        assertEquals(batchExport.getOutputFile(new File(directory, "c.opfb")),
+                new File("out", "c_opfb_frames_rle.csv"));
+        assertEquals(batchExport.getOutputFile(new File(directory, "c.opf")), new File("out", "c_opf_frames_rle.csv"));
+        assertEquals(new BatchExport(BatchExport.Mode.FRAMES).getOutputFile(new File(directory, "c.opf")),
+                new File(directory, "c_opf_frames.csv"));
+    }
+
+    @Test
+    public void testEstimateMemory() throws IOException {
+        File archive = new File(directory, "large.opf");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("db"));
+            out.write(new byte[1 << 20]);
+        }
+        // Estimated from the uncompressed data store rather than the archive.
+        assertTrue(archive.length() < 1 << 16);
+        assertTrue(BatchExport.estimateMemory(archive) >= 1 << 20);
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(new File(directory, "large.opf")))) {
+            out.putNextEntry(new ZipEntry("db"));
+            out.write(new byte[8 << 20]);
+        }
+        assertTrue(new File(directory, "broken.opfb").createNewFile());
+        assertTrue(new File(directory, "notes.txt").createNewFile());
+
+        BatchExport batchExport = new BatchExport(BatchExport.Mode.CSV);
+        batchExport.setNumThreads(2);
+        batchExport.setMaxFileMemory(16);
+        // The large project is skipped and the broken one can not be opened.
+        assertEquals(batchExport.export(directory), 2);
+        assertFalse(new File(directory, "large_opf.csv").exists());
+    }
+
+    @Test
+    public void testExportProjects() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore();
+        Variable trial = ds.createVariable("trial", Argument.Type.NOMINAL);
+        newCell(trial, 1000, 2000, "a");
+        newCell(trial, 3000, 4500, "b");
+        newCell(trial, 6000, 6000, "");
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new SaveDataStoreFileController().saveAsCsv(expected, ds);
+
+        Project p = new Project();
+        p.setProjectName("batch");
+        ByteArrayOutputStream project = new ByteArrayOutputStream();
+        new SaveProjectFileController().save(project, p);
+
+        // The same data store as a binary project and as a project archive.
+        new SaveBinaryDataStoreFileController().save(file, ds,
+                Collections.singletonMap("project", project.toByteArray()));
+        File archive = new File(directory, "archive.opf");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+            out.putNextEntry(new ZipEntry("project"));
+            out.write(project.toByteArray());
+            out.putNextEntry(new ZipEntry("db"));
+            out.write(expected.toByteArray());
+        }
+
+        BatchExport batchExport = new BatchExport(BatchExport.Mode.CSV);
+        batchExport.setOutputDirectory(directory);
+        batchExport.exportProject(file);
+        assertEquals(batchExport.export(directory), 0);
+
+        String csv = new String(expected.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(read(batchExport.getOutputFile(file)), csv);
+        assertEquals(read(new File(directory, "archive_opf.csv")), csv);
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
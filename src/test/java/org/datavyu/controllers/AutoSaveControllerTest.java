@@ -0,0 +1,154 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.datavyu.models.db.Argument;
+import org.datavyu.models.db.DataStore;
+import org.datavyu.models.db.DataStoreFactory;
+import org.datavyu.models.db.UserWarningException;
+import org.datavyu.models.db.Variable;
+import org.datavyu.models.project.Project;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for autosaving a project in the background.
+ */
+public class AutoSaveControllerTest extends TempFileTest {
+
+    private DataStore ds;
+
+    private Variable trial;
+
+    private Project project;
+
+    public AutoSaveControllerTest() {
+        super("autosave", ".opfb");
+    }
+
+    @BeforeMethod
+    public void setUp() throws UserWarningException {
+        ds = DataStoreFactory.newDataStore();
+        trial = ds.createVariable("trial", Argument.Type.NOMINAL);
+        newCell(trial, 1000, 2000, "a");
+        newCell(trial, 3000, 4000, "b");
+        newCell(trial, 5000, 6000, "c");
+        project = new Project();
+        project.setProjectName("autosave");
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        AutoSaveController.getPending().get();
+        EditJournalController.getJournalFile(file).delete();
+    }
+
+    @Test
+    public void testBackgroundWrite() throws Exception {
+        CountDownLatch release = holdAutosaveThread();
+        assertTrue(AutoSaveController.autosave(ds, project, file));
+
+        // The autosave returns before the project has been written.
+        assertEquals(file.length(), 0L);
+        assertFalse(AutoSaveController.getPending().isDone());
+
+        release.countDown();
+        AutoSaveController.getPending().get();
+        assertEquals(countCells(file), 3);
+    }
+
+    @Test
+    public void testReplaceWhenWritten() throws Exception {
+        assertTrue(AutoSaveController.autosave(ds, project, file));
+        AutoSaveController.getPending().get();
+
+        newCell(trial, 7000, 8000, "d");
+        CountDownLatch release = holdAutosaveThread();
+        assertTrue(AutoSaveController.autosave(ds, project, file));
+        // The previous autosave is intact until the next one has been written.
+        assertEquals(countCells(file), 3);
+
+        release.countDown();
+        AutoSaveController.getPending().get();
+        assertEquals(countCells(file), 4);
+
+        // The next autosave is written to a temporary file that is renamed over the previous one.
+        File[] tempFiles = file.getParentFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.startsWith(file.getName()) && name.endsWith(".tmp");
+            }
+        });
+        assertEquals(tempFiles.length, 0);
+    }
+
+    @Test
+    public void testSkipWhilePending() throws Exception {
+        CountDownLatch release = holdAutosaveThread();
+        assertTrue(AutoSaveController.autosave(ds, project, file));
+        Future<?> pending = AutoSaveController.getPending();
+
+        // A tick while the last autosave is being written is skipped rather than queued.
+        newCell(trial, 7000, 8000, "d");
+        assertFalse(AutoSaveController.autosave(ds, project, file));
+        assertSame(AutoSaveController.getPending(), pending);
+
+        release.countDown();
+        pending.get();
+        assertEquals(countCells(file), 3);
+        assertTrue(AutoSaveController.autosave(ds, project, file));
+        AutoSaveController.getPending().get();
+        assertEquals(countCells(file), 4);
+    }
+
+    @Test
+    public void testLastSave() throws Exception {
+        assertTrue(AutoSaveController.autosave(ds, project, file));
+        AutoSaveController.getPending().get();
+        assertEquals(AutoSaveController.getLastSaveSize(), file.length());
+        assertTrue(AutoSaveController.getLastSaveDuration() >= 0);
+    }
+
+    /**
+     * Holds up the autosave thread, so that the next autosave is not written until released.
+     *
+     * @return The latch to count down to release the thread.
+     */
+    private static CountDownLatch holdAutosaveThread() {
+        final CountDownLatch release = new CountDownLatch(1);
+        AutoSaveController.executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                release.await();
+                return null;
+            }
+        });
+        return release;
+    }
+
+    private static int countCells(final File file) throws IOException {
+        return new OpenBinaryDataStoreFileController().open(file).getVariable("trial").getCells().size();
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.datavyu.models.db.*;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for saving and opening the binary project format.
+ */
+public class BinaryDataStoreFileTest extends TempFileTest {
+
+    public BinaryDataStoreFileTest() {
+        super("binary", ".opfb");
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.OBJECT);
+
+        Variable nominal = ds.createVariable("nominal", Argument.Type.NOMINAL);
+        newCell(nominal, 5000, 6000, "b");
+        newCell(nominal, 1000, 2000, "a");
+        newCell(nominal, 1000, 500, "b");
+
+        Variable text = ds.createVariable("text", Argument.Type.TEXT);
+        text.setHidden(true);
+        newCell(text, 0, 0, "multi\nline, (text) \u00e9");
+        newCell(text, 100, 200, "");
+
+        Variable matrix = ds.createVariable("matrix", Argument.Type.MATRIX);
+        matrix.addArgument(Argument.Type.TEXT);
+        newCell(matrix, 3600000L * 100, 3600000L * 101, "(x,y)");
+        newCell(matrix, 10, 20, "(,z)");
+
+        ds.createVariable("empty", Argument.Type.NOMINAL);
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("project", "name: test".getBytes(StandardCharsets.UTF_8));
+        entries.put("settings", new byte[0]);
+        new SaveBinaryDataStoreFileController().save(file, ds, entries);
+
+        OpenBinaryDataStoreFileController controller = new OpenBinaryDataStoreFileController();
+        DataStore opened = controller.open(file);
+        assertEquals(controller.getEntryNames(), entries.keySet());
+        assertEquals(read(controller.getEntry("project")), "name: test");
+        assertEquals(read(controller.getEntry("settings")), "");
+        assertNull(controller.getEntry("missing"));
+
+        // Cells are only decoded once the variable is used.
+        ColumnarVariable loaded = (ColumnarVariable) opened.getVariable("nominal");
+        assertFalse(loaded.isLoaded());
+        assertEquals(loaded.getRootNode().getValueFrequency("b"), 0);
+        assertEquals(loaded.getCells().size(), 3);
+        assertTrue(loaded.isLoaded());
+        assertEquals(loaded.getRootNode().getValueFrequency("b"), 2);
+        assertFalse(((ColumnarVariable) opened.getVariable("text")).isLoaded());
+
+        assertTrue(opened.getVariable("text").isHidden());
+        assertEquals(opened.getVariable("matrix").getRootNode().childArguments.size(), 2);
+        assertEquals(opened.getVariable("matrix").getRootNode().childArguments.get(1).type, Argument.Type.TEXT);
+        assertEquals(opened.getAllVariables().size(), 4);
+        for (Variable variable : ds.getAllVariables()) {
+            assertSameCells(opened.getVariable(variable.getName()), variable);
+        }
+    }
+
+    @Test
+    public void testLoadedVariableIsEditable() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        Variable var = ds.createVariable("test", Argument.Type.MATRIX);
+        newCell(var, 0, 10, "(a)");
+        new SaveBinaryDataStoreFileController().save(file, ds, new LinkedHashMap<String, byte[]>());
+
+        Variable opened = new OpenBinaryDataStoreFileController().open(file).getVariable("test");
+        opened.addArgument(Argument.Type.NOMINAL);
+        Cell cell = opened.createCell();
+        cell.getCellValue().set("(b,c)");
+        assertEquals(opened.getCells().size(), 2);
+        assertEquals(opened.getCells().get(0).getValueAsString(), "(a,)");
+        assertEquals(opened.getCells().get(1).getValueAsString(), "(b,c)");
+    }
+
+    @Test
+    public void testDeltaSave() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        Variable first = ds.createVariable("first", Argument.Type.NOMINAL);
+        newCell(first, 0, 10, "a");
+        Variable second = ds.createVariable("second", Argument.Type.TEXT);
+        newCell(second, 20, 30, "b");
+        new SaveBinaryDataStoreFileController().save(file, ds, new LinkedHashMap<String, byte[]>());
+
+        DataStore opened = new OpenBinaryDataStoreFileController().open(file);
+        Cell cell = opened.getVariable("second").getCells().get(0);
+        cell.getCellValue().set("changed");
+        new SaveBinaryDataStoreFileController().save(file, opened, new LinkedHashMap<String, byte[]>());
+
+        // The unchanged variable is copied without being decoded.
+        assertFalse(((ColumnarVariable) opened.getVariable("first")).isLoaded());
+
+        // Changes made after a save are picked up by the next one.
+        cell.setOnset(25);
+        new SaveBinaryDataStoreFileController().save(file, opened, new LinkedHashMap<String, byte[]>());
+
+        DataStore reopened = new OpenBinaryDataStoreFileController().open(file);
+        assertSameCells(reopened.getVariable("first"), first);
+        assertEquals(reopened.getVariable("second").getCells().get(0).getValueAsString(), "changed");
+        assertEquals(reopened.getVariable("second").getCells().get(0).getOnset(), 25);
+    }
+
+    @Test
+    public void testSaveOverOpenFile() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        Variable first = ds.createVariable("first", Argument.Type.TEXT);
+        newCell(first, 0, 10, "a");
+        Variable second = ds.createVariable("second", Argument.Type.NOMINAL);
+        newCell(second, 20, 30, "b");
+        Variable third = ds.createVariable("third", Argument.Type.NOMINAL);
+        newCell(third, 40, 50, "c");
+        new SaveBinaryDataStoreFileController().save(file, ds, new LinkedHashMap<String, byte[]>());
+
+        // The first variable grows, so the blocks after it move in the saved file.
+        DataStore opened = new OpenBinaryDataStoreFileController().open(file);
+        DataStore openedTwice = new OpenBinaryDataStoreFileController().open(file);
+        Variable decoded = openedTwice.getVariable("first");
+        assertSameCells(decoded, first);
+        opened.getVariable("first").getCells().get(0).getCellValue().set("a much longer value than before");
+        opened.removeVariable(opened.getVariable("third"));
+        new SaveBinaryDataStoreFileController().save(file, opened, new LinkedHashMap<String, byte[]>());
+
+        // Blocks that were copied are read from where they are now, the others were read before the file was replaced.
+        assertFalse(((ColumnarVariable) opened.getVariable("second")).isLoaded());
+        assertSameCells(opened.getVariable("second"), second);
+        assertFalse(((ColumnarVariable) openedTwice.getVariable("third")).isLoaded());
+        assertSameCells(openedTwice.getVariable("third"), third);
+        assertSameCells(openedTwice.getVariable("second"), second);
+        // The block of a decoded variable is dropped rather than held in memory along with its cells.
+        assertNull(BinaryDataStoreFormat.getSavedBlock(decoded, 1));
+        assertSameCells(decoded, first);
+    }
+
+    @Test
+    public void testDeltaSaveObjectEngine() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.OBJECT);
+        Variable first = ds.createVariable("first", Argument.Type.NOMINAL);
+        newCell(first, 0, 10, "a");
+        Variable second = ds.createVariable("second", Argument.Type.MATRIX);
+        newCell(second, 20, 30, "(b)");
+        new SaveBinaryDataStoreFileController().save(file, ds, new LinkedHashMap<String, byte[]>());
+
+        // Unchanged variables are copied from their saved blocks, changed ones are encoded again.
+        second.getCells().get(0).setOffset(35);
+        SaveBinaryDataStoreFileController.Snapshot snapshot = new SaveBinaryDataStoreFileController().snapshot(ds);
+        assertNotNull(snapshot.variables.get(0).saved);
+        assertNull(snapshot.variables.get(1).saved);
+        new SaveBinaryDataStoreFileController().save(file, snapshot, new LinkedHashMap<String, byte[]>());
+
+        second.addArgument(Argument.Type.NOMINAL);
+        first.getCells().get(0).getCellValue().clear();
+        snapshot = new SaveBinaryDataStoreFileController().snapshot(ds);
+        assertNull(snapshot.variables.get(0).saved);
+        assertNull(snapshot.variables.get(1).saved);
+        new SaveBinaryDataStoreFileController().save(file, snapshot, new LinkedHashMap<String, byte[]>());
+
+        DataStore reopened = new OpenBinaryDataStoreFileController().open(file);
+        assertSameCells(reopened.getVariable("first"), first);
+        assertSameCells(reopened.getVariable("second"), second);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        Variable var = ds.createVariable("test", Argument.Type.NOMINAL);
+        newCell(var, 0, 10, "before");
+
+        SaveBinaryDataStoreFileController controller = new SaveBinaryDataStoreFileController();
+        SaveBinaryDataStoreFileController.Snapshot snapshot = controller.snapshot(ds);
+        var.getCells().get(0).getCellValue().set("after");
+        newCell(var, 20, 30, "new");
+        assertEquals(controller.save(file, snapshot, new LinkedHashMap<String, byte[]>()), file.length());
+
+        List<Cell> cells = new OpenBinaryDataStoreFileController().open(file).getVariable("test").getCells();
+        assertEquals(cells.size(), 1);
+        assertEquals(cells.get(0).getValueAsString(), "before");
+
+        // The variable changed after the snapshot, so its block is not reused by the next save.
+        controller.save(file, ds, new LinkedHashMap<String, byte[]>());
+        cells = new OpenBinaryDataStoreFileController().open(file).getVariable("test").getCells();
+        assertEquals(cells.size(), 2);
+        assertEquals(cells.get(0).getValueAsString(), "after");
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testNotBinary() throws Exception {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write("#4\nnot binary\n".getBytes(StandardCharsets.UTF_8));
+        }
+        new OpenBinaryDataStoreFileController().open(file);
+    }
+
+    private static void assertSameCells(final Variable actual, final Variable expected) {
+        assertEquals(actual.getRootNode().type, expected.getRootNode().type);
+        List<Cell> actualCells = actual.getCells();
+        List<Cell> expectedCells = expected.getCells();
+        assertEquals(actualCells.size(), expectedCells.size());
+        for (int i = 0; i < expectedCells.size(); i++) {
+            assertEquals(actualCells.get(i).getOnset(), expectedCells.get(i).getOnset());
+            assertEquals(actualCells.get(i).getOffset(), expectedCells.get(i).getOffset());
+            assertEquals(actualCells.get(i).getCellValue().serialize(), expectedCells.get(i).getCellValue().serialize());
+        }
+    }
+
+    private static String read(final InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
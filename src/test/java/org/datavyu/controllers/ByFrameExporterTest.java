@@ -0,0 +1,109 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.datavyu.models.db.*;
+import org.testng.annotations.Test;
+
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for exporting a data store by frame.
+ */
+public class ByFrameExporterTest extends TempFileTest {
+
+    public ByFrameExporterTest() {
+        super("frames", ".csv");
+    }
+
+    @Test
+    public void testRows() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.OBJECT);
+        Variable nominal = ds.createVariable("a", Argument.Type.NOMINAL);
+        newCell(nominal, 0, 50, "x");
+        // Shorter than a frame, so it is written for the frame it starts in.
+        newCell(nominal, 120, 125, "y");
+        Variable matrix = ds.createVariable("m", Argument.Type.MATRIX);
+        matrix.addArgument(Argument.Type.TEXT);
+        newCell(matrix, 40, 100, "(p,q)");
+        ds.createVariable("empty", Argument.Type.TEXT);
+
+        new ByFrameExporter(ds, 20.0).write(file);
+
+        List<String> rows = Files.readAllLines(file.toPath());
+        assertEquals(rows.size(), 5);
+        assertEquals(rows.get(0), "nFrame,time,a.ordinal,a.onset,a.offset,a.value,"
+                + "m.ordinal,m.onset,m.offset,m.code01,m.code02,empty.ordinal,empty.onset,empty.offset,empty.value,");
+        assertEquals(rows.get(1), "1,0,1,0,50,\"x\",,,,,,");
+        assertEquals(rows.get(2), "2,50,1,0,50,\"x\",1,40,100,\"p\",\"q\",");
+        assertEquals(rows.get(3), "3,100,,,,,1,40,100,\"p\",\"q\",");
+        assertEquals(rows.get(4), "4,150,2,120,125,\"y\",,,,,,");
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        for (int v = 0; v < 3; v++) {
+            Variable var = ds.createVariable("v" + v, Argument.Type.NOMINAL);
+            for (long onset = v * 1000; onset < 600000; onset += 7000 + v * 1300) {
+                newCell(var, onset, onset + 3000 + v, "c" + onset % 5);
+            }
+        }
+
+        ByFrameExporter exporter = new ByFrameExporter(ds, 29.97);
+        exporter.setParallel(false);
+        exporter.write(file);
+        byte[] sequential = Files.readAllBytes(file.toPath());
+        exporter.setParallel(true);
+        exporter.write(file);
+        assertEquals(Files.readAllBytes(file.toPath()), sequential);
+    }
+
+    @Test
+    public void testRunLength() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        Variable first = ds.createVariable("a", Argument.Type.NOMINAL);
+        newCell(first, 0, 1000, "x");
+        newCell(first, 1500, 1510, "y");
+        Variable second = ds.createVariable("b", Argument.Type.TEXT);
+        newCell(second, 500, 3000, "z");
+
+        ByFrameExporter exporter = new ByFrameExporter(ds, 29.97);
+        exporter.write(file);
+        List<String> frames = Files.readAllLines(file.toPath());
+        exporter.setRunLength(true);
+        exporter.write(file);
+        List<String> runs = Files.readAllLines(file.toPath());
+
+        assertEquals(runs.get(0), frames.get(0).replace("nFrame,time,", "startFrame,endFrame,startTime,endTime,"));
+        assertEquals(runs.size(), 7);
+        // Expanding the runs gives back the frames.
+        int row = 1;
+        for (String run : runs.subList(1, runs.size())) {
+            String[] fields = run.split(",", 5);
+            int startFrame = Integer.parseInt(fields[0]);
+            int endFrame = Integer.parseInt(fields[1]);
+            long startTime = Long.parseLong(fields[2]);
+            long step = endFrame > startFrame ? (Long.parseLong(fields[3]) - startTime) / (endFrame - startFrame) : 0;
+            for (int n = startFrame; n <= endFrame; n++) {
+                assertEquals(frames.get(row++), n + "," + (startTime + (n - startFrame) * step) + "," + fields[4]);
+            }
+        }
+        assertEquals(row, frames.size());
+    }
+}
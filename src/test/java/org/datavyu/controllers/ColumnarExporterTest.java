@@ -0,0 +1,138 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.datavyu.models.db.*;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for exporting a data store as a columnar binary file.
+ */
+public class ColumnarExporterTest extends TempFileTest {
+
+    public ColumnarExporterTest() {
+        super("columnar", ".dvc");
+    }
+
+    @Test
+    public void testTables() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.OBJECT);
+        Variable matrix = ds.createVariable("trial", Argument.Type.MATRIX);
+        matrix.addArgument(Argument.Type.TEXT);
+        newCell(matrix, 3600000L * 100, 3600000L * 101, "(left,\u00e9)");
+        newCell(matrix, 0, 40, "(right,)");
+        newCell(matrix, 50, 90, "(left,x)");
+        ds.createVariable("empty", Argument.Type.NOMINAL);
+
+        new ColumnarExporter(ds).write(file);
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        JsonNode tables = readFooter(bytes).get("tables");
+        assertEquals(tables.size(), 2);
+
+        JsonNode trial = tables.get(0);
+        assertEquals(trial.get("name").asText(), "trial");
+        assertEquals(trial.get("rows").asInt(), 3);
+        JsonNode columns = trial.get("columns");
+        assertEquals(columns.size(), 5);
+        assertEquals(readLongs(bytes, columns.get(1)), new long[]{0, 50, 3600000L * 100});
+        assertEquals(readLongs(bytes, columns.get(2)), new long[]{40, 90, 3600000L * 101});
+
+        JsonNode side = columns.get(3);
+        assertEquals(side.get("name").asText(), "code01");
+        assertEquals(side.get("codeType").asText(), "NOMINAL");
+        assertEquals(readInts(bytes, side.get("indices")), new int[]{0, 1, 1});
+        assertEquals(readStrings(bytes, side.get("dictionary")), new String[]{"right", "left"});
+        JsonNode note = columns.get(4);
+        assertEquals(readInts(bytes, note.get("indices")), new int[]{-1, 0, 1});
+        assertEquals(readStrings(bytes, note.get("dictionary")), new String[]{"x", "\u00e9"});
+
+        JsonNode empty = tables.get(1);
+        assertEquals(empty.get("rows").asInt(), 0);
+        assertEquals(empty.get("columns").get(3).get("name").asText(), "value");
+    }
+
+    @Test
+    public void testFrames() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        Variable nominal = ds.createVariable("a", Argument.Type.NOMINAL);
+        newCell(nominal, 0, 50, "x");
+        newCell(nominal, 120, 125, "y");
+        ds.createVariable("empty", Argument.Type.TEXT);
+
+        new ColumnarExporter(ds, 20.0).write(file);
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        JsonNode frames = readFooter(bytes).get("tables").get(2);
+        assertEquals(frames.get("name").asText(), ColumnarExporter.FRAMES_TABLE);
+        assertEquals(frames.get("rows").asInt(), 4);
+        JsonNode columns = frames.get("columns");
+        assertEquals(readInts(bytes, columns.get(0)), new int[]{1, 2, 3, 4});
+        assertEquals(readLongs(bytes, columns.get(1)), new long[]{0, 50, 100, 150});
+        // The same cells as the rows exported by frame.
+        assertEquals(columns.get(2).get("name").asText(), "a");
+        assertEquals(readInts(bytes, columns.get(2)), new int[]{1, 1, 0, 2});
+        assertEquals(readInts(bytes, columns.get(3)), new int[]{0, 0, 0, 0});
+    }
+
+    private static JsonNode readFooter(final ByteBuffer bytes) throws IOException {
+        assertEquals(new String(bytes.array(), 0, 4, StandardCharsets.US_ASCII), "DVCF");
+        assertEquals(new String(bytes.array(), bytes.limit() - 4, 4, StandardCharsets.US_ASCII), "DVCF");
+        int length = (int) bytes.getLong(bytes.limit() - 12);
+        return new ObjectMapper().readTree(new String(bytes.array(), bytes.limit() - 12 - length, length,
+                StandardCharsets.UTF_8));
+    }
+
+    private static int[] readInts(final ByteBuffer bytes, final JsonNode buffer) {
+        assertEquals(buffer.get("type").asText(), "int32");
+        assertEquals(buffer.get("offset").asLong() % 8, 0);
+        int[] values = new int[buffer.get("length").asInt() / 4];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = bytes.getInt(buffer.get("offset").asInt() + 4 * i);
+        }
+        return values;
+    }
+
+    private static long[] readLongs(final ByteBuffer bytes, final JsonNode buffer) {
+        assertEquals(buffer.get("type").asText(), "int64");
+        assertEquals(buffer.get("offset").asLong() % 8, 0);
+        long[] values = new long[buffer.get("length").asInt() / 8];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = bytes.getLong(buffer.get("offset").asInt() + 8 * i);
+        }
+        return values;
+    }
+
+    private static String[] readStrings(final ByteBuffer bytes, final JsonNode dictionary) {
+        int[] offsets = readInts(bytes, dictionary.get("offsets"));
+        int data = dictionary.get("data").get("offset").asInt();
+        String[] values = new String[offsets.length - 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new String(bytes.array(), data + offsets[i], offsets[i + 1] - offsets[i],
+                    StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+}
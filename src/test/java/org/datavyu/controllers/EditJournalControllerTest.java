@@ -0,0 +1,220 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.datavyu.models.db.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for journaling the edits made after a checkpoint and replaying them.
+ */
+public class EditJournalControllerTest extends TempFileTest {
+
+    private static final long GENERATION = 42L;
+
+    private File journalFile;
+
+    public EditJournalControllerTest() {
+        super("checkpoint", ".opfb");
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        journalFile = EditJournalController.getJournalFile(file);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        journalFile.delete();
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        Variable changed = ds.createVariable("changed", Argument.Type.NOMINAL);
+        newCell(changed, 0, 10, "a");
+        newCell(changed, 20, 30, "b");
+        Variable renamed = ds.createVariable("renamed", Argument.Type.MATRIX);
+        newCell(renamed, 5, 15, "(x)");
+        Variable removed = ds.createVariable("removed", Argument.Type.TEXT);
+        newCell(removed, 0, 0, "gone");
+        EditJournalController journal = startJournal(ds);
+
+        changed.getCells().get(1).getCellValue().set("c");
+        renamed.setName("other");
+        ds.removeVariable(removed);
+        Variable added = ds.createVariable("added", Argument.Type.TEXT);
+        newCell(added, 100, 200, "new");
+        journal.append(journal.capture());
+
+        added.getCells().get(0).setOnset(150);
+        journal.append(journal.capture());
+        journal.close();
+
+        DataStore recovered = new OpenBinaryDataStoreFileController().open(file);
+        assertEquals(EditJournalController.replay(journalFile, GENERATION, recovered), 2);
+
+        assertEquals(recovered.getAllVariables().size(), 3);
+        assertNull(recovered.getVariable("removed"));
+        assertNull(recovered.getVariable("renamed"));
+        // Only renamed, its cells are still in the checkpoint.
+        assertFalse(((ColumnarVariable) recovered.getVariable("other")).isLoaded());
+        for (Variable variable : ds.getAllVariables()) {
+            assertSameCells(recovered.getVariable(variable.getName()), variable);
+        }
+    }
+
+    @Test
+    public void testReplayObjectEngine() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.OBJECT);
+        Variable unchanged = ds.createVariable("unchanged", Argument.Type.NOMINAL);
+        newCell(unchanged, 0, 10, "a");
+        Variable changed = ds.createVariable("changed", Argument.Type.NOMINAL);
+        newCell(changed, 0, 10, "b");
+        EditJournalController journal = startJournal(ds);
+
+        changed.getCells().get(0).setOffset(20);
+        newCell(changed, 30, 40, "c");
+        journal.append(journal.capture());
+        changed.removeCell(changed.getCells().get(0));
+        journal.append(journal.capture());
+        journal.close();
+
+        DataStore recovered = new OpenBinaryDataStoreFileController().open(file);
+        EditJournalController.replay(journalFile, GENERATION, recovered);
+        assertFalse(((ColumnarVariable) recovered.getVariable("unchanged")).isLoaded());
+        assertSameCells(recovered.getVariable("changed"), changed);
+    }
+
+    @Test
+    public void testReplayCellChanges() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        Variable var = ds.createVariable("test", Argument.Type.NOMINAL);
+        for (int i = 0; i < 1000; i++) {
+            newCell(var, i * 10, i * 10 + 5, "value" + i);
+        }
+        new SaveBinaryDataStoreFileController().save(file, ds, new LinkedHashMap<String, byte[]>());
+
+        // The checkpoint is taken before the variable is decoded.
+        DataStore opened = new OpenBinaryDataStoreFileController().open(file);
+        EditJournalController journal = startJournal(opened);
+        Variable edited = opened.getVariable("test");
+        Cell removed = edited.getCells().get(10);
+        edited.removeCell(removed);
+        edited.getCells().get(500).setOffset(99999);
+        newCell(edited, 20000, 20010, "added");
+        long before = journalFile.length();
+        journal.append(journal.capture());
+        // Only the changed cells are recorded.
+        assertTrue(journalFile.length() - before < 200);
+
+        // Undo adds the removed cell back.
+        edited.addCell(removed);
+        removed.getCellValue().set("restored");
+        edited.getCells().get(edited.getCells().size() - 2).getCellValue().set("changed");
+        journal.append(journal.capture());
+        journal.close();
+
+        DataStore recovered = new OpenBinaryDataStoreFileController().open(file);
+        assertEquals(EditJournalController.replay(journalFile, GENERATION, recovered), 2);
+        assertSameCells(recovered.getVariable("test"), edited);
+    }
+
+    @Test
+    public void testReplayCodesChanged() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        Variable var = ds.createVariable("test", Argument.Type.MATRIX);
+        newCell(var, 0, 10, "(a)");
+        newCell(var, 20, 30, "(b)");
+        EditJournalController journal = startJournal(ds);
+
+        // All the cells are recorded once the codes change, and only the changed cells after that.
+        var.addArgument(Argument.Type.NOMINAL);
+        var.getCells().get(0).setMatrixValue(1, "c");
+        journal.append(journal.capture());
+        var.getCells().get(1).setMatrixValue(1, "d");
+        var.removeCell(var.getCells().get(0));
+        newCell(var, 40, 50, "(e,f)");
+        journal.append(journal.capture());
+        journal.close();
+
+        DataStore recovered = new OpenBinaryDataStoreFileController().open(file);
+        assertEquals(EditJournalController.replay(journalFile, GENERATION, recovered), 2);
+        assertSameCells(recovered.getVariable("test"), var);
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        Variable var = ds.createVariable("test", Argument.Type.NOMINAL);
+        newCell(var, 0, 10, "a");
+        EditJournalController journal = startJournal(ds);
+
+        var.getCells().get(0).getCellValue().set("b");
+        journal.append(journal.capture());
+        journal.close();
+
+        // A record that was only partly written when the application crashed.
+        try (OutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write(new byte[]{0, 0, 0, 100, 1, 2, 3});
+        }
+
+        DataStore recovered = new OpenBinaryDataStoreFileController().open(file);
+        assertEquals(EditJournalController.replay(journalFile, GENERATION, recovered), 1);
+        assertEquals(recovered.getVariable("test").getCells().get(0).getValueAsString(), "b");
+
+        // The journal of an older checkpoint is not replayed.
+        recovered = new OpenBinaryDataStoreFileController().open(file);
+        assertEquals(EditJournalController.replay(journalFile, GENERATION + 1, recovered), 0);
+        assertEquals(recovered.getVariable("test").getCells().get(0).getValueAsString(), "a");
+    }
+
+    private EditJournalController startJournal(final DataStore ds) throws IOException {
+        SaveBinaryDataStoreFileController controller = new SaveBinaryDataStoreFileController();
+        SaveBinaryDataStoreFileController.Snapshot snapshot = controller.snapshot(ds);
+        EditJournalController journal = new EditJournalController(journalFile, GENERATION, ds);
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put(EditJournalController.GENERATION_ENTRY, ByteBuffer.allocate(8).putLong(GENERATION).array());
+        controller.save(file, snapshot, entries);
+        journal.open();
+        return journal;
+    }
+
+    private static void assertSameCells(final Variable actual, final Variable expected) {
+        assertEquals(actual.getRootNode().type, expected.getRootNode().type);
+        List<Cell> actualCells = actual.getCells();
+        List<Cell> expectedCells = expected.getCells();
+        assertEquals(actualCells.size(), expectedCells.size());
+        for (int i = 0; i < expectedCells.size(); i++) {
+            assertEquals(actualCells.get(i).getOnset(), expectedCells.get(i).getOnset());
+            assertEquals(actualCells.get(i).getOffset(), expectedCells.get(i).getOffset());
+            assertEquals(actualCells.get(i).getCellValue().serialize(), expectedCells.get(i).getCellValue().serialize());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.datavyu.models.db.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for importing the passes of a JSON file.
+ */
+public class ImportJSONTest {
+
+    private static final String PASSES = "{\"passes\":["
+            + "{\"name\":\"trial\",\"type\":\"MATRIX\",\"arguments\":{\"NOMINAL\":\"side\",\"TEXT\":\"note\"},"
+            + "\"cells\":["
+            + "{\"id\":1,\"onset\":\"00:00:01:000\",\"offset\":\"00:00:02:500\",\"values\":[\"left\",\"\"]},"
+            + "{\"id\":2,\"onset\":\"00:01:00:000\",\"offset\":\"00:01:00:010\",\"values\":[\"right\",\"a, b\"]}"
+            + "]},"
+            + "{\"type\":\"NOMINAL\",\"name\":\"condition\",\"extra\":{\"ignored\":[1,2]},"
+            + "\"arguments\":{\"NOMINAL\":\"condition\"},"
+            + "\"cells\":[{\"id\":1,\"onset\":\"10\",\"offset\":\"20\",\"values\":[\"easy\"]}]}"
+            + "]}";
+
+    private File file;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        file = File.createTempFile("passes", ".json");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testImport() throws Exception {
+        for (DataStoreFactory.Engine engine : DataStoreFactory.Engine.values()) {
+            write(PASSES);
+            OpenDataStoreFileController controller = new OpenDataStoreFileController();
+            List<OpenDataStoreFileController.ImportedVariable> passes = controller.readJSON(file);
+            assertEquals(passes.size(), 2);
+            assertEquals(passes.get(0).getNumCells(), 2);
+
+            DataStore ds = DataStoreFactory.newDataStore(engine);
+            controller.addToDataStore(passes, ds);
+
+            Variable trial = ds.getVariable("trial");
+            assertEquals(trial.getRootNode().childArguments.size(), 2);
+            assertEquals(trial.getRootNode().childArguments.get(1).name, "note");
+            List<Cell> cells = trial.getCellsTemporally();
+            assertEquals(cells.size(), 2);
+            assertEquals(cells.get(0).getOnset(), 1000L);
+            assertEquals(cells.get(0).getOffset(), 2500L);
+            assertEquals(cells.get(0).getValueAsString(), "(left,)");
+            assertEquals(cells.get(1).getOnset(), 60000L);
+            assertEquals(cells.get(1).getMatrixValue(1).toString(), "a, b");
+
+            List<Cell> conditions = ds.getVariable("condition").getCells();
+            assertEquals(conditions.size(), 1);
+            assertEquals(conditions.get(0).getOffset(), 20L);
+            assertEquals(conditions.get(0).getValueAsString(), "easy");
+        }
+    }
+
+    @Test(expectedExceptions = UserWarningException.class)
+    public void testExistingColumn() throws Exception {
+        write(PASSES);
+        DataStore ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        ds.createVariable("condition", Argument.Type.NOMINAL);
+        OpenDataStoreFileController controller = new OpenDataStoreFileController();
+        controller.addToDataStore(controller.readJSON(file), ds);
+    }
+
+    @Test(expectedExceptions = UserWarningException.class)
+    public void testCellsBeforeArguments() throws Exception {
+        write("{\"passes\":[{\"name\":\"x\",\"type\":\"TEXT\",\"cells\":[]}]}");
+        new OpenDataStoreFileController().readJSON(file);
+    }
+
+    private void write(final String json) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -154,4 +154,30 @@ public class OpenControllerTest {
         List<Cell> cells = vars.get(0).getCells();
         assertEquals(cells.size(), 1);
     }
+
+    @Test
+    public void testLoadCSVEscapes() {
+        File demoFile = new File(TEST_FOLDER + "IO/escapes.csv");
+        OpenController openc = new OpenController();
+        openc.openDataStore(demoFile);
+
+        DataStore ds = openc.getDataStore();
+        List<Variable> vars = ds.getAllVariables();
+        assertEquals(vars.size(), 3);
+
+        Cell cell = ds.getVariable("txt").getCells().get(0);
+        assertEquals(cell.getOnset(), 3723004L);
+        assertEquals(cell.getOffsetString(), "100:00:00:000");
+        assertEquals(cell.getValueAsString(), "a,b-c\\d(e)\nline2|x");
+
+        Variable var = ds.getVariable("mat");
+        assertEquals(var.isHidden(), true);
+        assertEquals(var.getRootNode().childArguments.size(), 2);
+        cell = var.getCells().get(0);
+        assertEquals(cell.getOffset(), 1500L);
+        assertEquals(cell.getMatrixValue(0).toString(), "p(q)");
+        assertEquals(cell.getMatrixValue(1).isEmpty(), true);
+
+        assertEquals(ds.getVariable("nom").getCells().get(0).getValueAsString(), "v,1");
+    }
 }
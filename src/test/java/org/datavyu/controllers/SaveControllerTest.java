@@ -14,6 +14,7 @@
  */
 package org.datavyu.controllers;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 import org.apache.commons.io.IOUtils;
@@ -142,6 +143,31 @@ public class SaveControllerTest {
         assertTrue(areFilesSameLineComp(outFile, demoFile));
     }
 
+    @Test
+    public void testSaveCSVAfterEdit() throws UserWarningException {
+        DataStore ds = DataStoreFactory.newDataStore();
+        Variable var = ds.createVariable("TestColumn", Argument.Type.MATRIX);
+        Cell c = var.createCell();
+        c.setOffset(1000);
+        c.getCellValue().set("(a)");
+        ds.createVariable("Other", Argument.Type.TEXT).createCell().getCellValue().set("b");
+
+        SaveDataStoreFileController controller = new SaveDataStoreFileController();
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        controller.saveAsCsv(first, ds);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        controller.saveAsCsv(second, ds);
+        assertEquals(second.toString(), first.toString());
+
+        // The saved cells follow the edits.
+        c.setOnset(500);
+        var.addArgument(Argument.Type.NOMINAL);
+        ByteArrayOutputStream third = new ByteArrayOutputStream();
+        controller.saveAsCsv(third, ds);
+        assertTrue(third.toString().contains("00:00:00:500,00:00:01:000,(a,)"), third.toString());
+        assertTrue(third.toString().contains(",b"), third.toString());
+    }
+
     @Test
     public void testLoadOPF() throws UserWarningException, IOException {
         File outFile = new File("target/test2.opf");
@@ -0,0 +1,72 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.controllers;
+
+import org.datavyu.models.db.Cell;
+import org.datavyu.models.db.Variable;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Base of the tests that write a data store to a file, which is created before and deleted after each test.
+ */
+public abstract class TempFileTest {
+
+    /** The prefix of the name of the file */
+    private final String prefix;
+
+    /** The suffix of the name of the file */
+    private final String suffix;
+
+    /** The file written by each test */
+    protected File file;
+
+    /**
+     * @param prefix The prefix of the name of the file.
+     * @param suffix The suffix of the name of the file.
+     */
+    protected TempFileTest(final String prefix, final String suffix) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+    }
+
+    @BeforeMethod
+    public void createFile() throws IOException {
+        file = File.createTempFile(prefix, suffix);
+    }
+
+    @AfterMethod
+    public void deleteFile() {
+        file.delete();
+    }
+
+    /**
+     * Creates a cell at the end of a variable.
+     *
+     * @param var The variable to create the cell in.
+     * @param onset The onset of the cell.
+     * @param offset The offset of the cell.
+     * @param value The value of the cell.
+     */
+    protected static void newCell(final Variable var, final long onset, final long offset, final String value) {
+        Cell c = var.createCell();
+        c.setOnset(onset);
+        c.setOffset(offset);
+        c.getCellValue().set(value);
+    }
+}
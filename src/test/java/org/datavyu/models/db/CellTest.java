@@ -71,6 +71,16 @@ public class CellTest {
         ds = null;
     }
 
+    @Test
+    public void testIdentity() {
+        Cell other = var.createCell();
+        assertFalse(model.equals(other));
+        assertFalse(model.getCellId().equals(other.getCellId()));
+        assertEquals(model.getCellId(), model.getCellId());
+        assertTrue(model.equals(var.getCells().get(0)));
+        assertEquals(model.hashCode(), var.getCells().get(0).hashCode());
+    }
+
     @Test
     public void testIsSelected() {
         assertTrue(model.isSelected());
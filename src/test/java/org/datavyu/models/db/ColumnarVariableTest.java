@@ -0,0 +1,299 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.models.db;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests for the columnar storage engine.
+ */
+public class ColumnarVariableTest {
+
+    /**
+     * The parent datastore for the variables.
+     */
+    private DataStore ds;
+
+    @BeforeMethod
+    public void setUp() {
+        ds = DataStoreFactory.newDataStore(DataStoreFactory.Engine.COLUMNAR);
+        ds.markAsUnchanged();
+    }
+
+    @Test
+    public void testCellViews() throws UserWarningException {
+        Variable var = ds.createVariable("test", Argument.Type.NOMINAL);
+        assertTrue(var instanceof ColumnarVariable);
+
+        Cell c = var.createCell();
+        assertTrue(ds.isChanged());
+        c.setOnset(1000);
+        c.setOffset("00:00:02:500");
+        c.getCellValue().set("a");
+
+        Cell view = var.getCells().get(0);
+        assertEquals(view, c);
+        assertEquals(view.hashCode(), c.hashCode());
+        assertEquals(view.getCellId(), c.getCellId());
+        assertEquals(view.getOnset(), 1000);
+        assertEquals(view.getOffset(), 2500);
+        assertEquals(view.getOnsetString(), "00:00:01:000");
+        assertEquals(view.getValueAsString(), "a");
+        assertEquals(view.getVariable(), var);
+        assertTrue(view.isSelected());
+
+        view.setSelected(false);
+        assertFalse(c.isSelected());
+        assertFalse(c.isHighlighted());
+        view.setHighlighted(true);
+        assertTrue(c.isSelected());
+    }
+
+    @Test
+    public void testRemoveAndReAdd() throws UserWarningException {
+        Variable var = ds.createVariable("test", Argument.Type.TEXT);
+        Cell c1 = var.createCell();
+        Cell c2 = var.createCell();
+        c1.getCellValue().set("first");
+        c2.getCellValue().set("second");
+        c1.setOffset(100);
+
+        var.removeCell(c1);
+        assertFalse(var.contains(c1));
+        assertEquals(var.getCells().size(), 1);
+
+        // Removed cells keep their values so they can be added back, e.g. by undo.
+        assertEquals(c1.getValueAsString(), "first");
+        assertEquals(c1.getOffset(), 100);
+        var.addCell(c1);
+        assertTrue(var.contains(c1));
+        assertEquals(var.getCells().get(1), c1);
+        assertEquals(var.getCellsTemporally().get(1).getValueAsString(), "first");
+    }
+
+    @Test
+    public void testRemovedRowsNotReused() throws UserWarningException {
+        Variable var = ds.createVariable("test", Argument.Type.TEXT);
+        Cell removed = newCell(var, 10, 20);
+        removed.getCellValue().set("removed");
+        String removedId = removed.getCellId();
+
+        // Another view of the same row, e.g. one held by the undo history, is not the view the cell is removed through.
+        Cell other = var.getCells().get(0);
+        var.removeCell(removed);
+        removed = null;
+        System.gc();
+
+        for (int i = 0; i < 20; i++) {
+            Cell created = var.createCell();
+            assertFalse(created.getCellId().equals(removedId));
+            assertTrue(created.getCellValue().isEmpty());
+        }
+
+        assertEquals(other.getValueAsString(), "removed");
+        var.addCell(other);
+        assertTrue(var.contains(other));
+        assertEquals(other.getValueAsString(), "removed");
+        assertEquals(other.getOnset(), 10);
+    }
+
+    @Test
+    public void testMatrixValueOnCell() throws UserWarningException {
+        Variable var = ds.createVariable("test", Argument.Type.MATRIX);
+        Cell first = var.createCell();
+        Cell second = var.createCell();
+        first.setMatrixValue(0, "a");
+        second.setMatrixValue(0, "b");
+
+        // Codes are shared by the cells of a columnar variable, so a change through one cell applies to all of them.
+        Argument added = new Argument("added", Argument.Type.NOMINAL);
+        first.addMatrixValue(added);
+        assertEquals(var.getRootNode().childArguments.size(), 2);
+        assertEquals(var.getRootNode().childArguments.get(1), added);
+        second.setMatrixValue(1, "c");
+        assertEquals(second.getMatrixValue(1).toString(), "c");
+
+        first.moveMatrixValue(1, 0);
+        assertEquals(var.getArgumentIndex("added"), 0);
+        assertEquals(second.getMatrixValue(0).toString(), "c");
+        assertEquals(second.getMatrixValue(1).toString(), "b");
+
+        second.removeMatrixValue(0);
+        assertEquals(var.getArgumentIndex("added"), -1);
+        assertEquals(first.getMatrixValue(0).toString(), "a");
+        assertEquals(second.getMatrixValue(0).toString(), "b");
+    }
+
+    @Test
+    public void testTemporalQueries() throws UserWarningException {
+        Variable var = ds.createVariable("test", Argument.Type.NOMINAL);
+        Cell c1 = newCell(var, 100, 200);
+        Cell c2 = newCell(var, 0, 50);
+        Cell c3 = newCell(var, 0, 600);
+        Cell c4 = newCell(var, 700, 800);
+
+        List<Cell> cells = var.getCellsTemporally();
+        assertEquals(cells.size(), 4);
+        assertEquals(cells.get(0), c2);
+        assertEquals(cells.get(1), c3);
+        assertEquals(cells.get(2), c1);
+        assertEquals(cells.get(3), c4);
+        assertEquals(var.getCellTemporally(2), c1);
+
+        assertEquals(var.getCellsAt(150).size(), 2);
+        assertEquals(var.getCellsOverlapping(650, 750).size(), 1);
+        assertEquals(var.getNextCellAfter(100), c4);
+        assertNull(var.getNextCellAfter(700));
+
+        // The snapshot is shared until the variable changes.
+        assertTrue(var.getCellsTemporally() == cells);
+        assertEquals(cells.indexOf(c1), 2);
+
+        c4.setOnset(10);
+        assertEquals(var.getCellTemporally(2), c4);
+        assertEquals(var.getNextCellAfter(0), c4);
+        assertFalse(var.getCellsTemporally() == cells);
+        assertEquals(var.getCellsTemporally().indexOf(c1), 3);
+        assertEquals(cells.indexOf(c1), 2);
+    }
+
+    @Test
+    public void testTemporalOrderAfterEdits() throws UserWarningException {
+        Variable var = ds.createVariable("test", Argument.Type.NOMINAL);
+        Random random = new Random(7);
+        for (int i = 0; i < 50; i++) {
+            long onset = random.nextInt(100);
+            newCell(var, onset, onset + random.nextInt(100));
+        }
+        var.getCellsTemporally();
+
+        // Each edit moves one cell within the order, which must match sorting all the cells again.
+        for (int i = 0; i < 200; i++) {
+            Cell cell = var.getCells().get(random.nextInt(50));
+            if (random.nextBoolean()) {
+                cell.setOnset(random.nextInt(100));
+            } else {
+                cell.setOffset(random.nextInt(200));
+            }
+            if (i % 3 == 0) {
+                var.getCellsTemporally();
+            }
+
+            List<Cell> expected = new ArrayList<>(var.getCells());
+            Collections.sort(expected, new CellComparator());
+            List<Cell> actual = var.getCellsTemporally();
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(actual.get(j).getOnset(), expected.get(j).getOnset());
+                assertEquals(actual.get(j).getOffset(), expected.get(j).getOffset());
+            }
+            long time = random.nextInt(200);
+            assertEquals(var.getCellsAt(time).size(), countAt(expected, time));
+        }
+    }
+
+    private static int countAt(final List<Cell> cells, final long time) {
+        int count = 0;
+        for (Cell cell : cells) {
+            if (cell.getOnset() <= time && cell.getOffset() >= time) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testMatrixArguments() throws UserWarningException {
+        Variable var = ds.createVariable("test", Argument.Type.MATRIX);
+        Argument second = var.addArgument(Argument.Type.NOMINAL);
+        Cell c = var.createCell();
+        c.getCellValue().set("(a,b)");
+        assertEquals(c.getValueAsString(), "(a,b)");
+        assertEquals(c.getCellValue().serialize(), "(a,b)");
+        assertEquals(c.getMatrixValue(1).getArgument(), second);
+
+        var.moveArgument(1, 0);
+        assertEquals(c.getValueAsString(), "(b,a)");
+
+        var.addArgument(Argument.Type.TEXT);
+        assertEquals(c.getValueAsString(), "(b,a,)");
+        assertTrue(((MatrixCellValue) c.getCellValue()).getArguments().get(2) instanceof TextCellValue);
+
+        var.removeArgument(second.name);
+        assertEquals(c.getValueAsString(), "(a,)");
+
+        c.clearMatrixValue(0);
+        assertTrue(c.getCellValue().isEmpty());
+    }
+
+    @Test
+    public void testRemoveCells() throws UserWarningException {
+        Variable var = ds.createVariable("test", Argument.Type.NOMINAL);
+        Cell c1 = newCell(var, 0, 10);
+        Cell c2 = newCell(var, 10, 20);
+        Cell c3 = newCell(var, 20, 30);
+
+        ds.removeCells(Arrays.asList(c1, c3));
+        assertEquals(var.getCells().size(), 1);
+        assertEquals(var.getCellTemporally(0), c2);
+        assertEquals(ds.getVariable(c2), var);
+        assertNull(ds.getVariable(c1));
+    }
+
+    @Test
+    public void testSelectedCells() throws UserWarningException {
+        Variable var = ds.createVariable("test", Argument.Type.NOMINAL);
+        Cell c1 = var.createCell();
+        Cell c2 = var.createCell();
+        Cell c3 = var.createCell();
+
+        // New cells start out selected.
+        assertEquals(ds.getSelectedCells().size(), 3);
+        ds.clearCellSelection();
+        assertTrue(ds.getSelectedCells().isEmpty());
+        assertFalse(c1.isHighlighted());
+
+        c2.setHighlighted(true);
+        c3.setSelected(true);
+        assertEquals(ds.getSelectedCells(), Arrays.asList(c2, c3));
+
+        var.removeCell(c3);
+        assertEquals(ds.getSelectedCells(), Arrays.asList(c2));
+        c3.setSelected(true);
+        assertEquals(ds.getSelectedCells(), Arrays.asList(c2));
+
+        ds.clearCellSelection();
+        assertFalse(c2.isSelected());
+        assertFalse(c2.isHighlighted());
+    }
+
+    private static Cell newCell(final Variable var, final long onset, final long offset) {
+        Cell c = var.createCell();
+        c.setOnset(onset);
+        c.setOffset(offset);
+        return c;
+    }
+}
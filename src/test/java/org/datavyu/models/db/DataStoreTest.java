@@ -144,4 +144,32 @@ public class DataStoreTest {
         model.markAsUnchanged();
         assertFalse(model.isChanged());
     }
+
+    @Test
+    public void bulkLoad() throws UserWarningException {
+        Variable var = model.createVariable("foo", Argument.Type.TEXT);
+        VariableListener varListener = mock(VariableListener.class);
+        var.addListener(varListener);
+        model.markAsUnchanged();
+
+        model.beginBulkLoad();
+        assertTrue(model.isBulkLoading());
+        Cell c1 = var.createCell();
+        Cell c2 = var.createCell();
+        c2.setOnset(1000);
+        assertFalse(model.isChanged());
+        verify(varListener, times(0)).cellInserted(c1);
+        model.endBulkLoad();
+
+        List<Cell> cells = new ArrayList<Cell>();
+        cells.add(c1);
+        cells.add(c2);
+
+        assertFalse(model.isBulkLoading());
+        assertTrue(model.isChanged());
+        assertEquals(var.getCells(), cells);
+        verify(varListener).cellsInserted(cells);
+        verify(varListener, times(0)).cellInserted(c1);
+        verify(varListener, times(0)).cellInserted(c2);
+    }
 }
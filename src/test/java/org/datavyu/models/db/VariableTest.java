@@ -16,9 +16,11 @@ package org.datavyu.models.db;
 
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.datavyu.Datavyu;
@@ -27,6 +29,7 @@ import org.datavyu.models.project.Project;
 import static org.mockito.Mockito.*;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 /**
@@ -184,6 +187,92 @@ public class VariableTest {
         assertEquals(model.getCellTemporally(0), c2);
     }
 
+    @DataProvider(name = "engines")
+    public Object[][] engines() {
+        return new Object[][] {{DataStoreFactory.Engine.OBJECT}, {DataStoreFactory.Engine.COLUMNAR}};
+    }
+
+    @Test(dataProvider = "engines")
+    public void testValueFrequencies(final DataStoreFactory.Engine engine) throws UserWarningException {
+        Variable var = DataStoreFactory.newDataStore(engine).createVariable("freq", Argument.Type.MATRIX);
+        Argument code = var.getRootNode().childArguments.get(0);
+        Cell c1 = var.createCell();
+        Cell c2 = var.createCell();
+        Cell c3 = var.createCell();
+        c1.getCellValue().set("(l)");
+        c2.getCellValue().set("(r)");
+        c3.getCellValue().set("(l)");
+
+        assertEquals(code.getValueFrequency("l"), 2);
+        assertEquals(code.getDistinctValues().size(), 2);
+        assertEquals(code.getDistinctValues().get(1), "r");
+
+        // Removed cells keep their value but are no longer counted.
+        var.removeCell(c1);
+        assertEquals(code.getValueFrequency("l"), 1);
+        assertEquals(c1.getValueAsString(), "(l)");
+        var.addCell(c1);
+        assertEquals(code.getValueFrequency("l"), 2);
+
+        c2.clearMatrixValue(0);
+        assertEquals(code.getValueFrequency("r"), 0);
+        assertEquals(code.getValueFrequencies().size(), 1);
+    }
+
+    @Test
+    public void testRemoveCells() {
+        Cell c1 = model.createCell();
+        Cell c2 = model.createCell();
+        Cell c3 = model.createCell();
+
+        ds.removeCells(Arrays.asList(c1, c3));
+        assertEquals(model.getCells().size(), 1);
+        assertFalse(model.contains(c1));
+        assertTrue(model.contains(c2));
+        assertEquals(ds.getVariable(c2), model);
+        assertNull(ds.getVariable(c3));
+        verify(modelListener, times(1)).cellsRemoved(anyList());
+        verify(modelListener, times(0)).cellRemoved(c1);
+    }
+
+    @Test
+    public void testTemporalQueries() {
+        Cell c1 = model.createCell();
+        Cell c2 = model.createCell();
+        Cell c3 = model.createCell();
+
+        c1.setOnset(100);
+        c1.setOffset(200);
+        c2.setOnset(150);
+        c2.setOffset(400);
+        c3.setOnset(500);
+        c3.setOffset(600);
+
+        List<Cell> atTime = new ArrayList<Cell>();
+        atTime.add(c1);
+        atTime.add(c2);
+        assertEquals(model.getCellsAt(175), atTime);
+        assertEquals(model.getCellsAt(450).size(), 0);
+
+        List<Cell> overlapping = new ArrayList<Cell>();
+        overlapping.add(c2);
+        overlapping.add(c3);
+        assertEquals(model.getCellsOverlapping(300, 500), overlapping);
+
+        assertEquals(model.getNextCellAfter(100), c2);
+        assertEquals(model.getNextCellAfter(600), null);
+
+        // Moving a cell repositions it in the index.
+        c3.setOnset(0);
+        assertEquals(model.getCellTemporally(0), c3);
+        assertEquals(model.getNextCellAfter(0), c1);
+
+        model.removeCell(c1);
+        assertEquals(model.getCellsAt(175).size(), 2);
+        assertFalse(model.getCellsAt(175).contains(c1));
+        assertEquals(model.getCellTemporally(1), c2);
+    }
+
     @Test(expectedExceptions = UserWarningException.class)
     public void uniqueVariableNames() throws UserWarningException {
         ds.createVariable("test", Argument.Type.TEXT);
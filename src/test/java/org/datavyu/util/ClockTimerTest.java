@@ -0,0 +1,252 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.datavyu.util;
+
+import org.testng.annotations.Test;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the ticks of the clock.
+ */
+public class ClockTimerTest {
+
+    /**
+     * Records the phases of the ticks and the threads they are notified on.
+     */
+    private static final class Recorder implements ClockTimer.ClockListener {
+        final List<String> phases = new ArrayList<>();
+        final List<Double> forcedTimes = new ArrayList<>();
+        final List<String> events = new ArrayList<>();
+        final CountDownLatch ticks;
+        boolean offEventThread = false;
+        boolean onEventThread = true;
+
+        Recorder(final int numTicks) {
+            ticks = new CountDownLatch(numTicks);
+        }
+
+        private synchronized void record(final String phase) {
+            if (ticks.getCount() > 0) {
+                phases.add(phase);
+                offEventThread |= !SwingUtilities.isEventDispatchThread();
+                onEventThread &= SwingUtilities.isEventDispatchThread();
+            }
+        }
+
+        @Override
+        public void clockPeriodicSync(double clockTime) {
+            record("sync");
+        }
+
+        @Override
+        public void clockBoundaryCheck(double clockTime) {
+            record("clock");
+        }
+
+        @Override
+        public void streamsBoundaryCheck(double clockTime) {
+            record("streams");
+        }
+
+        @Override
+        public void clockSeekPlayback(double clockTime) {
+            record("seek");
+            ticks.countDown();
+        }
+
+        @Override
+        public synchronized void clockForceSync(double clockTime) {
+            forcedTimes.add(clockTime);
+            events.add("force");
+            onEventThread &= SwingUtilities.isEventDispatchThread();
+        }
+
+        @Override
+        public synchronized void clockStart(double clockTime) {
+            events.add("start");
+        }
+
+        @Override
+        public synchronized void clockStop(double clockTime) {
+            events.add("stop");
+        }
+
+        @Override
+        public synchronized void clockPause(double clockTime) {
+            events.add("pause");
+        }
+
+        @Override
+        public synchronized void clockRate(float rate) {
+            events.add("rate");
+        }
+    }
+
+    @Test
+    public void testPhases() throws InterruptedException {
+        ClockTimer clockTimer = new ClockTimer();
+        clockTimer.setTickRate(100);
+        Recorder worker = new Recorder(3);
+        Recorder ui = new Recorder(3);
+        clockTimer.registerListener(worker);
+        clockTimer.registerListener(ui, true);
+
+        assertTrue(worker.ticks.await(5, TimeUnit.SECONDS));
+        assertTrue(ui.ticks.await(5, TimeUnit.SECONDS));
+        clockTimer.unRegisterListener(worker);
+        clockTimer.unRegisterListener(ui);
+
+        synchronized (worker) {
+            assertEquals(worker.phases.subList(0, 4), Arrays.asList("sync", "clock", "streams", "seek"));
+            assertTrue(worker.offEventThread);
+        }
+        synchronized (ui) {
+            assertEquals(ui.phases.size(), 12);
+            assertEquals(ui.phases.get(4), "sync");
+            assertTrue(ui.onEventThread);
+        }
+    }
+
+    @Test
+    public void testForceSync() throws Exception {
+        final ClockTimer clockTimer = new ClockTimer();
+        clockTimer.setTickRate(0.1);
+        clockTimer.setMaxTime(10000);
+        final Recorder ui = new Recorder(0);
+        clockTimer.registerListener(ui, true);
+
+        // Forced syncs waiting for the event dispatch thread are merged into one at the latest time.
+        SwingUtilities.invokeAndWait(() -> {
+            clockTimer.setForceTime(500);
+            synchronized (ui) {
+                assertEquals(ui.forcedTimes, Arrays.asList(500.0));
+            }
+        });
+        final CountDownLatch busy = new CountDownLatch(1);
+        SwingUtilities.invokeLater(() -> {
+            try {
+                busy.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        clockTimer.setForceTime(1000);
+        clockTimer.setForceTime(2000);
+        busy.countDown();
+        SwingUtilities.invokeAndWait(() -> { });
+        clockTimer.unRegisterListener(ui);
+
+        synchronized (ui) {
+            assertEquals(ui.forcedTimes, Arrays.asList(500.0, 2000.0));
+            assertTrue(ui.onEventThread);
+        }
+    }
+
+    @Test
+    public void testEventOrder() throws Exception {
+        final ClockTimer clockTimer = new ClockTimer();
+        clockTimer.setTickRate(0.1);
+        clockTimer.setMaxTime(100000);
+        final Recorder ui = new Recorder(0);
+        clockTimer.registerListener(ui, true);
+        SwingUtilities.invokeAndWait(() -> { });
+
+        // Events queued while the event dispatch thread is busy are notified in order, ticks at the latest time.
+        final CountDownLatch busy = new CountDownLatch(1);
+        SwingUtilities.invokeLater(() -> {
+            try {
+                busy.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        clockTimer.setForceTime(1000);
+        clockTimer.setRate(1F);
+        clockTimer.pause();
+        clockTimer.setForceTime(3000);
+        busy.countDown();
+        SwingUtilities.invokeAndWait(() -> { });
+        clockTimer.unRegisterListener(ui);
+
+        synchronized (ui) {
+            assertEquals(ui.events, Arrays.asList("force", "rate", "start", "pause", "force"));
+            assertEquals(ui.forcedTimes.get(0), 3000.0);
+            assertEquals(ui.forcedTimes.get(1), 3000.0);
+        }
+    }
+
+    @Test
+    public void testTickRate() {
+        ClockTimer clockTimer = new ClockTimer();
+        assertEquals(clockTimer.getTickRate(), 10.0);
+        clockTimer.setTickRate(60);
+        assertEquals(clockTimer.getTickRate(), 60.0);
+
+        System.setProperty("datavyu.clockTickRate", "25");
+        try {
+            assertEquals(ClockTimer.getConfiguredTickRate(), 25.0);
+            System.setProperty("datavyu.clockTickRate", "display");
+            assertEquals(ClockTimer.getConfiguredTickRate(), ClockTimer.getDisplayRefreshRate());
+            System.setProperty("datavyu.clockTickRate", "-1");
+            assertEquals(ClockTimer.getConfiguredTickRate(), 10.0);
+        } finally {
+            System.clearProperty("datavyu.clockTickRate");
+        }
+    }
+
+    @Test
+    public void testTime() throws InterruptedException {
+        ClockTimer clockTimer = new ClockTimer();
+        clockTimer.setMaxTime(100000);
+        clockTimer.setForceTime(1000);
+        assertEquals(clockTimer.getClockTime(), 1000.0);
+        assertTrue(clockTimer.isPaused());
+
+        // The time is computed when read, not only on a tick.
+        clockTimer.setTickRate(0.1);
+        clockTimer.setRate(2F);
+        assertFalse(clockTimer.isPaused());
+        Thread.sleep(50);
+        double time = clockTimer.getClockTime();
+        assertTrue(time >= 1100 && time < 100000, "time " + time);
+
+        clockTimer.pause();
+        time = clockTimer.getClockTime();
+        Thread.sleep(20);
+        assertEquals(clockTimer.getClockTime(), time);
+        assertEquals(clockTimer.getRate(), 2F);
+
+        clockTimer.setForceTime(200000);
+        assertEquals(clockTimer.getClockTime(), time);
+        clockTimer.setMinTime(500);
+        clockTimer.setForceTime(0);
+        assertEquals(clockTimer.getClockTime(), 500.0);
+        assertEquals(clockTimer.getStreamTime(), 1000.0);
+        assertEquals(clockTimer.toRange(200000), 100000);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidTickRate() {
+        new ClockTimer().setTickRate(0);
+    }
+}